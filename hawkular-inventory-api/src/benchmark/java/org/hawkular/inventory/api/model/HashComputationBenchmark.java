@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.model;
+
+import static org.hawkular.inventory.paths.DataRole.Resource.configuration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.DataRole;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the computation of the hashes of a feed with a moderately large structure. The results are normalized per
+ * hashed entity so that, when run with the GC profiler ({@code -prof gc}), the {@code gc.alloc.rate.norm} metric
+ * shows the number of bytes allocated per hashed entity.
+ *
+ * @since 1.1.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HashComputationBenchmark {
+    private static final int RESOURCE_COUNT = 100;
+    private static final int CHILD_COUNT = 5;
+
+    //the feed, the resource type and for each resource the resource itself, its configuration, its metric and its
+    //child resources.
+    private static final int ENTITY_COUNT = 1 + 1 + RESOURCE_COUNT * (1 + 1 + 1 + CHILD_COUNT);
+
+    private final CanonicalPath feedPath = CanonicalPath.of().tenant("tenant").feed("feed").get();
+    private InventoryStructure<Feed.Blueprint> structure;
+
+    @Setup
+    public void setup() {
+        InventoryStructure.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                .of(Feed.Blueprint.builder().withId("feed").build());
+
+        bld.addChild(ResourceType.Blueprint.builder().withId("resourceType").build());
+
+        for (int i = 0; i < RESOURCE_COUNT; ++i) {
+            InventoryStructure.ChildBuilder<?> rb = bld.startChild(Resource.Blueprint.builder().withId("r" + i)
+                    .withName("Resource " + i).withResourceTypePath("resourceType").withProperty("index", i).build());
+
+            rb.addChild(DataEntity.Blueprint.<DataRole.Resource>builder().withRole(configuration)
+                    .withValue(StructuredData.get().map().putString("host", "host" + i).putIntegral("port", 8080L)
+                            .putList("aliases").addString("a" + i).addString("b" + i).closeList().build())
+                    .build());
+
+            rb.addChild(Metric.Blueprint.builder().withId("m").withMetricTypePath("../metricType").withInterval(60L)
+                    .build());
+
+            for (int j = 0; j < CHILD_COUNT; ++j) {
+                rb.addChild(Resource.Blueprint.builder().withId("child" + j).withResourceTypePath("../resourceType")
+                        .build());
+            }
+
+            rb.end();
+        }
+
+        structure = bld.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITY_COUNT)
+    public SyncHash.Tree syncTree() {
+        return SyncHash.treeOf(structure, feedPath);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITY_COUNT)
+    public Hashes hashes() {
+        return Hashes.of(structure, feedPath);
+    }
+}
@@ -18,6 +18,7 @@ package org.hawkular.inventory.api;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -166,6 +167,48 @@ public final class Query {
         return b;
     }
 
+    /**
+     * Splits this query into a number of queries that can be evaluated independently of each other and whose results
+     * put together are the same as the results of this query (save for their order). The query is split on the
+     * individual paths of the {@link With.CanonicalPaths} filter the query starts with (if any) and on the branches
+     * at the root of the query.
+     *
+     * @return the independent queries or a list containing just this query if it cannot be split
+     */
+    public List<Query> split() {
+        List<Query> starts = new ArrayList<>();
+
+        Filter first = fragments.length == 0 ? null : fragments[0].getFilter();
+        if (first instanceof With.CanonicalPaths && ((With.CanonicalPaths) first).getPaths().length > 1) {
+            for (CanonicalPath p : new LinkedHashSet<>(Arrays.asList(((With.CanonicalPaths) first).getPaths()))) {
+                Query q = new Query();
+                q.fragments = fragments.clone();
+                q.fragments[0] = fragments[0] instanceof FilterFragment ? new FilterFragment(With.path(p))
+                        : new PathFragment(With.path(p));
+                q.subTrees = subTrees;
+                starts.add(q);
+            }
+        } else {
+            starts.add(this);
+        }
+
+        if (subTrees.size() < 2) {
+            return starts;
+        }
+
+        List<Query> ret = new ArrayList<>(starts.size() * subTrees.size());
+        for (Query start : starts) {
+            for (Query subTree : subTrees) {
+                Query q = new Query();
+                q.fragments = start.fragments;
+                q.subTrees.add(subTree);
+                ret.add(q);
+            }
+        }
+
+        return ret;
+    }
+
     public static Builder builder() {
         return new Query.Builder();
     }
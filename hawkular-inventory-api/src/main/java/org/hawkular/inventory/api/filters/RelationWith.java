@@ -193,7 +193,7 @@ public final class RelationWith {
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            if (!(o instanceof SourceOrTargetOfType)) return false;
+            if (o == null || getClass() != o.getClass()) return false;
 
             SourceOrTargetOfType that = (SourceOrTargetOfType) o;
 
@@ -26,6 +26,7 @@ import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.model.Relationship;
 import org.hawkular.inventory.api.model.StructuredData;
 import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.Path;
 import org.hawkular.inventory.paths.RelativePath;
 import org.hawkular.inventory.paths.SegmentType;
 
@@ -201,6 +202,19 @@ public final class With {
         return new Names(names);
     }
 
+    /**
+     * Relative paths can contain "up" segments that don't have an ID, which the hash code of the path itself doesn't
+     * cope with.
+     */
+    private static int hashOf(RelativePath path) {
+        int result = 0;
+        for (Path.Segment seg : path.getPath()) {
+            result = 31 * result + seg.getElementType().hashCode();
+            result = 31 * result + Objects.hashCode(seg.getElementId());
+        }
+        return result;
+    }
+
     public static final class Ids extends Filter {
 
         private final String[] ids;
@@ -342,12 +356,16 @@ public final class With {
 
             RelativePaths other = (RelativePaths) o;
 
-            return Arrays.equals(paths, other.paths);
+            return Objects.equals(markerLabel, other.markerLabel) && Arrays.equals(paths, other.paths);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(paths);
+            int result = Objects.hashCode(markerLabel);
+            for (RelativePath p : paths) {
+                result = 31 * result + hashOf(p);
+            }
+            return result;
         }
     }
 
@@ -452,7 +470,7 @@ public final class With {
 
         @Override
         public int hashCode() {
-            return dataPath.hashCode();
+            return hashOf(dataPath);
         }
     }
 
@@ -27,23 +27,23 @@ import static org.hawkular.inventory.paths.DataRole.ResourceType.connectionConfi
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.CodingErrorAction;
+import java.security.DigestException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -62,6 +62,9 @@ import org.hawkular.inventory.paths.SegmentType;
  * @since 0.18.0
  */
 final class ComputeHash {
+    private static final ThreadLocal<Deque<DigestComputingWriter>> WRITER_POOL =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
     static final Comparator<Entity<?, ?>> ENTITY_COMPARATOR = (a, b) -> {
         if (a == null) return b == null ? 0 : -1;
         if (b == null) return 1;
@@ -92,13 +95,19 @@ final class ComputeHash {
     }
 
     /**
-     * @return a new message digest to use for hash computation.
+     * @param data the data to compute the digest of
+     * @return the digest of the JSON representation of the data
      */
-    static MessageDigest newDigest() {
+    static String digestOf(StructuredData data) {
+        DigestComputingWriter wrt = acquireWriter();
         try {
-            return MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("Could not instantiate SHA-1 digest algorithm.", e);
+            data.writeJSON(wrt);
+            wrt.close();
+            return wrt.digest();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write out JSON for hash computation purposes.", e);
+        } finally {
+            releaseWriter(wrt);
         }
     }
 
@@ -109,7 +118,7 @@ final class ComputeHash {
     static Hashes of(InventoryStructure<?> inventory, CanonicalPath rootPath, boolean computeIdentity,
                      boolean computeContent, boolean computeSync) {
         ComputeHash.HashConstructor ctor = new ComputeHash.HashConstructor(new ComputeHash.DigestComputingWriter(
-                ComputeHash.newDigest()));
+                HashAlgorithm.current()));
 
         IntermediateHashResult res =
                 ComputeHash.computeHash(rootPath, inventory.getRoot(), ComputeHash.HashableView.of(inventory), ctor,
@@ -124,7 +133,27 @@ final class ComputeHash {
                                          Consumer<IntermediateHashContext> onStartChild,
                                          BiConsumer<IntermediateHashContext, IntermediateHashResult> onEndChild,
                                          Function<RelativePath, Hashes> hashLoader) {
-        ComputeHash.DigestComputingWriter wrt = new ComputeHash.DigestComputingWriter(ComputeHash.newDigest());
+        return treeOf(inventory, rootPath, computeIdentity, computeContent, computeSync, onStartChild, onEndChild,
+                hashLoader, 0);
+    }
+
+    /**
+     * Same as the other {@code treeOf} but can compute the hashes of the sibling subtrees in parallel.
+     *
+     * <p>The {@code onStartChild} and {@code onEndChild} callbacks are always invoked on the calling thread and in the
+     * same order as in the sequential computation. The inventory structure and the hash loader on the other hand are
+     * accessed concurrently from the threads of the common fork-join pool when the parallel computation kicks in.
+     *
+     * @param parallelismThreshold if an entity has more children than this number, the hashes of its children are
+     *                             computed in parallel in batches of at most this size. 0 or less means no parallelism.
+     */
+    static IntermediateHashResult treeOf(InventoryStructure<?> inventory, CanonicalPath rootPath,
+                                         boolean computeIdentity,
+                                         boolean computeContent, boolean computeSync,
+                                         Consumer<IntermediateHashContext> onStartChild,
+                                         BiConsumer<IntermediateHashContext, IntermediateHashResult> onEndChild,
+                                         Function<RelativePath, Hashes> hashLoader, int parallelismThreshold) {
+        ComputeHash.DigestComputingWriter wrt = new ComputeHash.DigestComputingWriter(HashAlgorithm.current());
 
         ComputeHash.HashConstructor ctor = new ComputeHash.HashConstructor(wrt) {
             @Override public void startChild(ComputeHash.IntermediateHashContext context) {
@@ -144,7 +173,7 @@ final class ComputeHash {
                 //we don't want the root element in the relative paths of the children so that they are easily
                 //appendable to the root.
                 (rp) -> rp.slide(1, 0),
-                hashLoader
+                hashLoader, parallelismThreshold
         );
 
     }
@@ -153,6 +182,14 @@ final class ComputeHash {
                                               HashConstructor bld, boolean compIdentity, boolean compContent,
                                               boolean compSync, Function<RelativePath, RelativePath> pathCompleter,
                                               Function<RelativePath, Hashes> hashLoader) {
+        return computeHash(entityPath, entity, structure, bld, compIdentity, compContent, compSync, pathCompleter,
+                hashLoader, 0);
+    }
+
+    static IntermediateHashResult computeHash(CanonicalPath entityPath, Blueprint entity, HashableView structure,
+                                              HashConstructor bld, boolean compIdentity, boolean compContent,
+                                              boolean compSync, Function<RelativePath, RelativePath> pathCompleter,
+                                              Function<RelativePath, Hashes> hashLoader, int parallelismThreshold) {
 
         Class<?> entityType = Inventory.types().byBlueprint(entity.getClass()).getElementType();
 
@@ -167,33 +204,76 @@ final class ComputeHash {
         boolean computeContent = compContent && contentHashable;
         boolean computeSync = compSync && syncable;
 
+        return computeHash(entityPath, entity, new IntermediateHashContext(entityPath == null ? null : entityPath.up(),
+                RelativePath.empty().get()), structure, bld, computeIdentity, computeContent, computeSync, pathCompleter,
+                hashLoader, parallelismThreshold);
+    }
+
+    private static IntermediateHashResult computeHash(CanonicalPath entityPath, Blueprint entity,
+                                                      IntermediateHashContext parentContext, HashableView structure,
+                                                      HashConstructor bld, boolean computeIdentity,
+                                                      boolean computeContent, boolean computeSync,
+                                                      Function<RelativePath, RelativePath> pathCompleter,
+                                                      Function<RelativePath, Hashes> hashLoader,
+                                                      int parallelismThreshold) {
         return entity.accept(new ElementBlueprintVisitor.Simple<IntermediateHashResult, IntermediateHashContext>() {
             @Override
             public IntermediateHashResult visitData(DataEntity.Blueprint<?> data, IntermediateHashContext ctx) {
                 return wrap(data, ctx, (childContext) -> {
-                    try {
-                        StringBuilder json = new StringBuilder();
-                        data.getValue().writeJSON(json);
+                    if (HashAlgorithm.current().isLegacy()) {
+                        appendLegacyData(data, childContext);
+                        return;
+                    }
 
-                        if (computeIdentity) {
-                            appendIdentity(data.getId(), childContext);
-                            appendIdentity(json.toString(), childContext);
-                        }
+                    //the value is only represented by its digest which is computed at most once per the data
+                    //instance (or even loaded from the backend) instead of serializing it for every hash computation
+                    if (computeIdentity) {
+                        appendIdentity(data.getId(), childContext);
+                        appendIdentity(data.getValue().digest(), childContext);
+                    }
 
-                        if (computeContent) {
-                            appendContent(json.toString(), childContext);
-                            appendCommonContent(data, childContext);
-                        }
+                    if (computeContent) {
+                        appendContent(data.getValue().digest(), childContext);
+                        appendCommonContent(data, childContext);
+                    }
 
-                        if (computeSync) {
-                            appendCommonSync(data, childContext);
-                        }
-                    } catch (IOException e) {
-                        throw new IllegalStateException("Could not write out JSON for hash computation purposes.", e);
+                    if (computeSync) {
+                        appendCommonSync(data, childContext);
                     }
                 });
             }
 
+            /**
+             * The legacy hashes include the whole JSON representation of the value so that they stay the same as
+             * the hashes computed by the older versions of inventory.
+             */
+            private void appendLegacyData(DataEntity.Blueprint<?> data, IntermediateHashContext childContext) {
+                try {
+                    if (computeIdentity) {
+                        appendIdentity(data.getId(), childContext);
+                    }
+
+                    Appendable json = computeIdentity
+                            ? (computeContent ? DigestComputingWriter.tee(childContext.identity, childContext.content)
+                            : childContext.identity)
+                            : (computeContent ? childContext.content : null);
+
+                    if (json != null) {
+                        data.getValue().writeJSON(json);
+                    }
+
+                    if (computeContent) {
+                        appendCommonContent(data, childContext);
+                    }
+
+                    if (computeSync) {
+                        appendCommonSync(data, childContext);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write out JSON for hash computation purposes.", e);
+                }
+            }
+
             @Override
             public IntermediateHashResult visitMetricType(MetricType.Blueprint mt, IntermediateHashContext ctx) {
                 return wrap(mt, ctx, (childContext) -> {
@@ -243,7 +323,7 @@ final class ComputeHash {
                     if (computeIdentity) {
                         appendEntityIdentity(structure.getConfigurationSchema(type), childContext);
                         appendEntityIdentity(structure.getConnectionConfigurationSchema(type), childContext);
-                        structure.getOperationTypes(type).forEach(b -> appendEntityIdentity(b, childContext));
+                        appendEntityIdentities(structure.getOperationTypes(type), childContext);
                         appendIdentity(type.getId(), childContext);
                     }
 
@@ -261,10 +341,12 @@ final class ComputeHash {
             public IntermediateHashResult visitFeed(Feed.Blueprint feed, IntermediateHashContext ctx) {
                 return wrap(feed, ctx, (childContext) -> {
                     if (computeIdentity) {
-                        structure.getResourceTypes().forEach(b -> appendEntityIdentity(b, childContext));
-                        structure.getMetricTypes().forEach(b -> appendEntityIdentity(b, childContext));
-                        structure.getFeedResources().forEach(b -> appendEntityIdentity(b, childContext));
-                        structure.getFeedMetrics().forEach(b -> appendEntityIdentity(b, childContext));
+                        List<Entity.Blueprint> children = new ArrayList<>();
+                        children.addAll(structure.getResourceTypes());
+                        children.addAll(structure.getMetricTypes());
+                        children.addAll(structure.getFeedResources());
+                        children.addAll(structure.getFeedMetrics());
+                        appendEntityIdentities(children, childContext);
                         appendIdentity(feed.getId(), childContext);
                     }
 
@@ -306,10 +388,10 @@ final class ComputeHash {
                         appendEntityIdentity(structure.getConfiguration(context.root, resource), childContext);
                         appendEntityIdentity(structure.getConnectionConfiguration(context.root, resource),
                                 childContext);
-                        structure.getResources(context.root, resource)
-                                .forEach(b -> appendEntityIdentity(b, childContext));
-                        structure.getResourceMetrics(context.root, resource)
-                                .forEach(b -> appendEntityIdentity(b, childContext));
+                        List<Entity.Blueprint> children = new ArrayList<>();
+                        children.addAll(structure.getResources(context.root, resource));
+                        children.addAll(structure.getResourceMetrics(context.root, resource));
+                        appendEntityIdentities(children, childContext);
                         appendIdentity(resource.getId(), childContext);
                     }
 
@@ -359,6 +441,15 @@ final class ComputeHash {
             private IntermediateHashResult wrap(Entity.Blueprint root, IntermediateHashContext context,
                                                 Consumer<IntermediateHashContext> hashComputation) {
                 IntermediateHashContext childCtx = context.progress(root);
+                try {
+                    return computeHashes(childCtx, hashComputation);
+                } finally {
+                    childCtx.release();
+                }
+            }
+
+            private IntermediateHashResult computeHashes(IntermediateHashContext childCtx,
+                                                         Consumer<IntermediateHashContext> hashComputation) {
                 bld.startChild(childCtx);
 
                 Hashes loadedHashes = hashLoader.apply(childCtx.root.slide(1, 0));
@@ -376,26 +467,24 @@ final class ComputeHash {
                 String contentHash =  loadedHashes == null ? null : loadedHashes.getContentHash();
                 String syncHash =  loadedHashes == null ? null : loadedHashes.getSyncHash();
 
-                DigestComputingWriter digestor = bld.getDigestor();
                 if (computeIdentity && identityHash == null) {
-                    digestor.reset();
-                    digestor.append(childCtx.identity);
-                    digestor.close();
-                    identityHash = digestor.digest();
+                    childCtx.identity.close();
+                    identityHash = childCtx.identity.digest();
                 }
 
                 if (computeContent && contentHash == null) {
-                    digestor.reset();
-                    digestor.append(childCtx.content);
-                    digestor.close();
-                    contentHash = digestor.digest();
+                    childCtx.content.close();
+                    contentHash = childCtx.content.digest();
                 }
 
                 if (computeSync && syncHash == null) {
+                    DigestComputingWriter digestor = bld.getDigestor();
                     digestor.reset();
                     digestor.append(identityHash);
                     digestor.append(contentHash);
-                    digestor.append(childCtx.sync);
+                    if (childCtx.sync != null) {
+                        digestor.append(childCtx.sync);
+                    }
                     digestor.close();
                     syncHash = digestor.digest();
                 }
@@ -416,8 +505,28 @@ final class ComputeHash {
             private void appendEntityIdentity(Entity.Blueprint child, IntermediateHashContext ctx) {
                 ctx.identity.append(child.accept(this, ctx).identityHash);
             }
-        }, new IntermediateHashContext(entityPath == null ? null : entityPath.up(),
-                RelativePath.empty().get()));
+
+            private void appendEntityIdentities(List<? extends Entity.Blueprint> children,
+                                                IntermediateHashContext ctx) {
+                if (parallelismThreshold <= 0 || children.size() <= parallelismThreshold) {
+                    children.forEach(b -> appendEntityIdentity(b, ctx));
+                    return;
+                }
+
+                ChildrenHashTask task = new ChildrenHashTask(children, 0, children.size(), parallelismThreshold,
+                        (child, recorder) -> computeHash(entityPath, child, ctx, structure, recorder,
+                                computeIdentity, computeContent, computeSync, pathCompleter, hashLoader,
+                                parallelismThreshold));
+
+                ChildrenHashTask.Result res = ForkJoinTask.inForkJoinPool() ? task.invoke()
+                        : ForkJoinPool.commonPool().invoke(task);
+
+                //replay the callbacks in the order they would be invoked by the sequential computation so that
+                //the caller doesn't have to be thread-safe
+                res.events.forEach(e -> e.accept(bld));
+                res.results.forEach(r -> ctx.identity.append(r.identityHash));
+            }
+        }, parentContext);
     }
 
     static void appendIdentity(String data, IntermediateHashContext ctx) {
@@ -441,7 +550,7 @@ final class ComputeHash {
         sorted.putAll(props);
 
         for (Map.Entry<String, Object> e : sorted.entrySet()) {
-            ctx.content.append(e.getKey()).append(e.getValue());
+            ctx.content.append(e.getKey()).append(String.valueOf(e.getValue()));
         }
     }
 
@@ -452,7 +561,7 @@ final class ComputeHash {
 
     static void appendSync(String data, IntermediateHashContext ctx) {
         if (data != null) {
-            ctx.sync.append(data);
+            ctx.sync().append(data);
         }
     }
 
@@ -725,33 +834,84 @@ final class ComputeHash {
 
     }
 
+    /**
+     * Feeds the appended characters, encoded in UTF-8, directly to the message digest. The characters are encoded
+     * into a reused buffer so that, once the writer is created, no further allocations are needed apart from the
+     * resulting digest string. Malformed surrogates are replaced with '?' the same way as the standard UTF-8 encoder
+     * does.
+     */
     static class DigestComputingWriter implements Appendable, Closeable {
-        private final MessageDigest digester;
-        private final CharsetEncoder enc = Charset.forName("UTF-8").newEncoder().onMalformedInput(CodingErrorAction
-                .REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
-        private final ByteBuffer buffer = ByteBuffer.allocate(512);
+        private final MessageDigest digester;
+        private final byte[] buffer = new byte[512];
+        private final byte[] digestBuffer;
+        private final char[] hexBuffer;
+        private final boolean legacy;
+        private int position;
+        private char pendingHighSurrogate;
         private String digest;
 
-        DigestComputingWriter(MessageDigest digester) {
-            this.digester = digester;
+        DigestComputingWriter(HashAlgorithm algorithm) {
+            this.digester = algorithm.newDigest();
+            this.digestBuffer = new byte[digester.getDigestLength()];
+            this.legacy = algorithm.isLegacy();
+            this.hexBuffer = new char[(legacy ? 0 : 1) + digestBuffer.length * 2];
+            if (!legacy) {
+                this.hexBuffer[0] = algorithm.getFormatVersion();
+            }
+        }
+
+        /**
+         * @return an appendable that writes the data to both of the provided appendables
+         */
+        static Appendable tee(Appendable first, Appendable second) {
+            return new Appendable() {
+                @Override public Appendable append(CharSequence csq) throws IOException {
+                    first.append(csq);
+                    second.append(csq);
+                    return this;
+                }
+
+                @Override public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                    first.append(csq, start, end);
+                    second.append(csq, start, end);
+                    return this;
+                }
+
+                @Override public Appendable append(char c) throws IOException {
+                    first.append(c);
+                    second.append(c);
+                    return this;
+                }
+            };
         }
 
         @Override
         public DigestComputingWriter append(CharSequence csq) {
-            consumeBuffer(CharBuffer.wrap(csq));
-            return this;
+            if (csq == null) {
+                csq = "null";
+            }
+
+            return append(csq, 0, csq.length());
         }
 
         @Override
         public DigestComputingWriter append(CharSequence csq, int start, int end) {
-            consumeBuffer(CharBuffer.wrap(csq, start, end));
+            if (csq == null) {
+                csq = "null";
+            }
+
+            for (int i = start; i < end; ++i) {
+                encode(csq.charAt(i));
+            }
+
             return this;
         }
 
         @Override
         public DigestComputingWriter append(char c) {
-            consumeBuffer(CharBuffer.wrap(new char[]{c}));
+            encode(c);
             return this;
         }
 
@@ -767,14 +927,40 @@ final class ComputeHash {
          * @return the freshly computed digest of the data obtained so far
          */
         String runningDigest() {
-            byte[] digest = digester.digest();
+            if (pendingHighSurrogate != 0) {
+                pendingHighSurrogate = 0;
+                put('?');
+            }
+
+            flush();
+
+            try {
+                digester.digest(digestBuffer, 0, digestBuffer.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Failed to compute the digest.", e);
+            }
+
+            if (legacy) {
+                //the legacy encoding leaves out the leading zero of each byte
+                int len = 0;
+                for (byte b : digestBuffer) {
+                    int v = Byte.toUnsignedInt(b);
+                    if (v > 0xf) {
+                        hexBuffer[len++] = HEX_DIGITS[v >>> 4];
+                    }
+                    hexBuffer[len++] = HEX_DIGITS[v & 0xf];
+                }
+
+                return new String(hexBuffer, 0, len);
+            }
 
-            StringBuilder bld = new StringBuilder();
-            for (byte b : digest) {
-                bld.append(Integer.toHexString(Byte.toUnsignedInt(b)));
+            int len = 1;
+            for (byte b : digestBuffer) {
+                hexBuffer[len++] = HEX_DIGITS[(b >>> 4) & 0xf];
+                hexBuffer[len++] = HEX_DIGITS[b & 0xf];
             }
 
-            return bld.toString();
+            return new String(hexBuffer);
         }
 
         /**
@@ -794,30 +980,109 @@ final class ComputeHash {
 
         public void reset() {
             digester.reset();
+            position = 0;
+            pendingHighSurrogate = 0;
             digest = null;
         }
 
-        private void consumeBuffer(CharBuffer chars) {
-            CoderResult res;
-            do {
-                res = enc.encode(chars, buffer, true);
-                buffer.flip();
-                digester.update(buffer);
-                buffer.clear();
-            } while (res == CoderResult.OVERFLOW);
+        private void encode(char c) {
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    put((byte) (0xf0 | (cp >> 18)));
+                    put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                    put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                    put((byte) (0x80 | (cp & 0x3f)));
+                    return;
+                } else {
+                    put('?');
+                }
+            }
+
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xc0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                put('?');
+            } else {
+                put((byte) (0xe0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+
+        private void put(char asciiChar) {
+            put((byte) asciiChar);
+        }
+
+        private void put(byte b) {
+            if (position == buffer.length) {
+                flush();
+            }
+
+            buffer[position++] = b;
+        }
+
+        private void flush() {
+            digester.update(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * @return a digest computing writer from the pool of the current thread or a new one if the pool is empty
+     */
+    static DigestComputingWriter acquireWriter() {
+        DigestComputingWriter ret = WRITER_POOL.get().poll();
+        if (ret == null) {
+            ret = new DigestComputingWriter(HashAlgorithm.current());
+        } else {
+            ret.reset();
         }
+
+        return ret;
     }
 
+    /**
+     * Returns the writer to the pool of the current thread so that it can be reused by the subsequent hash
+     * computations.
+     */
+    static void releaseWriter(DigestComputingWriter writer) {
+        if (writer != null) {
+            WRITER_POOL.get().push(writer);
+        }
+    }
+
+    /**
+     * The context of the hash computation of a single entity. The identity and content of the entity are streamed
+     * directly into the digests obtained from the pool of the current thread. The context only has the digests if
+     * it was obtained using {@link #progress(Entity.Blueprint)} and these need to be returned to the pool using
+     * {@link #release()} once the hashes of the entity are computed.
+     */
     static class IntermediateHashContext {
         final CanonicalPath origin;
         final RelativePath root;
-        final StringBuilder identity = new StringBuilder();
-        final StringBuilder content = new StringBuilder();
-        final StringBuilder sync = new StringBuilder();
+        final DigestComputingWriter identity;
+        final DigestComputingWriter content;
+        StringBuilder sync;
 
         IntermediateHashContext(CanonicalPath origin, RelativePath root) {
+            this(origin, root, null, null);
+        }
+
+        private IntermediateHashContext(CanonicalPath origin, RelativePath root, DigestComputingWriter identity,
+                                        DigestComputingWriter content) {
             this.origin = origin;
             this.root = root;
+            this.identity = identity;
+            this.content = content;
         }
 
         IntermediateHashContext progress(Entity.Blueprint bl) {
@@ -825,7 +1090,20 @@ final class ComputeHash {
             String id = bl.getId();
 
             return new IntermediateHashContext(origin == null ? null : origin.modified().extend(st, id).get(),
-                    root.modified().extend(st, id).get());
+                    root.modified().extend(st, id).get(), acquireWriter(), acquireWriter());
+        }
+
+        StringBuilder sync() {
+            if (sync == null) {
+                sync = new StringBuilder();
+            }
+
+            return sync;
+        }
+
+        void release() {
+            releaseWriter(identity);
+            releaseWriter(content);
         }
     }
 
@@ -843,6 +1121,76 @@ final class ComputeHash {
         }
     }
 
+    /**
+     * Computes the hashes of a range of sibling entities, splitting the range in halves and forking the computation
+     * of them until the range is no larger than the threshold. The callbacks of the hash constructor are not invoked
+     * directly but recorded in the result so that the caller can replay them in the correct order.
+     */
+    private static final class ChildrenHashTask extends RecursiveTask<ChildrenHashTask.Result> {
+        private final List<? extends Entity.Blueprint> children;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final BiFunction<Entity.Blueprint, HashConstructor, IntermediateHashResult> computation;
+
+        ChildrenHashTask(List<? extends Entity.Blueprint> children, int from, int to, int threshold,
+                         BiFunction<Entity.Blueprint, HashConstructor, IntermediateHashResult> computation) {
+            this.children = children;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.computation = computation;
+        }
+
+        @Override protected Result compute() {
+            if (to - from <= threshold) {
+                Result ret = new Result();
+
+                DigestComputingWriter digestor = acquireWriter();
+                HashConstructor recorder = new HashConstructor(digestor) {
+                    @Override public void startChild(IntermediateHashContext context) {
+                        IntermediateHashContext ctx = new IntermediateHashContext(context.origin, context.root);
+                        ret.events.add(bld -> bld.startChild(ctx));
+                    }
+
+                    @Override public void endChild(IntermediateHashContext context, IntermediateHashResult result) {
+                        IntermediateHashContext ctx = new IntermediateHashContext(context.origin, context.root);
+                        ret.events.add(bld -> bld.endChild(ctx, result));
+                    }
+                };
+
+                try {
+                    for (int i = from; i < to; ++i) {
+                        ret.results.add(computation.apply(children.get(i), recorder));
+                    }
+                } finally {
+                    releaseWriter(digestor);
+                }
+
+                return ret;
+            }
+
+            int mid = (from + to) >>> 1;
+
+            ChildrenHashTask left = new ChildrenHashTask(children, from, mid, threshold, computation);
+            ChildrenHashTask right = new ChildrenHashTask(children, mid, to, threshold, computation);
+
+            right.fork();
+            Result ret = left.compute();
+            Result rightResult = right.join();
+
+            ret.events.addAll(rightResult.events);
+            ret.results.addAll(rightResult.results);
+
+            return ret;
+        }
+
+        static final class Result {
+            final List<Consumer<HashConstructor>> events = new ArrayList<>();
+            final List<IntermediateHashResult> results = new ArrayList<>();
+        }
+    }
+
     static class HashConstructor {
         private final DigestComputingWriter digestor;
 
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.hawkular.inventory.api.Configuration;
+
+/**
+ * The algorithms that can be used to compute the identity, content and sync hashes of the entities.
+ *
+ * <p>The default {@link #SHA_1} algorithm is {@link #isLegacy() legacy}. Its hashes are computed and encoded exactly
+ * the same way as by the versions of inventory that only supported SHA-1, so that the hashes stored by those versions
+ * stay valid and the clients of those versions (e.g. the feeds syncing their inventory) keep computing the same hashes
+ * as the server.
+ *
+ * <p>The hashes of the other algorithms are encoded as a single character identifying the algorithm (the "format
+ * version") followed by the hexadecimal representation of the digest, including the leading zeros. The hashes
+ * produced by such an algorithm therefore all have the same length and never equal the hashes produced by another
+ * algorithm. The legacy hashes consist only of hexadecimal digits and therefore can be told apart from them.
+ *
+ * <p>The algorithm used is determined by the {@link #ALGORITHM} property which is read from the system properties or
+ * environment variables once, when this class is initialized. The hashes computed on the client side are only ever
+ * going to match the hashes computed by the server if both use the same algorithm. A non-default algorithm therefore
+ * requires both the clients and the server to be of a version supporting it and to be configured the same way. The
+ * hashes stored using a different algorithm are not converted, they are recomputed once the entities are updated or
+ * synced.
+ *
+ * @since 1.1.3
+ */
+public enum HashAlgorithm {
+    /**
+     * The SHA-1 digest. This is the default.
+     */
+    SHA_1(null) {
+        @Override public MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Could not instantiate SHA-1 digest algorithm.", e);
+            }
+        }
+    },
+
+    /**
+     * The 128bit variant of the MurmurHash3 optimized for 64bit platforms. This is a non-cryptographic hash function
+     * which is considerably faster to compute than SHA-1 but provides no guarantees against deliberately constructed
+     * collisions.
+     */
+    MURMUR3_128('m') {
+        @Override public MessageDigest newDigest() {
+            return new Murmur3Digest();
+        }
+    };
+
+    /**
+     * The name of the hash algorithm to use, which is either "sha-1" or "murmur3-128". Defaults to "sha-1".
+     */
+    public static final Configuration.Property ALGORITHM = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.hash.algorithm")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_HASH_ALGORITHM").build();
+
+    private static final HashAlgorithm CURRENT =
+            fromName(Configuration.builder().build().getProperty(ALGORITHM, SHA_1.getName()));
+
+    private final Character formatVersion;
+
+    HashAlgorithm(Character formatVersion) {
+        this.formatVersion = formatVersion;
+    }
+
+    /**
+     * @return the algorithm used to compute the hashes in this JVM
+     */
+    public static HashAlgorithm current() {
+        return CURRENT;
+    }
+
+    /**
+     * @param name the name of the algorithm as returned from {@link #getName()}
+     * @return the hash algorithm with given name
+     * @throws IllegalArgumentException if there is no algorithm with the provided name
+     */
+    public static HashAlgorithm fromName(String name) {
+        for (HashAlgorithm a : values()) {
+            if (a.getName().equalsIgnoreCase(name)) {
+                return a;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown hash algorithm: '" + name + "'.");
+    }
+
+    /**
+     * @param hash the hash to inspect
+     * @return the algorithm the hash was computed with or null if the hash is not in the format produced by any of
+     * the algorithms
+     */
+    public static HashAlgorithm of(String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+
+        for (HashAlgorithm a : values()) {
+            if (a.formatVersion != null && a.formatVersion == hash.charAt(0)) {
+                return a;
+            }
+        }
+
+        for (int i = 0; i < hash.length(); ++i) {
+            if (Character.digit(hash.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+
+        return SHA_1;
+    }
+
+    /**
+     * @return a new message digest computing the hash using this algorithm
+     */
+    public abstract MessageDigest newDigest();
+
+    /**
+     * @return the character that prefixes the hashes produced by this algorithm or null if this algorithm is
+     * {@link #isLegacy() legacy}
+     */
+    public Character getFormatVersion() {
+        return formatVersion;
+    }
+
+    /**
+     * The legacy algorithm encodes the hashes without the format version and without the leading zeros of the bytes
+     * of the digest. The data entities are hashed using the whole JSON representation of their values rather than
+     * their {@link StructuredData#digest() digests}.
+     *
+     * @return true if this algorithm computes the same hashes as the versions of inventory before the introduction of
+     * the configurable algorithms
+     */
+    public boolean isLegacy() {
+        return formatVersion == null;
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -68,6 +68,27 @@ public final class Hashes implements Serializable {
 
     public static Tree treeOf(InventoryStructure<?> root, CanonicalPath rootPath,
                               Function<RelativePath, Hashes> hashLoader) {
+        return treeOf(root, rootPath, hashLoader, 0);
+    }
+
+    /**
+     * Computes the hash tree of the provided inventory structure, optionally computing the hashes of the sibling
+     * subtrees in parallel using the common fork-join pool. The resulting tree is the same as the one computed
+     * sequentially.
+     *
+     * <p>If the parallel computation is enabled, both the structure and the hash loader need to be safe for use from
+     * multiple threads (which is true for the {@link InventoryStructure.Offline offline} structures).
+     *
+     * @param root                 the structure to compute the hash tree of
+     * @param rootPath             the canonical path of the root of the structure
+     * @param hashLoader           a function returning the known hashes of a structure node or null if they should be
+     *                             computed
+     * @param parallelismThreshold the children of an entity are hashed in parallel if there is more of them than this
+     *                             number. 0 or less disables the parallel computation.
+     * @return the hash tree of the structure
+     */
+    public static Tree treeOf(InventoryStructure<?> root, CanonicalPath rootPath,
+                              Function<RelativePath, Hashes> hashLoader, int parallelismThreshold) {
         Tree.AbstractBuilder<?>[] tbld =
                 new Tree.AbstractBuilder[1];
 
@@ -91,7 +112,7 @@ public final class Hashes implements Serializable {
         };
 
         IntermediateHashResult res = ComputeHash.treeOf(root, rootPath, true, true, true, startChild, endChild,
-                hashLoader);
+                hashLoader, parallelismThreshold);
 
         tbld[0].withPath(res.path).withHash(new Hashes(res));
 
@@ -41,10 +41,11 @@ import io.swagger.annotations.ApiModel;
  * {@link Feed}, {@link ResourceType}, {@link MetricType}, {@link OperationType}, {@link Metric}, {@link Resource} and
  * {@link DataEntity}.
  * <p>
- * The identity hash is an SHA1 hash of a string representation of the entity (in UTF-8 encoding). The string
- * representation is produced as follows:
+ * The identity hash is a hash of a string representation of the entity (in UTF-8 encoding) computed using the
+ * {@link HashAlgorithm#current() configured hash algorithm}. The string representation is produced as follows:
  * <ol>
- * <li>DataEntity: role + minimizedDataJSON
+ * <li>DataEntity: role + minimizedDataJSON with the default (legacy) algorithm, role + digestOf(minimizedDataJSON)
+ * with the other algorithms
  * <li>Metric: id
  * <li>Resource: hashOf(configuration) + hashOf(connectionConfiguration) + hashOf(childResource)*
  * + hashOf(childMetric)* + id
@@ -54,7 +55,7 @@ import io.swagger.annotations.ApiModel;
  * + id
  * <li>Feed: hashOf(childResourceType)* + hashOf(childMetricType)* + hashOf(childResource)* + hashOf(childMetric)* + id
  * </ol>
- * where {@code hashOf()} means the identity hash of the child entity
+ * where {@code hashOf()} means the identity hash of the child entity and {@code digestOf()} the hash of the string.
  *
  * @author Lukas Krejci
  * @since 0.7.0
@@ -67,7 +68,7 @@ public final class IdentityHash {
 
     public static String of(MetadataPack.Members metadata) {
         ComputeHash.HashConstructor ctor = new ComputeHash.HashConstructor(new ComputeHash.DigestComputingWriter(
-                ComputeHash.newDigest()));
+                HashAlgorithm.current()));
 
         ComputeHash.HashableView metadataView = ComputeHash.HashableView.of(metadata);
 
@@ -153,7 +154,7 @@ public final class IdentityHash {
         entities.forEachRemaining(sortedEntities::add);
 
         ComputeHash.HashConstructor ctor = new ComputeHash.HashConstructor(new ComputeHash.DigestComputingWriter(
-                ComputeHash.newDigest()));
+                HashAlgorithm.current()));
 
         StringBuilder resultHash = new StringBuilder();
 
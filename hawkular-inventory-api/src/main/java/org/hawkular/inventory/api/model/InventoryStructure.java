@@ -21,6 +21,7 @@ import static org.hawkular.inventory.api.model.Helper.ENTITY_ORDER;
 import static org.hawkular.inventory.paths.SegmentType.r;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -52,6 +53,7 @@ import org.hawkular.inventory.api.ResolvingToMultiple;
 import org.hawkular.inventory.api.ResourceTypes;
 import org.hawkular.inventory.api.Resources;
 import org.hawkular.inventory.api.Tenants;
+import org.hawkular.inventory.api.filters.RecurseFilter;
 import org.hawkular.inventory.api.filters.Related;
 import org.hawkular.inventory.api.filters.With;
 import org.hawkular.inventory.api.paging.Order;
@@ -88,13 +90,67 @@ public interface InventoryStructure<Root extends Entity.Blueprint> {
      */
     static <E extends Entity<B, ?>, B extends Entity.Blueprint>
     InventoryStructure<B> of(E rootEntity, Inventory inventory) {
+        return of(rootEntity, inventory, false);
+    }
+
+    /**
+     * Creates an online inventory structure, backed by the provided inventory instance.
+     *
+     * <p>If {@code prefetch} is true, the whole subtree of the root entity is loaded using a single query upfront
+     * instead of loading the children of each entity lazily using a query per parent and child type. This is
+     * beneficial if most of the structure is going to be traversed, as is the case with syncing or hash computation.
+     *
+     * @param rootEntity the root entity of which to create the structure of
+     * @param inventory  the inventory to load the data from
+     * @param prefetch   whether to load the whole structure upfront
+     * @return the structure of given entity and its children
+     * @see #of(Entity, Inventory)
+     */
+    static <E extends Entity<B, ?>, B extends Entity.Blueprint>
+    InventoryStructure<B> of(E rootEntity, Inventory inventory, boolean prefetch) {
         return new InventoryStructure<B>() {
             FullNode root = new FullNode(Inventory.asBlueprint(rootEntity), rootEntity);
 
             HashMap<CanonicalPath, FullNode> cache = new HashMap<>();
 
+            //the children of all the entities in the structure, only used when prefetching
+            HashMap<CanonicalPath, List<FullNode>> children;
+
             {
                 cache.put(rootEntity.getPath(), root);
+
+                if (prefetch) {
+                    prefetch();
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            private void prefetch() {
+                children = new HashMap<>();
+
+                Query q = Query.path().with(With.path(rootEntity.getPath()),
+                        RecurseFilter.builder().addChain(Related.by(contains)).build()).get();
+
+                @SuppressWarnings("rawtypes")
+                Page<Entity> results = inventory.execute(q, Entity.class, Pager.none());
+
+                try {
+                    results.forEachRemaining(e -> {
+                        FullNode n = new FullNode((Entity.Blueprint) Inventory.asBlueprint(e), e);
+                        cache.put(e.getPath(), n);
+                        children.computeIfAbsent(e.getPath().up(), k -> new ArrayList<>()).add(n);
+                    });
+                } finally {
+                    results.close();
+                }
+            }
+
+            private boolean isPrefetched(CanonicalPath path) {
+                return children != null && (rootEntity.getPath().equals(path) || rootEntity.getPath().isParentOf(path));
+            }
+
+            private Stream<FullNode> prefetchedChildren(CanonicalPath parent) {
+                return children.getOrDefault(parent, Collections.emptyList()).stream();
             }
 
             @SuppressWarnings("unchecked")
@@ -110,6 +166,13 @@ public interface InventoryStructure<Root extends Entity.Blueprint> {
 
                 SegmentType childSegment = SegmentType.fromElementType(childType);
 
+                if (isPrefetched(absoluteParent)) {
+                    return prefetchedChildren(absoluteParent)
+                            .filter(n -> childSegment == ((Entity<?, ?>) n.getAttachment()).getPath().getSegment()
+                                    .getElementType())
+                            .sorted(Comparator.comparing(n -> ((Entity<?, ?>) n.getAttachment()).getId()));
+                }
+
                 return ElementTypeVisitor.accept(childSegment, new ElementTypeVisitor<Stream<FullNode>, Void>() {
 
                     class EmptyStreamByDefault extends ElementTypeVisitor.Simple<Stream<FullNode>, Void> {
@@ -267,6 +330,10 @@ public interface InventoryStructure<Root extends Entity.Blueprint> {
             @Override public Stream<FullNode> getAllChildNodes(RelativePath parent) {
                 CanonicalPath absoluteParent = rootEntity.getPath().modified().extend(parent.getPath()).get();
 
+                if (isPrefetched(absoluteParent)) {
+                    return prefetchedChildren(absoluteParent).sorted(ENTITY_ORDER);
+                }
+
                 Query q = Query.path().with(With.path(absoluteParent), Related.by(contains)).get();
 
                 @SuppressWarnings("rawtypes")
@@ -308,6 +375,11 @@ public interface InventoryStructure<Root extends Entity.Blueprint> {
                         return cached == FullNode.EMPTY ? null : cached;
                     }
 
+                    if (isPrefetched(pathToElement)) {
+                        //we've loaded the whole subtree, so if it's not in the cache, it doesn't exist
+                        return null;
+                    }
+
                     Entity<Entity.Blueprint, ?> entity = (Entity<Entity.Blueprint, ?>)
                             inventory.inspect(pathToElement, ResolvableToSingle.class).entity();
 
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.model;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * A streaming implementation of the x64 128bit variant of MurmurHash3 (with the seed 0) in the form of a message
+ * digest. The digest consists of the two 64bit halves of the hash, each in little endian order, which is the same as
+ * what the reference implementation produces on x86 platforms.
+ *
+ * @since 1.1.3
+ */
+final class Murmur3Digest extends MessageDigest {
+    private static final int BLOCK_SIZE = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private long length;
+    private long h1;
+    private long h2;
+
+    Murmur3Digest() {
+        super("MurmurHash3-x64-128");
+    }
+
+    @Override protected int engineGetDigestLength() {
+        return BLOCK_SIZE;
+    }
+
+    @Override protected void engineUpdate(byte input) {
+        block[blockLength++] = input;
+        if (blockLength == BLOCK_SIZE) {
+            mix(getLong(block, 0), getLong(block, 8));
+            blockLength = 0;
+        }
+        length++;
+    }
+
+    @Override protected void engineUpdate(byte[] input, int offset, int len) {
+        length += len;
+        int end = offset + len;
+
+        if (blockLength > 0) {
+            int n = Math.min(BLOCK_SIZE - blockLength, len);
+            System.arraycopy(input, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+
+            if (blockLength < BLOCK_SIZE) {
+                return;
+            }
+
+            mix(getLong(block, 0), getLong(block, 8));
+            blockLength = 0;
+        }
+
+        while (end - offset >= BLOCK_SIZE) {
+            mix(getLong(input, offset), getLong(input, offset + 8));
+            offset += BLOCK_SIZE;
+        }
+
+        blockLength = end - offset;
+        System.arraycopy(input, offset, block, 0, blockLength);
+    }
+
+    @Override protected byte[] engineDigest() {
+        byte[] ret = new byte[BLOCK_SIZE];
+        finish(ret, 0);
+        return ret;
+    }
+
+    @Override protected int engineDigest(byte[] buf, int offset, int len) throws DigestException {
+        if (len < BLOCK_SIZE) {
+            throw new DigestException("The output buffer is too small. Needed " + BLOCK_SIZE + " bytes but only "
+                    + len + " available.");
+        }
+
+        finish(buf, offset);
+        return BLOCK_SIZE;
+    }
+
+    @Override protected void engineReset() {
+        blockLength = 0;
+        length = 0;
+        h1 = 0;
+        h2 = 0;
+    }
+
+    private void mix(long k1, long k2) {
+        h1 ^= mixK1(k1);
+
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private void finish(byte[] out, int offset) {
+        long k1 = 0;
+        long k2 = 0;
+
+        for (int i = blockLength - 1; i >= 8; --i) {
+            k2 ^= (block[i] & 0xffL) << ((i - 8) * 8);
+        }
+
+        for (int i = Math.min(blockLength, 8) - 1; i >= 0; --i) {
+            k1 ^= (block[i] & 0xffL) << (i * 8);
+        }
+
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        putLong(h1, out, offset);
+        putLong(h2, out, offset + 8);
+
+        engineReset();
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL)
+                | (bytes[offset + 1] & 0xffL) << 8
+                | (bytes[offset + 2] & 0xffL) << 16
+                | (bytes[offset + 3] & 0xffL) << 24
+                | (bytes[offset + 4] & 0xffL) << 32
+                | (bytes[offset + 5] & 0xffL) << 40
+                | (bytes[offset + 6] & 0xffL) << 48
+                | (bytes[offset + 7] & 0xffL) << 56;
+    }
+
+    private static void putLong(long value, byte[] bytes, int offset) {
+        for (int i = 0; i < 8; ++i) {
+            bytes[offset + i] = (byte) (value >>> (i * 8));
+        }
+    }
+}
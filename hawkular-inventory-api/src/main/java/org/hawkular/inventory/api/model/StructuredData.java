@@ -52,6 +52,9 @@ public final class StructuredData {
     @ApiModelProperty(hidden = true)
     private final Serializable value;
 
+    //lazily computed, see digest()
+    private String digest;
+
     public static Builder get() {
         return new Builder();
     }
@@ -211,6 +214,36 @@ public final class StructuredData {
         }, null);
     }
 
+    /**
+     * Returns the digest of the JSON representation of this data. The hashes of the data entities are computed from
+     * this digest, so that the (possibly large) data doesn't need to be serialized again every time a hash of it or of
+     * its parents is computed. The digest is only computed once for each instance.
+     *
+     * @return the digest of this data
+     */
+    public String digest() {
+        String ret = digest;
+        if (ret == null) {
+            ret = ComputeHash.digestOf(this);
+            digest = ret;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Makes this instance use the provided digest instead of computing it. This is meant for the backends that store
+     * the digest alongside the data so that it doesn't have to be recomputed after the data is loaded. The digest
+     * must have been obtained using {@link #digest()} on equal data.
+     *
+     * @param digest the previously computed digest of this data
+     * @return this instance
+     */
+    public StructuredData withKnownDigest(String digest) {
+        this.digest = digest;
+        return this;
+    }
+
     /**
      * This instance WILL NOT be modified, the updates will be present in the newly constructed instance.
      *
@@ -37,16 +37,23 @@ public final class SyncConfiguration implements Serializable {
 
     private final EnumSet<SegmentType> syncedTypes;
     private final boolean deepSearch;
+    private final boolean chunked;
 
     public static Builder builder() {
         return new Builder();
     }
 
+    public SyncConfiguration(EnumSet<SegmentType> syncedTypes, boolean deepSearch) {
+        this(syncedTypes, deepSearch, false);
+    }
+
     @JsonCreator
     public SyncConfiguration(@JsonProperty("syncedTypes") EnumSet<SegmentType> syncedTypes,
-                             @JsonProperty(value = "deepSearch", defaultValue = "false") boolean deepSearch) {
+                             @JsonProperty(value = "deepSearch", defaultValue = "false") boolean deepSearch,
+                             @JsonProperty(value = "chunked", defaultValue = "false") boolean chunked) {
         this.syncedTypes = syncedTypes;
         this.deepSearch = deepSearch;
+        this.chunked = chunked;
     }
 
     /**
@@ -125,9 +132,28 @@ public final class SyncConfiguration implements Serializable {
         return deepSearch;
     }
 
+    /**
+     * By default the whole synchronization runs in a single transaction. For very large sync roots (like feeds with
+     * tens of thousands of entities) this means huge transactions, long lock windows and retrying the whole sync on
+     * any conflict.
+     *
+     * <p>If chunked, each changed direct child of the sync root is synced (together with its whole subtree) in its own
+     * transaction and the sync root itself is updated in a final transaction. Only the direct children are split off,
+     * so a single huge child is still synced in one transaction. Each transaction also updates the hashes of the sync
+     * root and its parents, so that they always reflect the entities committed so far. The sync is therefore no
+     * longer atomic but it is resumable - if it fails midway, sending the same sync request again will skip the
+     * subtrees that have already been synced, because their sync hashes already match.
+     *
+     * @return whether to sync the direct children of the sync root in separate transactions
+     */
+    public boolean isChunked() {
+        return chunked;
+    }
+
     public static final class Builder {
         private final EnumSet<SegmentType> syncedTypes = EnumSet.noneOf(SegmentType.class);
         private boolean deepSearch = false;
+        private boolean chunked = false;
 
         private Builder() {
 
@@ -170,8 +196,13 @@ public final class SyncConfiguration implements Serializable {
             return this;
         }
 
+        public Builder withChunking(boolean value) {
+            this.chunked = value;
+            return this;
+        }
+
         public SyncConfiguration build()  {
-            return new SyncConfiguration(syncedTypes, deepSearch);
+            return new SyncConfiguration(syncedTypes, deepSearch, chunked);
         }
     }
 }
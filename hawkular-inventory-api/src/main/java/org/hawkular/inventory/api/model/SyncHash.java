@@ -61,6 +61,27 @@ public final class SyncHash {
      */
     public static Tree treeOf(InventoryStructure<?> structure, CanonicalPath rootPath,
                               Function<RelativePath, Hashes> hashLoader) {
+        return treeOf(structure, rootPath, hashLoader, 0);
+    }
+
+    /**
+     * Same as {@link #treeOf(InventoryStructure, CanonicalPath, Function)} but can compute the hashes of the sibling
+     * subtrees in parallel using the common fork-join pool. The resulting tree is the same as the one computed
+     * sequentially.
+     *
+     * <p>If the parallel computation is enabled, both the structure and the hash loader need to be safe for use from
+     * multiple threads (which is true for the {@link InventoryStructure.Offline offline} structures).
+     *
+     * @param structure            the inventory structure to compute the tree hash of
+     * @param rootPath             the canonical path of the root of the inventory structure
+     * @param hashLoader           a function that returns null if the hash of some structure node should be
+     *                             recomputed or returns its hashes if no need to recompute it
+     * @param parallelismThreshold the children of an entity are hashed in parallel if there is more of them than this
+     *                             number. 0 or less disables the parallel computation.
+     * @return the sync tree hash of the provided inventory structure
+     */
+    public static Tree treeOf(InventoryStructure<?> structure, CanonicalPath rootPath,
+                              Function<RelativePath, Hashes> hashLoader, int parallelismThreshold) {
         @SuppressWarnings("unchecked")
         Tree.AbstractBuilder<?>[] tbld =
                 new Tree.AbstractBuilder[1];
@@ -84,7 +105,8 @@ public final class SyncHash {
         };
 
         ComputeHash.IntermediateHashResult res = ComputeHash
-                .treeOf(structure, rootPath, true, true, true, startChild, endChild, hashLoader);
+                .treeOf(structure, rootPath, true, true, true, startChild, endChild, hashLoader,
+                        parallelismThreshold);
 
         tbld[0].withPath(res.path).withHash(res.syncHash);
 
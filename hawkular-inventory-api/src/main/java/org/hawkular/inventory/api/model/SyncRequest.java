@@ -17,11 +17,23 @@
 package org.hawkular.inventory.api.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.Path;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
+ * A request to synchronize the inventory with the provided inventory structure.
+ *
+ * <p>The request can optionally be incremental (see {@link #incremental(InventoryStructure, CanonicalPath,
+ * SyncHash.Tree)}). Such request contains the sync hash tree of the complete structure but the structure itself
+ * contains only the entities that differ from the persisted state (together with all their ancestors). The
+ * inventory then only loads and updates the subtrees the hashes of which differ from the persisted ones.
+ *
  * @author Lukas Krejci
  * @since 0.18.0
  */
@@ -32,15 +44,45 @@ public final class SyncRequest<B extends Entity.Blueprint> implements Serializab
     @JsonProperty("structure")
     private final InventoryStructure<B> inventoryStructure;
 
+    private final SyncHash.Tree tree;
+
     public static <B extends Entity.Blueprint> SyncRequest<B> syncEverything(InventoryStructure<B> structure) {
         return new SyncRequest<>(SyncConfiguration.builder().withAllTypes().build(), structure);
     }
 
+    /**
+     * Creates an incremental sync request that syncs all entity types. The provided structure is stripped of all the
+     * subtrees that have the same sync hash as the corresponding subtrees in the persisted tree.
+     *
+     * @param structure     the complete desired structure of the sync root
+     * @param rootPath      the canonical path of the sync root
+     * @param persistedTree the sync hash tree of the sync root as currently persisted in the inventory (as returned
+     *                      from {@code treeHash()} of the sync root) or null if the sync root doesn't exist yet
+     * @param <B>           the type of the blueprint of the sync root
+     * @return the incremental sync request
+     */
+    public static <B extends Entity.Blueprint> SyncRequest<B> incremental(InventoryStructure<B> structure,
+                                                                         CanonicalPath rootPath,
+                                                                         SyncHash.Tree persistedTree) {
+        SyncHash.Tree tree = SyncHash.treeOf(structure, rootPath);
+
+        InventoryStructure.Offline.Builder<B> bld = InventoryStructure.Offline.copy(structure).asBuilder();
+        removeUnchanged(bld, tree, persistedTree);
+
+        return new SyncRequest<>(SyncConfiguration.builder().withAllTypes().build(), bld.build(), tree);
+    }
+
+    public SyncRequest(SyncConfiguration configuration, InventoryStructure<B> inventoryStructure) {
+        this(configuration, inventoryStructure, null);
+    }
+
     @JsonCreator
     public SyncRequest(@JsonProperty("configuration") SyncConfiguration configuration,
-                       @JsonProperty("structure") InventoryStructure<B> inventoryStructure) {
+                       @JsonProperty("structure") InventoryStructure<B> inventoryStructure,
+                       @JsonProperty("tree") SyncHash.Tree tree) {
         this.configuration = configuration;
         this.inventoryStructure = inventoryStructure;
+        this.tree = tree;
     }
 
     public SyncConfiguration getConfiguration() {
@@ -53,4 +95,34 @@ public final class SyncRequest<B extends Entity.Blueprint> implements Serializab
     public InventoryStructure<B> getInventoryStructure() {
         return inventoryStructure;
     }
+
+    /**
+     * @return the sync hash tree of the complete structure if this is an incremental sync request, null otherwise
+     */
+    public SyncHash.Tree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return true if this is an incremental sync request
+     * @see #incremental(InventoryStructure, CanonicalPath, SyncHash.Tree)
+     */
+    @JsonIgnore
+    public boolean isIncremental() {
+        return tree != null;
+    }
+
+    private static void removeUnchanged(InventoryStructure.AbstractBuilder<?> bld, SyncHash.Tree tree,
+                                        SyncHash.Tree persistedTree) {
+        for (Path.Segment seg : new ArrayList<>(bld.getChildrenPaths())) {
+            SyncHash.Tree child = tree.getChild(seg);
+            SyncHash.Tree persistedChild = persistedTree == null ? null : persistedTree.getChild(seg);
+
+            if (child != null && persistedChild != null && child.getHash().equals(persistedChild.getHash())) {
+                bld.removeChild(seg);
+            } else if (child != null) {
+                removeUnchanged(bld.getChild(seg), child, persistedChild);
+            }
+        }
+    }
 }
@@ -43,11 +43,23 @@ public class Page<T> implements Iterator<T>, AutoCloseable, Iterable<T> {
     private Iterator<T> wrapped;
     private final PageContext pageContext;
     private final long totalSize;
+    private final String nextCursor;
 
     public Page(Iterator<T> wrapped, PageContext pageContext, long totalSize) {
+        this(wrapped, pageContext, totalSize, null);
+    }
+
+    /**
+     * @param wrapped     the iterator over the elements of the page
+     * @param pageContext the page context
+     * @param totalSize   the total number of results or -1 if not known
+     * @param nextCursor  the cursor pointing to the next page or null if there is no next page
+     */
+    public Page(Iterator<T> wrapped, PageContext pageContext, long totalSize, String nextCursor) {
         this.wrapped = wrapped;
         this.pageContext = pageContext;
         this.totalSize = totalSize;
+        this.nextCursor = nextCursor;
     }
 
     protected Page(PageContext pageContext, long totalSize) {
@@ -62,12 +74,24 @@ public class Page<T> implements Iterator<T>, AutoCloseable, Iterable<T> {
     }
 
     /**
-     * @return the total number of results of which this page is a subset of
+     * @return the total number of results of which this page is a subset of. Pages obtained using a
+     * {@link PageContext#isCursorBased() cursor-based} page context return -1, because the total is not computed.
      */
     public long getTotalSize() {
         return totalSize;
     }
 
+    /**
+     * Only pages obtained using a {@link PageContext#isCursorBased() cursor-based} page context provide the next
+     * cursor.
+     *
+     * @return the opaque cursor to pass to {@link Pager#cursor(int, String)} to obtain the next page of the results or
+     * null if there are no more results
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
     /**
      * Try to avoid calling this method in production code, because it can have bad impact on performance
      * <p>
@@ -19,6 +19,7 @@ package org.hawkular.inventory.api.paging;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @author Lukas Krejci
@@ -30,6 +31,8 @@ public class PageContext {
     private final int pageSize;
     private final int pageNumber;
     private final List<Order> order;
+    private final boolean cursorBased;
+    private final String cursor;
 
     public PageContext(int pageNumber, int pageSize, Order... orders) {
         if (orders.length == 0) {
@@ -40,6 +43,8 @@ public class PageContext {
         List<Order> tmp = new ArrayList<>();
         Collections.addAll(tmp, orders);
         this.order = Collections.unmodifiableList(tmp);
+        this.cursorBased = false;
+        this.cursor = null;
     }
 
     public PageContext(int pageNumber, int pageSize, Iterable<Order> orders) {
@@ -52,6 +57,30 @@ public class PageContext {
         }
 
         this.order = Collections.unmodifiableList(tmp);
+        this.cursorBased = false;
+        this.cursor = null;
+    }
+
+    /**
+     * Creates a cursor-based page context. Instead of addressing the page by its number, the page starts just after the
+     * position described by the cursor, which is an opaque token obtained from {@link Page#getNextCursor()} of the
+     * previous page.
+     *
+     * <p>The results of the cursor-based paging are always ordered by the canonical paths of the elements, so no
+     * explicit ordering can be specified.
+     *
+     * @param pageSize the maximum number of elements on the page, must be positive
+     * @param cursor   the cursor to start after or null if the first page should be returned
+     */
+    public PageContext(int pageSize, String cursor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Cursor-based paging requires a positive page size.");
+        }
+        this.pageNumber = 0;
+        this.pageSize = pageSize;
+        this.order = Collections.singletonList(Order.unspecified());
+        this.cursorBased = true;
+        this.cursor = cursor;
     }
 
     /**
@@ -104,6 +133,21 @@ public class PageContext {
         return pageSize >= 0;
     }
 
+    /**
+     * @return true if the page is addressed by a {@link #getCursor() cursor} rather than by the page number
+     */
+    public boolean isCursorBased() {
+        return cursorBased;
+    }
+
+    /**
+     * @return the opaque cursor after which the page starts or null if this is the first page or if this context is
+     * not {@link #isCursorBased() cursor-based}
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
     /**
      * This list of ordering fields.
      *
@@ -120,7 +164,8 @@ public class PageContext {
 
         PageContext that = (PageContext) o;
 
-        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order);
+        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order)
+                && cursorBased == that.cursorBased && Objects.equals(cursor, that.cursor);
 
     }
 
@@ -128,12 +173,13 @@ public class PageContext {
     public int hashCode() {
         int result = pageSize;
         result = 31 * result + pageNumber;
+        result = 31 * result + Objects.hashCode(cursor);
         return result;
     }
 
     @Override public String toString() {
         return "PagingState[" + "order=" + order + ", pageNumber=" + pageNumber + ", pageSize=" +
-                pageSize + ']';
+                pageSize + (cursorBased ? ", cursor=" + cursor : "") + ']';
     }
 
 }
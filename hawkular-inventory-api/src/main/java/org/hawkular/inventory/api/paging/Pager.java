@@ -66,6 +66,24 @@ public final class Pager extends PageContext {
         return new Pager(0, 1, Order.unspecified());
     }
 
+    /**
+     * Returns a cursor-based pager. The returned page will contain at most {@code pageSize} elements ordered by
+     * their canonical paths, starting just after the provided cursor. The cursor for the next page can be obtained
+     * using {@link Page#getNextCursor()}.
+     *
+     * <p>Unlike with the numbered pages, the backend doesn't need to skip over the results of the preceding pages and
+     * the total number of the results is not computed. Note though that the backends might still need to find and
+     * order all the results following the cursor to return the page, so the cost of a page is not necessarily
+     * proportional to the page size (see the documentation of the individual backends).
+     *
+     * @param pageSize the maximum number of the elements on the page
+     * @param cursor   the cursor to continue after or null to fetch the first page
+     * @return a new pager instance
+     */
+    public static Pager cursor(int pageSize, String cursor) {
+        return new Pager(pageSize, cursor);
+    }
+
     /**
      * @param pageNumber the number of the page to fetch
      * @param pageSize   the number of the elements on the page
@@ -85,6 +103,10 @@ public final class Pager extends PageContext {
         super(pageNumber, pageSize, orders);
     }
 
+    private Pager(int pageSize, String cursor) {
+        super(pageSize, cursor);
+    }
+
     /**
      * If this is a limited pager ({@link #isLimited()}), returns the pager pointing to the next page of the results.
      *
@@ -92,8 +114,13 @@ public final class Pager extends PageContext {
      * results.
      *
      * @return a new pager instance
+     * @throws IllegalStateException if this pager is {@link #isCursorBased() cursor-based}. Use
+     * {@link #cursor(int, String)} with the {@link Page#getNextCursor() next cursor} in that case.
      */
     public Pager nextPage() {
+        if (isCursorBased()) {
+            throw new IllegalStateException("The next page of a cursor-based pager is determined by the cursor.");
+        }
         if (getPageSize() >= 0) {
             return new Pager(getPageNumber() + 1, getPageSize(), getOrder());
         } else {
@@ -109,8 +136,12 @@ public final class Pager extends PageContext {
      * results.
      *
      * @return a new pager instance
+     * @throws IllegalStateException if this pager is {@link #isCursorBased() cursor-based}
      */
     public Pager previousPage() {
+        if (isCursorBased()) {
+            throw new IllegalStateException("Cursor-based pagers cannot go back.");
+        }
         if (getPageNumber() > 0 && getPageSize() >= 0) {
             return new Pager(getPageNumber() - 1, getPageSize(), getOrder());
         } else {
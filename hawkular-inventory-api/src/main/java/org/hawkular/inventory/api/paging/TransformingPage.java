@@ -36,6 +36,7 @@ public class TransformingPage<I, O> extends Page<O> {
     private Page<I> wrappedPage;
     private PageContext pageContext;
     private Long totalSize;
+    private String nextCursor;
 
     public TransformingPage(Page<I> wrappedPage, Function<? super I, ? extends O> conversionFunction) {
         super(wrappedPage.getPageContext(), wrappedPage.getTotalSize());
@@ -76,6 +77,11 @@ public class TransformingPage<I, O> extends Page<O> {
         return totalSize == null ? getPage().getTotalSize() : totalSize;
     }
 
+    @Override
+    public String getNextCursor() {
+        return wrappedPage == null ? nextCursor : wrappedPage.getNextCursor();
+    }
+
     @Override
     public List<O> toList() {
         try {
@@ -89,6 +95,7 @@ public class TransformingPage<I, O> extends Page<O> {
     @Override
     public void close() {
         this.totalSize = wrappedPage.getTotalSize();
+        this.nextCursor = wrappedPage.getNextCursor();
         this.wrappedPage.close();
         this.wrappedPage = null;
         this.conversionFunction = null;
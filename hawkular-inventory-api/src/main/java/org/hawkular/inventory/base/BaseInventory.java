@@ -65,6 +65,38 @@ public abstract class BaseInventory<E> implements Inventory {
             .withPropertyNameAndSystemProperty("hawkular.inventory.transaction.retries")
             .withEnvironmentVariables("HAWKULAR_INVENTORY_TRANSACTION_RETRIES").build();
 
+    /**
+     * The number of threads delivering the notifications to the subscribers. If 0 (the default), the notifications
+     * are delivered synchronously by the committing thread.
+     */
+    public static final Configuration.Property NOTIFICATION_DISPATCH_THREADS = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.dispatch-threads")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_DISPATCH_THREADS").build();
+
+    /**
+     * The maximum number of pending notifications per dispatch thread.
+     */
+    public static final Configuration.Property NOTIFICATION_QUEUE_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.queue-size")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_QUEUE_SIZE").build();
+
+    /**
+     * Whether to drop the notifications when the dispatch queue is full instead of making the committing thread wait.
+     */
+    public static final Configuration.Property NOTIFICATION_DROP_WHEN_FULL = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.drop-when-full")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_DROP_WHEN_FULL").build();
+
+    /**
+     * If an entity has more children than this number, the hashes of its children are computed in parallel using the
+     * common fork-join pool. This is only done for the inventory structures that are fully loaded in memory, i.e. the
+     * synced structures and the prefetched subtrees of the changed entities. Defaults to 0 which disables the parallel
+     * computation.
+     */
+    public static final Configuration.Property HASH_PARALLELISM_THRESHOLD = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.hash.parallelism-threshold")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_HASH_PARALLELISM_THRESHOLD").build();
+
     private InventoryBackend<E> backend;
     private final ObservableContext observableContext;
     private Configuration configuration;
@@ -136,6 +168,11 @@ public abstract class BaseInventory<E> implements Inventory {
     public final void initialize(Configuration configuration) {
         this.backend = doInitialize(configuration);
 
+        observableContext.setDispatcher(new NotificationDispatcher(
+                Integer.parseInt(configuration.getProperty(NOTIFICATION_DISPATCH_THREADS, "0")),
+                Integer.parseInt(configuration.getProperty(NOTIFICATION_QUEUE_SIZE, "1000")),
+                configuration.getFlag(NOTIFICATION_DROP_WHEN_FULL, "false")));
+
         tenantContext = new TraversalContext<>(this, Query.empty(),
                 Query.path().with(With.type(Tenant.class)).get(), backend, Tenant.class, configuration,
                 observableContext, transactionConstructor);
@@ -184,12 +221,21 @@ public abstract class BaseInventory<E> implements Inventory {
 
     @Override
     public final void close() throws Exception {
+        observableContext.setDispatcher(new NotificationDispatcher());
+
         if (backend != null) {
             backend.close();
             backend = null;
         }
     }
 
+    /**
+     * @return the dispatcher of the notifications that can be used to monitor the delivery of the notifications
+     */
+    public NotificationDispatcher getNotificationDispatcher() {
+        return observableContext.getDispatcher();
+    }
+
     @Override
     public Tenants.ReadWrite tenants() {
         return new BaseTenants.ReadWrite<>(tenantContext);
@@ -250,11 +296,16 @@ public abstract class BaseInventory<E> implements Inventory {
         return configuration;
     }
 
+    static int getHashParallelismThreshold(Configuration configuration) {
+        return configuration == null ? 0
+                : Integer.parseInt(configuration.getProperty(HASH_PARALLELISM_THRESHOLD, "0"));
+    }
+
     @Override
     public <T extends AbstractElement> Page<T> execute(Query query, Class<T> requestedEntity, Pager pager) {
         Transaction<E> tx = tenantContext.startTransaction();
         try {
-            return new TransformingPage<T, T>(tx.query(query, pager, e -> backend.convert(e, requestedEntity), null),
+            return new TransformingPage<T, T>(tx.query(query, pager, e -> tx.convert(e, requestedEntity), null),
                     Function.identity()) {
                 @Override public void close() {
                     tx.directAccess().rollback();
@@ -44,6 +44,7 @@ import org.hawkular.inventory.api.model.ContentHashable;
 import org.hawkular.inventory.api.model.DataEntity;
 import org.hawkular.inventory.api.model.ElementVisitor;
 import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Environment;
 import org.hawkular.inventory.api.model.Feed;
 import org.hawkular.inventory.api.model.Hashes;
 import org.hawkular.inventory.api.model.IdentityHashable;
@@ -55,6 +56,7 @@ import org.hawkular.inventory.api.model.Relationship;
 import org.hawkular.inventory.api.model.Resource;
 import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.model.Syncable;
+import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.base.spi.ElementNotFoundException;
 import org.hawkular.inventory.paths.CanonicalPath;
 import org.hawkular.inventory.paths.Path;
@@ -101,6 +103,11 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
     private Inventory inventory;
     private Transaction<BE> tx;
 
+    /**
+     * If not null, only the hashes in the subtree of the entity on this path are recomputed
+     */
+    private CanonicalPath hashComputationRoot;
+
     /**
      * Pre-commit actions that reset the identity hash
      */
@@ -117,6 +124,11 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
         correctiveAction = null;
         correctedChanges.clear();
         processingTree.clear();
+        hashComputationRoot = null;
+    }
+
+    @Override public void limitHashComputationTo(CanonicalPath root) {
+        this.hashComputationRoot = root;
     }
 
     @Override public List<EntityAndPendingNotifications<BE, ?>> getFinalNotifications() {
@@ -197,11 +209,106 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
 
         correctiveAction = t -> {
             DBG.debug("Processing pre-commit changes.");
-            processingTree.children.forEach(c -> correctChanges(c, true));
+            if (hashComputationRoot == null) {
+                processingTree.children.forEach(c -> correctChanges(c, true));
+            } else {
+                DBG.debugf("Limiting the hash computation to the subtree of %s", hashComputationRoot);
+                List<ProcessingTree<BE>> ancestors = new ArrayList<>();
+                processingTree.dfsTraversal(c -> {
+                    if (c.cp.equals(hashComputationRoot)) {
+                        correctChanges(c, true);
+                        return false;
+                    } else if (isAncestor(c.cp, hashComputationRoot)) {
+                        ancestors.add(c);
+                        return true;
+                    } else {
+                        //outside of the limit, just pass on the notifications of the whole subtree as they are
+                        c.dfsTraversal(cc -> {
+                            passUncorrected(cc);
+                            return true;
+                        });
+                        passUncorrected(c);
+                        return false;
+                    }
+                });
+                correctAncestors(ancestors);
+            }
             DBG.debug("Done processing pre-commit changes.");
         };
     }
 
+    /**
+     * Recomputes the hashes of the ancestors of the {@link #hashComputationRoot} so that they are consistent with the
+     * subtree changed in this transaction as soon as it commits. Only the children of the ancestors are loaded, all
+     * the other hashes (including the ones just updated in the limited subtree) are read from the database.
+     *
+     * @param ancestors the ancestors of the hash computation root in the processing tree, top-most first
+     */
+    private void correctAncestors(List<ProcessingTree<BE>> ancestors) {
+        int rootIdx = 0;
+        while (rootIdx < ancestors.size() && !ancestors.get(rootIdx).isSignificant()) {
+            passUncorrected(ancestors.get(rootIdx++));
+        }
+
+        if (rootIdx == ancestors.size()) {
+            return;
+        }
+
+        ProcessingTree<BE> root = ancestors.get(rootIdx);
+        DBG.debugf("Recomputing the hashes of %s and its descendants on the path to %s", root.cp,
+                hashComputationRoot);
+
+        if (__correctChangesPrologue(root)) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Entity<? extends Entity.Blueprint, ?> e = (Entity<? extends Entity.Blueprint, ?>) root.element;
+        InventoryStructure<?> struct = InventoryStructure.of(e, inventory, false);
+
+        Hashes.Tree treeHash = Hashes.treeOf(struct, e.getPath(), rp -> {
+            if (isAncestor(rp.applyTo(root.cp), hashComputationRoot)) {
+                //the path to the limited subtree is what we're recomputing
+                return null;
+            }
+
+            InventoryStructure.FullNode node = struct.getNode(rp);
+            return node == null ? null : Hashes.of((Entity<?, ?>) node.getAttachment());
+        });
+
+        for (int i = rootIdx; i < ancestors.size(); ++i) {
+            ProcessingTree<BE> a = ancestors.get(i);
+
+            if (i > rootIdx && __correctChangesPrologue(a)) {
+                //the ancestor has been deleted along with the rest of the path, which has been taken care of
+                return;
+            }
+
+            if (treeHash != null && (a.element instanceof Syncable || a.element instanceof IdentityHashable)) {
+                correctHashes(a, treeHash.getHash());
+            } else {
+                passUncorrected(a);
+            }
+
+            if (treeHash != null && i + 1 < ancestors.size()) {
+                treeHash = treeHash.getChild(ancestors.get(i + 1).path);
+            }
+        }
+    }
+
+    private static boolean isAncestor(CanonicalPath ancestor, CanonicalPath descendant) {
+        List<Path.Segment> as = ancestor.getPath();
+        List<Path.Segment> ds = descendant.getPath();
+        return as.size() < ds.size() && ds.subList(0, as.size()).equals(as);
+    }
+
+    private void passUncorrected(ProcessingTree<BE> changedEntity) {
+        if (changedEntity.element != null && !changedEntity.notifications.isEmpty()) {
+            correctedChanges.add(new EntityAndPendingNotifications<BE, AbstractElement<?, ?>>(
+                    changedEntity.representation, changedEntity.element, changedEntity.notifications));
+        }
+    }
+
     private void correctChanges(ProcessingTree<BE> changedEntity, boolean computeHashes) {
         DBG.debugf("Processing changes of %s (compute hashes = %s)", changedEntity.cp, computeHashes);
         if (__correctChangesPrologue(changedEntity)) {
@@ -218,7 +325,18 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
 
                 //this inventory structure stores the loaded entities as the attachments of the structure elements
                 //we can take advantage of that below to "load" the hashes, by just looking up the attachment
-                InventoryStructure<?> struct = InventoryStructure.of(e, inventory);
+                //if nothing below the entity changed, only the hashes of its direct children are loaded, which the
+                //lazy structure does without reading the rest of the subtree. Tenants and environments can be huge
+                //and most of their subtrees usually have their hashes loaded rather than computed, so only prefetch
+                //the (typically feed-sized) changed subtrees of the other entities
+                boolean prefetch = !changedEntity.children.isEmpty()
+                        && !(e instanceof Tenant || e instanceof Environment);
+                InventoryStructure<?> struct = InventoryStructure.of(e, inventory, prefetch);
+
+                //the prefetched structure is not modified anymore and so can be hashed in parallel, the lazily loaded
+                //one needs the transaction, which is bound to the current thread
+                int parallelismThreshold = prefetch
+                        ? BaseInventory.getHashParallelismThreshold(inventory.getConfiguration()) : 0;
 
                 treeHash = Hashes.treeOf(struct, e.getPath(), rp -> {
                     if (DBG.isDebugEnabled()) {
@@ -260,7 +378,7 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
 
                         return Hashes.of(childE);
                     }
-                });
+                }, parallelismThreshold);
             } else {
                 DBG.debugf("Not computing hashes of %s as instructed.", changedEntity.cp);
                 treeHash = Hashes.Tree.builder().build();
@@ -343,36 +461,7 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
     }
 
     private void correctHierarchicalHashChanges(Hashes.Tree treeHash, ProcessingTree<BE> changesTree) {
-        Entity<?, ?> e = cloneWithHash((Entity<?, ?>) changesTree.element, treeHash.getHash());
-
-        List<Notification<?, ?>> ns = changesTree.notifications.stream().map(n -> cloneWithNewEntity(n, e))
-                .collect(toList());
-
-        //check if there is a create or update notification if necessary
-        Hashes origHash = hashesOf(changesTree.element);
-        if (!Objects.equals(origHash, treeHash.getHash())) {
-            //check if the notifications contain a create
-            Optional<Notification<?, ?>> createNotif = ns.stream()
-                    .filter(n -> n.getAction() == created() && n.getValue().equals(changesTree.element))
-                    .findAny();
-
-            if (!createNotif.isPresent()) {
-                if (origHash == null) {
-                    ns.add(new Notification<>(changesTree.element, changesTree.element, created()));
-                } else {
-                    addHashChangeNotifications(changesTree.element, treeHash.getHash(), ns);
-                }
-            }
-
-            //now also actually update the element in inventory with the new hashes
-            DBG.debugf("Updating hashes of %s in database.", changesTree.cp);
-            tx.updateHashes(changesTree.representation, treeHash.getHash());
-            DBG.debugf("Done updating hashes of %s in database.", changesTree.cp);
-        }
-
-        //set the notifications to emit
-        correctedChanges.add(new EntityAndPendingNotifications<BE, AbstractElement<?, ?>>(
-                changesTree.representation, e, ns));
+        correctHashes(changesTree, treeHash.getHash());
 
         //traverse the children to reset their identity hashes
         ArrayList<Hashes.Tree> treeChildren = new ArrayList<>(treeHash.getChildren());
@@ -430,6 +519,42 @@ public class BasePreCommit<BE> implements Transaction.PreCommit<BE> {
         }
     }
 
+    /**
+     * Updates the hashes of the entity in the database and emits the notifications about their change.
+     */
+    private void correctHashes(ProcessingTree<BE> changesTree, Hashes hashes) {
+        Entity<?, ?> e = cloneWithHash((Entity<?, ?>) changesTree.element, hashes);
+
+        List<Notification<?, ?>> ns = changesTree.notifications.stream().map(n -> cloneWithNewEntity(n, e))
+                .collect(toList());
+
+        //check if there is a create or update notification if necessary
+        Hashes origHash = hashesOf(changesTree.element);
+        if (!Objects.equals(origHash, hashes)) {
+            //check if the notifications contain a create
+            Optional<Notification<?, ?>> createNotif = ns.stream()
+                    .filter(n -> n.getAction() == created() && n.getValue().equals(changesTree.element))
+                    .findAny();
+
+            if (!createNotif.isPresent()) {
+                if (origHash == null) {
+                    ns.add(new Notification<>(changesTree.element, changesTree.element, created()));
+                } else {
+                    addHashChangeNotifications(changesTree.element, hashes, ns);
+                }
+            }
+
+            //now also actually update the element in inventory with the new hashes
+            DBG.debugf("Updating hashes of %s in database.", changesTree.cp);
+            tx.updateHashes(changesTree.representation, hashes);
+            DBG.debugf("Done updating hashes of %s in database.", changesTree.cp);
+        }
+
+        //set the notifications to emit
+        correctedChanges.add(new EntityAndPendingNotifications<BE, AbstractElement<?, ?>>(
+                changesTree.representation, e, ns));
+    }
+
     private void addHashChangeNotifications(AbstractElement<?, ?> entity, Hashes newHashes,
                                             List<Notification<?, ?>> notifications) {
         DBG.debugf("Adding hash change notifications to entity %s", entity.getPath());
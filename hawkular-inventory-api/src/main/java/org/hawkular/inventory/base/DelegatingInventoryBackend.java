@@ -252,4 +252,12 @@ public class DelegatingInventoryBackend<E> implements InventoryBackend<E> {
     @Override public boolean requiresRollbackAfterFailure(Throwable t) {
         return backend.requiresRollbackAfterFailure(t);
     }
+
+    @Override public void beginBulkLoad() {
+        backend.beginBulkLoad();
+    }
+
+    @Override public void endBulkLoad() {
+        backend.endBulkLoad();
+    }
 }
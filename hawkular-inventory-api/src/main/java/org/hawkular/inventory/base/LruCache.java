@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A simple thread-safe cache with a bounded size that evicts the least recently used entries. It also keeps track of
+ * the number of hits and misses so that its effectiveness can be monitored.
+ *
+ * <p>The values are computed outside of the lock so it can happen that a value for a single key is computed more than
+ * once if requested concurrently. The cache is therefore only suitable for values that are cheap to throw away and
+ * don't depend on the identity of the computed instance.
+ *
+ * @since 1.1.3
+ */
+public final class LruCache<K, V> {
+    private final int maxSize;
+    private final Map<K, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of entries in the cache. If the size is 0 or less, the cache doesn't store
+     *                anything and merely counts the misses.
+     */
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key or computes and caches a new one.
+     *
+     * @param key     the key to look up
+     * @param compute the function to compute the value if it is not cached. If it returns null, nothing is cached.
+     * @return the cached or newly computed value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> compute) {
+        if (maxSize > 0) {
+            V value;
+            synchronized (entries) {
+                value = entries.get(key);
+            }
+
+            if (value != null) {
+                hits.incrementAndGet();
+                return value;
+            }
+        }
+
+        misses.incrementAndGet();
+
+        V value = compute.apply(key);
+
+        if (value != null && maxSize > 0) {
+            synchronized (entries) {
+                entries.put(key, value);
+            }
+        }
+
+        return value;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override public String toString() {
+        return "LruCache[size=" + size() + ", maxSize=" + maxSize + ", hits=" + hits.get() + ", misses="
+                + misses.get() + "]";
+    }
+}
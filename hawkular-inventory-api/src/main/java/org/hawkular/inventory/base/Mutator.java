@@ -133,7 +133,53 @@ abstract class Mutator<BE, E extends Entity<?, U>, B extends Blueprint, U extend
 
         preCreate(blueprint, tx);
 
-        BE parent = getParent(tx);
+        return persistUnder(getParent(tx), id, blueprint, tx);
+    }
+
+    /**
+     * Creates the entity under the provided, already resolved, parent. This is useful for callers that have the parent
+     * in hand already and want to avoid looking it up again.
+     *
+     * <p>Unlike {@link #doCreate(Blueprint, Transaction)}, this method doesn't check the uniqueness of the new entity on
+     * backends that don't support unique indices - the callers are expected to know that the entity doesn't exist yet.
+     * The {@link #preCreate(Blueprint, Transaction)} checks are run as usual.
+     *
+     * @param parent the backend representation of the parent entity
+     * @param blueprint the blueprint of the entity to create
+     * @param tx the transaction in which to operate
+     * @return the entity object and its backend representation. Ignore the notifications, they've been handled.
+     */
+    EntityAndPendingNotifications<BE, E> doCreate(BE parent, B blueprint, Transaction<BE> tx) {
+        String id = getProposedId(tx, blueprint);
+
+        preCreate(blueprint, tx);
+
+        return persistUnder(parent, id, blueprint, tx);
+    }
+
+    /**
+     * Updates the already resolved entity, running the same checks as {@link #update(Object, Entity.Update)}.
+     *
+     * @param entity the backend representation of the entity to update
+     * @param update the update
+     * @param tx the transaction in which to operate
+     */
+    void doUpdate(BE entity, U update, Transaction<BE> tx) {
+        Util.update(context.entityClass, tx, entity, update, (e, u, t) -> preUpdate(null, e, u, t),
+                this::postUpdate);
+    }
+
+    /**
+     * Deletes the already resolved entity, running the same checks as {@link #delete(Object)}.
+     *
+     * @param entity the backend representation of the entity to delete
+     * @param tx the transaction in which to operate
+     */
+    void doDelete(BE entity, Transaction<BE> tx) {
+        Util.delete(context.entityClass, tx, entity, (e, t) -> preDelete(null, e, t), this::postDelete);
+    }
+
+    private EntityAndPendingNotifications<BE, E> persistUnder(BE parent, String id, B blueprint, Transaction<BE> tx) {
         CanonicalPath parentCanonicalPath = parent == null ? null : tx.extractCanonicalPath(parent);
 
         EntityAndPendingNotifications<BE, E> newEntity;
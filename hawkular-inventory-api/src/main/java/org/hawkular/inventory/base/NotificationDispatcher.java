@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkular.inventory.api.Log;
+
+import rx.subjects.Subject;
+
+/**
+ * Delivers the notifications to the subscribers of the inventory.
+ *
+ * <p>By default the notifications are delivered synchronously by the thread that committed the transaction. If
+ * configured with a non-zero number of threads, the notifications are instead put into bounded queues processed by
+ * the dispatch threads, so that the commit doesn't have to wait for the subscribers. The notifications are
+ * distributed among the threads by an ordering key (the tenant of the entity the notification is about). All the
+ * notifications with the same key are handled by the same thread so that each subscriber receives them in the order
+ * in which they were emitted, even if the subscriber is interested in several kinds of notifications. The notifications
+ * about different tenants can be delivered by different threads.
+ *
+ * <p>When a queue is full, the committing thread either waits for a free slot or the notification is dropped,
+ * depending on the configuration. Both cases are counted.
+ *
+ * @since 1.1.3
+ */
+public final class NotificationDispatcher {
+    private final ThreadPoolExecutor[] stripes;
+    private final boolean dropWhenFull;
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    NotificationDispatcher() {
+        this(0, 0, false);
+    }
+
+    /**
+     * @param threads      the number of dispatch threads. If 0 or less, the notifications are delivered synchronously.
+     * @param queueSize    the maximum number of pending notifications per dispatch thread
+     * @param dropWhenFull whether to drop the notifications that don't fit into a full queue or to wait for a free
+     *                     slot
+     */
+    NotificationDispatcher(int threads, int queueSize, boolean dropWhenFull) {
+        this.dropWhenFull = dropWhenFull;
+        this.stripes = new ThreadPoolExecutor[Math.max(0, threads)];
+
+        RejectedExecutionHandler onFullQueue = this::queueFull;
+
+        for (int i = 0; i < stripes.length; ++i) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            String name = "Hawkular Inventory Notifications " + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }, onFullQueue);
+        }
+    }
+
+    /**
+     * @return true if the notifications are delivered by the committing thread
+     */
+    public boolean isSynchronous() {
+        return stripes.length == 0;
+    }
+
+    /**
+     * @return the number of notifications waiting in the queues to be delivered
+     */
+    public int getQueueDepth() {
+        int ret = 0;
+        for (ThreadPoolExecutor e : stripes) {
+            ret += e.getQueue().size();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of times a thread had to wait for a free slot in a full queue
+     */
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    /**
+     * @return the number of notifications dropped because of a full queue or after the dispatcher was closed
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @param subject     the subject to notify. It must be serialized, because the notifications with different
+     *                    ordering keys can be delivered to it concurrently
+     * @param value       the notification
+     * @param orderingKey the notifications with equal ordering keys are delivered in the order of dispatch. May be
+     *                    null.
+     */
+    <C> void dispatch(Subject<C, C> subject, C value, Object orderingKey) {
+        if (stripes.length == 0) {
+            subject.onNext(value);
+            return;
+        }
+
+        int stripe = ((orderingKey == null ? 0 : orderingKey.hashCode()) & Integer.MAX_VALUE) % stripes.length;
+        stripes[stripe].execute(() -> {
+            try {
+                subject.onNext(value);
+            } catch (Exception e) {
+                Log.LOGGER.wErrorSendingEvent(e);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new notifications and waits for the pending ones to be delivered.
+     */
+    void close() {
+        for (ThreadPoolExecutor e : stripes) {
+            e.shutdown();
+        }
+
+        try {
+            for (ThreadPoolExecutor e : stripes) {
+                e.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void queueFull(Runnable notification, ThreadPoolExecutor executor) {
+        if (dropWhenFull || executor.isShutdown()) {
+            dropped.incrementAndGet();
+            Log.LOGGER.debugf("Dropping notification, because the dispatch queue is full or closed.");
+            return;
+        }
+
+        blocked.incrementAndGet();
+        try {
+            executor.getQueue().put(notification);
+        } catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override public String toString() {
+        return "NotificationDispatcher[threads=" + stripes.length + ", queueDepth=" + getQueueDepth()
+                + ", blocked=" + blocked.get() + ", dropped=" + dropped.get() + "]";
+    }
+}
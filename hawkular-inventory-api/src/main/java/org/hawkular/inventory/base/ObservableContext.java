@@ -40,6 +40,7 @@ import rx.subjects.Subject;
  */
 final class ObservableContext {
     private final Map<Interest<?, ?>, SubjectAndWrapper<?>> observables = new ConcurrentHashMap<>();
+    private volatile NotificationDispatcher dispatcher = new NotificationDispatcher();
 
     public <C> Observable<C> getObservableFor(Interest<C, ?> interest) {
         SubjectAndWrapper<C> sub = getSubjectAndWrapper(interest, true);
@@ -50,6 +51,25 @@ final class ObservableContext {
         return observables.containsKey(interest);
     }
 
+    public NotificationDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Replaces the dispatcher used to deliver the notifications. The previous dispatcher is closed.
+     *
+     * @param dispatcher the new dispatcher
+     */
+    public void setDispatcher(NotificationDispatcher dispatcher) {
+        NotificationDispatcher old = this.dispatcher;
+        this.dispatcher = dispatcher;
+        old.close();
+    }
+
+    public <C> void notify(Subject<C, C> subject, C value, Object orderingKey) {
+        dispatcher.dispatch(subject, value, orderingKey);
+    }
+
     @SuppressWarnings("unchecked")
     public <C, T> Iterator<Subject<C, C>> matchingSubjects(Action<C, T> action, T object) {
         return observables.entrySet().stream().filter((e) -> e.getKey().matches(action, object))
@@ -37,18 +37,10 @@ import java.util.function.Function;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import org.hawkular.inventory.api.Data;
 import org.hawkular.inventory.api.EntityNotFoundException;
-import org.hawkular.inventory.api.Feeds;
 import org.hawkular.inventory.api.Inventory;
 import org.hawkular.inventory.api.Log;
-import org.hawkular.inventory.api.MetricTypes;
-import org.hawkular.inventory.api.Metrics;
-import org.hawkular.inventory.api.OperationTypes;
 import org.hawkular.inventory.api.Query;
-import org.hawkular.inventory.api.ResolvableToSingle;
-import org.hawkular.inventory.api.ResourceTypes;
-import org.hawkular.inventory.api.Resources;
 import org.hawkular.inventory.api.Synced;
 import org.hawkular.inventory.api.model.AbstractElement;
 import org.hawkular.inventory.api.model.Blueprint;
@@ -92,82 +84,236 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
     }
 
     @Override public void synchronize(SyncRequest<B> syncRequest) {
+        if (syncRequest.getConfiguration().isChunked()) {
+            synchronizeInChunks(syncRequest);
+            return;
+        }
+
         inTx(tx -> {
-            BE root = tx.querySingle(context.select().get());
+            SyncState state = prepare(tx, syncRequest);
 
-            E entity;
+            DBG.debugf("Syncing the new tree to the database state of root %s", state.rootPath);
+            syncTrees(new SyncWriter<>(context, tx), tx, state.rootPath, RelativePath.empty().get(), state.root,
+                    state.newTree, state.newStructure, state.currentStructure);
+            DBG.debugf("Done syncing the new tree and the database state of root %s", state.rootPath);
 
-            if (root == null) {
-                Mutator<BE, E, B, U, String> mutator = createMutator(tx);
-                EntityAndPendingNotifications<BE, E> res =
-                        mutator.doCreate(syncRequest.getInventoryStructure().getRoot(), tx);
-                root = res.getEntityRepresentation();
-                entity = res.getEntity();
-            } else {
-                entity = tx.convert(root, context.entityClass);
+            return null;
+        });
+    }
+
+    private void synchronizeInChunks(SyncRequest<B> syncRequest) {
+        //first, figure out what direct children of the root need syncing. Each of them is going to be synced in its
+        //own transaction.
+        List<CanonicalPath> deletedChildren = new ArrayList<>();
+        List<SyncHash.Tree> changedChildren = new ArrayList<>();
+
+        SyncState state = inTx(tx -> {
+            deletedChildren.clear();
+            changedChildren.clear();
+
+            SyncState st = prepare(tx, syncRequest);
+            RelativePath rootRelPath = RelativePath.empty().get();
+
+            InventoryStructure.FullNode persistedRoot = st.currentStructure.getNode(rootRelPath);
+            String persistedHash = ((Syncable) persistedRoot.getAttachment()).getSyncHash();
+            if (Objects.equals(persistedHash, st.newTree.getHash())) {
+                DBG.debugf("Hashes match on %s. Nothing to sync.", st.rootPath);
+                return null;
             }
 
-            CanonicalPath rootPath = tx.extractCanonicalPath(root);
+            for (InventoryStructure.EntityType type : InventoryStructure.EntityType.values()) {
+                try (Stream<InventoryStructure.FullNode> children =
+                             st.currentStructure.getChildNodes(rootRelPath, type.elementType)) {
+                    children.forEach(c -> {
+                        CanonicalPath childCp = ((Entity<?, ?>) c.getAttachment()).getPath();
+                        if (st.newTree.getChild(childCp.getSegment()) == null) {
+                            deletedChildren.add(childCp);
+                        }
+                    });
+                }
+            }
+
+            for (SyncHash.Tree child : sortByType(st.newTree.getChildren())) {
+                InventoryStructure.FullNode persistedChild = st.currentStructure.getNode(child.getPath());
+                if (persistedChild == null
+                        || !Objects.equals(((Syncable) persistedChild.getAttachment()).getSyncHash(),
+                        child.getHash())) {
+                    changedChildren.add(child);
+                }
+            }
+
+            return st;
+        });
+
+        if (state == null) {
+            return;
+        }
+
+        CanonicalPath rootPath = state.rootPath;
+        int chunks = deletedChildren.size() + changedChildren.size();
+        int chunk = 0;
+
+        //each chunk fully recomputes only the hashes in its own subtree. The hashes of the root (and its parents) are
+        //recomputed from the hashes of their children, so that they are consistent after each chunk commits.
+        for (CanonicalPath deleted : deletedChildren) {
+            DBG.debugf("Syncing chunk %d/%d of root %s: deleting %s", ++chunk, chunks, rootPath, deleted);
+            inTx(tx -> {
+                tx.getPreCommit().limitHashComputationTo(deleted);
+                try {
+                    new SyncWriter<>(context, tx).delete(tx.find(deleted));
+                } catch (ElementNotFoundException e) {
+                    Log.LOGGER.debug("Failed to find a child to be deleted on canonical path " + deleted
+                            + ". Ignoring this since we were going to delete it anyway.", e);
+                }
+                return null;
+            });
+        }
+
+        for (SyncHash.Tree changed : changedChildren) {
+            CanonicalPath childCp = changed.getPath().applyTo(rootPath);
+            DBG.debugf("Syncing chunk %d/%d of root %s: syncing %s", ++chunk, chunks, rootPath, childCp);
+            inTx(tx -> {
+                tx.getPreCommit().limitHashComputationTo(childCp);
+
+                BE root = find(tx, rootPath);
+                SyncWriter<BE> writer = new SyncWriter<>(context, tx);
+
+                //the prefetched structure doesn't need the transaction it was loaded in anymore, but the lazily
+                //loaded one of the incremental sync does
+                InventoryStructure<B> currentStructure = syncRequest.isIncremental()
+                        ? InventoryStructure.of(tx.convert(root, context.entityClass),
+                        context.inventory.keepTransaction(tx))
+                        : state.currentStructure;
+
+                if (currentStructure.getNode(changed.getPath()) == null) {
+                    writer.bulkLoad(() -> create(writer, root, changed, state.newStructure));
+                } else {
+                    try {
+                        BE child = tx.find(childCp);
+                        syncTrees(writer, tx, rootPath, changed.getPath(), child, changed, state.newStructure,
+                                currentStructure);
+                    } catch (ElementNotFoundException ex) {
+                        Log.LOGGER.debug("Failed to find entity on " + childCp + " that we thought was there. Never" +
+                                " mind though, we can just create it again.", ex);
+                        writer.bulkLoad(() -> create(writer, root, changed, state.newStructure));
+                    }
+                }
+                return null;
+            });
+        }
+
+        //finally, update the root itself
+        DBG.debugf("Syncing the root %s after all its %d chunks", rootPath, chunks);
+        inTx(tx -> {
+            tx.getPreCommit().limitHashComputationTo(null);
+            new SyncWriter<>(context, tx).update(find(tx, rootPath),
+                    updateFromBlueprint(state.newStructure.get(RelativePath.empty().get())));
+            return null;
+        });
+    }
+
+    /**
+     * Resolves the sync root (creating it if necessary) and computes the sync hash tree of the new state of it.
+     */
+    private SyncState prepare(Transaction<BE> tx, SyncRequest<B> syncRequest) {
+        BE root = tx.querySingle(context.select().get());
+
+        E entity;
+
+        if (root == null) {
+            Mutator<BE, E, B, U, String> mutator = createMutator(tx);
+            EntityAndPendingNotifications<BE, E> res =
+                    mutator.doCreate(syncRequest.getInventoryStructure().getRoot(), tx);
+            root = res.getEntityRepresentation();
+            entity = res.getEntity();
+        } else {
+            entity = tx.convert(root, context.entityClass);
+        }
+
+        CanonicalPath rootPath = tx.extractCanonicalPath(root);
+
+        if (syncRequest.isIncremental()) {
+            if (syncRequest.getConfiguration().getSyncedTypes().size() != SegmentType.values().length) {
+                throw new IllegalArgumentException("Incremental sync is only supported when syncing all types.");
+            }
 
+            //the client has already computed the hashes of its full structure and sent us only the subtrees
+            //that differ from what we have. So there is nothing to merge and we only need to load the persisted
+            //entities lazily as we walk down the subtrees with differing hashes.
+            DBG.debugf("Syncing incrementally the tree of root %s", rootPath);
             InventoryStructure<B> currentStructure =
                     InventoryStructure.of(entity, context.inventory.keepTransaction(tx));
 
-            //If we're using the deep search we need to load both trees in full to be able to determine what is synced.
-            //If on the other hand we're syncing "shallowly", we can skip a lot of database access by computing the hash
-            //only for the parts of the tree that has been changed in the incoming inventory structure.
-            //This is the value of the hash loader which is used either if we're doing deep search or if we're syncing
-            //everything - in which case we don't actually load anything from the database and just recompute the
-            //hash of the whole new structure.
-            Function<RelativePath, Hashes> hashLoader = rp -> null;
+            return new SyncState(root, rootPath, syncRequest.getTree(), syncRequest.getInventoryStructure(),
+                    currentStructure);
+        }
 
-            InventoryStructure<B> newStructure;
+        //the sync needs to compare the whole tree, so let's load it all at once
+        InventoryStructure<B> currentStructure =
+                InventoryStructure.of(entity, context.inventory.keepTransaction(tx), true);
 
-            if (syncRequest.getConfiguration().getSyncedTypes().size() == SegmentType.values().length) {
-                //special case if we are syncing everything - in this case we need no merging of the already persisted
-                //parts of the tree into the new structure.
-                DBG.debugf("Using the fast lane for full sync of %s", rootPath);
+        //If we're using the deep search we need to load both trees in full to be able to determine what is synced.
+        //If on the other hand we're syncing "shallowly", we can skip a lot of database access by computing the hash
+        //only for the parts of the tree that has been changed in the incoming inventory structure.
+        //This is the value of the hash loader which is used either if we're doing deep search or if we're syncing
+        //everything - in which case we don't actually load anything from the database and just recompute the
+        //hash of the whole new structure.
+        Function<RelativePath, Hashes> hashLoader = rp -> null;
 
-                newStructure = syncRequest.getInventoryStructure();
-            } else {
-                DBG.debugf("Merging persisted structure with the new data of %s", rootPath);
-                newStructure =
-                        mergeTree(currentStructure, syncRequest.getInventoryStructure(),
-                                syncRequest.getConfiguration());
-                DBG.debugf("Done merging the persisted and new data of %s", rootPath);
-
-                if (!syncRequest.getConfiguration().isDeepSearch()) {
-                    //Ok, so this is not deep search and we merged parts of the persisted tree into our new tree.
-                    //So if we encounter such persisted node while computing the hashes, we actually don't need to
-                    //compute its hash - it hasn't changed (because it's not in the incoming structure) and we know
-                    //its hash already.
-                    hashLoader = rp -> {
-                        //just check if the node on the position has attachment - in that case it's been loaded from
-                        //the database and we need not recompute its hash.
-                        InventoryStructure.FullNode node = newStructure.getNode(rp);
-                        if (node == null) {
-                            return null;
-                        }
+        InventoryStructure<B> newStructure;
 
-                        Entity<?, ?> e = (Entity<?, ?>) node.getAttachment();
-                        if (e == null) {
-                            return null;
-                        }
+        if (syncRequest.getConfiguration().getSyncedTypes().size() == SegmentType.values().length) {
+            //special case if we are syncing everything - in this case we need no merging of the already persisted
+            //parts of the tree into the new structure.
+            DBG.debugf("Using the fast lane for full sync of %s", rootPath);
 
-                        return Hashes.of(e);
-                    };
-                }
+            newStructure = syncRequest.getInventoryStructure();
+        } else {
+            DBG.debugf("Merging persisted structure with the new data of %s", rootPath);
+            newStructure =
+                    mergeTree(currentStructure, syncRequest.getInventoryStructure(),
+                            syncRequest.getConfiguration());
+            DBG.debugf("Done merging the persisted and new data of %s", rootPath);
+
+            if (!syncRequest.getConfiguration().isDeepSearch()) {
+                //Ok, so this is not deep search and we merged parts of the persisted tree into our new tree.
+                //So if we encounter such persisted node while computing the hashes, we actually don't need to
+                //compute its hash - it hasn't changed (because it's not in the incoming structure) and we know
+                //its hash already.
+                hashLoader = rp -> {
+                    //just check if the node on the position has attachment - in that case it's been loaded from
+                    //the database and we need not recompute its hash.
+                    InventoryStructure.FullNode node = newStructure.getNode(rp);
+                    if (node == null) {
+                        return null;
+                    }
+
+                    Entity<?, ?> e = (Entity<?, ?>) node.getAttachment();
+                    if (e == null) {
+                        return null;
+                    }
+
+                    return Hashes.of(e);
+                };
             }
+        }
 
-            DBG.debugf("Computing sync tree of the merged structure of %s", rootPath);
-            SyncHash.Tree newTree = SyncHash.treeOf(newStructure, rootPath, hashLoader);
-            DBG.debugf("Done computing sync tree of the merged structure of %s", rootPath);
+        DBG.debugf("Computing sync tree of the merged structure of %s", rootPath);
+        //only the offline structures are safe to be hashed in parallel
+        int parallelismThreshold = newStructure instanceof InventoryStructure.Offline
+                ? BaseInventory.getHashParallelismThreshold(context.configuration) : 0;
+        SyncHash.Tree newTree = SyncHash.treeOf(newStructure, rootPath, hashLoader, parallelismThreshold);
+        DBG.debugf("Done computing sync tree of the merged structure of %s", rootPath);
 
-            DBG.debugf("Syncing the merged tree to the database state of root %s", rootPath);
-            syncTrees(tx, rootPath, RelativePath.empty().get(), root, newTree, newStructure, currentStructure);
-            DBG.debugf("Done syncing the merged tree and the database state of root %s", rootPath);
+        return new SyncState(root, rootPath, newTree, newStructure, currentStructure);
+    }
 
-            return null;
-        });
+    private BE find(Transaction<BE> tx, CanonicalPath path) {
+        try {
+            return tx.find(path);
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(context.entityClass, Query.filters(Query.to(path)));
+        }
     }
 
     @Override public SyncHash.Tree treeHash() {
@@ -255,8 +401,8 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
     }
 
     @SuppressWarnings("unchecked")
-    private void syncTrees(Transaction<BE> tx, CanonicalPath root, RelativePath pathFromRoot, BE oldElement,
-                           SyncHash.Tree newTree, InventoryStructure<?> newStructure,
+    private void syncTrees(SyncWriter<BE> writer, Transaction<BE> tx, CanonicalPath root, RelativePath pathFromRoot,
+                           BE oldElement, SyncHash.Tree newTree, InventoryStructure<?> newStructure,
                            InventoryStructure<?> persistedStructure) {
 
         InventoryStructure.FullNode persistedNode = persistedStructure.getNode(pathFromRoot);
@@ -270,12 +416,16 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
             //we only need to do something if the hashes don't match. If they do, it means this entity and its whole
             //subtree is equivalent. But it isn't because the hashes differ, so...
             Blueprint newState = newStructure.get(newTree.getPath());
+            if (newState == null) {
+                //this can only happen with incremental sync requests that don't contain all the changed entities
+                throw new IllegalArgumentException("The sync request is missing the entity on path "
+                        + pathFromRoot.applyTo(root) + " which differs from the persisted state.");
+            }
             Entity.Update entityUpdate = updateFromBlueprint(newState);
 
-            Inventory inv = context.inventory.keepTransaction(tx);
-
-            //update the current element - use the full API call so that all checks are enforced
-            inv.inspect(tx.extractCanonicalPath(oldElement), ResolvableToSingle.class).update(entityUpdate);
+            //update the current element - we have it in hand already, so there's no need to go through the API to
+            //look it up again. The writer still enforces all the checks.
+            writer.update(oldElement, entityUpdate);
 
             //now look through the old and new children and make old match new
             //it is important to make sure that resource or metric types are create prior to resources or metrics
@@ -299,9 +449,8 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
                         if (newChild == null) {
                             //ok, this entity is no longer in the new structure
                             try {
-                                //delete using a normal API so that all checks are run
-                                inv.inspect(childCp, ResolvableToSingle.class).delete();
-                            } catch (EntityNotFoundException e) {
+                                writer.delete(tx.find(childCp));
+                            } catch (ElementNotFoundException e) {
                                 Log.LOGGER.debug("Failed to find a child to be deleted on canonical path " + childCp
                                         + ". Ignoring this since we were going to delete it anyway.", e);
                             }
@@ -317,18 +466,21 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
             }
 
             //now create the new children
-            unprocessedChildren.forEach(c -> create(tx, root, c, newStructure));
+            if (!unprocessedChildren.isEmpty()) {
+                writer.bulkLoad(() -> unprocessedChildren.forEach(c -> create(writer, oldElement, c, newStructure)));
+            }
 
             //and finally updates...
             for (SyncHash.Tree update : updates) {
                 CanonicalPath childCp = update.getPath().applyTo(root);
                 try {
                     BE child = tx.find(childCp);
-                    syncTrees(tx, root, childCp.relativeTo(root), child, update, newStructure, persistedStructure);
+                    syncTrees(writer, tx, root, childCp.relativeTo(root), child, update, newStructure,
+                            persistedStructure);
                 } catch (ElementNotFoundException ex) {
                     Log.LOGGER.debug("Failed to find entity on " + childCp + " that we thought was there. Never mind " +
                             "though, we can just create it again.", ex);
-                    create(tx, root, update, newStructure);
+                    writer.bulkLoad(() -> create(writer, oldElement, update, newStructure));
                 }
             }
         } else {
@@ -360,14 +512,7 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
         return set;
     }
 
-    @SuppressWarnings("unchecked")
-    private void create(Transaction<BE> tx, CanonicalPath root, SyncHash.Tree tree,
-                        InventoryStructure<?> newStructure) {
-        Inventory inv = context.inventory.keepTransaction(tx);
-        CanonicalPath childCp = tree.getPath().applyTo(root);
-        @SuppressWarnings("unchecked")
-        ResolvableToSingle<?, ?> parentAccess = inv.inspect(childCp.up(), ResolvableToSingle.class);
-
+    private void create(SyncWriter<BE> writer, BE parent, SyncHash.Tree tree, InventoryStructure<?> newStructure) {
         Blueprint blueprint = newStructure.get(tree.getPath());
 
         //the blueprint might actually be null, because the hash tree computes hash using some "virtual nodes"
@@ -378,52 +523,11 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
             return;
         }
 
-        childCp.getSegment().accept(new ElementTypeVisitor.Simple<Void, Void>() {
-            @Override public Void visitFeed(Void parameter) {
-                ((Feeds.Container<Feeds.ReadWrite>) parentAccess).feeds().create((Feed.Blueprint) blueprint);
-                return null;
-            }
-
-            @Override public Void visitMetric(Void parameter) {
-                ((Metrics.Container<Metrics.ReadWrite>) parentAccess).metrics()
-                        .create((Metric.Blueprint) blueprint);
-                return null;
-            }
-
-            @Override public Void visitMetricType(Void parameter) {
-                ((MetricTypes.Container<MetricTypes.ReadWrite>) parentAccess).metricTypes()
-                        .create((MetricType.Blueprint) blueprint);
-                return null;
-            }
-
-            @Override public Void visitResource(Void parameter) {
-                ((Resources.Container<Resources.ReadWrite>) parentAccess).resources()
-                        .create((Resource.Blueprint) blueprint);
-                return null;
-            }
-
-            @Override public Void visitResourceType(Void parameter) {
-                ((ResourceTypes.Container<ResourceTypes.ReadWrite>) parentAccess).resourceTypes()
-                        .create((ResourceType.Blueprint) blueprint);
-                return null;
-            }
-
-            @SuppressWarnings("rawtypes")
-            @Override public Void visitData(Void parameter) {
-                ((Data.Container<Data.ReadWrite>) parentAccess).data()
-                        .create((DataEntity.Blueprint<?>) blueprint);
-                return null;
-            }
-
-            @Override public Void visitOperationType(Void parameter) {
-                ((OperationTypes.Container<OperationTypes.ReadWrite>) parentAccess).operationTypes()
-                        .create((OperationType.Blueprint) blueprint);
-                return null;
-            }
-        }, null);
+        //we know the entity doesn't exist yet and we have its parent in hand, so let's create it directly
+        BE entity = writer.create(parent, blueprint);
 
         for (SyncHash.Tree child : tree.getChildren()) {
-            create(tx, root, child, newStructure);
+            create(writer, entity, child, newStructure);
         }
     }
 
@@ -678,4 +782,21 @@ abstract class SingleSyncedFetcher<BE, E extends Entity<B, U> & Syncable, B exte
                     }
                 }, null);
     }
+
+    private final class SyncState {
+        final BE root;
+        final CanonicalPath rootPath;
+        final SyncHash.Tree newTree;
+        final InventoryStructure<B> newStructure;
+        final InventoryStructure<B> currentStructure;
+
+        SyncState(BE root, CanonicalPath rootPath, SyncHash.Tree newTree, InventoryStructure<B> newStructure,
+                  InventoryStructure<B> currentStructure) {
+            this.root = root;
+            this.rootPath = rootPath;
+            this.newTree = newTree;
+            this.newStructure = newStructure;
+            this.currentStructure = currentStructure;
+        }
+    }
 }
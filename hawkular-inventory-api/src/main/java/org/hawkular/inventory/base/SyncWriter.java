@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+
+import org.hawkular.inventory.api.Inventory;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.OperationType;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.DataRole;
+import org.hawkular.inventory.paths.ElementTypeVisitor;
+import org.hawkular.inventory.paths.SegmentType;
+
+/**
+ * Applies the changes computed by the synchronization directly to the backend elements the sync has already resolved.
+ *
+ * <p>Going through the public API for each synced entity means re-resolving the entity (or its parent) by a query,
+ * setting up a nested transaction frame and transferring its notifications for each single call. This writer instead
+ * uses the mutators of the individual entity types on the elements that are already in hand. The checks of the entity
+ * types are still enforced and the notifications are all collected in the pre-commit of the sync transaction so that
+ * they are emitted in one go once it commits.
+ *
+ * @since 1.1.3
+ */
+final class SyncWriter<BE> {
+    private final TraversalContext<BE, ?> context;
+    private final Transaction<BE> tx;
+
+    SyncWriter(TraversalContext<BE, ?> context, Transaction<BE> tx) {
+        this.context = context;
+        this.tx = tx;
+    }
+
+    /**
+     * Creates a new entity under the provided parent. The caller is responsible for making sure no such entity exists
+     * yet.
+     *
+     * @param parent    the backend representation of the parent
+     * @param blueprint the blueprint of the new entity
+     * @return the backend representation of the new entity
+     */
+    @SuppressWarnings("unchecked")
+    BE create(BE parent, Blueprint blueprint) {
+        SegmentType type = Inventory.types().byBlueprint(blueprint.getClass()).getSegmentType();
+        Mutator<BE, ?, Blueprint, ?, ?> mutator = (Mutator<BE, ?, Blueprint, ?, ?>) mutator(
+                tx.extractCanonicalPath(parent), (Class<? extends AbstractElement<?, ?>>) tx.extractType(parent),
+                type);
+
+        return mutator.doCreate(parent, blueprint, tx).getEntityRepresentation();
+    }
+
+    @SuppressWarnings("unchecked")
+    void update(BE element, Entity.Update update) {
+        ((Mutator<BE, ?, ?, Entity.Update, ?>) mutator(tx.extractCanonicalPath(element))).doUpdate(element, update,
+                tx);
+    }
+
+    void delete(BE element) {
+        mutator(tx.extractCanonicalPath(element)).doDelete(element, tx);
+    }
+
+    /**
+     * Runs the action that only creates new entities in a bulk load of the backend. If the action fails, the bulk
+     * load is not ended here but by the rollback of the transaction, so that the backend doesn't persist the elements
+     * that are going to be rolled back anyway.
+     *
+     * @param action the action creating the entities
+     */
+    void bulkLoad(Runnable action) {
+        tx.directAccess().beginBulkLoad();
+        action.run();
+        tx.directAccess().endBulkLoad();
+    }
+
+    private Mutator<BE, ?, ?, ?, ?> mutator(CanonicalPath elementPath) {
+        CanonicalPath parentPath = elementPath.up();
+        Class<? extends AbstractElement<?, ?>> parentType =
+                Inventory.types().bySegment(parentPath.getSegment().getElementType()).getElementType();
+
+        return mutator(parentPath, parentType, elementPath.getSegment().getElementType());
+    }
+
+    private Mutator<BE, ?, ?, ?, ?> mutator(CanonicalPath parentPath,
+                                            Class<? extends AbstractElement<?, ?>> parentType,
+                                            SegmentType elementType) {
+        TraversalContext<BE, ?> parentContext = context.replacePath(Query.to(parentPath), parentType);
+
+        return ElementTypeVisitor.accept(elementType, new ElementTypeVisitor.Simple<Mutator<BE, ?, ?, ?, ?>, Void>() {
+            @Override protected Mutator<BE, ?, ?, ?, ?> defaultAction(SegmentType type, Void parameter) {
+                throw new IllegalArgumentException("Entities of type " + type + " cannot be synchronized.");
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitFeed(Void parameter) {
+                return new BaseFeeds.ReadWrite<>(parentContext.proceedTo(contains, Feed.class).get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitMetric(Void parameter) {
+                return new BaseMetrics.ReadWrite<>(parentContext.proceedTo(contains, Metric.class).get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitMetricType(Void parameter) {
+                return new BaseMetricTypes.ReadWrite<>(parentContext.proceedTo(contains, MetricType.class).get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitResource(Void parameter) {
+                return new BaseResources.ReadWrite<>(parentContext.proceedTo(contains, Resource.class).get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitResourceType(Void parameter) {
+                return new BaseResourceTypes.ReadWrite<>(parentContext.proceedTo(contains, ResourceType.class)
+                        .get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitOperationType(Void parameter) {
+                return new BaseOperationTypes.ReadWrite<>(parentContext.proceedTo(contains, OperationType.class)
+                        .get());
+            }
+
+            @Override public Mutator<BE, ?, ?, ?, ?> visitData(Void parameter) {
+                TraversalContext<BE, DataEntity> dataContext = parentContext.proceedTo(contains, DataEntity.class)
+                        .get();
+
+                switch (parentPath.getSegment().getElementType()) {
+                    case r:
+                        return new BaseData.ReadWrite<>(dataContext, DataRole.Resource.class,
+                                BaseData.DataModificationChecks.none());
+                    case rt:
+                        return new BaseData.ReadWrite<>(dataContext, DataRole.ResourceType.class,
+                                new BaseResourceTypes.ResourceTypeDataModificationChecks<>(parentContext));
+                    case ot:
+                        return new BaseData.ReadWrite<>(dataContext, DataRole.OperationType.class,
+                                new BaseOperationTypes.OperationTypeDataModificationChecks<>(parentContext));
+                    default:
+                        throw new IllegalStateException("This is a bug! Unhandled data role class for parent "
+                                + parentPath);
+                }
+            }
+        }, null);
+    }
+}
@@ -234,6 +234,20 @@ public interface Transaction<E> {
          */
         void addProcessedNotifications(EntityAndPendingNotifications<E, ?> element);
 
+        /**
+         * Restricts the full recomputation of the hashes to the subtree of the entity on the provided path. The hashes
+         * of the ancestors of that entity are recomputed from the stored hashes of their other children, while the
+         * hashes of the entities outside of that subtree are left intact even if they are affected by the changes
+         * made in the transaction. This is used when a large change is split into several transactions, each of them
+         * changing a different subtree.
+         *
+         * <p>By default this does nothing, i.e. all the affected hashes are always recomputed.
+         *
+         * @param root the root of the subtree to limit the hash computation to or null for no limit
+         */
+        default void limitHashComputationTo(CanonicalPath root) {
+        }
+
         class Simple<E> implements PreCommit<E> {
             private List<EntityAndPendingNotifications<E, ?>> notifs = new ArrayList<>();
             private List<Consumer<Transaction<E>>> actions = new ArrayList<>();
@@ -262,6 +262,19 @@ public final class TraversalContext<BE, E extends AbstractElement<?, ?>> {
                 observableContext, transactionRetries, this, null, transactionConstructor);
     }
 
+    /**
+     * Same as {@link #replacePath(Query)} but the new context will also target entities of the provided type.
+     *
+     * @param path        the source path of the new context
+     * @param entityClass the type of the entities on the source path
+     * @param <T>         the type of the entities on the source path
+     * @return a new traversal context with the provided source path, type and empty select candidates
+     */
+    <T extends AbstractElement<?, ?>> TraversalContext<BE, T> replacePath(Query path, Class<T> entityClass) {
+        return new TraversalContext<>(inventory, path, Query.empty(), backend, entityClass, configuration,
+                observableContext, transactionRetries, this, null, transactionConstructor);
+    }
+
     TraversalContext<BE, E> toCreatedEntity(E entity, boolean cache) {
         return new TraversalContext<>(inventory, Query.to(entity.getPath()), Query.empty(), backend, entityClass,
                 configuration, observableContext, transactionRetries, this, cache ? entity : null, null);
@@ -297,9 +310,28 @@ public final class TraversalContext<BE, E extends AbstractElement<?, ?>> {
      */
     <C, V> void notify(V entity, C actionContext, Action<C, V> action) {
         Iterator<Subject<C, C>> subjects = observableContext.matchingSubjects(action, entity);
+        if (!subjects.hasNext()) {
+            return;
+        }
+
+        Object orderingKey = notificationOrderingKey(entity);
         while (subjects.hasNext()) {
             Subject<C, C> s = subjects.next();
-            s.onNext(actionContext);
+            observableContext.notify(s, actionContext, orderingKey);
+        }
+    }
+
+    /**
+     * The notifications about the entities of a single tenant are delivered in the order in which they were emitted.
+     * The relationships are ordered together with their source entities.
+     */
+    private static Object notificationOrderingKey(Object entity) {
+        if (entity instanceof Relationship) {
+            return ((Relationship) entity).getSource().getRoot();
+        } else if (entity instanceof AbstractElement) {
+            return ((AbstractElement<?, ?>) entity).getPath().getRoot();
+        } else {
+            return null;
         }
     }
 
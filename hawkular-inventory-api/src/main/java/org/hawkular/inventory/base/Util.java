@@ -304,6 +304,19 @@ final class Util {
             }
         }
 
+        update(entityClass, tx, entity, update, preUpdateCheck, postUpdateCheck);
+    }
+
+    /**
+     * Same as {@link #update(Class, Transaction, Query, AbstractElement.Update, TransactionParticipant, BiConsumer)}
+     * but operates on an already resolved backend element instead of looking it up using a query.
+     */
+    public static <BE, E extends AbstractElement<?, U>, U extends AbstractElement.Update> void update(
+            Class<E> entityClass,
+            Transaction<BE> tx, BE entity, U update,
+            TransactionParticipant<BE, U> preUpdateCheck,
+            BiConsumer<BE, Transaction<BE>> postUpdateCheck) {
+
         if (preUpdateCheck != null) {
             preUpdateCheck.execute(entity, update, tx);
         }
@@ -322,7 +335,6 @@ final class Util {
                 new Action.Update<>(orig, update), Action.updated()));
     }
 
-    @SuppressWarnings("unchecked")
     public static <BE, E extends AbstractElement<?, ?>>
     void delete(Class<E> entityClass, Transaction<BE> tx, Query entityQuery,
                 BiConsumer<BE, Transaction<BE>> cleanupFunction,
@@ -337,6 +349,19 @@ final class Util {
             }
         }
 
+        delete(entityClass, tx, entity, cleanupFunction, postDelete);
+    }
+
+    /**
+     * Same as {@link #delete(Class, Transaction, Query, BiConsumer, BiConsumer)} but operates on an already resolved
+     * backend element instead of looking it up using a query.
+     */
+    @SuppressWarnings("unchecked")
+    public static <BE, E extends AbstractElement<?, ?>>
+    void delete(Class<E> entityClass, Transaction<BE> tx, BE entity,
+                BiConsumer<BE, Transaction<BE>> cleanupFunction,
+                BiConsumer<BE, Transaction<BE>> postDelete) {
+
         if (cleanupFunction != null) {
             cleanupFunction.accept(entity, tx);
         }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base.spi;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.MetadataPack;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.OperationType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.paths.SegmentType;
+
+/**
+ * The types of the elements kept in the inventory by the backends that don't store them in a graph database. The names
+ * of the types are the same as the labels used by the Tinkerpop implementation so that the queries filtering by the
+ * types behave the same in all the backends.
+ *
+ * @since 1.1.3
+ */
+public enum ElementType {
+    tenant(Tenant.class, SegmentType.t, "name", "__contentHash"),
+    environment(Environment.class, SegmentType.e, "name", "__contentHash"),
+    feed(Feed.class, SegmentType.f, "name", "__identityHash", "__contentHash", "__syncHash"),
+    resourceType(ResourceType.class, SegmentType.rt, "name", "__identityHash", "__contentHash", "__syncHash"),
+    metricType(MetricType.class, SegmentType.mt, "name", "__unit", "__metric_data_type", "__metric_interval",
+            "__identityHash", "__contentHash", "__syncHash"),
+    operationType(OperationType.class, SegmentType.ot, "name", "__identityHash", "__contentHash", "__syncHash"),
+    resource(Resource.class, SegmentType.r, "name", "__identityHash", "__contentHash", "__syncHash"),
+    metric(Metric.class, SegmentType.m, "name", "__metric_interval", "__identityHash", "__contentHash",
+            "__syncHash"),
+    metadatapack(MetadataPack.class, SegmentType.mp, "name"),
+    relationship(Relationship.class, SegmentType.rl, "__sourceType", "__targetType", "__sourceCp", "__targetCp",
+            "__sourceEid", "__targetEid"),
+    dataEntity(DataEntity.class, SegmentType.d, "name", "__identityHash", "__contentHash", "__syncHash"),
+    structuredData(StructuredData.class, SegmentType.sd);
+
+    private static final Map<SegmentType, ElementType> BY_SEGMENT_TYPE = new HashMap<>();
+
+    /**
+     * The names under which the built-in attributes can be referred to in the property filters and orderings,
+     * mapped to the internal names of the attributes.
+     */
+    private static final Map<String, String> USER_NAMES = new HashMap<>();
+
+    static {
+        for (ElementType t : values()) {
+            BY_SEGMENT_TYPE.put(t.segmentType, t);
+        }
+
+        USER_NAMES.put("type", "__type");
+        USER_NAMES.put("id", "__eid");
+        USER_NAMES.put("unit", "__unit");
+        USER_NAMES.put("metricDataType", "__metric_data_type");
+        USER_NAMES.put("collectionInterval", "__metric_interval");
+        USER_NAMES.put("path", "__cp");
+        USER_NAMES.put("sourceType", "__sourceType");
+        USER_NAMES.put("targetType", "__targetType");
+        USER_NAMES.put("source", "__sourceCp");
+        USER_NAMES.put("target", "__targetCp");
+        USER_NAMES.put("identityHash", "__identityHash");
+        USER_NAMES.put("contentHash", "__contentHash");
+        USER_NAMES.put("syncHash", "__syncHash");
+    }
+
+    private final Class<?> entityType;
+    private final SegmentType segmentType;
+    private final String[] reservedProperties;
+
+    ElementType(Class<?> entityType, SegmentType segmentType, String... reservedProperties) {
+        this.entityType = entityType;
+        this.segmentType = segmentType;
+        this.reservedProperties = new String[reservedProperties.length + 3];
+        this.reservedProperties[0] = "__type";
+        this.reservedProperties[1] = "__eid";
+        this.reservedProperties[2] = "__cp";
+        System.arraycopy(reservedProperties, 0, this.reservedProperties, 3, reservedProperties.length);
+    }
+
+    public static ElementType of(SegmentType segmentType) {
+        ElementType ret = BY_SEGMENT_TYPE.get(segmentType);
+        if (ret == null) {
+            throw new IllegalArgumentException("Unsupported entity type " + segmentType);
+        }
+        return ret;
+    }
+
+    public static ElementType of(Class<?> entityType) {
+        return of(AbstractElement.segmentTypeFromType(entityType));
+    }
+
+    /**
+     * Converts the type name as used in the queries to the element type.
+     *
+     * @param name the name of the type
+     * @return the element type or null if the name doesn't correspond to any type
+     */
+    public static ElementType ofName(String name) {
+        return Arrays.stream(values()).filter(t -> t.name().equals(name)).findAny().orElse(null);
+    }
+
+    /**
+     * Maps the user-facing name of a built-in attribute (like "unit" or "path") to its internal name. Any other name
+     * is returned unchanged, because it denotes a user defined property.
+     */
+    public static String mapUserDefined(String property) {
+        return USER_NAMES.getOrDefault(property, property);
+    }
+
+    public Class<?> getEntityType() {
+        return entityType;
+    }
+
+    public SegmentType getSegmentType() {
+        return segmentType;
+    }
+
+    /**
+     * @return the names of the properties that the users cannot set on the elements of this type, because they would
+     * clash with the names used for the built-in attributes of the elements in the queries.
+     */
+    public String[] getReservedProperties() {
+        return reservedProperties;
+    }
+}
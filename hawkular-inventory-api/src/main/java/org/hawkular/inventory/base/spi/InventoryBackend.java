@@ -369,4 +369,23 @@ public interface InventoryBackend<E> extends AutoCloseable {
     default boolean isTransactionRetryWarranted(Throwable t) {
         return false;
     }
+
+    /**
+     * Hints the backend that a large number of new elements is going to be persisted in this transaction. The backend
+     * can then write the new elements in batches instead of one by one. Calls to this method can be nested - the bulk
+     * load ends with the outermost {@link #endBulkLoad()} or when the transaction commits or rolls back.
+     *
+     * <p>By default this does nothing.
+     */
+    default void beginBulkLoad() {
+    }
+
+    /**
+     * Ends the bulk load started by {@link #beginBulkLoad()}, making sure all the elements persisted since then are
+     * written to the backend.
+     *
+     * <p>By default this does nothing.
+     */
+    default void endBulkLoad() {
+    }
 }
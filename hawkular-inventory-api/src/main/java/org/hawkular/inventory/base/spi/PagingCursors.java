@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base.spi;
+
+import static java.util.stream.Collectors.toList;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The paging cursors as used by the backends. A cursor is the canonical path of the last element of the previous page
+ * so that the next page can be found by looking for the elements with canonical paths following it.
+ *
+ * <p>The canonical path is encoded so that the cursor is opaque to the callers and can be safely passed around in
+ * URLs.
+ *
+ * @since 1.1.3
+ */
+public final class PagingCursors {
+
+    private PagingCursors() {
+
+    }
+
+    /**
+     * @param cp the canonical path of the last element of the page
+     * @return the cursor pointing after the element with the canonical path
+     */
+    public static String encode(String cp) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cp.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor the cursor as obtained from {@link #encode(String)} or null
+     * @return the canonical path encoded in the cursor or null if the cursor is null
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static String decode(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid paging cursor: '" + cursor + "'.", e);
+        }
+    }
+
+    /**
+     * Positions the cursor in the results that are fully known. This is meant for the backends that cannot find the
+     * results following the cursor more efficiently.
+     *
+     * @param results  the results of the query
+     * @param cursor   the (encoded) cursor or null to start from the beginning
+     * @param pageSize the size of the page
+     * @param cpOf     produces the canonical path of a result or null if the result has none
+     * @param <T>      the type of the results
+     * @return at most {@code pageSize + 1} results following the cursor, ordered by their canonical paths. The last
+     * result is only present if there is a next page.
+     */
+    public static <T> List<T> position(Collection<T> results, String cursor, int pageSize,
+                                       Function<T, String> cpOf) {
+        String last = decode(cursor);
+
+        return results.stream()
+                .filter(r -> {
+                    String cp = cpOf.apply(r);
+                    return cp != null && (last == null || cp.compareTo(last) > 0);
+                })
+                .sorted(Comparator.comparing(cpOf))
+                .limit(pageSize + 1)
+                .collect(toList());
+    }
+}
@@ -17,6 +17,7 @@
 package org.hawkular.inventory.api.test;
 
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -1471,6 +1472,30 @@ public abstract class AbstractBaseInventoryTestsuite<E> {
         assert msList.size() == 0;
     }
 
+    @Test
+    public void testCursorPaging() throws Exception {
+        Metrics.Multiple metrics = inventory.tenants().getAll().environments().getAll().metrics().getAll();
+
+        List<Metric> allResults = metrics.entities(Pager.unlimited(Order.unspecified())).toList();
+        assert allResults.size() == 3;
+
+        Page<Metric> ms = metrics.entities(Pager.cursor(2, null));
+        String cursor = ms.getNextCursor();
+        List<Metric> msList = ms.toList();
+        assert msList.size() == 2;
+        assert cursor != null;
+        assert msList.get(0).getPath().toString().compareTo(msList.get(1).getPath().toString()) < 0;
+        assert allResults.removeAll(msList);
+
+        ms = metrics.entities(Pager.cursor(2, cursor));
+        msList = ms.toList();
+        assert msList.size() == 1;
+        assert ms.getNextCursor() == null;
+        assert allResults.removeAll(msList);
+
+        assert allResults.isEmpty();
+    }
+
     @Test
     public void testGettingResourcesFromFeedsUsingEnvironments() throws Exception {
         Set<Resource> rs = inventory.tenants().get("com.acme.tenant").environments().get("production")
@@ -2319,6 +2344,166 @@ public abstract class AbstractBaseInventoryTestsuite<E> {
         }
     }
 
+    @Test
+    public void testSynchronizeIncrementally() throws Exception {
+        String tenantId = "testSynchronizeIncrementally";
+        try {
+            Feeds.Single f = inventory.tenants().create(Tenant.Blueprint.builder().withId(tenantId).build())
+                    .feeds().create(Feed.Blueprint.builder().withId("feed").build(), false);
+
+            InventoryStructure.Offline.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                    .of(Feed.Blueprint.builder().withId("feed").build())
+                    .addChild(ResourceType.Blueprint.builder().withId("resourceType").build())
+                    .startChild(Resource.Blueprint.builder().withId("resource").withResourceTypePath("resourceType")
+                            .build())
+                    /**/.addChild(Resource.Blueprint.builder().withId("childResource")
+                    /**/.withResourceTypePath("../resourceType").withProperty("a", "b").build())
+                    .end()
+                    .addChild(Resource.Blueprint.builder().withId("otherResource")
+                            .withResourceTypePath("resourceType").build());
+
+            f.synchronize(SyncRequest.syncEverything(bld.build()));
+
+            CanonicalPath feedPath = f.entity().getPath();
+
+            bld.getChild(Path.Segment.from("r;resource")).getChild(Path.Segment.from("r;childResource"))
+                    .replace(Resource.Blueprint.builder().withId("childResource")
+                            .withResourceTypePath("../resourceType").withProperty("a", "c").build());
+            bld.getChild(Path.Segment.from("r;otherResource")).remove();
+            bld.addChild(Resource.Blueprint.builder().withId("newResource").withResourceTypePath("resourceType")
+                    .build());
+
+            InventoryStructure<Feed.Blueprint> structure = bld.build();
+
+            SyncRequest<Feed.Blueprint> request = SyncRequest.incremental(structure, feedPath, f.treeHash());
+
+            //the unchanged resource type must not be sent
+            Assert.assertTrue(request.isIncremental());
+            Assert.assertNull(request.getInventoryStructure().get(RelativePath.to().resourceType("resourceType")
+                    .get()));
+            Assert.assertNotNull(request.getInventoryStructure().get(RelativePath.to().resource("resource")
+                    .resource("childResource").get()));
+
+            f.synchronize(request);
+
+            Assert.assertEquals(SyncHash.treeOf(structure, feedPath), f.treeHash());
+            Assert.assertEquals("c", f.resources().get("resource").resources().get("childResource").entity()
+                    .getProperties().get("a"));
+            Assert.assertFalse(f.resources().get("otherResource").exists());
+            Assert.assertTrue(f.resources().get("newResource").exists());
+            Assert.assertTrue(f.resourceTypes().get("resourceType").exists());
+        } finally {
+            if (inventory.tenants().get(tenantId).exists()) {
+                inventory.tenants().get(tenantId).delete();
+            }
+        }
+    }
+
+    @Test
+    public void testSynchronizeInChunks() throws Exception {
+        String tenantId = "testSynchronizeInChunks";
+        try {
+            inventory.tenants().create(Tenant.Blueprint.builder().withId(tenantId).build());
+            Feeds.Single f = inventory.tenants().get(tenantId).feeds().get("feed");
+
+            InventoryStructure.Offline.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                    .of(Feed.Blueprint.builder().withId("feed").build())
+                    .addChild(ResourceType.Blueprint.builder().withId("resourceType").build())
+                    .startChild(Resource.Blueprint.builder().withId("resource").withResourceTypePath("resourceType")
+                            .build())
+                    /**/.addChild(Resource.Blueprint.builder().withId("childResource")
+                    /**/.withResourceTypePath("../resourceType").withProperty("a", "b").build())
+                    .end()
+                    .addChild(Resource.Blueprint.builder().withId("otherResource")
+                            .withResourceTypePath("resourceType").build());
+
+            SyncConfiguration chunked = SyncConfiguration.builder().withAllTypes().withChunking(true).build();
+
+            //the feed doesn't exist yet, so it should be created along the way
+            f.synchronize(new SyncRequest<>(chunked, bld.build()));
+
+            CanonicalPath feedPath = f.entity().getPath();
+
+            Assert.assertEquals(SyncHash.treeOf(bld.build(), feedPath), f.treeHash());
+            Assert.assertEquals(f.treeHash().getHash(), f.entity().getSyncHash());
+
+            bld.getChild(Path.Segment.from("r;resource")).getChild(Path.Segment.from("r;childResource"))
+                    .replace(Resource.Blueprint.builder().withId("childResource")
+                            .withResourceTypePath("../resourceType").withProperty("a", "c").build());
+            bld.getChild(Path.Segment.from("r;otherResource")).remove();
+            bld.addChild(Resource.Blueprint.builder().withId("newResource").withResourceTypePath("resourceType")
+                    .build());
+
+            InventoryStructure<Feed.Blueprint> structure = bld.build();
+
+            f.synchronize(new SyncRequest<>(chunked, structure));
+
+            Assert.assertEquals(SyncHash.treeOf(structure, feedPath), f.treeHash());
+            Assert.assertEquals(f.treeHash().getHash(), f.entity().getSyncHash());
+            Assert.assertEquals("c", f.resources().get("resource").resources().get("childResource").entity()
+                    .getProperties().get("a"));
+            Assert.assertFalse(f.resources().get("otherResource").exists());
+            Assert.assertTrue(f.resources().get("newResource").exists());
+            Assert.assertTrue(f.resourceTypes().get("resourceType").exists());
+        } finally {
+            if (inventory.tenants().get(tenantId).exists()) {
+                inventory.tenants().get(tenantId).delete();
+            }
+        }
+    }
+
+    @Test
+    public void testSynchronizeInChunksKeepsRootHashCurrent() throws Exception {
+        String tenantId = "testSynchronizeInChunksKeepsRootHashCurrent";
+        Subscription subs = null;
+        try {
+            inventory.tenants().create(Tenant.Blueprint.builder().withId(tenantId).build());
+            Feeds.Single f = inventory.tenants().get(tenantId).feeds().get("feed");
+
+            InventoryStructure.Offline.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                    .of(Feed.Blueprint.builder().withId("feed").build())
+                    .addChild(ResourceType.Blueprint.builder().withId("resourceType").build())
+                    .addChild(Resource.Blueprint.builder().withId("resource").withResourceTypePath("resourceType")
+                            .build())
+                    .addChild(Resource.Blueprint.builder().withId("otherResource")
+                            .withResourceTypePath("resourceType").build());
+
+            SyncConfiguration chunked = SyncConfiguration.builder().withAllTypes().withChunking(true).build();
+            f.synchronize(new SyncRequest<>(chunked, bld.build()));
+
+            //each chunk commits the sync hash of the feed consistent with what has been committed so far
+            List<String> storedHashes = new ArrayList<>();
+            List<String> computedHashes = new ArrayList<>();
+            subs = inventory.observable(Interest.in(Feed.class).having(syncHashChanged())).subscribe(feed -> {
+                Feed current = f.entity();
+                storedHashes.add(current.getSyncHash());
+                computedHashes.add(SyncHash.of(InventoryStructure.of(current, inventory), current.getPath()));
+            });
+
+            bld.getChild(Path.Segment.from("r;resource")).addChild(Resource.Blueprint.builder()
+                    .withId("childResource").withResourceTypePath("../resourceType").build());
+            bld.getChild(Path.Segment.from("r;otherResource")).remove();
+            bld.addChild(Resource.Blueprint.builder().withId("newResource").withResourceTypePath("resourceType")
+                    .build());
+
+            InventoryStructure<Feed.Blueprint> structure = bld.build();
+            f.synchronize(new SyncRequest<>(chunked, structure));
+
+            //the deletion, the update and the creation each changed the feed
+            Assert.assertEquals(3, storedHashes.size());
+            Assert.assertEquals(computedHashes, storedHashes);
+            Assert.assertEquals(3, new HashSet<>(storedHashes).size());
+            Assert.assertEquals(SyncHash.of(structure, f.entity().getPath()), f.entity().getSyncHash());
+        } finally {
+            if (subs != null) {
+                subs.unsubscribe();
+            }
+            if (inventory.tenants().get(tenantId).exists()) {
+                inventory.tenants().get(tenantId).delete();
+            }
+        }
+    }
+
     @Test
     public void testSynchronizeNonExistent() throws Exception {
         String tenantId = "testSynchronizeNonExistent";
@@ -2385,6 +2570,28 @@ public abstract class AbstractBaseInventoryTestsuite<E> {
         }
     }
 
+    @Test
+    public void testPrefetchedInventoryStructure() throws Exception {
+        Feed feed = inventory.tenants().get("com.acme.tenant").feeds().get("feed1").entity();
+
+        InventoryStructure<Feed.Blueprint> lazy = InventoryStructure.of(feed, inventory);
+        InventoryStructure<Feed.Blueprint> prefetched = InventoryStructure.of(feed, inventory, true);
+
+        Assert.assertEquals(IdentityHash.of(lazy), IdentityHash.of(prefetched));
+
+        try (Stream<InventoryStructure.FullNode> l = lazy.getAllChildNodes(RelativePath.empty().get());
+             Stream<InventoryStructure.FullNode> p = prefetched.getAllChildNodes(RelativePath.empty().get())) {
+            Assert.assertEquals(l.collect(toList()), p.collect(toList()));
+        }
+
+        try (Stream<Resource.Blueprint> l = lazy.getChildren(RelativePath.empty().get(), Resource.class);
+             Stream<Resource.Blueprint> p = prefetched.getChildren(RelativePath.empty().get(), Resource.class)) {
+            Assert.assertEquals(l.collect(toList()), p.collect(toList()));
+        }
+
+        Assert.assertNull(prefetched.get(RelativePath.to().resource("nonexistent").get()));
+    }
+
     @Test
     public void testSynchronizeUpdate() throws Exception {
         String tenantId = "testSynchronizeUpdate";
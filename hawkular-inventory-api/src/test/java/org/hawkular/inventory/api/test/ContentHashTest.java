@@ -169,6 +169,23 @@ public class ContentHashTest {
         }
     }
 
+    @Test
+    public void testNonAsciiCharactersEncodedAsUtf8() throws Exception {
+        Map<String, Object> props = new HashMap<>();
+        //a key ending with a high surrogate followed by a value starting with the low one form a valid surrogate pair
+        props.put("k\uD83D", "\uDE00v");
+        props.put("lone", "\uDC00\uD800x\uD800");
+
+        String name = "\u017Elu\u0165ou\u010Dk\u00FD k\u016F\u0148 \u20AC \uD83D\uDE00" + new String(new char[600])
+                .replace('\0', '\u0161');
+
+        Resource.Blueprint bl = Resource.Blueprint.builder().withId("id").withName(name).withProperties(props)
+                .withResourceTypePath("../../resourceType").build();
+
+        String contentHash = ContentHash.of(bl, CanonicalPath.of().tenant("tnt").feed("fd").resource("id").get());
+
+        Assert.assertEquals(hash("../../rt;resourceType" + name, props), contentHash);
+    }
 
     private String digest(String content) throws NoSuchAlgorithmException {
         byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.getBytes(Charset.forName("UTF-8")));
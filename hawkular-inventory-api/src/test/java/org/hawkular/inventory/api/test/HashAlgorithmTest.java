@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.test;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import org.hawkular.inventory.api.model.ContentHash;
+import org.hawkular.inventory.api.model.HashAlgorithm;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @since 1.1.3
+ */
+public class HashAlgorithmTest {
+
+    @Test
+    public void testMurmur3MatchesReferenceImplementation() throws Exception {
+        assertMurmur3("00000000000000000000000000000000", "");
+        assertMurmur3("897859f6655555855a890e51483ab5e6", "a");
+        assertMurmur3("029bbd41b3a7d8cb191dae486a901e5b", "hello");
+        assertMurmur3("a7d14acf946de04bda08a7635c5bc387", "0123456789abcdef");
+        assertMurmur3("def945aa2d61328eee72c306c2f40008", "0123456789abcdefg");
+        assertMurmur3("6c1b07bc7bbc4be347939ac4a93c437a", "The quick brown fox jumps over the lazy dog");
+    }
+
+    @Test
+    public void testMurmur3Streaming() throws Exception {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(Charset.forName("UTF-8"));
+
+        MessageDigest digest = HashAlgorithm.MURMUR3_128.newDigest();
+        byte[] whole = digest.digest(data);
+
+        for (byte b : data) {
+            digest.update(b);
+        }
+        Assert.assertArrayEquals(whole, digest.digest());
+
+        for (int split = 0; split <= data.length; ++split) {
+            digest.update(data, 0, split);
+            digest.update(data, split, data.length - split);
+            Assert.assertArrayEquals("Split at " + split, whole, digest.digest());
+        }
+    }
+
+    @Test
+    public void testHashFormat() throws Exception {
+        String hash = ContentHash.of(Tenant.Blueprint.builder().withId("t").build(),
+                CanonicalPath.of().tenant("t").get());
+
+        Assert.assertEquals(HashAlgorithm.SHA_1, HashAlgorithm.current());
+        Assert.assertTrue(HashAlgorithm.current().isLegacy());
+        Assert.assertEquals(HashAlgorithm.SHA_1, HashAlgorithm.of(hash));
+        Assert.assertTrue(hash.length() <= 2 * HashAlgorithm.current().newDigest().getDigestLength());
+        Assert.assertTrue(hash.matches("[0-9a-f]+"));
+
+        Assert.assertEquals(HashAlgorithm.SHA_1, HashAlgorithm.of("0123abcdef"));
+        Assert.assertEquals(HashAlgorithm.MURMUR3_128, HashAlgorithm.of("m0123abcdef"));
+        Assert.assertNull(HashAlgorithm.of("x0123abcdef"));
+        Assert.assertFalse(HashAlgorithm.MURMUR3_128.isLegacy());
+        Assert.assertEquals(HashAlgorithm.MURMUR3_128, HashAlgorithm.fromName("murmur3-128"));
+        Assert.assertEquals(HashAlgorithm.SHA_1, HashAlgorithm.fromName("SHA-1"));
+    }
+
+    private static void assertMurmur3(String expectedHex, String input) {
+        byte[] digest = HashAlgorithm.MURMUR3_128.newDigest().digest(input.getBytes(Charset.forName("UTF-8")));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+
+        Assert.assertEquals(expectedHex, hex.toString());
+    }
+}
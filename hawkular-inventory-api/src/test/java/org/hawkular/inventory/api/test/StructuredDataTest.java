@@ -223,4 +223,16 @@ public class StructuredDataTest {
                         .putMap("new key").putString("p1", "a1").closeMap().build(),
                 map.update().toMap().updateMap("new key").putString("p1", "a1").closeMap().build());
     }
+
+    @Test
+    public void testDigest() throws Exception {
+        assertEquals(map.digest(), StructuredData.get().map().putBool("bool", true).putIntegral("int", 1L).build()
+                .digest());
+        Assert.assertNotEquals(map.digest(), list.digest());
+        Assert.assertNotEquals(bool.digest(), StructuredData.get().bool(false).digest());
+
+        StructuredData known = StructuredData.get().string("kachny").withKnownDigest("known");
+        assertEquals("known", known.digest());
+        assertEquals(string, known);
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.test;
+
+import static org.hawkular.inventory.paths.DataRole.OperationType.returnType;
+import static org.hawkular.inventory.paths.DataRole.Resource.configuration;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.AbstractHashTree;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Hashes;
+import org.hawkular.inventory.api.model.InventoryStructure;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricDataType;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.MetricUnit;
+import org.hawkular.inventory.api.model.OperationType;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.SyncHash;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.DataRole;
+import org.hawkular.inventory.paths.RelativePath;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @since 1.1.3
+ */
+public class SyncHashTest {
+
+    @Test
+    public void testParallelTreeHashSameAsSequential() throws Exception {
+        CanonicalPath feedPath = CanonicalPath.of().tenant("tenant").feed("feed").get();
+        InventoryStructure<Feed.Blueprint> structure = largeStructure();
+
+        SyncHash.Tree sequentialSync = SyncHash.treeOf(structure, feedPath);
+        Hashes.Tree sequentialHashes = Hashes.treeOf(structure, feedPath);
+
+        Map<RelativePath, String> expectedSync = flatten(sequentialSync, new HashMap<>());
+        Map<RelativePath, Hashes> expectedHashes = flatten(sequentialHashes, new HashMap<>());
+
+        //every resource, resource type and operation type also has its 2 (possibly undefined) data entities
+        Assert.assertEquals(1 + 3 * (1 + 2 + 1 + 2) + 2 + 40 * (1 + 2 + 5 * (1 + 2 + 1) + 3) + 10,
+                expectedSync.size());
+
+        for (int threshold : new int[]{1, 2, 7, 100}) {
+            SyncHash.Tree parallelSync = SyncHash.treeOf(structure, feedPath, rp -> null, threshold);
+            Hashes.Tree parallelHashes = Hashes.treeOf(structure, feedPath, rp -> null, threshold);
+
+            Assert.assertEquals(expectedSync, flatten(parallelSync, new HashMap<>()));
+            Assert.assertEquals(expectedHashes, flatten(parallelHashes, new HashMap<>()));
+        }
+
+        Assert.assertEquals(SyncHash.of(structure, feedPath), sequentialSync.getHash());
+    }
+
+    private static InventoryStructure<Feed.Blueprint> largeStructure() {
+        InventoryStructure.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                .of(Feed.Blueprint.builder().withId("feed").build());
+
+        for (int i = 0; i < 3; ++i) {
+            bld.startChild(ResourceType.Blueprint.builder().withId("rt" + i).build())
+                    .startChild(OperationType.Blueprint.builder().withId("op").build())
+                    /**/.addChild(DataEntity.Blueprint.<DataRole.OperationType>builder().withRole(returnType)
+                    /**/.withValue(StructuredData.get().integral((long) i)).build())
+                    .end()
+                    .end();
+        }
+
+        for (int i = 0; i < 2; ++i) {
+            bld.addChild(MetricType.Blueprint.builder(MetricDataType.GAUGE).withId("mt" + i)
+                    .withUnit(MetricUnit.NONE).withInterval(0L).build());
+        }
+
+        for (int i = 0; i < 40; ++i) {
+            InventoryStructure.ChildBuilder<?> rb = bld.startChild(Resource.Blueprint.builder()
+                    .withId("r" + i).withResourceTypePath("rt" + (i % 3)).withProperty("index", i).build());
+
+            rb.addChild(DataEntity.Blueprint.<DataRole.Resource>builder().withRole(configuration)
+                    .withValue(StructuredData.get().map().putString("key", "value" + i).build()).build());
+
+            for (int j = 0; j < 5; ++j) {
+                rb.startChild(Resource.Blueprint.builder().withId("child" + j)
+                        .withResourceTypePath("../rt" + (j % 3)).build())
+                        .addChild(Metric.Blueprint.builder().withId("m").withMetricTypePath("../../mt0")
+                                .withInterval(0L).build())
+                        .end();
+            }
+
+            for (int j = 0; j < 3; ++j) {
+                rb.addChild(Metric.Blueprint.builder().withId("m" + j).withMetricTypePath("../mt" + (j % 2))
+                        .withInterval((long) j).build());
+            }
+
+            rb.end();
+        }
+
+        for (int i = 0; i < 10; ++i) {
+            bld.addChild(Metric.Blueprint.builder().withId("m" + i).withMetricTypePath("mt1").withInterval(0L)
+                    .build());
+        }
+
+        return bld.build();
+    }
+
+    private static <T extends AbstractHashTree<T, H>, H extends Serializable>
+    Map<RelativePath, H> flatten(T tree, Map<RelativePath, H> result) {
+        result.put(tree.getPath(), tree.getHash());
+        tree.getChildren().forEach(c -> flatten(c, result));
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * @since 1.1.3
+ */
+public class NotificationDispatcherTest {
+
+    @Test
+    public void testSynchronousDelivery() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher();
+        Subject<Integer, Integer> subject = PublishSubject.create();
+        List<Integer> received = new ArrayList<>();
+        subject.subscribe(received::add);
+
+        dispatcher.dispatch(subject, 1, "t");
+
+        Assert.assertTrue(dispatcher.isSynchronous());
+        Assert.assertEquals(Collections.singletonList(1), received);
+    }
+
+    @Test
+    public void testAsynchronousDeliveryKeepsOrder() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(4, 10, false);
+        Subject<Integer, Integer> subject = PublishSubject.create();
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        subject.subscribe(i -> {
+            received.add(i);
+            done.countDown();
+        });
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            dispatcher.dispatch(subject, i, "t");
+            expected.add(i);
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, received);
+        Assert.assertEquals(0, dispatcher.getDroppedCount());
+
+        dispatcher.close();
+    }
+
+    @Test
+    public void testAsynchronousDeliveryKeepsOrderAcrossSubjects() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(4, 10, false);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+
+        List<Subject<Integer, Integer>> subjects = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            Subject<Integer, Integer> subject = PublishSubject.<Integer>create().toSerialized();
+            subject.subscribe(n -> {
+                received.add(n);
+                done.countDown();
+            });
+            subjects.add(subject);
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            dispatcher.dispatch(subjects.get(i % subjects.size()), i, "t");
+            expected.add(i);
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, received);
+
+        dispatcher.close();
+    }
+
+    @Test
+    public void testFullQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Subject<Integer, Integer> subject = PublishSubject.create();
+        subject.subscribe(i -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        NotificationDispatcher dropping = new NotificationDispatcher(1, 1, true);
+
+        //1 being processed, 1 in the queue, the rest dropped
+        for (int i = 0; i < 5; ++i) {
+            dropping.dispatch(subject, i, "t");
+        }
+
+        Assert.assertTrue(dropping.getDroppedCount() >= 3);
+        Assert.assertEquals(0, dropping.getBlockedCount());
+
+        NotificationDispatcher blocking = new NotificationDispatcher(1, 1, false);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 5; ++i) {
+                blocking.dispatch(subject, i, "t");
+            }
+        });
+        producer.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (blocking.getBlockedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertTrue(blocking.getBlockedCount() > 0);
+        Assert.assertEquals(0, blocking.getDroppedCount());
+
+        release.countDown();
+        producer.join(10000);
+
+        Assert.assertFalse(producer.isAlive());
+
+        dropping.close();
+        blocking.close();
+        Assert.assertEquals(0, blocking.getQueueDepth());
+    }
+}
@@ -55,34 +55,40 @@ public abstract class InventoryEvent<T extends AbstractElement<?, ?>> extends In
                         "'entityType' header property is missing.");
             }
 
-            switch (entityType) {
-                case "relationship":
-                    return RelationshipEvent.class;
-                case "tenant":
-                    return TenantEvent.class;
-                case "environment":
-                    return EnvironmentEvent.class;
-                case "resourceType":
-                    return ResourceTypeEvent.class;
-                case "metricType":
-                    return MetricTypeEvent.class;
-                case "feed":
-                    return FeedEvent.class;
-                case "resource":
-                    return ResourceEvent.class;
-                case "metric":
-                    return MetricEvent.class;
-                case "dataEntity":
-                    return DataEntityEvent.class;
-                default:
-                    throw new IllegalArgumentException("Failed to determine inventory event type from the " +
-                            "'entityType' property: " + entityType);
-            }
+            return eventTypeOf(entityType);
         } catch (JMSException e) {
             throw new IllegalArgumentException("Failed to read inventory event type.", e);
         }
     }
 
+    static Class<? extends InventoryEvent<?>> eventTypeOf(String entityType) {
+        switch (entityType) {
+            case "relationship":
+                return RelationshipEvent.class;
+            case "tenant":
+                return TenantEvent.class;
+            case "environment":
+                return EnvironmentEvent.class;
+            case "resourceType":
+                return ResourceTypeEvent.class;
+            case "metricType":
+                return MetricTypeEvent.class;
+            case "feed":
+                return FeedEvent.class;
+            case "resource":
+                return ResourceEvent.class;
+            case "metric":
+                return MetricEvent.class;
+            case "dataEntity":
+                return DataEntityEvent.class;
+            case "batch":
+                return InventoryEventBatch.class;
+            default:
+                throw new IllegalArgumentException("Failed to determine inventory event type from the " +
+                        "'entityType' property: " + entityType);
+        }
+    }
+
     public static InventoryEvent<?> decode(Message message) {
         try {
             String body = ((TextMessage) message).getText();
@@ -171,12 +177,16 @@ public abstract class InventoryEvent<T extends AbstractElement<?, ?>> extends In
         HashMap<String, String> headers = new HashMap<>();
         headers.put("action", action.name());
         if (object != null) {
-            headers.put("entityType", firstLetterLowercased(object.getClass().getSimpleName()));
+            headers.put("entityType", entityTypeName());
             headers.put("path", object.getPath().toString());
         }
         return headers;
     }
 
+    String entityTypeName() {
+        return firstLetterLowercased(object.getClass().getSimpleName());
+    }
+
     private static String firstLetterLowercased(String source) {
         return Character.toLowerCase(source.charAt(0)) + source.substring(1);
     }
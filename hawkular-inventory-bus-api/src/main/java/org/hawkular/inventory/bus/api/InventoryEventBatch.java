@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.bus.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Tenant;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A single message carrying several inventory events that happened in a single tenant. The events are in the order
+ * in which they happened.
+ *
+ * <p>The batch has neither the action nor the object set. Its {@code entityType} message header is {@code batch} and
+ * the {@code path} header contains the path of the tenant.
+ *
+ * @since 1.1.3
+ */
+public final class InventoryEventBatch extends InventoryEvent<AbstractElement<?, ?>> {
+
+    @JsonSerialize(using = EventsSerializer.class)
+    @JsonDeserialize(using = EventsDeserializer.class)
+    private List<InventoryEvent<?>> events;
+
+    public InventoryEventBatch() {
+        this.events = new ArrayList<>();
+    }
+
+    public InventoryEventBatch(Tenant tenant, List<InventoryEvent<?>> events) {
+        super(null, tenant, null);
+        this.events = events;
+    }
+
+    public List<InventoryEvent<?>> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<InventoryEvent<?>> events) {
+        this.events = events;
+    }
+
+    @Override public Map<String, String> createMessageHeaders() {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("entityType", "batch");
+        if (getTenant() != null) {
+            headers.put("path", getTenant().getPath().toString());
+        }
+        return headers;
+    }
+
+    /**
+     * Each event is serialized together with its entity type so that it can be deserialized as the correct subclass
+     * of {@link InventoryEvent}.
+     */
+    private static final class EventsSerializer extends JsonSerializer<List<InventoryEvent<?>>> {
+        @Override public void serialize(List<InventoryEvent<?>> value, JsonGenerator gen,
+                                        SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (InventoryEvent<?> e : value) {
+                gen.writeStartObject();
+                gen.writeStringField("entityType", e.entityTypeName());
+                gen.writeObjectField("event", e);
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static final class EventsDeserializer extends JsonDeserializer<List<InventoryEvent<?>>> {
+        @Override public List<InventoryEvent<?>> deserialize(JsonParser p, DeserializationContext ctxt)
+                throws IOException {
+            JsonNode events = p.readValueAsTree();
+
+            List<InventoryEvent<?>> ret = new ArrayList<>(events.size());
+            for (JsonNode e : events) {
+                ret.add(p.getCodec().treeToValue(e.get("event"), eventTypeOf(e.get("entityType").asText())));
+            }
+
+            return ret;
+        }
+    }
+}
@@ -29,7 +29,8 @@ import org.hawkular.inventory.api.model.Tenant;
  *
  * <p>The users are supposed to implement the {@link #onBasicMessage(BasicMessage)} method where they receive an
  * instance of one of the concrete subclasses of the {@link InventoryEvent} (i.e. {@link TenantEvent}, {@link FeedEvent}
- * and the like).
+ * and the like). If the inventory is configured to batch the events, an {@link InventoryEventBatch} can be received,
+ * too.
  *
  * @author Lukas Krejci
  * @since 0.3.2
@@ -76,7 +76,8 @@ public final class BusIntegration {
         ConnectionFactory connectionFactory = (ConnectionFactory) namingContext.lookup(
                 configuration.getConnectionFactoryJndiName());
 
-        this.messageSender = new MessageSender(connectionFactory, configuration.getInventoryChangesTopicName());
+        this.messageSender = new MessageSender(connectionFactory, configuration.getInventoryChangesTopicName(),
+                configuration.getEventBatchSize(), configuration.getEventBatchWindow());
 
         install();
 
@@ -89,6 +90,8 @@ public final class BusIntegration {
         namingContext = null;
         queryListener.close();
         queryListener = null;
+        messageSender.close();
+        messageSender = null;
     }
 
     private void install() {
@@ -33,6 +33,8 @@ public final class Configuration {
     private final String connectionFactoryJndiName;
     private final String entityChangesTopicName;
     private final String queryQueueName;
+    private final int eventBatchSize;
+    private final long eventBatchWindow;
 
     public static Configuration fromProperties(Properties properties) {
         Map<String, String> map = new HashMap<>();
@@ -59,6 +61,8 @@ public final class Configuration {
         String connectionFactoryJndiName = null;
         String entityChangesTopicName = null;
         String queryQueueName = null;
+        int eventBatchSize = 0;
+        long eventBatchWindow = 0;
 
         for (Property p : Property.values()) {
             String value = map.get(p);
@@ -76,10 +80,17 @@ public final class Configuration {
                 case INVENTORY_QUERY_QUEUE_NAME:
                     queryQueueName = value;
                     break;
+                case EVENT_BATCH_SIZE:
+                    eventBatchSize = Integer.parseInt(value);
+                    break;
+                case EVENT_BATCH_WINDOW:
+                    eventBatchWindow = Long.parseLong(value);
+                    break;
             }
         }
 
-        return new Configuration(connectionFactoryJndiName, entityChangesTopicName, queryQueueName);
+        return new Configuration(connectionFactoryJndiName, entityChangesTopicName, queryQueueName, eventBatchSize,
+                eventBatchWindow);
     }
 
     public static Configuration getDefaultConfiguration() {
@@ -90,10 +101,13 @@ public final class Configuration {
         return new Builder();
     }
 
-    private Configuration(String connectionFactoryJndiName, String entityChangesTopicName, String queryQueueName) {
+    private Configuration(String connectionFactoryJndiName, String entityChangesTopicName, String queryQueueName,
+                          int eventBatchSize, long eventBatchWindow) {
         this.connectionFactoryJndiName = connectionFactoryJndiName;
         this.entityChangesTopicName = entityChangesTopicName;
         this.queryQueueName = queryQueueName;
+        this.eventBatchSize = eventBatchSize;
+        this.eventBatchWindow = eventBatchWindow;
     }
 
     public String getConnectionFactoryJndiName() {
@@ -108,6 +122,20 @@ public final class Configuration {
         return queryQueueName;
     }
 
+    /**
+     * @return the maximum number of events sent in a single message or 1 or less if the events should not be batched
+     */
+    public int getEventBatchSize() {
+        return eventBatchSize;
+    }
+
+    /**
+     * @return the maximum time in milliseconds the events can wait in a batch before being sent
+     */
+    public long getEventBatchWindow() {
+        return eventBatchWindow;
+    }
+
     public Builder modify() {
         EnumMap<Property, String> m = new EnumMap<>(Property.class);
         toMap().forEach((k, v) -> m.put(Property.valueOf(k), v));
@@ -120,6 +148,8 @@ public final class Configuration {
 
         ret.put(Property.CONNECTION_FACTORY_JNDI_NAME.propertyName, connectionFactoryJndiName);
         ret.put(Property.INVENTORY_CHANGES_TOPIC_NAME.propertyName, entityChangesTopicName);
+        ret.put(Property.EVENT_BATCH_SIZE.propertyName, Integer.toString(eventBatchSize));
+        ret.put(Property.EVENT_BATCH_WINDOW.propertyName, Long.toString(eventBatchWindow));
 
         return ret;
     }
@@ -130,7 +160,9 @@ public final class Configuration {
         INVENTORY_CHANGES_TOPIC_NAME("HawkularInventoryChanges",
                 "hawkular.inventory.bus.inventoryChangesTopicName"),
         INVENTORY_QUERY_QUEUE_NAME("HawkularInventoryQuery",
-                "hawkular.inventory.bus.inventoryQueryQueName");
+                "hawkular.inventory.bus.inventoryQueryQueName"),
+        EVENT_BATCH_SIZE("0", "hawkular.inventory.bus.eventBatchSize"),
+        EVENT_BATCH_WINDOW("100", "hawkular.inventory.bus.eventBatchWindowMillis");
 
         private final String defaultValue;
         private final String propertyName;
@@ -18,7 +18,15 @@ package org.hawkular.inventory.bus;
 
 import static org.hawkular.inventory.bus.Log.LOG;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
@@ -31,39 +39,194 @@ import org.hawkular.bus.common.producer.ProducerConnectionContext;
 import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.bus.api.InventoryEvent;
+import org.hawkular.inventory.bus.api.InventoryEventBatch;
 
 /**
+ * Sends the inventory events to the bus.
+ *
+ * <p>The JMS connection, session and producer are created lazily on the first send and reused for all the subsequent
+ * messages until the sender is closed. If sending fails, the connection is thrown away and the message is retried
+ * once on a new connection. Because JMS sessions are not thread-safe, the sending is serialized.
+ *
+ * <p>If the batch size is greater than 1, the events are not sent right away but are collected per tenant and sent
+ * as a single {@link InventoryEventBatch} once the batch is full or once the batch window elapses. A full batch is
+ * sent synchronously by the thread that filled it, so the producers of the events are slowed down to the pace of the
+ * bus instead of buffering without limits. A batch that fails to be sent is dropped, the same way as a message that
+ * fails to be sent even after the retry, so that a permanently failing message cannot block the events following it.
+ *
  * @author Lukas Krejci
  * @since 0.0.1
  */
-final class MessageSender {
+final class MessageSender implements Closeable {
     private final String topicName;
     private final ConnectionFactory topicConnectionFactory;
     private final MessageProcessor messageProcessor;
+    private final int batchSize;
+    private final ScheduledExecutorService batchFlusher;
+    private final Map<String, InventoryEventBatch> pendingBatches = new LinkedHashMap<>();
+
+    private ConnectionContextFactory connectionContextFactory;
+    private ProducerConnectionContext producerConnectionContext;
+    private boolean closed;
 
     public MessageSender(ConnectionFactory topicConnectionFactory, String topicName) {
+        this(topicConnectionFactory, topicName, 0, 0);
+    }
+
+    /**
+     * @param topicConnectionFactory the connection factory to use
+     * @param topicName              the name of the topic to send the events to
+     * @param batchSize              the maximum number of events sent in a single message. If 1 or less, each event
+     *                               is sent in its own message.
+     * @param batchWindow            the maximum time in milliseconds an event can wait in the batch before it is sent
+     */
+    public MessageSender(ConnectionFactory topicConnectionFactory, String topicName, int batchSize,
+                         long batchWindow) {
         this.topicConnectionFactory = topicConnectionFactory;
         this.topicName = topicName;
+        this.batchSize = batchSize;
 
         this.messageProcessor = new MessageProcessor();
+
+        if (batchSize > 1) {
+            batchFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Hawkular Inventory Bus Event Batcher");
+                t.setDaemon(true);
+                return t;
+            });
+            long window = Math.max(1, batchWindow);
+            batchFlusher.scheduleWithFixedDelay(this::flushPending, window, window, TimeUnit.MILLISECONDS);
+        } else {
+            batchFlusher = null;
+        }
     }
 
     public void send(Interest<?, ?> interest, Tenant tenant, Object entity) {
         InventoryEvent<?> message = InventoryEvent.from(interest.getAction(), tenant, entity);
-        Map<String, String> headers = message.createMessageHeaders();
 
+        synchronized (this) {
+            if (closed) {
+                LOG.failedToSendMessage(message.toString());
+                return;
+            }
+
+            if (batchFlusher == null) {
+                publish(message);
+                return;
+            }
+
+            InventoryEventBatch batch = pendingBatches.get(tenant.getId());
+            if (batch == null) {
+                batch = new InventoryEventBatch(tenant, new ArrayList<>(batchSize));
+                pendingBatches.put(tenant.getId(), batch);
+            }
+
+            batch.getEvents().add(message);
+
+            if (batch.getEvents().size() >= batchSize) {
+                pendingBatches.remove(tenant.getId());
+                publish(batch);
+            }
+        }
+    }
+
+    /**
+     * Sends all the pending batches.
+     */
+    public synchronized void flush() {
+        //each batch is removed before it is sent, so that a failing batch is dropped instead of being resent over and
+        //over again by the subsequent flushes
+        Iterator<InventoryEventBatch> it = pendingBatches.values().iterator();
+        while (it.hasNext()) {
+            InventoryEventBatch b = it.next();
+            it.remove();
+
+            //no need to wrap a lone event
+            publish(b.getEvents().size() == 1 ? b.getEvents().get(0) : b);
+        }
+    }
+
+    /**
+     * The periodic flush. An exception escaping from a scheduled task would cancel all its future executions, so the
+     * failures are only logged here.
+     */
+    private void flushPending() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOG.failedToFlushBatch(e);
+        }
+    }
+
+    @Override public void close() throws IOException {
+        if (batchFlusher != null) {
+            batchFlusher.shutdown();
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            try {
+                flush();
+            } finally {
+                closed = true;
+                disconnect();
+            }
+        }
+    }
+
+    private void publish(InventoryEvent<?> message) {
+        Map<String, String> headers = message.createMessageHeaders();
 
         message.setCorrelationId(new MessageId());
-        try (ConnectionContextFactory ccf = new ConnectionContextFactory(topicConnectionFactory)) {
 
-            ProducerConnectionContext producerConnectionContext = ccf.createProducerConnectionContext(
+        try {
+            doSend(message, headers);
+        } catch (JMSException e) {
+            //the connection might have gone stale, so let's retry once with a fresh one
+            LOG.debugf(e, "Failed to send message %s, reconnecting and retrying.", message);
+            disconnect();
+            try {
+                doSend(message, headers);
+            } catch (JMSException e2) {
+                disconnect();
+                LOG.failedToSendMessage(message.toString());
+            }
+        }
+    }
+
+    private void doSend(InventoryEvent<?> message, Map<String, String> headers) throws JMSException {
+        if (producerConnectionContext == null) {
+            connectionContextFactory = new ConnectionContextFactory(topicConnectionFactory);
+            producerConnectionContext = connectionContextFactory.createProducerConnectionContext(
                     new Endpoint(Endpoint.Type.TOPIC, topicName));
-            messageProcessor.send(producerConnectionContext, message, headers);
+        }
 
-            Log.LOG.tracef("Sent message %s with headers %s to %s", message, headers,
-                    producerConnectionContext.getDestination());
-        } catch (JMSException e) {
-            LOG.failedToSendMessage(message.toString());
+        messageProcessor.send(producerConnectionContext, message, headers);
+
+        Log.LOG.tracef("Sent message %s with headers %s to %s", message, headers,
+                producerConnectionContext.getDestination());
+    }
+
+    private void disconnect() {
+        if (producerConnectionContext != null) {
+            try {
+                producerConnectionContext.close();
+            } catch (IOException e) {
+                LOG.debugf(e, "Failed to close the producer connection context.");
+            }
+            producerConnectionContext = null;
+        }
+
+        if (connectionContextFactory != null) {
+            try {
+                connectionContextFactory.close();
+            } catch (JMSException e) {
+                LOG.debugf(e, "Failed to close the connection context factory.");
+            }
+            connectionContextFactory = null;
         }
     }
 }
@@ -21,14 +21,18 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
+import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import javax.naming.Binding;
 import javax.naming.Context;
@@ -42,6 +46,7 @@ import javax.naming.spi.InitialContextFactory;
 import org.hawkular.bus.common.MessageProcessor;
 import org.hawkular.bus.common.consumer.ConsumerConnectionContext;
 import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.Query;
 import org.hawkular.inventory.api.filters.With;
 import org.hawkular.inventory.api.model.DataEntity;
@@ -63,6 +68,7 @@ import org.hawkular.inventory.bus.api.DataEntityEvent;
 import org.hawkular.inventory.bus.api.EnvironmentEvent;
 import org.hawkular.inventory.bus.api.FeedEvent;
 import org.hawkular.inventory.bus.api.InventoryEvent;
+import org.hawkular.inventory.bus.api.InventoryEventBatch;
 import org.hawkular.inventory.bus.api.InventoryEventMessageListener;
 import org.hawkular.inventory.bus.api.InventoryQueryRequestMessage;
 import org.hawkular.inventory.bus.api.InventoryQueryResponseMessage;
@@ -163,6 +169,69 @@ public class BusTest {
                 DataEntityEvent.class).getObject())));
     }
 
+    @Test
+    public void batchSerializationTest() {
+        Tenant tenant = new Tenant(CanonicalPath.fromString("/t;t"), null);
+        EnvironmentEvent environmentEvent = new EnvironmentEvent(Action.Enumerated.CREATED, tenant,
+                new Environment(CanonicalPath.fromString("/t;t/e;e"), null, objectProperties));
+        FeedEvent feedEvent = new FeedEvent(Action.Enumerated.DELETED, tenant,
+                new Feed(CanonicalPath.fromString("/t;t/f;f"), null, null, null, objectProperties));
+
+        InventoryEventBatch batch = new InventoryEventBatch(tenant, Arrays.asList(environmentEvent, feedEvent));
+
+        Map<String, String> headers = batch.createMessageHeaders();
+        assertThat(headers.get("entityType"), is(equalTo("batch")));
+        assertThat(headers.get("path"), is(equalTo("/t;t")));
+
+        InventoryEventBatch deserialized = InventoryEventBatch.fromJSON(batch.toJSON(), InventoryEventBatch.class);
+
+        assertThat(deserialized.getTenant().getPath(), is(equalTo(tenant.getPath())));
+        assertThat(deserialized.getEvents().size(), is(equalTo(2)));
+        assertThat(deserialized.getEvents().get(0).getClass(), is(equalTo(EnvironmentEvent.class)));
+        assertThat(deserialized.getEvents().get(0).getObject(), is(equalTo(environmentEvent.getObject())));
+        assertThat(deserialized.getEvents().get(1).getClass(), is(equalTo(FeedEvent.class)));
+        assertThat(deserialized.getEvents().get(1).getAction(), is(equalTo(Action.Enumerated.DELETED)));
+        assertThat(deserialized.getEvents().get(1).getObject(), is(equalTo(feedEvent.getObject())));
+    }
+
+    @Test
+    public void batchFlushSurvivesSendFailures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ConnectionFactory failing = (ConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ConnectionFactory.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0]
+                                : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "failing";
+                    }
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("Bus not available.");
+                });
+
+        Tenant tenant = new Tenant(CanonicalPath.fromString("/t;t"), null);
+        Interest<Tenant, Tenant> interest = Interest.in(Tenant.class).being(Action.created());
+
+        MessageSender sender = new MessageSender(failing, "topic", 10, 10);
+        try {
+            sender.send(interest, tenant, tenant);
+            waitUntil(() -> attempts.get() > 0);
+            int failed = attempts.get();
+
+            //the failed batch is dropped and the periodic flush keeps running
+            sender.send(interest, tenant, tenant);
+            waitUntil(() -> attempts.get() > failed);
+        } finally {
+            sender.close();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timed out waiting for the condition.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
     @Test
     public void createTenantEventFromJSON() {
         Tenant tenant = new Tenant(CanonicalPath.fromString("/t;c"), null, objectProperties);
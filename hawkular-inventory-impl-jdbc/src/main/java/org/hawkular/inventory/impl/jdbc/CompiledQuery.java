@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import static java.util.Collections.emptyList;
+
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.DATA;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.ENTITY;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.RELATIONSHIP;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.inventory.api.paging.Order;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.impl.jdbc.JdbcElement.Kind;
+
+/**
+ * A query compiled into a union of SQL selects, one for each "path" through the query. The database orders, pages and
+ * counts the results of the compiled query so that only the elements on the requested page are loaded.
+ *
+ * <p>The results are ordered the same way as in the in-memory ordering of the results of the evaluated queries with
+ * the exception of the user defined properties with values of different types. Those are ordered by the type first
+ * (missing values, strings, numbers) and only then by the values. The order of the canonical paths (and therefore the
+ * order of the cursor-based pages) follows the collation of the database.
+ *
+ * @since 1.1.3
+ */
+final class CompiledQuery {
+
+    private static final String NO_NUMBER = "CAST(NULL AS DOUBLE PRECISION)";
+    private static final String NO_STRING = "CAST(NULL AS VARCHAR)";
+
+    private final List<String> commonTables;
+    private final List<Object> commonTableParams;
+    private final List<Member> members;
+
+    /**
+     * @param commonTables      the definitions of the (possibly recursive) common table expressions the members use
+     * @param commonTableParams the parameters of the common table expressions
+     * @param members           the selects of the union
+     */
+    CompiledQuery(List<String> commonTables, List<Object> commonTableParams, List<Member> members) {
+        this.commonTables = commonTables;
+        this.commonTableParams = commonTableParams;
+        this.members = members;
+    }
+
+    /**
+     * @return the number of the results
+     */
+    long count(Connection connection) throws SQLException {
+        if (members.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> params = new ArrayList<>(commonTableParams);
+        String sql = with() + "SELECT COUNT(*) FROM (" + union(emptyList(), params) + ") r";
+
+        try (PreparedStatement st = prepare(connection, sql, params); ResultSet rs = st.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Lists the results in the provided order.
+     *
+     * @param orders the specific orders to apply
+     * @param offset the number of the results to skip
+     * @param limit  the maximum number of the results to return or -1 to return all of them
+     */
+    List<JdbcElement> list(Connection connection, List<Order> orders, int offset, int limit) throws SQLException {
+        return list(connection, orders, false, null, offset, limit);
+    }
+
+    /**
+     * Lists the results following the provided canonical path in the order of their canonical paths. The results
+     * without a canonical path (the structured data) are left out.
+     *
+     * @param after the canonical path to start after or null to start from the beginning
+     * @param limit the maximum number of the results to return
+     */
+    List<JdbcElement> listAfter(Connection connection, String after, int limit) throws SQLException {
+        return list(connection, emptyList(), true, after, 0, limit);
+    }
+
+    private List<JdbcElement> list(Connection connection, List<Order> orders, boolean cursor, String after,
+                                   int offset, int limit) throws SQLException {
+        if (members.isEmpty()) {
+            return emptyList();
+        }
+
+        List<Object> params = new ArrayList<>(commonTableParams);
+
+        StringBuilder sql = new StringBuilder(with()).append("SELECT r.r_kind, ")
+                .append(JdbcElement.columns(ENTITY, "e")).append(", ")
+                .append(JdbcElement.columns(RELATIONSHIP, "l")).append(", ")
+                .append(JdbcElement.columns(DATA, "d"))
+                .append(" FROM (").append(union(orders, params)).append(") r")
+                .append(" LEFT JOIN hi_entity e ON r.r_kind = ").append(ENTITY.ordinal()).append(" AND e.id = r.r_id")
+                .append(" LEFT JOIN hi_relationship l ON r.r_kind = ").append(RELATIONSHIP.ordinal())
+                .append(" AND l.id = r.r_id")
+                .append(" LEFT JOIN hi_data d ON r.r_kind = ").append(DATA.ordinal()).append(" AND d.id = r.r_id");
+
+        if (cursor) {
+            sql.append(" WHERE r.r_cp IS NOT NULL");
+            if (after != null) {
+                sql.append(" AND r.r_cp > ?");
+                params.add(after);
+            }
+        }
+
+        sql.append(" ORDER BY ");
+        if (cursor) {
+            sql.append("r.r_cp, ");
+        }
+        for (int i = 0; i < orders.size(); ++i) {
+            String direction = orders.get(i).getDirection() == Order.Direction.DESCENDING ? " DESC NULLS LAST"
+                    : " ASC NULLS FIRST";
+            sql.append("r.o").append(i).append("_n").append(direction).append(", ");
+            sql.append("r.o").append(i).append("_s").append(direction).append(", ");
+        }
+        //the ids make the order total so that the pages don't overlap
+        sql.append("r.r_kind, r.r_id");
+
+        if (limit >= 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+        if (offset > 0) {
+            sql.append(" OFFSET ?");
+            params.add(offset);
+        }
+
+        int relationshipStart = 2 + JdbcElement.columnCount(ENTITY);
+        int dataStart = relationshipStart + JdbcElement.columnCount(RELATIONSHIP);
+
+        List<JdbcElement> ret = new ArrayList<>();
+        try (PreparedStatement st = prepare(connection, sql.toString(), params); ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                Kind kind = Kind.values()[rs.getInt(1)];
+                switch (kind) {
+                    case ENTITY:
+                        ret.add(JdbcElement.read(ENTITY, rs, 2));
+                        break;
+                    case RELATIONSHIP:
+                        ret.add(JdbcElement.read(RELATIONSHIP, rs, relationshipStart));
+                        break;
+                    default:
+                        ret.add(JdbcElement.read(DATA, rs, dataStart));
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private String with() {
+        return commonTables.isEmpty() ? "" : "WITH RECURSIVE " + String.join(", ", commonTables) + " ";
+    }
+
+    private String union(List<Order> orders, List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+        for (Member m : members) {
+            if (sql.length() > 0) {
+                sql.append(" UNION ALL ");
+            }
+            m.select(sql, orders, params);
+        }
+        return sql.toString();
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql, List<Object> params)
+            throws SQLException {
+        PreparedStatement ret = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.size(); ++i) {
+                ret.setObject(i + 1, params.get(i));
+            }
+        } catch (SQLException e) {
+            ret.close();
+            throw e;
+        }
+        return ret;
+    }
+
+    /**
+     * A single select of the union. The select produces the kind, the id and the canonical path of the result along
+     * with the values to order by.
+     */
+    static final class Member {
+        private final String fromAndWhere;
+        private final List<Object> params;
+        private final String alias;
+        private final Kind kind;
+
+        /**
+         * @param fromAndWhere the FROM and WHERE clauses of the select (without the FROM keyword)
+         * @param params       the parameters of the WHERE clause
+         * @param alias        the alias of the result in the select
+         * @param kind         the kind of the result
+         */
+        Member(String fromAndWhere, List<Object> params, String alias, Kind kind) {
+            this.fromAndWhere = fromAndWhere;
+            this.params = params;
+            this.alias = alias;
+            this.kind = kind;
+        }
+
+        void select(StringBuilder sql, List<Order> orders, List<Object> params) {
+            sql.append("SELECT ").append(kind.ordinal()).append(" AS r_kind, ").append(alias).append(".id AS r_id, ")
+                    .append(canonicalPath()).append(" AS r_cp");
+
+            for (int i = 0; i < orders.size(); ++i) {
+                String[] values = orderValues(orders.get(i).getField(), params);
+                sql.append(", ").append(values[0]).append(" AS o").append(i).append("_n");
+                sql.append(", ").append(values[1]).append(" AS o").append(i).append("_s");
+            }
+
+            sql.append(" FROM ").append(fromAndWhere);
+            params.addAll(this.params);
+        }
+
+        private String canonicalPath() {
+            switch (kind) {
+                case ENTITY:
+                    return alias + ".cp";
+                case RELATIONSHIP:
+                    return "'/rl;' || CAST(" + alias + ".id AS VARCHAR)";
+                default:
+                    return NO_STRING;
+            }
+        }
+
+        /**
+         * The SQL counterpart of the order values of the elements loaded in memory. Each value is expressed as two
+         * columns, one for the numbers and one for the strings, because the user defined properties can have values
+         * of different types.
+         */
+        private String[] orderValues(String field, List<Object> params) {
+            String property = ElementType.mapUserDefined(field);
+
+            if (kind == ENTITY) {
+                String column = JdbcElement.columnOf(ENTITY, property);
+                if ("collection_interval".equals(column)) {
+                    return new String[]{"CAST(" + alias + "." + column + " AS DOUBLE PRECISION)", NO_STRING};
+                } else if (column != null) {
+                    return new String[]{NO_NUMBER, alias + "." + column};
+                }
+            } else if (kind == RELATIONSHIP) {
+                String column = JdbcElement.columnOf(RELATIONSHIP, property);
+                if ("__eid".equals(property)) {
+                    return new String[]{NO_NUMBER, "CAST(" + alias + ".id AS VARCHAR)"};
+                } else if ("__cp".equals(property)) {
+                    return new String[]{NO_NUMBER, canonicalPath()};
+                } else if (column != null) {
+                    return new String[]{NO_NUMBER, alias + "." + column};
+                }
+            } else {
+                return new String[]{NO_NUMBER, NO_STRING};
+            }
+
+            String lookup = " FROM " + (kind == ENTITY ? "hi_entity_property" : "hi_relationship_property")
+                    + " p WHERE p.element_id = " + alias + ".id AND p.name = ?)";
+            params.add(property);
+            params.add(property);
+
+            return new String[]{"(SELECT COALESCE(CAST(p.long_value AS DOUBLE PRECISION), p.double_value)" + lookup,
+                    "(SELECT p.string_value" + lookup};
+        }
+    }
+}
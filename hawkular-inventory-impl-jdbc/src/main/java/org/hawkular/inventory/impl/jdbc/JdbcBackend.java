@@ -0,0 +1,1597 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.DATA;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.DATA_LINK;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.ENTITY;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.RELATIONSHIP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.hawkular.inventory.api.EntityAlreadyExistsException;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.Relationships;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.ElementBlueprintVisitor;
+import org.hawkular.inventory.api.model.ElementUpdateVisitor;
+import org.hawkular.inventory.api.model.ElementVisitor;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.HashAlgorithm;
+import org.hawkular.inventory.api.model.Hashes;
+import org.hawkular.inventory.api.model.MetadataPack;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricDataType;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.MetricUnit;
+import org.hawkular.inventory.api.model.OperationType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.api.paging.Order;
+import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.Pager;
+import org.hawkular.inventory.base.spi.CommitFailureException;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.hawkular.inventory.base.spi.PagingCursors;
+import org.hawkular.inventory.base.spi.ShallowStructuredData;
+import org.hawkular.inventory.impl.jdbc.JdbcElement.Kind;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.DataRole;
+import org.hawkular.inventory.paths.RelativePath;
+import org.hawkular.inventory.paths.SegmentType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The inventory backend storing the inventory in a relational database.
+ *
+ * <p>The root backend uses a short-lived auto-committing connection for each call. The transactional backends hold
+ * a single connection for the duration of the transaction.
+ *
+ * @since 1.1.3
+ */
+final class JdbcBackend implements InventoryBackend<JdbcElement> {
+
+    /**
+     * The SQL state of the unique constraint violation.
+     */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /**
+     * The SQL states of the serialization failure and the deadlock, which both can be resolved by retrying the
+     * transaction.
+     */
+    private static final Set<String> RETRYABLE_STATES = new HashSet<>(Arrays.asList("40001", "40P01"));
+
+    private final JdbcContext context;
+    private final boolean transactional;
+    private Connection connection;
+
+    JdbcBackend(JdbcContext context) {
+        this(context, false);
+    }
+
+    private JdbcBackend(JdbcContext context, boolean transactional) {
+        this.context = context;
+        this.transactional = transactional;
+    }
+
+    @Override public boolean isPreferringBigTransactions() {
+        return false;
+    }
+
+    @Override public boolean isUniqueIndexSupported() {
+        return true;
+    }
+
+    @Override public InventoryBackend<JdbcElement> startTransaction() {
+        return new JdbcBackend(context, true);
+    }
+
+    @Override public JdbcElement find(CanonicalPath path) throws ElementNotFoundException {
+        JdbcElement ret = run(c -> {
+            if (SegmentType.rl == path.getSegment().getElementType()) {
+                String eid = path.getSegment().getElementId();
+                Long id = QueryEvaluator.parseId(eid);
+                if (id != null) {
+                    return loadOne(c, RELATIONSHIP, "x.id = ?", id);
+                }
+
+                Long dataRootId = QueryEvaluator.parseDataLinkId(eid);
+                JdbcElement owner = dataRootId == null ? null
+                        : loadOne(c, ENTITY, "x.id = (SELECT d.owner_id FROM hi_data d WHERE d.id = ?)", dataRootId);
+                return owner == null ? null : JdbcElement.dataLink(owner, dataRootId);
+            } else {
+                return loadOne(c, ENTITY, "x.cp_hash = ?", JdbcElement.cpHash(path.toString()));
+            }
+        });
+
+        if (ret == null) {
+            throw new ElementNotFoundException();
+        }
+
+        return ret;
+    }
+
+    @Override public Page<JdbcElement> query(Query query, Pager pager) {
+        return traverse(null, query, pager);
+    }
+
+    @Override public JdbcElement querySingle(Query query) {
+        return traverseToSingle(null, query);
+    }
+
+    @Override public Page<JdbcElement> traverse(JdbcElement startingPoint, Query query, Pager pager) {
+        return run(c -> {
+            QueryEvaluator evaluator = evaluator(c);
+            CompiledQuery compiled = evaluator.compile(startingPoint, query);
+            if (compiled == null) {
+                return page(c, evaluator.evaluate(startingPoint, query), pager, Function.identity(),
+                        Function.identity());
+            }
+
+            return page(c, compiled, pager, Function.identity());
+        });
+    }
+
+    @Override public JdbcElement traverseToSingle(JdbcElement startingPoint, Query query) {
+        List<JdbcElement> results = run(c -> {
+            QueryEvaluator evaluator = evaluator(c);
+            CompiledQuery compiled = evaluator.compile(startingPoint, query);
+            return compiled == null ? evaluator.evaluate(startingPoint, query)
+                    : compiled.list(c, emptyList(), 0, 1);
+        });
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    @Override
+    public <T> Page<T> query(Query query, Pager pager, Function<JdbcElement, T> conversion,
+                             Function<T, Boolean> filter) {
+        return run(c -> {
+            QueryEvaluator evaluator = evaluator(c);
+
+            if (filter == null) {
+                CompiledQuery compiled = evaluator.compile(null, query);
+                if (compiled != null) {
+                    return page(c, compiled, pager, conversion);
+                }
+
+                return page(c, evaluator.evaluate(null, query), pager, conversion, Function.identity());
+            }
+
+            List<JdbcElement> results = evaluator.evaluate(null, query);
+
+            //the result filter needs the converted entities and can rule out some of them, which affects the total
+            //count. We therefore need to convert first and only then filter, count and page. The element is kept
+            //along with the converted entity so that the cursor can be read from it.
+            prefetch(c, results);
+            List<Pair<JdbcElement, T>> converted = results.stream().map(e -> new Pair<>(e, conversion.apply(e)))
+                    .filter(p -> filter.apply(p.second)).collect(toList());
+
+            return page(c, converted, pager, p -> p.second, p -> p.first);
+        });
+    }
+
+    @Override
+    public Iterator<JdbcElement> getTransitiveClosureOver(JdbcElement startingPoint,
+                                                          Relationships.Direction direction,
+                                                          String... relationshipNames) {
+        if (startingPoint.kind != ENTITY && startingPoint.kind != DATA) {
+            return Collections.emptyIterator();
+        }
+
+        //the closure is evaluated eagerly, because the callers might modify the conditions for the evaluation
+        //during the iteration
+        return run(c -> evaluator(c).closure(startingPoint, direction, relationshipNames)).iterator();
+    }
+
+    @Override
+    public <T extends Entity<?, ?>> Iterator<T> getTransitiveClosureOver(CanonicalPath startingPoint,
+                                                                         Relationships.Direction direction,
+                                                                         Class<T> clazz,
+                                                                         String... relationshipNames) {
+        try {
+            JdbcElement start = find(startingPoint);
+            if (start.kind != ENTITY) {
+                return Collections.emptyIterator();
+            }
+
+            List<JdbcElement> closure = run(c -> {
+                List<JdbcElement> ret = evaluator(c).closure(start, direction, relationshipNames);
+                prefetch(c, ret);
+                return ret;
+            });
+
+            return closure.stream().map(e -> convert(e, clazz)).iterator();
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(clazz, null);
+        }
+    }
+
+    @Override
+    public boolean hasRelationship(JdbcElement entity, Relationships.Direction direction, String relationshipName) {
+        if (entity.kind != ENTITY) {
+            return false;
+        }
+
+        if (hasData.name().equals(relationshipName)) {
+            return direction != Relationships.Direction.incoming && getDataRootId(entity) != null;
+        }
+
+        return run(c -> exists(c, "SELECT 1 FROM hi_relationship WHERE " + directionCondition(direction, "")
+                + " AND name = ?", directionParams(direction, entity.id, relationshipName)));
+    }
+
+    @Override
+    public boolean hasRelationship(JdbcElement source, JdbcElement target, String relationshipName) {
+        if (source.kind != ENTITY || (target.kind != ENTITY && target.kind != DATA)) {
+            return false;
+        }
+
+        if (target.kind == DATA) {
+            return hasData.name().equals(relationshipName) && Long.valueOf(target.id).equals(getDataRootId(source));
+        }
+
+        return run(c -> exists(c, "SELECT 1 FROM hi_relationship WHERE source_id = ? AND target_id = ? AND name = ?",
+                source.id, target.id, relationshipName));
+    }
+
+    @Override
+    public Set<JdbcElement> getRelationships(JdbcElement entity, Relationships.Direction direction,
+                                             String... names) {
+        if (entity.kind != ENTITY) {
+            return Collections.emptySet();
+        }
+
+        return run(c -> {
+            List<Object> params = new ArrayList<>(Arrays.asList(directionParams(direction, entity.id)));
+            String where = directionCondition(direction, "x.");
+            if (names.length > 0) {
+                where += " AND x.name IN (" + Stream.of(names).map(n -> "?").collect(joining(", ")) + ")";
+                params.addAll(Arrays.asList(names));
+            }
+
+            Set<JdbcElement> ret = new HashSet<>(load(c, RELATIONSHIP, where, params.toArray()));
+
+            if (direction != Relationships.Direction.incoming
+                    && (names.length == 0 || Arrays.asList(names).contains(hasData.name()))) {
+                Long dataRoot = dataRootId(c, entity);
+                if (dataRoot != null) {
+                    ret.add(JdbcElement.dataLink(entity, dataRoot));
+                }
+            }
+
+            return ret;
+        });
+    }
+
+    @Override
+    public JdbcElement getRelationship(JdbcElement source, JdbcElement target, String relationshipName)
+            throws ElementNotFoundException {
+
+        if (source.kind != ENTITY || (target.kind != ENTITY && target.kind != DATA)) {
+            throw new IllegalArgumentException("Source or target entity not an entity.");
+        }
+
+        if (relationshipName == null) {
+            throw new IllegalArgumentException("relationshipName == null");
+        }
+
+        JdbcElement ret;
+        if (target.kind == DATA) {
+            ret = hasRelationship(source, target, relationshipName) ? JdbcElement.dataLink(source, target.id) : null;
+        } else {
+            ret = run(c -> loadOne(c, RELATIONSHIP, "x.source_id = ? AND x.target_id = ? AND x.name = ?", source.id,
+                    target.id, relationshipName));
+        }
+
+        if (ret == null) {
+            throw new ElementNotFoundException();
+        }
+
+        return ret;
+    }
+
+    @Override public JdbcElement getRelationshipSource(JdbcElement relationship) {
+        return run(c -> loadOne(c, ENTITY, "x.id = ?", relationship.sourceId));
+    }
+
+    @Override public JdbcElement getRelationshipTarget(JdbcElement relationship) {
+        return run(c -> loadOne(c, relationship.kind == DATA_LINK ? DATA : ENTITY, "x.id = ?",
+                relationship.targetId));
+    }
+
+    @Override public String extractRelationshipName(JdbcElement relationship) {
+        return relationship.relationshipName;
+    }
+
+    @Override public String extractId(JdbcElement entityRepresentation) {
+        return entityRepresentation.eid;
+    }
+
+    @Override public Class<?> extractType(JdbcElement entityRepresentation) {
+        return entityRepresentation.type.getEntityType();
+    }
+
+    @Override public CanonicalPath extractCanonicalPath(JdbcElement entityRepresentation) {
+        if (entityRepresentation.cp == null) {
+            throw new IllegalArgumentException("Element is not representable using a canonical path. Element type is "
+                    + extractType(entityRepresentation).getSimpleName() + ", element id is '"
+                    + extractId(entityRepresentation) + "'.");
+        }
+        return CanonicalPath.fromString(entityRepresentation.cp);
+    }
+
+    @Override public String extractIdentityHash(JdbcElement entityRepresentation) {
+        return entityRepresentation.identityHash;
+    }
+
+    @Override public String extractContentHash(JdbcElement entityRepresentation) {
+        return entityRepresentation.contentHash;
+    }
+
+    @Override public String extractSyncHash(JdbcElement entityRepresentation) {
+        return entityRepresentation.syncHash;
+    }
+
+    @Override
+    public <T> T convert(JdbcElement entityRepresentation, Class<T> entityType) {
+        JdbcElement e = entityRepresentation;
+
+        Object converted;
+        switch (e.kind) {
+            case RELATIONSHIP:
+                converted = new Relationship(e.eid, e.relationshipName, CanonicalPath.fromString(e.sourceCp),
+                        CanonicalPath.fromString(e.targetCp));
+                break;
+            case DATA_LINK:
+                //the relationships to the structured data are not representable, because the data has no canonical
+                //path
+                throw new IllegalArgumentException("Element is not representable using a canonical path. Element"
+                        + " type is " + StructuredData.class.getSimpleName() + ", element id is '" + e.targetId
+                        + "'.");
+            case DATA:
+                converted = run(c -> loadStructuredData(c, e, StructuredData.class.equals(entityType)));
+                break;
+            case ENTITY:
+                converted = convertEntity(e);
+                break;
+            default:
+                throw new AssertionError("Unhandled kind of element: " + e.kind);
+        }
+
+        if (StructuredData.class.equals(entityType)) {
+            return entityType.cast(converted);
+        } else if (ShallowStructuredData.class.equals(entityType)) {
+            return entityType.cast(new ShallowStructuredData((StructuredData) converted));
+        }
+
+        Map<String, Object> properties = properties(e);
+
+        return ((AbstractElement<?, ?>) converted).accept(new ElementVisitor<T, Void>() {
+            @Override public T visitTenant(Tenant tenant, Void ignored) {
+                return common(tenant, Tenant.Update.builder());
+            }
+
+            @Override public T visitEnvironment(Environment environment, Void ignored) {
+                return common(environment, Environment.Update.builder());
+            }
+
+            @Override public T visitFeed(Feed feed, Void ignored) {
+                return common(feed, Feed.Update.builder());
+            }
+
+            @Override public T visitMetric(Metric metric, Void ignored) {
+                return common(metric, Metric.Update.builder());
+            }
+
+            @Override public T visitMetricType(MetricType metricType, Void ignored) {
+                return common(metricType, MetricType.Update.builder());
+            }
+
+            @Override public T visitResource(Resource resource, Void ignored) {
+                return common(resource, Resource.Update.builder());
+            }
+
+            @Override public T visitResourceType(ResourceType type, Void ignored) {
+                return common(type, ResourceType.Update.builder());
+            }
+
+            @Override public T visitData(DataEntity data, Void ignored) {
+                return common(data, DataEntity.Update.builder());
+            }
+
+            @Override public T visitOperationType(OperationType operationType, Void parameter) {
+                return common(operationType, OperationType.Update.builder());
+            }
+
+            @Override public T visitMetadataPack(MetadataPack metadataPack, Void parameter) {
+                return common(metadataPack, MetadataPack.Update.builder());
+            }
+
+            @Override public T visitUnknown(Object entity, Void parameter) {
+                return null;
+            }
+
+            @Override public T visitRelationship(Relationship relationship, Void parameter) {
+                return entityType.cast(relationship.update().with(Relationship.Update.builder()
+                        .withProperties(properties).build()));
+            }
+
+            private <U extends Entity.Update> T common(Entity<?, U> entity, Entity.Update.Builder<U, ?> bld) {
+                return entityType.cast(entity.update().with(bld.withName(e.name).withProperties(properties)
+                        .build()));
+            }
+        }, null);
+    }
+
+    private Object convertEntity(JdbcElement e) {
+        CanonicalPath cp = CanonicalPath.fromString(e.cp);
+
+        switch (e.type) {
+            case tenant:
+                return new Tenant(cp, e.contentHash);
+            case environment:
+                return new Environment(cp, e.contentHash);
+            case feed:
+                return new Feed(cp, e.identityHash, e.contentHash, e.syncHash);
+            case metric:
+                return new Metric(cp, e.identityHash, e.contentHash, e.syncHash,
+                        convert(definingType(e), MetricType.class), e.collectionInterval);
+            case metricType:
+                return new MetricType(cp, e.identityHash, e.contentHash, e.syncHash,
+                        MetricUnit.fromDisplayName(e.metricUnit), MetricDataType.fromDisplayName(e.metricDataType),
+                        e.collectionInterval);
+            case resource:
+                return new Resource(cp, e.identityHash, e.contentHash, e.syncHash,
+                        convert(definingType(e), ResourceType.class));
+            case resourceType:
+                return new ResourceType(cp, e.identityHash, e.contentHash, e.syncHash);
+            case dataEntity:
+                StructuredData data = run(c -> {
+                    JdbcElement root = loadOne(c, DATA, "x.owner_id = ?", e.id);
+                    return root == null ? null : loadStructuredData(c, root, true);
+                });
+                return new DataEntity(cp.up(), DataRole.valueOf(cp.getSegment().getElementId()), data,
+                        e.identityHash, e.contentHash, e.syncHash);
+            case operationType:
+                return new OperationType(cp, e.identityHash, e.contentHash, e.syncHash);
+            case metadatapack:
+                return new MetadataPack(cp);
+            default:
+                throw new IllegalArgumentException("Unknown type of entity: " + e.type);
+        }
+    }
+
+    @Override
+    public JdbcElement descendToData(JdbcElement dataEntityRepresentation, RelativePath dataPath) {
+        return traverseToSingle(dataEntityRepresentation, Query.path().with(With.dataAt(dataPath)).get());
+    }
+
+    @Override
+    public JdbcElement relate(JdbcElement sourceEntity, JdbcElement targetEntity, String name,
+                              Map<String, Object> properties) {
+        if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        }
+
+        if (sourceEntity.kind != ENTITY) {
+            throw new IllegalArgumentException("Source not an entity.");
+        }
+
+        if (targetEntity.kind == DATA && hasData.name().equals(name)) {
+            return write(c -> {
+                update(c, "UPDATE hi_data SET owner_id = ? WHERE id = ?", sourceEntity.id, targetEntity.id);
+                targetEntity.ownerId = sourceEntity.id;
+                return JdbcElement.dataLink(sourceEntity, targetEntity.id);
+            });
+        }
+
+        if (targetEntity.kind != ENTITY) {
+            throw new IllegalArgumentException("Target not an entity.");
+        }
+
+        return write(c -> {
+            JdbcElement ret = new JdbcElement(RELATIONSHIP, context.newId());
+            ret.type = ElementType.relationship;
+            ret.eid = Long.toString(ret.id);
+            ret.cp = CanonicalPath.of().relationship(ret.eid).get().toString();
+            ret.relationshipName = name;
+            ret.sourceId = sourceEntity.id;
+            ret.targetId = targetEntity.id;
+            ret.sourceCp = sourceEntity.cp;
+            ret.targetCp = targetEntity.cp;
+            ret.sourceType = sourceEntity.type;
+            ret.targetType = targetEntity.type;
+
+            update(c, "INSERT INTO hi_relationship (" + JdbcElement.RELATIONSHIP_COLUMNS
+                            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)", ret.id, name, ret.sourceId, ret.targetId,
+                    ret.sourceCp, ret.targetCp, ret.sourceType.name(), ret.targetType.name());
+
+            storeProperties(c, ret, properties);
+
+            return ret;
+        });
+    }
+
+    @Override
+    public JdbcElement persist(CanonicalPath path, Blueprint blueprint) {
+        JdbcElement e = blueprint.accept(new ElementBlueprintVisitor<JdbcElement, Void>() {
+            @Override public JdbcElement visitTenant(Tenant.Blueprint tenant, Void parameter) {
+                return common(tenant.getName(), tenant.getProperties(), Tenant.class);
+            }
+
+            @Override public JdbcElement visitEnvironment(Environment.Blueprint env, Void parameter) {
+                return common(env.getName(), env.getProperties(), Environment.class);
+            }
+
+            @Override public JdbcElement visitFeed(Feed.Blueprint feed, Void parameter) {
+                return common(feed.getName(), feed.getProperties(), Feed.class);
+            }
+
+            @Override public JdbcElement visitMetric(Metric.Blueprint metric, Void parameter) {
+                JdbcElement ret = common(metric.getName(), metric.getProperties(), Metric.class);
+                ret.collectionInterval = metric.getCollectionInterval();
+                return ret;
+            }
+
+            @Override public JdbcElement visitMetricType(MetricType.Blueprint type, Void parameter) {
+                JdbcElement ret = common(type.getName(), type.getProperties(), MetricType.class);
+                ret.metricUnit = type.getUnit() == null ? null : type.getUnit().getDisplayName();
+                ret.metricDataType = type.getMetricDataType().getDisplayName();
+                ret.collectionInterval = type.getCollectionInterval();
+                return ret;
+            }
+
+            @Override public JdbcElement visitResource(Resource.Blueprint resource, Void parameter) {
+                return common(resource.getName(), resource.getProperties(), Resource.class);
+            }
+
+            @Override public JdbcElement visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                return common(type.getName(), type.getProperties(), ResourceType.class);
+            }
+
+            @Override public JdbcElement visitRelationship(Relationship.Blueprint relationship, Void parameter) {
+                throw new IllegalArgumentException("Relationships cannot be persisted using the persist() method.");
+            }
+
+            @Override public JdbcElement visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                return common(data.getName(), data.getProperties(), DataEntity.class);
+            }
+
+            @Override
+            public JdbcElement visitOperationType(OperationType.Blueprint operationType, Void parameter) {
+                return common(operationType.getName(), operationType.getProperties(), OperationType.class);
+            }
+
+            @Override
+            public JdbcElement visitMetadataPack(MetadataPack.Blueprint metadataPack, Void parameter) {
+                return common(metadataPack.getName(), metadataPack.getProperties(), MetadataPack.class);
+            }
+
+            @Override public JdbcElement visitUnknown(Object blueprint, Void parameter) {
+                throw new IllegalArgumentException("Unknown type of entity blueprint: " + blueprint.getClass());
+            }
+
+            private JdbcElement common(String name, Map<String, Object> properties, Class<?> cls) {
+                ElementType type = ElementType.of(cls);
+                checkProperties(properties, type.getReservedProperties());
+
+                JdbcElement ret = new JdbcElement(ENTITY, 0);
+                ret.type = type;
+                ret.name = name;
+                ret.properties = properties == null ? null : new HashMap<>(properties);
+                return ret;
+            }
+        }, null);
+
+        return write(c -> {
+            JdbcElement ret = new JdbcElement(ENTITY, context.newId());
+            ret.type = e.type;
+            ret.cp = path.toString();
+            ret.eid = path.getSegment().getElementId();
+            ret.tenantId = path.getRoot().getSegment().getElementId();
+            ret.name = e.name;
+            ret.metricUnit = e.metricUnit;
+            ret.metricDataType = e.metricDataType;
+            ret.collectionInterval = e.collectionInterval;
+
+            try {
+                update(c, "INSERT INTO hi_entity (cp_hash, " + JdbcElement.ENTITY_COLUMNS
+                                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", JdbcElement.cpHash(ret.cp),
+                        ret.id, ret.cp, ret.type.name(), ret.eid, ret.tenantId, ret.name, null, null, null,
+                        ret.metricUnit, ret.metricDataType, ret.collectionInterval);
+            } catch (SQLException ex) {
+                if (UNIQUE_VIOLATION.equals(ex.getSQLState())) {
+                    throw new EntityAlreadyExistsException(ex, path);
+                }
+                throw ex;
+            }
+
+            storeProperties(c, ret, e.properties);
+
+            return ret;
+        });
+    }
+
+    @Override
+    public JdbcElement persist(StructuredData structuredData) {
+        return write(c -> {
+            List<JdbcElement> nodes = new ArrayList<>();
+            collectData(structuredData, null, null, null, nodes);
+
+            JdbcElement root = nodes.get(0);
+            //only the non-legacy hashes use the digests of the data
+            if (!HashAlgorithm.current().isLegacy()) {
+                root.digest = structuredData.digest();
+            }
+
+            try (PreparedStatement st = c.prepareStatement("INSERT INTO hi_data (" + JdbcElement.DATA_COLUMNS
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (JdbcElement n : nodes) {
+                    bind(st, n.id, n.ownerId, n.parentId, n.dataIndex, n.dataKey, n.dataType.name(),
+                            n.booleanValue, n.longValue, n.doubleValue, n.stringValue, n.digest);
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+
+            return root;
+        });
+    }
+
+    private void collectData(StructuredData data, Long parentId, Integer index, String key, List<JdbcElement> nodes)
+            throws SQLException {
+        JdbcElement node = new JdbcElement(DATA, context.newId());
+        node.type = ElementType.structuredData;
+        node.parentId = parentId;
+        node.dataIndex = index;
+        node.dataKey = key;
+        node.dataType = data.getType();
+        nodes.add(node);
+
+        switch (data.getType()) {
+            case bool:
+                node.booleanValue = data.bool();
+                break;
+            case integral:
+                node.longValue = data.integral();
+                break;
+            case floatingPoint:
+                node.doubleValue = data.floatingPoint();
+                break;
+            case string:
+                node.stringValue = data.string();
+                break;
+            case list:
+                int i = 0;
+                for (StructuredData child : data.list()) {
+                    collectData(child, node.id, i++, null, nodes);
+                }
+                break;
+            case map:
+                int j = 0;
+                for (Map.Entry<String, StructuredData> child : data.map().entrySet()) {
+                    collectData(child.getValue(), node.id, j++, child.getKey(), nodes);
+                }
+                break;
+            default:
+                //undefined has no value
+        }
+    }
+
+    @Override
+    public void update(JdbcElement entity, AbstractElement.Update update) {
+        write(c -> {
+            update.accept(new ElementUpdateVisitor.Simple<Void, Void>() {
+                @Override public Void visitTenant(Tenant.Update tenant, Void parameter) {
+                    common(tenant.getName(), tenant.getProperties(), Tenant.class);
+                    return null;
+                }
+
+                @Override public Void visitEnvironment(Environment.Update environment, Void parameter) {
+                    common(environment.getName(), environment.getProperties(), Environment.class);
+                    return null;
+                }
+
+                @Override public Void visitFeed(Feed.Update feed, Void parameter) {
+                    common(feed.getName(), feed.getProperties(), Feed.class);
+                    return null;
+                }
+
+                @Override public Void visitMetric(Metric.Update metric, Void parameter) {
+                    common(metric.getName(), metric.getProperties(), Metric.class);
+                    entity.collectionInterval = metric.getCollectionInterval();
+                    sql("UPDATE hi_entity SET collection_interval = ? WHERE id = ?", entity.collectionInterval,
+                            entity.id);
+                    return null;
+                }
+
+                @Override public Void visitMetricType(MetricType.Update type, Void parameter) {
+                    common(type.getName(), type.getProperties(), MetricType.class);
+                    if (type.getUnit() != null) {
+                        entity.metricUnit = type.getUnit().getDisplayName();
+                    }
+                    if (type.getCollectionInterval() != null) {
+                        entity.collectionInterval = type.getCollectionInterval();
+                    }
+                    sql("UPDATE hi_entity SET metric_unit = ?, collection_interval = ? WHERE id = ?",
+                            entity.metricUnit, entity.collectionInterval, entity.id);
+                    return null;
+                }
+
+                @Override public Void visitResource(Resource.Update resource, Void parameter) {
+                    common(resource.getName(), resource.getProperties(), Resource.class);
+                    return null;
+                }
+
+                @Override public Void visitResourceType(ResourceType.Update type, Void parameter) {
+                    common(type.getName(), type.getProperties(), ResourceType.class);
+                    return null;
+                }
+
+                @Override public Void visitRelationship(Relationship.Update relationship, Void parameter) {
+                    common(null, relationship.getProperties(), Relationship.class);
+                    return null;
+                }
+
+                @Override public Void visitData(DataEntity.Update data, Void parameter) {
+                    common(data.getName(), data.getProperties(), DataEntity.class);
+
+                    //the children of the old data are deleted by the cascade
+                    sql("DELETE FROM hi_data WHERE owner_id = ?", entity.id);
+
+                    StructuredData dataValue = data.getValue();
+                    if (dataValue == null) {
+                        dataValue = StructuredData.get().undefined();
+                    }
+
+                    relate(entity, persist(dataValue), hasData.name(), null);
+                    return null;
+                }
+
+                @Override public Void visitOperationType(OperationType.Update operationType, Void parameter) {
+                    common(operationType.getName(), operationType.getProperties(), OperationType.class);
+                    return null;
+                }
+
+                private void common(String name, Map<String, Object> properties, Class<?> entityType) {
+                    if (!extractType(entity).equals(entityType)) {
+                        throw new IllegalArgumentException("Update object doesn't correspond to the actual type of the"
+                                + " entity.");
+                    }
+
+                    checkProperties(properties, ElementType.of(entityType).getReservedProperties());
+
+                    if (name != null) {
+                        entity.name = name;
+                        sql("UPDATE hi_entity SET name = ? WHERE id = ?", name, entity.id);
+                    }
+
+                    if (properties != null) {
+                        sql("DELETE FROM " + propertyTable(entity.kind) + " WHERE element_id = ?", entity.id);
+                        try {
+                            storeProperties(c, entity, properties);
+                        } catch (SQLException e) {
+                            throw new IllegalStateException("Failed to update the properties of " + entity, e);
+                        }
+                    }
+                }
+
+                private void sql(String sql, Object... params) {
+                    try {
+                        JdbcBackend.update(c, sql, params);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Failed to update " + entity, e);
+                    }
+                }
+            }, null);
+            return null;
+        });
+    }
+
+    @Override public void updateHashes(JdbcElement entity, Hashes hashes) {
+        if (entity.kind != ENTITY) {
+            return;
+        }
+
+        write(c -> {
+            if (hashes.getContentHash() != null) {
+                entity.contentHash = hashes.getContentHash();
+            }
+            if (hashes.getSyncHash() != null) {
+                entity.syncHash = hashes.getSyncHash();
+            }
+            entity.identityHash = hashes.getIdentityHash();
+
+            update(c, "UPDATE hi_entity SET identity_hash = ?, content_hash = ?, sync_hash = ? WHERE id = ?",
+                    entity.identityHash, entity.contentHash, entity.syncHash, entity.id);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(JdbcElement entity) {
+        write(c -> {
+            //the properties, relationships and the data of the deleted elements are deleted by the cascades
+            switch (entity.kind) {
+                case ENTITY:
+                    update(c, "DELETE FROM hi_entity WHERE id = ?", entity.id);
+                    break;
+                case RELATIONSHIP:
+                    update(c, "DELETE FROM hi_relationship WHERE id = ?", entity.id);
+                    break;
+                case DATA:
+                    update(c, "DELETE FROM hi_data WHERE id = ?", entity.id);
+                    break;
+                case DATA_LINK:
+                    update(c, "UPDATE hi_data SET owner_id = NULL WHERE id = ?", entity.targetId);
+                    break;
+                default:
+                    throw new AssertionError("Unhandled kind of element: " + entity.kind);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteStructuredData(JdbcElement dataRepresentation) {
+        if (dataRepresentation.kind != DATA) {
+            throw new IllegalArgumentException("The supplied element is not a data entity's data.");
+        }
+
+        //the data might have been deleted already along with its owner, in which case this is a no-op
+        delete(dataRepresentation);
+    }
+
+    @Override
+    public void commit() throws CommitFailureException {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new CommitFailureException(e);
+        } finally {
+            closeConnection();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to roll back the transaction.", e);
+        } finally {
+            closeConnection();
+        }
+    }
+
+    @Override
+    public boolean isBackendInternal(JdbcElement element) {
+        return false;
+    }
+
+    @Override public boolean isTransactionRetryWarranted(Throwable t) {
+        while (t != null) {
+            if (t instanceof SQLException && RETRYABLE_STATES.contains(((SQLException) t).getSQLState())) {
+                return true;
+            }
+            t = t.getCause();
+        }
+
+        return false;
+    }
+
+    @Override
+    public InputStream getGraphSON(String tenantId) {
+        return run(c -> {
+            List<JdbcElement> entities = load(c, ENTITY, "x.tenant_id = ?", tenantId);
+            List<JdbcElement> relationships = load(c, RELATIONSHIP,
+                    "x.source_id IN (SELECT id FROM hi_entity WHERE tenant_id = ?)", tenantId);
+
+            prefetch(c, entities);
+            prefetch(c, relationships);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator gen = new ObjectMapper().getFactory().createGenerator(out)) {
+                gen.writeStartObject();
+
+                gen.writeArrayFieldStart("vertices");
+                for (JdbcElement e : entities) {
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", e.id);
+                    gen.writeStringField("label", e.type.name());
+                    gen.writeObjectFieldStart("properties");
+                    gen.writeStringField("__type", e.type.name());
+                    gen.writeStringField("__eid", e.eid);
+                    gen.writeStringField("__cp", e.cp);
+                    writeNonNull(gen, "name", e.name);
+                    writeNonNull(gen, "__identityHash", e.identityHash);
+                    writeNonNull(gen, "__contentHash", e.contentHash);
+                    writeNonNull(gen, "__syncHash", e.syncHash);
+                    writeNonNull(gen, "__unit", e.metricUnit);
+                    writeNonNull(gen, "__metric_data_type", e.metricDataType);
+                    writeNonNull(gen, "__metric_interval", e.collectionInterval);
+                    for (Map.Entry<String, Object> p : e.properties.entrySet()) {
+                        gen.writeObjectField(p.getKey(), p.getValue());
+                    }
+                    gen.writeEndObject();
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+
+                gen.writeArrayFieldStart("edges");
+                for (JdbcElement r : relationships) {
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", r.id);
+                    gen.writeStringField("label", r.relationshipName);
+                    gen.writeNumberField("outV", r.sourceId);
+                    gen.writeNumberField("inV", r.targetId);
+                    gen.writeObjectFieldStart("properties");
+                    gen.writeStringField("__sourceCp", r.sourceCp);
+                    gen.writeStringField("__targetCp", r.targetCp);
+                    for (Map.Entry<String, Object> p : r.properties.entrySet()) {
+                        gen.writeObjectField(p.getKey(), p.getValue());
+                    }
+                    gen.writeEndObject();
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+
+                gen.writeEndObject();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create the GraphSON dump.", e);
+            }
+
+            return new ByteArrayInputStream(out.toByteArray());
+        });
+    }
+
+    private static void writeNonNull(JsonGenerator gen, String field, Object value) throws IOException {
+        if (value != null) {
+            gen.writeObjectField(field, value);
+        }
+    }
+
+    @Override public void close() throws Exception {
+        closeConnection();
+    }
+
+    /**
+     * Pages the results of the compiled query. The database orders and pages the results and only the elements on the
+     * page are loaded. The total count is obtained using a separate statement, unless it follows from the size of the
+     * page.
+     */
+    private <U> Page<U> page(Connection c, CompiledQuery query, Pager pager, Function<JdbcElement, U> transform)
+            throws SQLException {
+        if (pager.isCursorBased()) {
+            List<JdbcElement> positioned = query.listAfter(c, PagingCursors.decode(pager.getCursor()),
+                    pager.getPageSize() + 1);
+
+            String nextCursor = null;
+            if (positioned.size() > pager.getPageSize()) {
+                positioned = positioned.subList(0, pager.getPageSize());
+                nextCursor = PagingCursors.encode(positioned.get(positioned.size() - 1).cp);
+            }
+
+            return new Page<>(convert(c, positioned, transform, Function.identity()), pager, -1, nextCursor);
+        }
+
+        List<Order> orders = pager.getOrder().stream().filter(Order::isSpecific).collect(toList());
+
+        if (!pager.isLimited()) {
+            List<JdbcElement> results = query.list(c, orders, 0, -1);
+            return new Page<>(convert(c, results, transform, Function.identity()), pager, results.size());
+        }
+
+        List<JdbcElement> results = query.list(c, orders, pager.getStart(), pager.getPageSize());
+
+        long total;
+        if (results.size() < pager.getPageSize() && (!results.isEmpty() || pager.getStart() == 0)) {
+            total = pager.getStart() + results.size();
+        } else {
+            total = query.count(c);
+        }
+
+        return new Page<>(convert(c, results, transform, Function.identity()), pager, total);
+    }
+
+    /**
+     * Pages the results of the query evaluated in memory. The ordering and the paging is done in memory, too, because
+     * the results are fully known anyway.
+     *
+     * <p>Only the elements of the returned page get their properties and defining types prefetched for the
+     * conversion.
+     */
+    private <T, U> Page<U> page(Connection c, List<T> results, Pager pager, Function<T, U> transform,
+                                Function<T, JdbcElement> elementOf) throws SQLException {
+        if (pager.isCursorBased()) {
+            List<T> positioned = PagingCursors.position(results, pager.getCursor(), pager.getPageSize(),
+                    r -> elementOf.apply(r).cp);
+
+            String nextCursor = null;
+            if (positioned.size() > pager.getPageSize()) {
+                positioned = positioned.subList(0, pager.getPageSize());
+                nextCursor = PagingCursors.encode(elementOf.apply(positioned.get(positioned.size() - 1)).cp);
+            }
+
+            return new Page<>(convert(c, positioned, transform, elementOf), pager, -1, nextCursor);
+        }
+
+        List<T> ordered = results;
+        List<Order> orders = pager.getOrder().stream().filter(Order::isSpecific).collect(toList());
+        if (!orders.isEmpty()) {
+            prefetch(c, results.stream().map(elementOf).collect(toList()));
+            ordered = new ArrayList<>(results);
+            ordered.sort((a, b) -> compare(elementOf.apply(a), elementOf.apply(b), orders));
+        }
+
+        if (!pager.isLimited()) {
+            return new Page<>(convert(c, ordered, transform, elementOf), pager, ordered.size());
+        }
+
+        int start = Math.min(pager.getStart(), ordered.size());
+        int end = Math.min(pager.getEnd(), ordered.size());
+
+        return new Page<>(convert(c, ordered.subList(start, end), transform, elementOf), pager, ordered.size());
+    }
+
+    private <T, U> Iterator<U> convert(Connection c, List<T> results, Function<T, U> transform,
+                                       Function<T, JdbcElement> elementOf) throws SQLException {
+        prefetch(c, results.stream().map(elementOf).collect(toList()));
+
+        //the results are converted eagerly so that the conversion doesn't outlive the connection it needs
+        return results.stream().map(transform).collect(toList()).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(JdbcElement a, JdbcElement b, List<Order> orders) {
+        for (Order o : orders) {
+            Object av = orderValue(a, o.getField());
+            Object bv = orderValue(b, o.getField());
+
+            int diff;
+            if (av == null) {
+                diff = bv == null ? 0 : -1;
+            } else if (bv == null) {
+                diff = 1;
+            } else if (av instanceof Comparable && av.getClass() == bv.getClass()) {
+                diff = ((Comparable<Object>) av).compareTo(bv);
+            } else {
+                diff = av.toString().compareTo(bv.toString());
+            }
+
+            if (diff != 0) {
+                return o.getDirection() == Order.Direction.DESCENDING ? -diff : diff;
+            }
+        }
+
+        return 0;
+    }
+
+    private static Object orderValue(JdbcElement e, String field) {
+        String property = ElementType.mapUserDefined(field);
+
+        if (e.kind == ENTITY) {
+            switch (property) {
+                case "name":
+                    return e.name;
+                case "__type":
+                    return e.type.name();
+                case "__eid":
+                    return e.eid;
+                case "__cp":
+                    return e.cp;
+                case "__unit":
+                    return e.metricUnit;
+                case "__metric_data_type":
+                    return e.metricDataType;
+                case "__metric_interval":
+                    return e.collectionInterval;
+                case "__identityHash":
+                    return e.identityHash;
+                case "__contentHash":
+                    return e.contentHash;
+                case "__syncHash":
+                    return e.syncHash;
+                default:
+                    //user defined property
+            }
+        } else if (e.kind == RELATIONSHIP) {
+            switch (property) {
+                case "__eid":
+                    return e.eid;
+                case "__cp":
+                    return e.cp;
+                case "__sourceType":
+                    return e.sourceType.name();
+                case "__targetType":
+                    return e.targetType.name();
+                case "__sourceCp":
+                    return e.sourceCp;
+                case "__targetCp":
+                    return e.targetCp;
+                default:
+                    //user defined property
+            }
+        }
+
+        return e.properties == null ? null : e.properties.get(property);
+    }
+
+    private QueryEvaluator evaluator(Connection c) {
+        return new QueryEvaluator(c, context.isRecursionCompilable());
+    }
+
+    /**
+     * Loads the user defined properties and the defining types of the provided elements that don't have them loaded
+     * yet using a couple of statements for all of them.
+     */
+    private void prefetch(Connection c, List<JdbcElement> elements) throws SQLException {
+        prefetchProperties(c, elements, ENTITY);
+        prefetchProperties(c, elements, RELATIONSHIP);
+
+        Map<Long, JdbcElement> defined = new LinkedHashMap<>();
+        elements.stream().filter(e -> e.kind == ENTITY && e.definingType == null
+                && (e.type == ElementType.resource || e.type == ElementType.metric))
+                .forEach(e -> defined.putIfAbsent(e.id, e));
+
+        if (defined.isEmpty()) {
+            return;
+        }
+
+        Map<Long, JdbcElement> types = new HashMap<>();
+        for (List<Long> ids : QueryEvaluator.chunks(new ArrayList<>(defined.keySet()))) {
+            String sql = "SELECT r.target_id, " + JdbcElement.columns(ENTITY, "x")
+                    + " FROM hi_relationship r JOIN hi_entity x ON x.id = r.source_id WHERE r.name = ?"
+                    + " AND r.target_id IN (" + ids.stream().map(id -> "?").collect(joining(", ")) + ")";
+
+            List<Object> params = new ArrayList<>(ids.size() + 1);
+            params.add(defines.name());
+            params.addAll(ids);
+
+            try (PreparedStatement st = c.prepareStatement(sql)) {
+                bind(st, params.toArray());
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        JdbcElement type = JdbcElement.read(ENTITY, rs, 2);
+                        types.putIfAbsent(type.id, type);
+                        defined.get(rs.getLong(1)).definingType = types.get(type.id);
+                    }
+                }
+            }
+        }
+
+        prefetchProperties(c, new ArrayList<>(types.values()), ENTITY);
+    }
+
+    private static void prefetchProperties(Connection c, List<JdbcElement> elements, Kind kind)
+            throws SQLException {
+        Map<Long, JdbcElement> missing = new LinkedHashMap<>();
+        elements.stream().filter(e -> e.kind == kind && e.properties == null)
+                .forEach(e -> missing.putIfAbsent(e.id, e));
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Map<String, Object>> properties = new HashMap<>();
+        for (List<Long> ids : QueryEvaluator.chunks(new ArrayList<>(missing.keySet()))) {
+            String sql = "SELECT element_id, name, " + PropertyCodec.VALUE_COLUMNS + " FROM " + propertyTable(kind)
+                    + " WHERE element_id IN (" + ids.stream().map(id -> "?").collect(joining(", ")) + ")";
+
+            try (PreparedStatement st = c.prepareStatement(sql)) {
+                bind(st, ids.toArray());
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        properties.computeIfAbsent(rs.getLong(1), k -> new HashMap<>())
+                                .put(rs.getString(2), PropertyCodec.read(rs, 3));
+                    }
+                }
+            }
+        }
+
+        //the same element can be represented by several instances
+        elements.stream().filter(e -> e.kind == kind && e.properties == null)
+                .forEach(e -> e.properties = new HashMap<>(properties.getOrDefault(e.id, Collections.emptyMap())));
+    }
+
+    private Map<String, Object> properties(JdbcElement e) {
+        if (e.properties == null && e.hasProperties()) {
+            run(c -> {
+                prefetchProperties(c, Collections.singletonList(e), e.kind);
+                return null;
+            });
+        }
+
+        return e.properties == null ? Collections.emptyMap() : e.properties;
+    }
+
+    private JdbcElement definingType(JdbcElement e) {
+        if (e.definingType == null) {
+            run(c -> {
+                prefetch(c, Collections.singletonList(e));
+                return null;
+            });
+        }
+
+        return e.definingType;
+    }
+
+    private void storeProperties(Connection c, JdbcElement e, Map<String, Object> properties) throws SQLException {
+        Map<String, Object> stored = new HashMap<>();
+        if (properties != null) {
+            properties.forEach((k, v) -> {
+                if (v != null) {
+                    stored.put(k, v);
+                }
+            });
+        }
+
+        if (!stored.isEmpty()) {
+            try (PreparedStatement st = c.prepareStatement("INSERT INTO " + propertyTable(e.kind)
+                    + " (element_id, name, " + PropertyCodec.VALUE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<String, Object> p : stored.entrySet()) {
+                    st.setLong(1, e.id);
+                    st.setString(2, p.getKey());
+                    PropertyCodec.bind(st, 3, p.getValue());
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+        }
+
+        e.properties = stored;
+    }
+
+    private StructuredData loadStructuredData(Connection c, JdbcElement root, boolean recurse) throws SQLException {
+        if (!recurse || (root.dataType != StructuredData.Type.list && root.dataType != StructuredData.Type.map)) {
+            return toStructuredData(root, Collections.emptyMap());
+        }
+
+        String sql = "WITH RECURSIVE hi_subtree (id) AS (SELECT id FROM hi_data WHERE parent_id = " + root.id
+                + " UNION ALL SELECT d.id FROM hi_subtree s JOIN hi_data d ON d.parent_id = s.id) SELECT "
+                + JdbcElement.columns(DATA, "x") + " FROM hi_subtree s JOIN hi_data x ON x.id = s.id";
+
+        Map<Long, List<JdbcElement>> children = new HashMap<>();
+        try (PreparedStatement st = c.prepareStatement(sql); ResultSet rs = st.executeQuery()) {
+            while (rs.next()) {
+                JdbcElement child = JdbcElement.read(DATA, rs, 1);
+                children.computeIfAbsent(child.parentId, k -> new ArrayList<>()).add(child);
+            }
+        }
+
+        children.values().forEach(l -> l.sort(Comparator.comparing(n -> n.dataIndex)));
+
+        StructuredData data = toStructuredData(root, children);
+
+        //the digests stored before the hash algorithm was changed (or before the format was versioned) are useless
+        return root.digest != null && HashAlgorithm.of(root.digest) == HashAlgorithm.current()
+                ? data.withKnownDigest(root.digest) : data;
+    }
+
+    private static StructuredData toStructuredData(JdbcElement node, Map<Long, List<JdbcElement>> children) {
+        switch (node.dataType) {
+            case bool:
+                return StructuredData.get().bool(node.booleanValue);
+            case integral:
+                return StructuredData.get().integral(node.longValue);
+            case floatingPoint:
+                return StructuredData.get().floatingPoint(node.doubleValue);
+            case string:
+                return StructuredData.get().string(node.stringValue);
+            case undefined:
+                return StructuredData.get().undefined();
+            case list:
+                StructuredData.ListBuilder list = StructuredData.get().list();
+                fillList(list, children.getOrDefault(node.id, emptyList()), children);
+                return list.build();
+            case map:
+                StructuredData.MapBuilder map = StructuredData.get().map();
+                fillMap(map, children.getOrDefault(node.id, emptyList()), children);
+                return map.build();
+            default:
+                throw new IllegalArgumentException("Unknown structured data type stored in db: " + node.dataType);
+        }
+    }
+
+    private static void fillList(StructuredData.AbstractListBuilder<?> bld, List<JdbcElement> items,
+                                 Map<Long, List<JdbcElement>> children) {
+        for (JdbcElement item : items) {
+            switch (item.dataType) {
+                case bool:
+                    bld.addBool(item.booleanValue);
+                    break;
+                case integral:
+                    bld.addIntegral(item.longValue);
+                    break;
+                case floatingPoint:
+                    bld.addFloatingPoint(item.doubleValue);
+                    break;
+                case string:
+                    bld.addString(item.stringValue);
+                    break;
+                case undefined:
+                    bld.addUndefined();
+                    break;
+                case list:
+                    StructuredData.InnerListBuilder<?> list = bld.addList();
+                    fillList(list, children.getOrDefault(item.id, emptyList()), children);
+                    list.closeList();
+                    break;
+                case map:
+                    StructuredData.InnerMapBuilder<?> map = bld.addMap();
+                    fillMap(map, children.getOrDefault(item.id, emptyList()), children);
+                    map.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type stored in db: " + item.dataType);
+            }
+        }
+    }
+
+    private static void fillMap(StructuredData.AbstractMapBuilder<?> bld, List<JdbcElement> entries,
+                                Map<Long, List<JdbcElement>> children) {
+        for (JdbcElement entry : entries) {
+            String key = entry.dataKey;
+            switch (entry.dataType) {
+                case bool:
+                    bld.putBool(key, entry.booleanValue);
+                    break;
+                case integral:
+                    bld.putIntegral(key, entry.longValue);
+                    break;
+                case floatingPoint:
+                    bld.putFloatingPoint(key, entry.doubleValue);
+                    break;
+                case string:
+                    bld.putString(key, entry.stringValue);
+                    break;
+                case undefined:
+                    bld.putUndefined(key);
+                    break;
+                case list:
+                    StructuredData.InnerListBuilder<?> list = bld.putList(key);
+                    fillList(list, children.getOrDefault(entry.id, emptyList()), children);
+                    list.closeList();
+                    break;
+                case map:
+                    StructuredData.InnerMapBuilder<?> map = bld.putMap(key);
+                    fillMap(map, children.getOrDefault(entry.id, emptyList()), children);
+                    map.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type stored in db: "
+                            + entry.dataType);
+            }
+        }
+    }
+
+    /**
+     * If the properties map contains a key from the reserved properties, throw an exception.
+     */
+    private static void checkProperties(Map<String, Object> properties, String[] reservedProperties) {
+        if (properties == null || properties.isEmpty()) {
+            return;
+        }
+
+        Set<String> reserved = new HashSet<>(properties.keySet());
+        reserved.retainAll(Arrays.asList(reservedProperties));
+
+        if (!reserved.isEmpty()) {
+            throw new IllegalArgumentException("The following properties are reserved for this type of entity: "
+                    + Arrays.asList(reservedProperties));
+        }
+    }
+
+    private Long getDataRootId(JdbcElement dataEntity) {
+        return run(c -> dataRootId(c, dataEntity));
+    }
+
+    private static Long dataRootId(Connection c, JdbcElement dataEntity) throws SQLException {
+        if (dataEntity.type != ElementType.dataEntity) {
+            return null;
+        }
+
+        try (PreparedStatement st = c.prepareStatement("SELECT id FROM hi_data WHERE owner_id = ?")) {
+            st.setLong(1, dataEntity.id);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static String directionCondition(Relationships.Direction direction, String alias) {
+        switch (direction) {
+            case outgoing:
+                return alias + "source_id = ?";
+            case incoming:
+                return alias + "target_id = ?";
+            case both:
+                return "(" + alias + "source_id = ? OR " + alias + "target_id = ?)";
+            default:
+                throw new AssertionError("Invalid relationship direction specified: " + direction);
+        }
+    }
+
+    private static Object[] directionParams(Relationships.Direction direction, long id, Object... more) {
+        List<Object> ret = new ArrayList<>();
+        ret.add(id);
+        if (direction == Relationships.Direction.both) {
+            ret.add(id);
+        }
+        ret.addAll(Arrays.asList(more));
+        return ret.toArray();
+    }
+
+    private static String propertyTable(Kind kind) {
+        return kind == RELATIONSHIP ? "hi_relationship_property" : "hi_entity_property";
+    }
+
+    private static JdbcElement loadOne(Connection c, Kind kind, String where, Object... params) throws SQLException {
+        List<JdbcElement> ret = load(c, kind, where, params);
+        return ret.isEmpty() ? null : ret.get(0);
+    }
+
+    private static List<JdbcElement> load(Connection c, Kind kind, String where, Object... params)
+            throws SQLException {
+        String table = kind == ENTITY ? "hi_entity" : (kind == RELATIONSHIP ? "hi_relationship" : "hi_data");
+        String sql = "SELECT " + JdbcElement.columns(kind, "x") + " FROM " + table + " x WHERE " + where
+                + " ORDER BY x.id";
+
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            bind(st, params);
+            try (ResultSet rs = st.executeQuery()) {
+                List<JdbcElement> ret = new ArrayList<>();
+                while (rs.next()) {
+                    ret.add(JdbcElement.read(kind, rs, 1));
+                }
+                return ret;
+            }
+        }
+    }
+
+    private static boolean exists(Connection c, String sql, Object... params) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            st.setMaxRows(1);
+            bind(st, params);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static int update(Connection c, String sql, Object... params) throws SQLException {
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            bind(st, params);
+            return st.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement st, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; ++i) {
+            Object p = params[i];
+            if (p == null) {
+                st.setNull(i + 1, Types.NULL);
+            } else {
+                st.setObject(i + 1, p);
+            }
+        }
+    }
+
+    private <R> R run(SqlFunction<R> payload) {
+        try {
+            if (transactional) {
+                return payload.apply(getConnection());
+            }
+
+            try (Connection c = context.getConnection()) {
+                return payload.apply(c);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to access the inventory database.", e);
+        }
+    }
+
+    private <R> R write(SqlFunction<R> payload) {
+        return run(payload);
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (connection == null) {
+            connection = context.getConnection();
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Log.LOG.debug("Failed to close the database connection.", e);
+        } finally {
+            connection = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<R> {
+        R apply(Connection connection) throws SQLException;
+    }
+
+    private static final class Pair<F, S> {
+        final F first;
+        final S second;
+
+        Pair(F first, S second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Scanner;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Holds the state shared by all the backends of a single inventory - the source of the database connections and the
+ * allocator of the element ids.
+ *
+ * @since 1.1.3
+ */
+final class JdbcContext {
+    private static final String SCHEMA_RESOURCE = "org/hawkular/inventory/impl/jdbc/schema.sql";
+
+    /**
+     * The number of ids allocated from the database at once.
+     */
+    private static final int ID_BLOCK_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private long nextId;
+    private long maxId;
+
+    private volatile boolean recursionCompilable;
+
+    private JdbcContext(DataSource dataSource, String url, String user, String password) {
+        this.dataSource = dataSource;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    static JdbcContext forDataSource(String jndiName) {
+        try {
+            DataSource ds = (DataSource) new InitialContext().lookup(jndiName);
+            Log.LOG.iUsingDatabase(jndiName);
+            return new JdbcContext(ds, null, null, null);
+        } catch (NamingException e) {
+            throw new IllegalStateException("Could not look up the datasource '" + jndiName + "'.", e);
+        }
+    }
+
+    static JdbcContext forUrl(String url, String user, String password) {
+        Log.LOG.iUsingDatabase(url);
+        return new JdbcContext(null, url, user, password);
+    }
+
+    Connection getConnection() throws SQLException {
+        return dataSource != null ? dataSource.getConnection() : DriverManager.getConnection(url, user, password);
+    }
+
+    /**
+     * Whether the recursive common table expressions can be a part of the compiled queries. H2 finds nothing in the
+     * recursive common table expressions referenced from within the sub-queries, so with it, the queries with
+     * recursion are evaluated step by step.
+     */
+    boolean isRecursionCompilable() {
+        return recursionCompilable;
+    }
+
+    /**
+     * Creates the inventory tables if they don't exist yet.
+     */
+    void ensureSchema() {
+        try (Connection conn = getConnection()) {
+            recursionCompilable = !"H2".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName());
+
+            if (tableExists(conn.getMetaData(), "hi_entity")) {
+                return;
+            }
+
+            Log.LOG.iCreatingSchema();
+
+            conn.setAutoCommit(false);
+            try (Statement st = conn.createStatement()) {
+                for (String sql : readSchema()) {
+                    st.execute(sql);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to create the inventory schema.", e);
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData metaData, String name) throws SQLException {
+        //the databases differ in the case they store the unquoted identifiers in
+        for (String n : new String[]{name.toUpperCase(), name}) {
+            try (ResultSet rs = metaData.getTables(null, null, n, null)) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String[] readSchema() {
+        try (InputStream in = JdbcContext.class.getClassLoader().getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Could not find the inventory schema on the classpath.");
+            }
+
+            StringBuilder script = new StringBuilder();
+            Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name());
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine();
+                if (!line.trim().startsWith("--")) {
+                    script.append(line).append('\n');
+                }
+            }
+
+            return script.toString().trim().split("\\s*;\\s*");
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the inventory schema.", e);
+        }
+    }
+
+    /**
+     * Allocates a new id for an element. The ids are reserved in the database in blocks in their own short
+     * transactions so that the concurrent transactions (or even inventories) never allocate the same id and no
+     * database round trip is needed for most of the elements.
+     *
+     * @return a new unique id
+     */
+    synchronized long newId() throws SQLException {
+        if (nextId == maxId) {
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement update = conn.prepareStatement(
+                        "UPDATE hi_id_sequence SET next_value = next_value + ? WHERE name = 'element'");
+                     PreparedStatement select = conn.prepareStatement(
+                             "SELECT next_value FROM hi_id_sequence WHERE name = 'element'")) {
+
+                    update.setInt(1, ID_BLOCK_SIZE);
+                    update.executeUpdate();
+
+                    try (ResultSet rs = select.executeQuery()) {
+                        rs.next();
+                        maxId = rs.getLong(1);
+                    }
+
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+
+            nextId = maxId - ID_BLOCK_SIZE;
+        }
+
+        return nextId++;
+    }
+}
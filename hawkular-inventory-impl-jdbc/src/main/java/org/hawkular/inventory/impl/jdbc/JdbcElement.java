@@ -0,0 +1,328 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.paths.CanonicalPath;
+
+/**
+ * The representation of a single row of the inventory database. Depending on its {@link Kind kind} it is either an
+ * entity, a relationship or a node of the structured data.
+ *
+ * <p>The instances are snapshots of the database rows loaded by the backend that are kept up to date with the changes
+ * made through the backend that loaded them.
+ *
+ * @since 1.1.3
+ */
+public final class JdbcElement {
+
+    enum Kind {
+        ENTITY, RELATIONSHIP, DATA,
+
+        /**
+         * The relationship between a data entity and the root of its structured data. The data is not stored as an
+         * entity so this relationship doesn't exist in the database. Its id is the id of the data root.
+         */
+        DATA_LINK
+    }
+
+    static final String DATA_LINK_ID_PREFIX = "hasData-";
+
+    static final String ENTITY_COLUMNS = "id, cp, entity_type, eid, tenant_id, name, identity_hash, content_hash,"
+            + " sync_hash, metric_unit, metric_data_type, collection_interval";
+
+    static final String RELATIONSHIP_COLUMNS = "id, name, source_id, target_id, source_cp, target_cp, source_type,"
+            + " target_type";
+
+    static final String DATA_COLUMNS = "id, owner_id, parent_id, data_index, data_key, data_type, boolean_value,"
+            + " long_value, double_value, string_value, digest";
+
+    /**
+     * The built-in attributes of the entities mapped to the columns they are stored in.
+     */
+    private static final Map<String, String> ENTITY_ATTRIBUTES = new HashMap<>();
+
+    /**
+     * The built-in attributes of the relationships mapped to the columns they are stored in.
+     */
+    private static final Map<String, String> RELATIONSHIP_ATTRIBUTES = new HashMap<>();
+
+    static {
+        ENTITY_ATTRIBUTES.put("name", "name");
+        ENTITY_ATTRIBUTES.put("__type", "entity_type");
+        ENTITY_ATTRIBUTES.put("__eid", "eid");
+        ENTITY_ATTRIBUTES.put("__cp", "cp");
+        ENTITY_ATTRIBUTES.put("__unit", "metric_unit");
+        ENTITY_ATTRIBUTES.put("__metric_data_type", "metric_data_type");
+        ENTITY_ATTRIBUTES.put("__metric_interval", "collection_interval");
+        ENTITY_ATTRIBUTES.put("__identityHash", "identity_hash");
+        ENTITY_ATTRIBUTES.put("__contentHash", "content_hash");
+        ENTITY_ATTRIBUTES.put("__syncHash", "sync_hash");
+
+        RELATIONSHIP_ATTRIBUTES.put("__sourceType", "source_type");
+        RELATIONSHIP_ATTRIBUTES.put("__targetType", "target_type");
+        RELATIONSHIP_ATTRIBUTES.put("__sourceCp", "source_cp");
+        RELATIONSHIP_ATTRIBUTES.put("__targetCp", "target_cp");
+    }
+
+    final Kind kind;
+    final long id;
+
+    //entities
+    ElementType type;
+    String cp;
+    String eid;
+    String tenantId;
+    String name;
+    String identityHash;
+    String contentHash;
+    String syncHash;
+    String metricUnit;
+    String metricDataType;
+    Long collectionInterval;
+
+    //relationships
+    String relationshipName;
+    long sourceId;
+    long targetId;
+    String sourceCp;
+    String targetCp;
+    ElementType sourceType;
+    ElementType targetType;
+
+    //structured data
+    Long ownerId;
+    Long parentId;
+    Integer dataIndex;
+    String dataKey;
+    StructuredData.Type dataType;
+    Boolean booleanValue;
+    Long longValue;
+    Double doubleValue;
+    String stringValue;
+    String digest;
+
+    /**
+     * The user defined properties of entities and relationships, null if not loaded yet.
+     */
+    Map<String, Object> properties;
+
+    /**
+     * The type defining a resource or a metric, null if not loaded yet.
+     */
+    JdbcElement definingType;
+
+    JdbcElement(Kind kind, long id) {
+        this.kind = kind;
+        this.id = id;
+    }
+
+    static String columns(Kind kind, String alias) {
+        String columns;
+        switch (kind) {
+            case ENTITY:
+                columns = ENTITY_COLUMNS;
+                break;
+            case RELATIONSHIP:
+                columns = RELATIONSHIP_COLUMNS;
+                break;
+            case DATA:
+                columns = DATA_COLUMNS;
+                break;
+            default:
+                throw new IllegalArgumentException("There are no columns for " + kind);
+        }
+
+        return alias + "." + columns.replace(", ", ", " + alias + ".");
+    }
+
+    /**
+     * @param kind     the kind of the element
+     * @param property the internal name of the property
+     * @return the column the property is stored in or null if it is not a built-in attribute of the element
+     */
+    static String columnOf(Kind kind, String property) {
+        switch (kind) {
+            case ENTITY:
+                return ENTITY_ATTRIBUTES.get(property);
+            case RELATIONSHIP:
+                return RELATIONSHIP_ATTRIBUTES.get(property);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The canonical paths can be too long for the database indexes, so the entities are looked up by the hashes of
+     * their canonical paths stored in the {@code cp_hash} column.
+     *
+     * @param cp the canonical path of an entity
+     * @return the SHA-256 hash of the canonical path as a hex string
+     */
+    static String cpHash(String cp) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(cp.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available.", e);
+        }
+
+        StringBuilder ret = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            ret.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return ret.toString();
+    }
+
+    static int columnCount(Kind kind) {
+        switch (kind) {
+            case ENTITY:
+                return 12;
+            case RELATIONSHIP:
+                return 8;
+            case DATA:
+                return 11;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Reads the element from the columns of the result set starting at the provided index. The columns are expected
+     * in the order given by {@link #columns(Kind, String)}.
+     */
+    static JdbcElement read(Kind kind, ResultSet rs, int start) throws SQLException {
+        switch (kind) {
+            case ENTITY:
+                return readEntity(rs, start);
+            case RELATIONSHIP:
+                return readRelationship(rs, start);
+            case DATA:
+                return readData(rs, start);
+            default:
+                throw new IllegalArgumentException("Cannot read " + kind + " from the database.");
+        }
+    }
+
+    private static JdbcElement readEntity(ResultSet rs, int i) throws SQLException {
+        JdbcElement ret = new JdbcElement(Kind.ENTITY, rs.getLong(i));
+        ret.cp = rs.getString(i + 1);
+        ret.type = ElementType.valueOf(rs.getString(i + 2));
+        ret.eid = rs.getString(i + 3);
+        ret.tenantId = rs.getString(i + 4);
+        ret.name = rs.getString(i + 5);
+        ret.identityHash = rs.getString(i + 6);
+        ret.contentHash = rs.getString(i + 7);
+        ret.syncHash = rs.getString(i + 8);
+        ret.metricUnit = rs.getString(i + 9);
+        ret.metricDataType = rs.getString(i + 10);
+        ret.collectionInterval = getLong(rs, i + 11);
+        return ret;
+    }
+
+    private static JdbcElement readRelationship(ResultSet rs, int i) throws SQLException {
+        JdbcElement ret = new JdbcElement(Kind.RELATIONSHIP, rs.getLong(i));
+        ret.type = ElementType.relationship;
+        ret.relationshipName = rs.getString(i + 1);
+        ret.sourceId = rs.getLong(i + 2);
+        ret.targetId = rs.getLong(i + 3);
+        ret.sourceCp = rs.getString(i + 4);
+        ret.targetCp = rs.getString(i + 5);
+        ret.sourceType = ElementType.valueOf(rs.getString(i + 6));
+        ret.targetType = ElementType.valueOf(rs.getString(i + 7));
+        ret.eid = Long.toString(ret.id);
+        ret.cp = CanonicalPath.of().relationship(ret.eid).get().toString();
+        return ret;
+    }
+
+    private static JdbcElement readData(ResultSet rs, int i) throws SQLException {
+        JdbcElement ret = new JdbcElement(Kind.DATA, rs.getLong(i));
+        ret.type = ElementType.structuredData;
+        ret.ownerId = getLong(rs, i + 1);
+        ret.parentId = getLong(rs, i + 2);
+        int index = rs.getInt(i + 3);
+        ret.dataIndex = rs.wasNull() ? null : index;
+        ret.dataKey = rs.getString(i + 4);
+        ret.dataType = StructuredData.Type.valueOf(rs.getString(i + 5));
+        boolean bool = rs.getBoolean(i + 6);
+        ret.booleanValue = rs.wasNull() ? null : bool;
+        ret.longValue = getLong(rs, i + 7);
+        double dbl = rs.getDouble(i + 8);
+        ret.doubleValue = rs.wasNull() ? null : dbl;
+        ret.stringValue = rs.getString(i + 9);
+        ret.digest = rs.getString(i + 10);
+        return ret;
+    }
+
+    private static Long getLong(ResultSet rs, int index) throws SQLException {
+        long ret = rs.getLong(index);
+        return rs.wasNull() ? null : ret;
+    }
+
+    /**
+     * Creates the representation of the relationship between the data entity and its data.
+     */
+    static JdbcElement dataLink(JdbcElement dataEntity, long dataRootId) {
+        JdbcElement ret = new JdbcElement(Kind.DATA_LINK, dataRootId);
+        ret.type = ElementType.relationship;
+        ret.eid = DATA_LINK_ID_PREFIX + dataRootId;
+        ret.cp = "/rl;" + ret.eid;
+        ret.relationshipName = "hasData";
+        ret.sourceId = dataEntity.id;
+        ret.targetId = dataRootId;
+        ret.sourceCp = dataEntity.cp;
+        ret.sourceType = dataEntity.type;
+        ret.targetType = ElementType.structuredData;
+        return ret;
+    }
+
+    /**
+     * @return true if this element is an entity or a relationship, false for the structured data
+     */
+    boolean hasProperties() {
+        return kind == Kind.ENTITY || kind == Kind.RELATIONSHIP;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof JdbcElement)) {
+            return false;
+        }
+
+        JdbcElement other = (JdbcElement) o;
+        return kind == other.kind && id == other.id;
+    }
+
+    @Override public int hashCode() {
+        return 31 * kind.hashCode() + Long.hashCode(id);
+    }
+
+    @Override public String toString() {
+        return "JdbcElement[kind=" + kind + ", id=" + id + (cp == null ? "" : ", cp=" + cp) + "]";
+    }
+}
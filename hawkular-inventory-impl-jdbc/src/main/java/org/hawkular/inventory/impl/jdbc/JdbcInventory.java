@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.base.BaseInventory;
+import org.hawkular.inventory.base.TransactionConstructor;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * The inventory storing its data directly in a relational database using plain JDBC. The transitive closures over the
+ * relationships are computed in the database using recursive common table expressions.
+ *
+ * <p>The database is either looked up as a datasource in JNDI (if the {@link #DATASOURCE} is configured) or connected
+ * to directly using the {@link #URL}, {@link #USERNAME} and {@link #PASSWORD}. The schema is created on the first
+ * start.
+ *
+ * @since 1.1.3
+ */
+public final class JdbcInventory extends BaseInventory<JdbcElement> {
+    public static final Configuration.Property DATASOURCE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.jdbc.datasource")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_JDBC_DATASOURCE").build();
+
+    public static final Configuration.Property URL = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.jdbc.url")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_JDBC_URL").build();
+
+    public static final Configuration.Property USERNAME = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.jdbc.username")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_JDBC_USERNAME").build();
+
+    public static final Configuration.Property PASSWORD = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.jdbc.password")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_JDBC_PASSWORD").build();
+
+    public JdbcInventory() {
+    }
+
+    private JdbcInventory(BaseInventory<JdbcElement> orig, InventoryBackend<JdbcElement> backend,
+                          TransactionConstructor<JdbcElement> transactionConstructor) {
+        super(orig, backend, transactionConstructor);
+    }
+
+    @Override protected JdbcInventory cloneWith(TransactionConstructor<JdbcElement> transactionCtor) {
+        return new JdbcInventory(this, null, transactionCtor);
+    }
+
+    @Override
+    protected InventoryBackend<JdbcElement> doInitialize(Configuration configuration) {
+        String datasource = configuration.getProperty(DATASOURCE, null);
+
+        JdbcContext context;
+        if (datasource != null) {
+            context = JdbcContext.forDataSource(datasource);
+        } else {
+            String url = configuration.getProperty(URL, null);
+            if (url == null) {
+                throw new IllegalStateException("Either " + DATASOURCE.getPropertyName() + " or "
+                        + URL.getPropertyName() + " needs to be configured.");
+            }
+
+            context = JdbcContext.forUrl(url, configuration.getProperty(USERNAME, null),
+                    configuration.getProperty(PASSWORD, null));
+        }
+
+        context.ensureSchema();
+
+        return new JdbcBackend(context);
+    }
+}
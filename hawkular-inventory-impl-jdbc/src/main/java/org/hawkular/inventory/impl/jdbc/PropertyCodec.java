@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Stores the values of the user defined properties in the typed columns of the property tables.
+ *
+ * <p>The strings, booleans and numbers are stored in the columns of the corresponding type so that the properties can
+ * be filtered on in the queries. Any other value is serialized into the string column.
+ *
+ * @since 1.1.3
+ */
+final class PropertyCodec {
+    static final char STRING = 's';
+    static final char BOOLEAN = 'b';
+    static final char INTEGER = 'i';
+    static final char LONG = 'l';
+    static final char FLOAT = 'f';
+    static final char DOUBLE = 'd';
+    static final char SERIALIZED = 'o';
+
+    /**
+     * The columns, in the order used by {@link #bind(PreparedStatement, int, Object)} and
+     * {@link #read(ResultSet, int)}.
+     */
+    static final String VALUE_COLUMNS = "value_type, string_value, long_value, double_value, boolean_value";
+
+    private PropertyCodec() {
+        //no instances, thank you
+    }
+
+    static char typeOf(Object value) {
+        Class<?> cls = value.getClass();
+        if (cls == String.class) {
+            return STRING;
+        } else if (cls == Boolean.class) {
+            return BOOLEAN;
+        } else if (cls == Integer.class) {
+            return INTEGER;
+        } else if (cls == Long.class) {
+            return LONG;
+        } else if (cls == Float.class) {
+            return FLOAT;
+        } else if (cls == Double.class) {
+            return DOUBLE;
+        } else {
+            return SERIALIZED;
+        }
+    }
+
+    static boolean isIntegral(char type) {
+        return type == INTEGER || type == LONG;
+    }
+
+    static boolean isFloatingPoint(char type) {
+        return type == FLOAT || type == DOUBLE;
+    }
+
+    /**
+     * Binds the value into the 5 parameters corresponding to the {@link #VALUE_COLUMNS} starting at the provided
+     * index.
+     */
+    static void bind(PreparedStatement st, int index, Object value) throws SQLException {
+        char type = typeOf(value);
+
+        st.setString(index, String.valueOf(type));
+
+        switch (type) {
+            case STRING:
+                st.setString(index + 1, (String) value);
+                break;
+            case SERIALIZED:
+                st.setString(index + 1, serialize(value));
+                break;
+            default:
+                st.setNull(index + 1, Types.VARCHAR);
+        }
+
+        if (isIntegral(type)) {
+            st.setLong(index + 2, ((Number) value).longValue());
+        } else {
+            st.setNull(index + 2, Types.BIGINT);
+        }
+
+        if (isFloatingPoint(type)) {
+            st.setDouble(index + 3, ((Number) value).doubleValue());
+        } else {
+            st.setNull(index + 3, Types.DOUBLE);
+        }
+
+        if (type == BOOLEAN) {
+            st.setBoolean(index + 4, (Boolean) value);
+        } else {
+            st.setNull(index + 4, Types.BOOLEAN);
+        }
+    }
+
+    /**
+     * Reads the value from the {@link #VALUE_COLUMNS} starting at the provided index.
+     */
+    static Object read(ResultSet rs, int index) throws SQLException {
+        char type = rs.getString(index).charAt(0);
+        switch (type) {
+            case STRING:
+                return rs.getString(index + 1);
+            case SERIALIZED:
+                return deserialize(rs.getString(index + 1));
+            case INTEGER:
+                return (int) rs.getLong(index + 2);
+            case LONG:
+                return rs.getLong(index + 2);
+            case FLOAT:
+                return (float) rs.getDouble(index + 3);
+            case DOUBLE:
+                return rs.getDouble(index + 3);
+            case BOOLEAN:
+                return rs.getBoolean(index + 4);
+            default:
+                throw new IllegalStateException("Unknown type of the property value stored in the database: " + type);
+        }
+    }
+
+    /**
+     * @return the serialized form of the value as stored in the string column, used to compare serialized values
+     * in the queries
+     */
+    static String serialize(Object value) {
+        if (!(value instanceof Serializable)) {
+            throw new IllegalArgumentException("Cannot store the property value of type " + value.getClass()
+                    + ". Only the serializable values are supported.");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize the property value " + value, e);
+        }
+
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    private static Object deserialize(String value) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(value)))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to deserialize the property value stored in the database.", e);
+        }
+    }
+}
@@ -0,0 +1,1771 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.jdbc;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
+import static org.hawkular.inventory.api.Relationships.WellKnown.isParentOf;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.DATA;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.ENTITY;
+import static org.hawkular.inventory.impl.jdbc.JdbcElement.Kind.RELATIONSHIP;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.hawkular.inventory.api.FilterFragment;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.QueryFragment;
+import org.hawkular.inventory.api.Relationships;
+import org.hawkular.inventory.api.filters.Filter;
+import org.hawkular.inventory.api.filters.Marker;
+import org.hawkular.inventory.api.filters.RecurseFilter;
+import org.hawkular.inventory.api.filters.Related;
+import org.hawkular.inventory.api.filters.RelationFilter;
+import org.hawkular.inventory.api.filters.RelationWith;
+import org.hawkular.inventory.api.filters.SwitchElementType;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.base.spi.NoopFilter;
+import org.hawkular.inventory.impl.jdbc.JdbcElement.Kind;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.Path;
+import org.hawkular.inventory.paths.RelativePath;
+import org.hawkular.inventory.paths.SegmentType;
+
+/**
+ * Evaluates the inventory queries using set-based SQL.
+ *
+ * <p>The query is evaluated in steps, each of which is translated into a handful of SQL selects. A step starts with a
+ * "move" filter (like {@link Related} or {@link With.DataAt}) and carries all the filters that merely restrict the
+ * results of that move. The elements found by the previous step are fed to the next step in batches of ids, so the
+ * number of the SQL statements depends on the number of the moves in the query, not on the number of the elements
+ * found.
+ *
+ * <p>The semantics follow the Tinkerpop implementation. Namely, a move over a relationship remembers the relationship
+ * so that the subsequent relationship filters can be applied to it and the relationships are only returned as the
+ * results of the query if they were switched to explicitly using the {@link SwitchElementType} filter.
+ *
+ * <p>The recursive filters over the containment-like relationships are evaluated using a recursive common table
+ * expression so that the whole hierarchy is retrieved using a single statement.
+ *
+ * @since 1.1.3
+ */
+final class QueryEvaluator {
+
+    /**
+     * The maximum number of ids passed to a single statement.
+     */
+    private static final int MAX_KEYS_PER_STATEMENT = 500;
+
+    /**
+     * The relationships that the inventory guarantees not to form any loops. The recursion over these can be safely
+     * evaluated by the database.
+     */
+    private static final Set<String> ACYCLIC_RELATIONSHIPS = new HashSet<>(Arrays.asList(contains.name(),
+            isParentOf.name()));
+
+    private static final String FALSE = "1 = 0";
+
+    /**
+     * The hasData relationships are not stored, they are represented by the data roots and their owners. The owner
+     * ({@code x2}) provides the source of the relationship.
+     */
+    private static final String DATA_LINKS = "hi_data x1 JOIN hi_entity x2 ON x2.id = x1.owner_id";
+    private static final String DATA_LINK_OWNER = "x2";
+
+    private final Connection connection;
+    private final boolean recursionCompilable;
+
+    private int aliasCount;
+
+    /**
+     * The common table expressions of the query being compiled along with their parameters.
+     */
+    private final List<String> commonTables = new ArrayList<>();
+    private final List<Object> commonTableParams = new ArrayList<>();
+
+    /**
+     * @param connection          the connection to query the database with
+     * @param recursionCompilable whether the recursion over the containment-like relationships can be compiled into
+     *                            a common table expression of the compiled query
+     */
+    QueryEvaluator(Connection connection, boolean recursionCompilable) {
+        this.connection = connection;
+        this.recursionCompilable = recursionCompilable;
+    }
+
+    /**
+     * Evaluates the query.
+     *
+     * @param startingPoint the element to start the evaluation from or null to start from all the elements
+     * @param query         the query to evaluate
+     * @return the found elements in the order they were found in
+     */
+    List<JdbcElement> evaluate(JdbcElement startingPoint, Query query) throws SQLException {
+        List<Traverser> start = startingPoint == null ? null
+                : singletonList(new Traverser(startingPoint, null, false, emptyMap(), 0));
+
+        List<Traverser> results = evaluate(query, start, false);
+
+        return results == null ? emptyList() : results.stream().map(Traverser::result).collect(toList());
+    }
+
+    /**
+     * Compiles the query into a single SQL select so that the database can order, page and count the results without
+     * them being loaded.
+     *
+     * <p>Not all the queries can be expressed in SQL. The labels, the relative paths, the identity hash lookups and
+     * the recursion over other than the containment-like relationships need to see the individual elements and
+     * therefore require the query to be {@link #evaluate(JdbcElement, Query) evaluated} step by step. The transitive
+     * closures over the containment-like relationships become recursive common table expressions of the compiled
+     * query, unless the database cannot use them in the sub-queries.
+     *
+     * @param startingPoint the element to start the evaluation from or null to start from all the elements
+     * @param query         the query to compile
+     * @return the compiled query or null if the query cannot be expressed in SQL
+     */
+    CompiledQuery compile(JdbcElement startingPoint, Query query) throws SQLException {
+        if (startingPoint != null && startingPoint.kind == Kind.DATA_LINK) {
+            return null;
+        }
+
+        aliasCount = 0;
+        commonTables.clear();
+        commonTableParams.clear();
+
+        try {
+            List<Chain> start = startingPoint == null ? null : singletonList(Chain.of(startingPoint, nextAlias()));
+
+            List<Chain> chains = compile(query, start, false);
+
+            return new CompiledQuery(new ArrayList<>(commonTables), new ArrayList<>(commonTableParams),
+                    chains == null ? emptyList() : chains.stream().map(Chain::toMember).collect(toList()));
+        } catch (NotExpressible e) {
+            return null;
+        }
+    }
+
+    /**
+     * Computes the transitive closure of the relationships with provided names in the provided direction. Unlike the
+     * traversals, the closure never visits a single element twice.
+     */
+    List<JdbcElement> closure(JdbcElement start, Relationships.Direction direction, String... names)
+            throws SQLException {
+
+        Traverser root = new Traverser(start, null, false, emptyMap(), 0);
+        List<Related> steps = new ArrayList<>();
+        for (String name : names.length == 0 ? new String[]{null} : names) {
+            switch (direction) {
+                case outgoing:
+                    steps.add(new RelatedBy(name, Related.EntityRole.SOURCE));
+                    break;
+                case incoming:
+                    steps.add(new RelatedBy(name, Related.EntityRole.TARGET));
+                    break;
+                default:
+                    steps.add(new RelatedBy(name, Related.EntityRole.ANY));
+            }
+        }
+
+        List<Traverser> found;
+        if (steps.size() == 1 && isEvaluableInDatabase(start.kind == ENTITY, new Filter[]{steps.get(0)})) {
+            found = recurseInDatabase(singletonList(root), steps.get(0), emptyList());
+        } else {
+            Filter[][] chains = steps.stream().map(s -> new Filter[]{s}).toArray(Filter[][]::new);
+            found = recurseIteratively(singletonList(root), chains);
+        }
+
+        Set<JdbcElement> seen = new HashSet<>();
+        return found.stream().map(t -> t.element).filter(e -> !e.equals(start) && seen.add(e)).collect(toList());
+    }
+
+    private List<Traverser> evaluate(Query query, List<Traverser> frontier, boolean isFilter) throws SQLException {
+        List<Filter> group = new ArrayList<>();
+        for (QueryFragment qf : query.getFragments()) {
+            boolean thisIsFilter = qf instanceof FilterFragment;
+            if (thisIsFilter != isFilter) {
+                frontier = applyGroup(frontier, group, isFilter, false);
+                group = new ArrayList<>();
+                isFilter = thisIsFilter;
+            }
+            group.add(qf.getFilter());
+        }
+
+        frontier = applyGroup(frontier, group, isFilter, true);
+
+        if (query.getSubTrees().isEmpty()) {
+            return frontier;
+        } else if (query.getSubTrees().size() == 1) {
+            return evaluate(query.getSubTrees().get(0), frontier, isFilter);
+        }
+
+        if (frontier == null) {
+            List<Traverser> results = new ArrayList<>();
+            for (Query branch : query.getSubTrees()) {
+                List<Traverser> branchResults = evaluate(branch, null, false);
+                if (branchResults != null) {
+                    results.addAll(branchResults);
+                }
+            }
+            return finish(results);
+        }
+
+        //the union of the branches is ordered by the traversers that entered the branches, as in Tinkerpop
+        List<Traverser> tagged = tag(frontier);
+        List<List<Traverser>> byOrigin = new ArrayList<>(frontier.size());
+        frontier.forEach(t -> byOrigin.add(new ArrayList<>()));
+        for (Query branch : query.getSubTrees()) {
+            for (Traverser t : evaluate(branch, tagged, false)) {
+                byOrigin.get(t.tag).add(t.withTag(frontier.get(t.tag).tag));
+            }
+        }
+
+        List<Traverser> results = new ArrayList<>();
+        byOrigin.forEach(results::addAll);
+        return finish(results);
+    }
+
+    /**
+     * The counterpart of {@link #evaluate(Query, List, boolean)} producing the SQL chains instead of the traversers.
+     * The structure of the methods compiling the query follows the structure of the methods evaluating it so that
+     * both produce the same results.
+     */
+    private List<Chain> compile(Query query, List<Chain> chains, boolean isFilter) throws NotExpressible, SQLException {
+        List<Filter> group = new ArrayList<>();
+        for (QueryFragment qf : query.getFragments()) {
+            boolean thisIsFilter = qf instanceof FilterFragment;
+            if (thisIsFilter != isFilter) {
+                chains = compileGroup(chains, group, isFilter, false);
+                group = new ArrayList<>();
+                isFilter = thisIsFilter;
+            }
+            group.add(qf.getFilter());
+        }
+
+        chains = compileGroup(chains, group, isFilter, true);
+
+        if (query.getSubTrees().isEmpty()) {
+            return chains;
+        } else if (query.getSubTrees().size() == 1) {
+            return compile(query.getSubTrees().get(0), chains, isFilter);
+        }
+
+        //the order of the results doesn't matter here, because the compiled queries are always ordered explicitly
+        List<Chain> results = new ArrayList<>();
+        for (Query branch : query.getSubTrees()) {
+            List<Chain> branchResults = compile(branch, chains, false);
+            if (branchResults != null) {
+                results.addAll(branchResults);
+            }
+        }
+
+        return finishChains(results);
+    }
+
+    private List<Chain> compileGroup(List<Chain> chains, List<Filter> group, boolean isFilter, boolean last)
+            throws NotExpressible, SQLException {
+        if (isFilter && group.stream().anyMatch(QueryEvaluator::isMove)) {
+            return compileExists(chains, group);
+        }
+
+        List<Chain> ret = compileFilters(chains, group);
+        return isFilter && !last ? ret : finishChains(ret);
+    }
+
+    private List<Chain> compileExists(List<Chain> chains, List<Filter> filters) throws NotExpressible, SQLException {
+        if (chains == null) {
+            chains = compileStep(startStep(filters.get(0)), null);
+        }
+
+        List<Chain> ret = new ArrayList<>(chains.size());
+        for (Chain c : chains) {
+            List<Chain> probes = compileFilters(singletonList(c.probe()), filters);
+            if (probes.isEmpty()) {
+                continue;
+            }
+
+            Chain filtered = c.copy();
+            List<String> conditions = new ArrayList<>(probes.size());
+            for (Chain p : probes) {
+                conditions.add(p.existence());
+                filtered.params.addAll(p.params);
+            }
+            filtered.where.add(conditions.size() == 1 ? conditions.get(0)
+                    : "(" + String.join(" OR ", conditions) + ")");
+
+            ret.add(filtered);
+        }
+
+        return ret;
+    }
+
+    private List<Chain> compileFilters(List<Chain> chains, List<Filter> filters) throws NotExpressible, SQLException {
+        Step step = null;
+        for (Filter f : filters) {
+            if (chains != null && chains.isEmpty()) {
+                return chains;
+            }
+
+            if (chains == null && step == null) {
+                step = startStep(f);
+            }
+
+            if (f instanceof RecurseFilter) {
+                if (step != null) {
+                    chains = compileStep(step, chains);
+                    step = null;
+                }
+                chains = compileRecursion(chains, (RecurseFilter) f);
+            } else if (isMove(f)) {
+                if (step != null) {
+                    chains = compileStep(step, chains);
+                }
+                step = moveStep(f);
+            } else {
+                if (step == null) {
+                    step = stayStep();
+                }
+                step.filter(f);
+            }
+        }
+
+        if (step != null) {
+            chains = compileStep(step, chains);
+        }
+
+        return chains;
+    }
+
+    private List<Chain> compileRecursion(List<Chain> chains, RecurseFilter filter) throws NotExpressible, SQLException {
+        Filter[][] loops = filter.getLoopChains();
+        if (!recursionCompilable || loops.length != 1 || !isEvaluableInDatabase(true, loops[0])) {
+            throw NotExpressible.INSTANCE;
+        }
+
+        Related related = (Related) loops[0][0];
+        List<Filter> conditions = Arrays.asList(loops[0]).subList(1, loops[0].length);
+
+        List<Chain> ret = new ArrayList<>(chains.size());
+        for (Chain c : chains) {
+            //the closure is a table of its own, so it cannot depend on the outer query
+            if (c.correlated || c.kind != ENTITY) {
+                throw NotExpressible.INSTANCE;
+            }
+
+            String alias = nextAlias();
+            String name = alias + "_closure";
+            List<Object> params = new ArrayList<>(c.params);
+            commonTables.add(closure(name, related, conditions,
+                    "SELECT " + c.element + ".id FROM " + String.join(", ", c.from) + c.whereClause(), params));
+            commonTableParams.addAll(params);
+
+            Chain next = c.copy();
+            //the containment-like relationships may still reach a single element over several paths
+            next.from.add("(SELECT DISTINCT origin_id, id FROM " + name + ") " + alias + "c");
+            next.from.add("hi_entity " + alias + "x1");
+            next.where.add(alias + "c.origin_id = " + c.element + ".id AND " + alias + "x1.id = " + alias + "c.id");
+            next.element = alias + "x1";
+            next.edge = null;
+            next.explicit = false;
+
+            ret.add(next);
+        }
+
+        return ret;
+    }
+
+    private List<Chain> compileStep(Step step, List<Chain> chains) throws NotExpressible, SQLException {
+        if (chains != null && chains.isEmpty()) {
+            return chains;
+        }
+
+        //the labels and the deduplication need to see the individual elements
+        if (!step.marks.isEmpty() || !step.checks.isEmpty() || step.dedup) {
+            throw NotExpressible.INSTANCE;
+        }
+
+        if (chains == null) {
+            List<Chain> ret = new ArrayList<>();
+            for (Select s : step.selects) {
+                if (s.isEmpty()) {
+                    continue;
+                }
+                //the data links are not stored, so they cannot be the results of the compiled query
+                if (s.elementKind == Kind.DATA_LINK) {
+                    throw NotExpressible.INSTANCE;
+                }
+                ret.add(Chain.start(s, nextAlias()));
+            }
+            return ret;
+        } else if (!step.needsDatabase) {
+            return step.edgeDropped ? chains.stream().map(Chain::dropEdge).collect(toList()) : chains;
+        }
+
+        List<Chain> ret = new ArrayList<>();
+        for (Chain c : chains) {
+            for (Select s : step.selects) {
+                String alias = nextAlias();
+                List<String> joins = s.keys.joins.apply(c, Chain.rename(s.keyColumn, alias));
+                if (joins == null) {
+                    throw NotExpressible.INSTANCE;
+                }
+
+                for (String join : joins) {
+                    ret.add(c.join(s, alias, join));
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private static List<Chain> finishChains(List<Chain> chains) {
+        return chains == null ? null : chains.stream()
+                .map(c -> c.edge != null && !c.explicit ? c.dropEdge() : c).collect(toList());
+    }
+
+    private String nextAlias() {
+        return "q" + aliasCount++;
+    }
+
+    /**
+     * Applies a group of consecutive path or filter fragments. A path group moves the traversers while a filter group
+     * containing moves merely checks that the moves lead somewhere.
+     */
+    private List<Traverser> applyGroup(List<Traverser> frontier, List<Filter> group, boolean isFilter,
+                                       boolean last) throws SQLException {
+        //as in Tinkerpop, the recursion alone doesn't make the filter remember the position, only the direct moves do
+        if (isFilter && group.stream().anyMatch(QueryEvaluator::isMove)) {
+            return exists(frontier, group);
+        }
+
+        List<Traverser> ret = apply(frontier, group);
+        return isFilter && !last ? ret : finish(ret);
+    }
+
+    private List<Traverser> exists(List<Traverser> frontier, List<Filter> filters) throws SQLException {
+        if (frontier == null) {
+            frontier = execute(startStep(filters.get(0)), null);
+        }
+
+        List<Traverser> probes = tag(frontier);
+        Set<Integer> found = new HashSet<>();
+        for (Traverser t : apply(probes, filters)) {
+            found.add(t.tag);
+        }
+
+        List<Traverser> ret = new ArrayList<>(found.size());
+        for (int i = 0; i < frontier.size(); ++i) {
+            if (found.contains(i)) {
+                ret.add(frontier.get(i));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Applies the chain of filters to the traversers. If the traversers are null, the evaluation starts with all the
+     * elements of the type implied by the first filter.
+     */
+    private List<Traverser> apply(List<Traverser> frontier, List<Filter> filters) throws SQLException {
+        Step step = null;
+        for (Filter f : filters) {
+            if (frontier != null && frontier.isEmpty()) {
+                return frontier;
+            }
+
+            if (frontier == null && step == null) {
+                step = startStep(f);
+            }
+
+            if (f instanceof RecurseFilter) {
+                if (step != null) {
+                    frontier = execute(step, frontier);
+                    step = null;
+                }
+                frontier = recurse(frontier, (RecurseFilter) f);
+            } else if (isMove(f)) {
+                if (step != null) {
+                    frontier = execute(step, frontier);
+                }
+                step = moveStep(f);
+            } else {
+                if (step == null) {
+                    step = stayStep();
+                }
+                step.filter(f);
+            }
+        }
+
+        if (step != null) {
+            frontier = execute(step, frontier);
+        }
+
+        return frontier;
+    }
+
+    private List<Traverser> recurse(List<Traverser> frontier, RecurseFilter filter) throws SQLException {
+        List<Traverser> roots = tag(dropEdges(frontier));
+        Filter[][] chains = filter.getLoopChains();
+
+        List<Traverser> results;
+        boolean entityRoots = roots.stream().allMatch(t -> t.element.kind == ENTITY);
+        if (chains.length == 1 && isEvaluableInDatabase(entityRoots, chains[0])) {
+            results = recurseInDatabase(roots, (Related) chains[0][0],
+                    Arrays.asList(chains[0]).subList(1, chains[0].length));
+        } else {
+            results = recurseIteratively(roots, chains);
+        }
+
+        return results.stream().map(t -> t.withTag(frontier.get(t.tag).tag)).collect(toList());
+    }
+
+    /**
+     * The recursion can be evaluated by the database if it follows a single containment-like relationship and only
+     * restricts the entities it reaches by their attributes.
+     */
+    private static boolean isEvaluableInDatabase(boolean entityRoots, Filter[] chain) {
+        if (chain.length == 0 || !(chain[0] instanceof Related)) {
+            return false;
+        }
+
+        Related related = (Related) chain[0];
+        if (related.getEntityRole() == Related.EntityRole.ANY || related.getRelationshipId() != null
+                || related.getEntityPath() != null
+                || !ACYCLIC_RELATIONSHIPS.contains(related.getRelationshipName())) {
+            return false;
+        }
+
+        for (int i = 1; i < chain.length; ++i) {
+            Filter f = chain[i];
+            if (!(f instanceof With.Types || f instanceof With.Ids || f instanceof With.Names
+                    || f instanceof With.CanonicalPaths || f instanceof NoopFilter)) {
+                return false;
+            }
+        }
+
+        return entityRoots;
+    }
+
+    private List<Traverser> recurseInDatabase(List<Traverser> roots, Related related, List<Filter> conditions)
+            throws SQLException {
+
+        Map<Long, List<Traverser>> rootsById = new LinkedHashMap<>();
+        roots.forEach(t -> rootsById.computeIfAbsent(t.element.id, k -> new ArrayList<>()).add(t));
+
+        Map<Long, List<JdbcElement>> found = new HashMap<>();
+        for (List<Long> ids : chunks(new ArrayList<>(rootsById.keySet()))) {
+            List<Object> params = new ArrayList<>(ids);
+            String sql = "WITH RECURSIVE " + closure("hi_closure", related, conditions,
+                    ids.stream().map(id -> "?").collect(joining(", ")), params)
+                    + " SELECT c.origin_id, " + JdbcElement.columns(ENTITY, "x1")
+                    + " FROM hi_closure c JOIN hi_entity x1 ON x1.id = c.id ORDER BY c.origin_id, c.depth, x1.id";
+
+            try (PreparedStatement st = connection.prepareStatement(sql)) {
+                int i = 1;
+                for (Object param : params) {
+                    st.setObject(i++, param);
+                }
+
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        found.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>())
+                                .add(JdbcElement.read(ENTITY, rs, 2));
+                    }
+                }
+            }
+        }
+
+        List<Traverser> ret = new ArrayList<>();
+        rootsById.forEach((id, ts) -> {
+            List<JdbcElement> reached = found.getOrDefault(id, emptyList());
+            for (Traverser t : ts) {
+                Set<JdbcElement> seen = new HashSet<>();
+                reached.stream().filter(seen::add).forEach(e -> ret.add(t.move(e, null, false)));
+            }
+        });
+
+        return ret;
+    }
+
+    /**
+     * Defines a recursive common table expression with the transitive closure of the containment-like relationship.
+     * The table has three columns - the {@code origin_id} with the id of the element the recursion started at, the
+     * {@code id} of the element reached from it and the {@code depth} at which the element was reached, so that the
+     * closure can be ordered breadth-first.
+     *
+     * @param name       the name of the table
+     * @param related    the relationship to follow
+     * @param conditions the conditions on the reached entities
+     * @param origins    the SQL list of the ids (or a select of them) to start the recursion at
+     * @param params     the parameters of the origins, the parameters of the table are added to them
+     */
+    private static String closure(String name, Related related, List<Filter> conditions, String origins,
+                                  List<Object> params) {
+        boolean outgoing = related.getEntityRole() == Related.EntityRole.SOURCE;
+        String near = outgoing ? "source_id" : "target_id";
+        String far = outgoing ? "target_id" : "source_id";
+
+        Select descend = new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0." + far, null, null,
+                "x1", ENTITY, "x0", false);
+        descend.where("x0.name = ?", related.getRelationshipName());
+        conditions.forEach(descend::filter);
+
+        String condition = String.join(" AND ", descend.where);
+
+        //the condition is applied both to the anchor and to the recursive part of the table
+        params.addAll(descend.params);
+        params.addAll(descend.params);
+
+        return name + " (origin_id, id, depth) AS ("
+                + "SELECT x0." + near + ", x1.id, 1 FROM " + descend.from + " WHERE x0." + near + " IN (" + origins
+                + ") AND " + condition
+                + " UNION ALL "
+                + "SELECT c.origin_id, x1.id, c.depth + 1 FROM " + name + " c JOIN hi_relationship x0 ON x0." + near
+                + " = c.id JOIN hi_entity x1 ON x1.id = x0." + far + " WHERE " + condition
+                + ")";
+    }
+
+    private List<Traverser> recurseIteratively(List<Traverser> roots, Filter[][] chains) throws SQLException {
+        List<Traverser> results = new ArrayList<>();
+        Set<List<Object>> seen = new HashSet<>();
+
+        List<Traverser> current = roots;
+        while (!current.isEmpty()) {
+            List<Traverser> next = new ArrayList<>();
+            for (Filter[] chain : chains) {
+                next.addAll(dropEdges(apply(current, Arrays.asList(chain))));
+            }
+
+            //guard against the loops by never visiting the same element twice from a single root
+            current = next.stream().filter(t -> seen.add(Arrays.asList(t.tag, t.element))).collect(toList());
+            results.addAll(current);
+        }
+
+        return results;
+    }
+
+    private List<Traverser> execute(Step step, List<Traverser> frontier) throws SQLException {
+        if (frontier != null && frontier.isEmpty()) {
+            return frontier;
+        }
+
+        List<Traverser> ret;
+        if (frontier == null) {
+            ret = new ArrayList<>();
+            for (Select start : step.selects) {
+                if (start.isEmpty()) {
+                    continue;
+                }
+                for (Row row : start.run(connection, null).getOrDefault(null, emptyList())) {
+                    ret.add(start.derive(new Traverser(row.element, null, false, emptyMap(), 0), row));
+                }
+            }
+        } else if (!step.needsDatabase) {
+            ret = frontier.stream().map(t -> step.edgeDropped ? t.move(t.element, null, t.explicit) : t)
+                    .collect(toList());
+        } else {
+            List<Map<Object, List<Row>>> rows = new ArrayList<>(step.selects.size());
+            for (Select s : step.selects) {
+                Set<Object> keys = new LinkedHashSet<>();
+                frontier.forEach(t -> keys.addAll(s.keys.values.apply(t)));
+                rows.add(keys.isEmpty() ? emptyMap() : s.run(connection, keys));
+            }
+
+            ret = new ArrayList<>();
+            for (Traverser t : frontier) {
+                for (int i = 0; i < step.selects.size(); ++i) {
+                    Select s = step.selects.get(i);
+                    for (Object key : s.keys.values.apply(t)) {
+                        for (Row row : rows.get(i).getOrDefault(key, emptyList())) {
+                            ret.add(s.derive(t, row));
+                        }
+                    }
+                }
+            }
+        }
+
+        for (String label : step.marks) {
+            ret = ret.stream().map(t -> t.mark(label)).collect(toList());
+        }
+
+        for (Predicate<Traverser> check : step.checks) {
+            ret = ret.stream().filter(check).collect(toList());
+        }
+
+        if (step.dedup) {
+            Set<List<Object>> seen = new HashSet<>();
+            ret = ret.stream().filter(t -> seen.add(Arrays.asList(t.tag, t.element))).collect(toList());
+        }
+
+        return ret;
+    }
+
+    private static Step startStep(Filter firstFilter) {
+        boolean relationships = firstFilter instanceof RelationFilter
+                || (firstFilter instanceof With.CanonicalPaths
+                && SegmentType.rl == ((With.CanonicalPaths) firstFilter).getPaths()[0].getSegment().getElementType());
+
+        Step ret = new Step();
+        if (relationships) {
+            ret.selects.add(new Select("hi_relationship x1", null, null, "x1", RELATIONSHIP, null, false));
+            ret.selects.add(new Select(DATA_LINKS, null, null, "x1", Kind.DATA_LINK, null, false));
+        } else {
+            ret.selects.add(new Select("hi_entity x1", null, null, "x1", ENTITY, null, false));
+        }
+        ret.needsDatabase = true;
+        return ret;
+    }
+
+    private static Step stayStep() {
+        Step ret = new Step();
+
+        for (Kind kind : new Kind[]{ENTITY, RELATIONSHIP, DATA}) {
+            ret.selects.add(new Select(table(kind) + " x1", "x1.id", unrelatedElementIdOf(kind), "x1", kind, null,
+                    null));
+        }
+        ret.selects.add(new Select(DATA_LINKS, "x1.id", unrelatedElementIdOf(Kind.DATA_LINK), "x1", Kind.DATA_LINK,
+                null, null));
+
+        //the traversers that moved over a relationship keep it so that the relationship filters can be applied to it
+        ret.selects.add(new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0.target_id", "x0.id",
+                edgeIdOf(true), "x1", ENTITY, "x0", null));
+        ret.selects.add(new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0.source_id", "x0.id",
+                edgeIdOf(false), "x1", ENTITY, "x0", null));
+
+        return ret;
+    }
+
+    private static Step moveStep(Filter filter) {
+        Step ret = new Step();
+        ret.needsDatabase = true;
+
+        if (filter instanceof Related) {
+            related(ret, (Related) filter);
+        } else if (filter instanceof SwitchElementType) {
+            switchElementType(ret, (SwitchElementType) filter);
+        } else if (filter instanceof With.DataAt) {
+            dataAt(ret, ((With.DataAt) filter).getDataPath());
+        } else if (filter instanceof With.SameIdentityHash) {
+            ret.selects.add(new Select("hi_entity x0 JOIN hi_entity x1 ON x1.tenant_id = x0.tenant_id"
+                    + " AND x1.identity_hash = x0.identity_hash AND x1.entity_type = x0.entity_type", "x0.id",
+                    elementIdOf(ENTITY), "x1", ENTITY, null, false));
+            ret.dedup = true;
+        } else if (filter instanceof With.RelativePaths) {
+            RelativePath[] paths = ((With.RelativePaths) filter).getPaths();
+            //the paths are resolved in Java, so this cannot be expressed in SQL
+            ret.selects.add(new Select("hi_entity x1", "x1.cp_hash",
+                    new Keys(t -> relativeTargets(t.element, paths), (c, key) -> null), "x1", ENTITY, null, false));
+        } else {
+            throw new IllegalArgumentException("Unsupported filter type: " + filter.getClass());
+        }
+
+        return ret;
+    }
+
+    private static void related(Step step, Related related) {
+        String name = related.getRelationshipName();
+        Related.EntityRole role = related.getEntityRole();
+        boolean any = role == Related.EntityRole.ANY;
+
+        if (!hasData.name().equals(name)) {
+            if (role == Related.EntityRole.SOURCE || any) {
+                step.selects.add(related(related, "source_id", "target_id", !any));
+            }
+            if (role == Related.EntityRole.TARGET || any) {
+                step.selects.add(related(related, "target_id", "source_id", !any));
+            }
+        }
+
+        //the structured data is not stored as entities, so the relationships to it are "virtual"
+        if (related.getRelationshipId() != null) {
+            return;
+        }
+
+        boolean data = name == null || hasData.name().equals(name);
+        boolean dataContains = name == null || contains.name().equals(name);
+
+        if (data && role != Related.EntityRole.TARGET && related.getEntityPath() == null) {
+            step.selects.add(new Select("hi_data x1", "x1.owner_id", elementIdOf(ENTITY), "x1", DATA, null, false));
+        }
+
+        if (data && role != Related.EntityRole.SOURCE) {
+            Select s = new Select("hi_entity x1 JOIN hi_data x0 ON x0.owner_id = x1.id", "x0.id",
+                    elementIdOf(DATA), "x1", ENTITY, null, false);
+            if (related.getEntityPath() != null) {
+                s.where("x1.cp_hash = ?", JdbcElement.cpHash(related.getEntityPath().toString()));
+            }
+            step.selects.add(s);
+        }
+
+        if (dataContains && role != Related.EntityRole.TARGET && related.getEntityPath() == null) {
+            step.selects.add(new Select("hi_data x1", "x1.parent_id", elementIdOf(DATA), "x1", DATA, null, false));
+        }
+
+        if (dataContains && role != Related.EntityRole.SOURCE && related.getEntityPath() == null) {
+            step.selects.add(new Select("hi_data x1 JOIN hi_data x0 ON x0.parent_id = x1.id", "x0.id",
+                    elementIdOf(DATA), "x1", DATA, null, false));
+        }
+    }
+
+    private static Select related(Related related, String near, String far, boolean keepEdge) {
+        Select ret = new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0." + far, "x0." + near,
+                elementIdOf(ENTITY), "x1", ENTITY, keepEdge ? "x0" : null, false);
+
+        if (related.getRelationshipName() != null) {
+            ret.where("x0.name = ?", related.getRelationshipName());
+        }
+
+        if (related.getRelationshipId() != null) {
+            Long id = parseId(related.getRelationshipId());
+            ret.where(id == null ? FALSE : "x0.id = ?", id);
+        }
+
+        if (related.getEntityPath() != null) {
+            ret.where("x1.cp_hash = ?", JdbcElement.cpHash(related.getEntityPath().toString()));
+        }
+
+        return ret;
+    }
+
+    private static void switchElementType(Step step, SwitchElementType filter) {
+        Relationships.Direction direction = filter.getDirection();
+
+        if (filter.isFromEdge()) {
+            Function<JdbcElement, JdbcElement> edgeOf = e -> e.kind == RELATIONSHIP || e.kind == Kind.DATA_LINK
+                    ? e : null;
+
+            step.selects.add(new Select("hi_entity x1", "x1.id", new Keys(t -> {
+                JdbcElement edge = t.edge != null ? t.edge : edgeOf.apply(t.element);
+                if (edge == null) {
+                    return emptyList();
+                }
+                List<Object> ret = new ArrayList<>(2);
+                if (direction != Relationships.Direction.outgoing) {
+                    ret.add(edge.sourceId);
+                }
+                if (direction != Relationships.Direction.incoming && edge.kind == RELATIONSHIP) {
+                    ret.add(edge.targetId);
+                }
+                return ret;
+            }, (c, key) -> {
+                //the chains never consist of the data links, so the edge is always a relationship
+                String edge = c.edge != null ? c.edge : c.kind == RELATIONSHIP ? c.element : null;
+                if (edge == null) {
+                    return emptyList();
+                }
+                List<String> ret = new ArrayList<>(2);
+                if (direction != Relationships.Direction.outgoing) {
+                    ret.add(key + " = " + edge + ".source_id");
+                }
+                if (direction != Relationships.Direction.incoming) {
+                    ret.add(key + " = " + edge + ".target_id");
+                }
+                return ret;
+            }), "x1", ENTITY, null, false));
+
+            step.selects.add(new Select("hi_data x1", "x1.id", new Keys(t -> {
+                JdbcElement edge = t.edge != null ? t.edge : edgeOf.apply(t.element);
+                return edge != null && edge.kind == Kind.DATA_LINK && direction != Relationships.Direction.incoming
+                        ? singletonList(edge.targetId) : emptyList();
+            }, (c, key) -> emptyList()), "x1", DATA, null, false));
+        } else {
+            if (direction != Relationships.Direction.incoming) {
+                step.selects.add(new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0.target_id",
+                        "x0.source_id", elementIdOf(ENTITY), "x1", ENTITY, "x0", true));
+            }
+            if (direction != Relationships.Direction.outgoing) {
+                step.selects.add(new Select("hi_relationship x0 JOIN hi_entity x1 ON x1.id = x0.source_id",
+                        "x0.target_id", elementIdOf(ENTITY), "x1", ENTITY, "x0", true));
+            }
+        }
+    }
+
+    private static void dataAt(Step step, RelativePath dataPath) {
+        StringBuilder from = new StringBuilder("hi_data x1");
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+
+        String alias = "x1";
+        int i = 2;
+        for (Path.Segment seg : dataPath.getPath()) {
+            String next = "x" + i++;
+            if (SegmentType.up.equals(seg.getElementType())) {
+                from.append(" JOIN hi_data ").append(next).append(" ON ").append(next).append(".id = ").append(alias)
+                        .append(".parent_id");
+            } else {
+                from.append(" JOIN hi_data ").append(next).append(" ON ").append(next).append(".parent_id = ")
+                        .append(alias).append(".id");
+            }
+
+            // map members have both index and key (so that the order of the elements is preserved)
+            // list members have only the index
+            Integer index = toInteger(seg.getElementId());
+            if (index == null) {
+                conditions.add(next + ".data_key = ?");
+                params.add(seg.getElementId());
+            } else {
+                //well, the map could have a numeric key, so we cannot say it has to be a list index here.
+                conditions.add("((" + next + ".data_index = ? AND " + next + ".data_key IS NULL) OR " + next
+                        + ".data_key = ?)");
+                params.add(index);
+                params.add(seg.getElementId());
+            }
+
+            alias = next;
+        }
+
+        Select ret = new Select(from.toString(), "x1.owner_id", elementIdOf(ENTITY), alias, DATA, null, false);
+        ret.where.addAll(conditions);
+        ret.params.addAll(params);
+        step.selects.add(ret);
+    }
+
+    private static List<Object> relativeTargets(JdbcElement element, RelativePath[] paths) {
+        if (element.kind != ENTITY) {
+            return emptyList();
+        }
+
+        CanonicalPath origin = CanonicalPath.fromString(element.cp);
+
+        List<Object> ret = new ArrayList<>(paths.length);
+        for (RelativePath p : paths) {
+            try {
+                ret.add(JdbcElement.cpHash(p.applyTo(origin).toString()));
+            } catch (IllegalArgumentException e) {
+                //the path leads nowhere from this element
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * A relative path with an origin label is a filter checking that the current element is where the path leads
+     * from the labeled element.
+     */
+    private static boolean isReachable(Traverser t, String originLabel, RelativePath[] paths) {
+        JdbcElement origin = t.labels.get(originLabel);
+        if (origin == null || origin.kind != ENTITY || t.element.kind != ENTITY) {
+            return false;
+        }
+
+        CanonicalPath originPath = CanonicalPath.fromString(origin.cp);
+
+        for (RelativePath p : paths) {
+            Path.Segment last = p.getSegment();
+            if (last.getElementType() != t.element.type.getSegmentType()
+                    || !last.getElementId().equals(t.element.eid)) {
+                continue;
+            }
+
+            try {
+                if (p.applyTo(originPath).toString().equals(t.element.cp)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                //the path leads nowhere from the origin
+            }
+        }
+
+        return false;
+    }
+
+    private static Keys elementIdOf(Kind kind) {
+        return new Keys(t -> t.element.kind == kind ? singletonList(t.element.id) : emptyList(),
+                (c, key) -> c.kind == kind ? singletonList(key + " = " + c.element + ".id") : emptyList());
+    }
+
+    /**
+     * The id of the element of the traversers that didn't move over a relationship.
+     */
+    private static Keys unrelatedElementIdOf(Kind kind) {
+        return new Keys(t -> t.edge == null && t.element.kind == kind ? singletonList(t.element.id) : emptyList(),
+                (c, key) -> c.edge == null && c.kind == kind ? singletonList(key + " = " + c.element + ".id")
+                        : emptyList());
+    }
+
+    /**
+     * The id of the relationship the traversers moved over to get to its target or source.
+     */
+    private static Keys edgeIdOf(boolean elementIsTarget) {
+        return new Keys(t -> t.edge != null && (t.edge.targetId == t.element.id) == elementIsTarget
+                ? singletonList(t.edge.id) : emptyList(),
+                (c, key) -> c.edge == null ? emptyList() : singletonList(key + " = " + c.edge + ".id AND " + c.edge
+                        + ".target_id " + (elementIsTarget ? "=" : "<>") + " " + c.element + ".id"));
+    }
+
+    /**
+     * Whether the filter moves the traversers from one element to another.
+     */
+    private static boolean isMove(Filter f) {
+        return f instanceof Related || f instanceof SwitchElementType || f instanceof With.DataAt
+                || f instanceof With.SameIdentityHash
+                || (f instanceof With.RelativePaths && ((With.RelativePaths) f).getMarkerLabel() == null);
+    }
+
+    /**
+     * Whether the filter makes the traversers leave the relationship they moved over.
+     */
+    private static boolean isLeavingRelationship(Filter f) {
+        return (f instanceof With.Ids && ((With.Ids) f).getIds().length != 1) || f instanceof With.Types
+                || f instanceof With.Names || f instanceof With.CanonicalPaths || f instanceof With.PropertyValues
+                || f instanceof With.DataValued || f instanceof With.DataOfTypes || f instanceof With.RelativePaths
+                || f instanceof Marker;
+    }
+
+    private static List<Traverser> finish(List<Traverser> frontier) {
+        return frontier == null ? null : frontier.stream()
+                .map(t -> t.edge != null && !t.explicit ? t.move(t.element, null, false) : t).collect(toList());
+    }
+
+    private static List<Traverser> dropEdges(List<Traverser> frontier) {
+        return frontier.stream().map(t -> t.edge == null ? t : t.move(t.element, null, false)).collect(toList());
+    }
+
+    private static List<Traverser> tag(List<Traverser> frontier) {
+        List<Traverser> ret = new ArrayList<>(frontier.size());
+        for (int i = 0; i < frontier.size(); ++i) {
+            ret.add(frontier.get(i).withTag(i));
+        }
+        return ret;
+    }
+
+    private static String table(Kind kind) {
+        switch (kind) {
+            case ENTITY:
+                return "hi_entity";
+            case RELATIONSHIP:
+                return "hi_relationship";
+            case DATA:
+                return "hi_data";
+            default:
+                throw new IllegalArgumentException("No table for " + kind);
+        }
+    }
+
+    static Long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the id of the data root of the data link with the provided id or null if the id is not of a data link
+     */
+    static Long parseDataLinkId(String id) {
+        return id.startsWith(JdbcElement.DATA_LINK_ID_PREFIX)
+                ? parseId(id.substring(JdbcElement.DATA_LINK_ID_PREFIX.length())) : null;
+    }
+
+    static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> ret = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += MAX_KEYS_PER_STATEMENT) {
+            ret.add(items.subList(i, Math.min(items.size(), i + MAX_KEYS_PER_STATEMENT)));
+        }
+        return ret;
+    }
+
+    /**
+     * A very simplistic conversion of string to positive integer in only decimal radix, same as in the Tinkerpop
+     * implementation.
+     */
+    private static Integer toInteger(String str) {
+        if (str.isEmpty()) {
+            return null;
+        }
+
+        int result = 0;
+        for (char c : str.toCharArray()) {
+            if ('0' <= c && c <= '9') {
+                result = result * 10 + (c - '0');
+            } else {
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * The state of the evaluation of a single "path" through the query.
+     */
+    private static final class Traverser {
+        final JdbcElement element;
+
+        /**
+         * The relationship the traverser moved over to get to the element, if it still is "in" it.
+         */
+        final JdbcElement edge;
+
+        /**
+         * Whether the traverser switched to the relationship explicitly and therefore should report it as the
+         * result.
+         */
+        final boolean explicit;
+
+        final Map<String, JdbcElement> labels;
+
+        /**
+         * Used to find out the origin of the traverser during the evaluation of the sub-queries.
+         */
+        final int tag;
+
+        Traverser(JdbcElement element, JdbcElement edge, boolean explicit, Map<String, JdbcElement> labels, int tag) {
+            this.element = element;
+            this.edge = edge;
+            this.explicit = explicit;
+            this.labels = labels;
+            this.tag = tag;
+        }
+
+        Traverser move(JdbcElement element, JdbcElement edge, boolean explicit) {
+            return new Traverser(element, edge, explicit, labels, tag);
+        }
+
+        Traverser withTag(int tag) {
+            return new Traverser(element, edge, explicit, labels, tag);
+        }
+
+        Traverser mark(String label) {
+            Map<String, JdbcElement> newLabels = new HashMap<>(labels);
+            newLabels.put(label, element);
+            return new Traverser(element, edge, explicit, newLabels, tag);
+        }
+
+        JdbcElement result() {
+            return explicit && edge != null ? edge : element;
+        }
+    }
+
+    /**
+     * The keys of the traversers looked up by a select. The keys are provided both for the traversers evaluated in
+     * memory and for the chains compiled into SQL.
+     */
+    private static final class Keys {
+        /**
+         * Produces the keys of the traverser. Empty if the select doesn't apply to the traverser.
+         */
+        final Function<Traverser, Collection<?>> values;
+
+        /**
+         * Produces the conditions joining the key column (the second argument) to the chain, one for each key. Empty
+         * if the select doesn't apply to the chain, null if the keys cannot be expressed in SQL.
+         */
+        final BiFunction<Chain, String, List<String>> joins;
+
+        Keys(Function<Traverser, Collection<?>> values, BiFunction<Chain, String, List<String>> joins) {
+            this.values = values;
+            this.joins = joins;
+        }
+    }
+
+    /**
+     * A single "path" through the compiled query. This is the SQL counterpart of the traversers - all the rows of the
+     * chain are in the same state as far as the kind of the element and the relationship it moved over are
+     * concerned.
+     */
+    private static final class Chain {
+        final List<String> from;
+        final List<String> where;
+        final List<Object> params;
+
+        /**
+         * Whether the chain is a part of a sub-query referring to the aliases of the outer query.
+         */
+        final boolean correlated;
+
+        String element;
+        Kind kind;
+        String edge;
+        boolean explicit;
+
+        private Chain(List<String> from, List<String> where, List<Object> params, boolean correlated) {
+            this.from = from;
+            this.where = where;
+            this.params = params;
+            this.correlated = correlated;
+        }
+
+        static Chain of(JdbcElement element, String alias) {
+            Chain ret = new Chain(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), false);
+            ret.from.add(table(element.kind) + " " + alias);
+            ret.where.add(alias + ".id = ?");
+            ret.params.add(element.id);
+            ret.element = alias;
+            ret.kind = element.kind;
+            return ret;
+        }
+
+        static Chain start(Select select, String alias) {
+            Chain ret = new Chain(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), false);
+            ret.from.add(rename(select.from, alias));
+            select.where.forEach(w -> ret.where.add(rename(w, alias)));
+            ret.params.addAll(select.params);
+            ret.element = rename(select.elementAlias, alias);
+            ret.kind = select.elementKind;
+            return ret;
+        }
+
+        /**
+         * Renames the aliases used by the selects ({@code x0}, {@code x1}, ...) so that they are unique in the
+         * chain.
+         */
+        static String rename(String sql, String alias) {
+            return sql == null ? null : sql.replaceAll("\\bx(\\d+)\\b", alias + "x$1");
+        }
+
+        Chain copy() {
+            Chain ret = new Chain(new ArrayList<>(from), new ArrayList<>(where), new ArrayList<>(params), correlated);
+            ret.element = element;
+            ret.kind = kind;
+            ret.edge = edge;
+            ret.explicit = explicit;
+            return ret;
+        }
+
+        /**
+         * @return the chain continuing in a correlated sub-query, that is with no tables of its own
+         */
+        Chain probe() {
+            Chain ret = new Chain(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), true);
+            ret.element = element;
+            ret.kind = kind;
+            ret.edge = edge;
+            ret.explicit = explicit;
+            return ret;
+        }
+
+        Chain dropEdge() {
+            Chain ret = copy();
+            ret.edge = null;
+            ret.explicit = false;
+            return ret;
+        }
+
+        /**
+         * The counterpart of {@link Select#derive(Traverser, Row)}.
+         */
+        Chain join(Select select, String alias, String join) {
+            Chain ret = copy();
+            ret.from.add(rename(select.from, alias));
+            ret.where.add(join);
+            select.where.forEach(w -> ret.where.add(rename(w, alias)));
+            ret.params.addAll(select.params);
+
+            boolean explicit = select.explicit == null ? this.explicit : select.explicit;
+            ret.element = rename(select.elementAlias, alias);
+            ret.kind = select.elementKind;
+            ret.edge = rename(select.edgeAlias, alias);
+            ret.explicit = ret.edge != null && explicit;
+            return ret;
+        }
+
+        String whereClause() {
+            return where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where);
+        }
+
+        /**
+         * @return the condition checking that the correlated chain leads somewhere
+         */
+        String existence() {
+            if (from.isEmpty()) {
+                return where.isEmpty() ? "1 = 1" : "(" + String.join(" AND ", where) + ")";
+            }
+
+            return "EXISTS (SELECT 1 FROM " + String.join(", ", from) + whereClause() + ")";
+        }
+
+        CompiledQuery.Member toMember() {
+            boolean edgeResult = explicit && edge != null;
+            return new CompiledQuery.Member(String.join(", ", from) + whereClause(), params,
+                    edgeResult ? edge : element, edgeResult ? RELATIONSHIP : kind);
+        }
+    }
+
+    /**
+     * Thrown when a query cannot be expressed in SQL.
+     */
+    private static final class NotExpressible extends Exception {
+        static final NotExpressible INSTANCE = new NotExpressible();
+
+        private NotExpressible() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Row {
+        final JdbcElement edge;
+        final JdbcElement element;
+
+        Row(JdbcElement edge, JdbcElement element) {
+            this.edge = edge;
+            this.element = element;
+        }
+    }
+
+    /**
+     * A {@link Related} filter constructible with any relationship name (including null for any relationship) and
+     * role, used to express the transitive closures as recursive filters.
+     */
+    private static final class RelatedBy extends Related {
+        RelatedBy(String name, EntityRole role) {
+            super(null, name, role);
+        }
+    }
+
+    /**
+     * A single step of the evaluation. The step consists of several selects, each one applicable to a different kind
+     * of the traversers.
+     */
+    private static final class Step {
+        final List<Select> selects = new ArrayList<>();
+        final List<String> marks = new ArrayList<>();
+        final List<Predicate<Traverser>> checks = new ArrayList<>();
+        boolean needsDatabase;
+        boolean edgeDropped;
+        boolean dedup;
+
+        void filter(Filter f) {
+            if (f instanceof Marker) {
+                marks.add(((Marker) f).getLabel());
+            } else if (f instanceof With.RelativePaths) {
+                With.RelativePaths rp = (With.RelativePaths) f;
+                checks.add(t -> isReachable(t, rp.getMarkerLabel(), rp.getPaths()));
+            } else if (!(f instanceof NoopFilter)) {
+                needsDatabase = true;
+            }
+
+            selects.forEach(s -> s.filter(f));
+
+            if (isLeavingRelationship(f)) {
+                edgeDropped = true;
+            }
+        }
+    }
+
+    /**
+     * A select of the elements reachable from the traversers of a certain kind.
+     */
+    private static final class Select {
+        final String from;
+        final String keyColumn;
+
+        /**
+         * The keys of the traversers looked up in the {@link #keyColumn}.
+         */
+        final Keys keys;
+
+        final String elementAlias;
+        final Kind elementKind;
+
+        /**
+         * The alias of the relationship the traversers move over or null if they don't remember it.
+         */
+        String edgeAlias;
+
+        /**
+         * Whether the traversers switched to the relationships explicitly or null to keep the state of the original
+         * traverser.
+         */
+        final Boolean explicit;
+
+        final List<String> where = new ArrayList<>();
+        final List<Object> params = new ArrayList<>();
+
+        Select(String from, String keyColumn, Keys keys, String elementAlias, Kind elementKind, String edgeAlias,
+               Boolean explicit) {
+            this.from = from;
+            this.keyColumn = keyColumn;
+            this.keys = keys;
+            this.elementAlias = elementAlias;
+            this.elementKind = elementKind;
+            this.edgeAlias = edgeAlias;
+            this.explicit = explicit;
+        }
+
+        /**
+         * @return true if the select cannot find anything because of the filters applied to it
+         */
+        boolean isEmpty() {
+            return where.contains(FALSE);
+        }
+
+        void where(String condition, Object... params) {
+            where.add(condition);
+            if (!FALSE.equals(condition)) {
+                this.params.addAll(Arrays.asList(params));
+            }
+        }
+
+        Traverser derive(Traverser origin, Row row) {
+            boolean explicit = this.explicit == null ? origin.explicit : this.explicit;
+            return origin.move(row.element, row.edge, row.edge != null && explicit);
+        }
+
+        /**
+         * Runs the select for the provided keys.
+         *
+         * @return the rows found, grouped by the keys, or under the null key if there are no keys
+         */
+        Map<Object, List<Row>> run(Connection connection, Collection<Object> keys) throws SQLException {
+            Map<Object, List<Row>> ret = new HashMap<>();
+
+            String columns = (keyColumn == null ? "" : keyColumn + ", ")
+                    + (edgeAlias == null ? "" : JdbcElement.columns(RELATIONSHIP, edgeAlias) + ", ")
+                    + (elementKind == Kind.DATA_LINK
+                    ? JdbcElement.columns(ENTITY, DATA_LINK_OWNER) + ", " + elementAlias + ".id"
+                    : JdbcElement.columns(elementKind, elementAlias));
+
+            List<List<Object>> batches = keys == null ? singletonList(null) : chunks(new ArrayList<>(keys));
+
+            for (List<Object> batch : batches) {
+                List<String> conditions = new ArrayList<>();
+                if (batch != null) {
+                    conditions.add(keyColumn + " IN (" + batch.stream().map(k -> "?").collect(joining(", "))
+                            + ")");
+                }
+                conditions.addAll(where);
+
+                String sql = "SELECT " + columns + " FROM " + from
+                        + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                        + " ORDER BY " + elementAlias + ".id";
+
+                try (PreparedStatement st = connection.prepareStatement(sql)) {
+                    int i = 1;
+                    if (batch != null) {
+                        for (Object key : batch) {
+                            st.setObject(i++, key);
+                        }
+                    }
+                    for (Object param : params) {
+                        st.setObject(i++, param);
+                    }
+
+                    try (ResultSet rs = st.executeQuery()) {
+                        while (rs.next()) {
+                            int col = 1;
+                            Object key = null;
+                            if (keyColumn != null) {
+                                key = normalizeKey(rs.getObject(col++));
+                            }
+
+                            JdbcElement edge = null;
+                            if (edgeAlias != null) {
+                                edge = JdbcElement.read(RELATIONSHIP, rs, col);
+                                col += JdbcElement.columnCount(RELATIONSHIP);
+                            }
+
+                            JdbcElement element = elementKind == Kind.DATA_LINK
+                                    ? JdbcElement.dataLink(JdbcElement.read(ENTITY, rs, col),
+                                    rs.getLong(col + JdbcElement.columnCount(ENTITY)))
+                                    : JdbcElement.read(elementKind, rs, col);
+
+                            ret.computeIfAbsent(key, k -> new ArrayList<>()).add(new Row(edge, element));
+                        }
+                    }
+                }
+            }
+
+            return ret;
+        }
+
+        private static Object normalizeKey(Object key) {
+            return key instanceof Number ? (Object) ((Number) key).longValue() : key;
+        }
+
+        void filter(Filter f) {
+            if (f instanceof NoopFilter || f instanceof Marker || f instanceof With.RelativePaths) {
+                //handled by the step
+            } else if (f instanceof RelationFilter) {
+                if (edgeAlias != null) {
+                    relationCondition(f, edgeAlias, RELATIONSHIP);
+                } else {
+                    relationCondition(f, elementAlias, elementKind);
+                }
+            } else {
+                entityCondition(f, elementAlias, elementKind);
+            }
+
+            if (isLeavingRelationship(f)) {
+                edgeAlias = null;
+            }
+        }
+
+        private void entityCondition(Filter f, String a, Kind kind) {
+            if (f instanceof With.Ids) {
+                String[] ids = ((With.Ids) f).getIds();
+                if (kind == ENTITY) {
+                    in(a + ".eid", ids);
+                } else if (kind == RELATIONSHIP) {
+                    in(a + ".id", Stream.of(ids).map(QueryEvaluator::parseId).filter(Objects::nonNull).toArray());
+                } else if (kind == Kind.DATA_LINK) {
+                    in(a + ".id", Stream.of(ids).map(QueryEvaluator::parseDataLinkId).filter(Objects::nonNull)
+                            .toArray());
+                } else {
+                    where(FALSE);
+                }
+            } else if (f instanceof With.Types) {
+                Set<ElementType> types = Stream.of(((With.Types) f).getSegmentTypes()).map(ElementType::of)
+                        .collect(toSet());
+                typeCondition(a, kind, types);
+            } else if (f instanceof With.Names) {
+                if (kind == ENTITY) {
+                    in(a + ".name", ((With.Names) f).getNames());
+                } else {
+                    where(FALSE);
+                }
+            } else if (f instanceof With.CanonicalPaths) {
+                CanonicalPath[] paths = ((With.CanonicalPaths) f).getPaths();
+                if (kind == ENTITY) {
+                    in(a + ".cp_hash", Stream.of(paths).filter(p -> p.getSegment().getElementType() != SegmentType.rl)
+                            .map(p -> JdbcElement.cpHash(p.toString())).toArray());
+                } else if (kind == RELATIONSHIP) {
+                    in(a + ".id", Stream.of(paths).filter(p -> p.getSegment().getElementType() == SegmentType.rl)
+                            .map(p -> parseId(p.getSegment().getElementId())).filter(Objects::nonNull).toArray());
+                } else if (kind == Kind.DATA_LINK) {
+                    in(a + ".id", Stream.of(paths).filter(p -> p.getSegment().getElementType() == SegmentType.rl)
+                            .map(p -> parseDataLinkId(p.getSegment().getElementId())).filter(Objects::nonNull)
+                            .toArray());
+                } else {
+                    where(FALSE);
+                }
+            } else if (f instanceof With.PropertyValues) {
+                With.PropertyValues pv = (With.PropertyValues) f;
+                propertyCondition(a, kind, pv.getName(), pv.getValues());
+            } else if (f instanceof With.DataValued) {
+                dataValueCondition(a, kind, ((With.DataValued) f).getValue());
+            } else if (f instanceof With.DataOfTypes) {
+                if (kind == DATA) {
+                    in(a + ".data_type", Stream.of(((With.DataOfTypes) f).getTypes())
+                            .map(StructuredData.Type::name).toArray());
+                } else {
+                    where(FALSE);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported filter type: " + f.getClass());
+            }
+        }
+
+        private void relationCondition(Filter f, String a, Kind kind) {
+            if (f instanceof RelationWith.Ids) {
+                String[] ids = ((RelationWith.Ids) f).getIds();
+                if (kind == RELATIONSHIP) {
+                    in(a + ".id", Stream.of(ids).map(QueryEvaluator::parseId).filter(Objects::nonNull).toArray());
+                } else if (kind == ENTITY) {
+                    in(a + ".eid", ids);
+                } else if (kind == Kind.DATA_LINK) {
+                    in(a + ".id", Stream.of(ids).map(QueryEvaluator::parseDataLinkId).filter(Objects::nonNull)
+                            .toArray());
+                } else {
+                    where(FALSE);
+                }
+            } else if (f instanceof RelationWith.PropertyValues) {
+                RelationWith.PropertyValues pv = (RelationWith.PropertyValues) f;
+                propertyCondition(a, kind, pv.getProperty(), pv.getValues());
+            } else if (f instanceof RelationWith.SourceOrTargetOfType) {
+                if (kind == Kind.DATA_LINK) {
+                    dataLinkTypeCondition((RelationWith.SourceOrTargetOfType) f);
+                    return;
+                } else if (kind != RELATIONSHIP) {
+                    where(FALSE);
+                    return;
+                }
+
+                Object[] types = Stream.of(((RelationWith.SourceOrTargetOfType) f).getTypes())
+                        .map(t -> ElementType.of(t).name()).toArray();
+
+                if (f instanceof RelationWith.SourceOfType) {
+                    in(a + ".source_type", types);
+                } else if (f instanceof RelationWith.TargetOfType) {
+                    in(a + ".target_type", types);
+                } else {
+                    String placeholders = Stream.of(types).map(t -> "?").collect(joining(", "));
+                    where("(" + a + ".source_type IN (" + placeholders + ") OR " + a + ".target_type IN ("
+                            + placeholders + "))", Stream.concat(Stream.of(types), Stream.of(types)).toArray());
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported filter type: " + f.getClass());
+            }
+        }
+
+        /**
+         * The source of a data link is its owner, the target is always the structured data.
+         */
+        private void dataLinkTypeCondition(RelationWith.SourceOrTargetOfType f) {
+            Set<ElementType> types = Stream.of(f.getTypes()).map(ElementType::of).collect(toSet());
+            boolean targetMatches = types.contains(ElementType.structuredData);
+
+            if (f instanceof RelationWith.TargetOfType) {
+                if (!targetMatches) {
+                    where(FALSE);
+                }
+            } else if (f instanceof RelationWith.SourceOfType || !targetMatches) {
+                in(DATA_LINK_OWNER + ".entity_type", types.stream().map(ElementType::name).toArray());
+            }
+        }
+
+        private void typeCondition(String a, Kind kind, Set<ElementType> types) {
+            switch (kind) {
+                case ENTITY:
+                    in(a + ".entity_type", types.stream().map(ElementType::name).toArray());
+                    break;
+                case RELATIONSHIP:
+                case DATA_LINK:
+                    if (!types.contains(ElementType.relationship)) {
+                        where(FALSE);
+                    }
+                    break;
+                default:
+                    if (!types.contains(ElementType.structuredData)) {
+                        where(FALSE);
+                    }
+            }
+        }
+
+        private void dataValueCondition(String a, Kind kind, Object value) {
+            if (kind != DATA) {
+                where(FALSE);
+            } else if (value == null) {
+                where(a + ".data_type = ?", StructuredData.Type.undefined.name());
+            } else if (value.getClass() == Long.class) {
+                where(a + ".long_value = ?", value);
+            } else if (value.getClass() == Boolean.class) {
+                where(a + ".boolean_value = ?", value);
+            } else if (value.getClass() == Double.class) {
+                where(a + ".double_value = ?", value);
+            } else {
+                //fallback everything else to string
+                where(a + ".string_value = ?", value.toString());
+            }
+        }
+
+        private void propertyCondition(String a, Kind kind, String name, Object[] values) {
+            switch (name) {
+                case "id":
+                    in(a + ".id", Stream.of(values).map(v -> v instanceof Number ? ((Number) v).longValue()
+                            : kind == Kind.DATA_LINK ? parseDataLinkId(String.valueOf(v))
+                            : parseId(String.valueOf(v))).filter(Objects::nonNull).toArray());
+                    return;
+                case "label":
+                    if (kind == ENTITY) {
+                        in(a + ".entity_type", values);
+                    } else if (kind == RELATIONSHIP) {
+                        in(a + ".name", values);
+                    } else if (kind == Kind.DATA_LINK) {
+                        if (!Arrays.asList(values).contains(hasData.name())) {
+                            where(FALSE);
+                        }
+                    } else {
+                        typeCondition(a, kind, Stream.of(values).map(v -> ElementType.ofName(String.valueOf(v)))
+                                .filter(Objects::nonNull).collect(toSet()));
+                    }
+                    return;
+                default:
+                    //fall through to the mapped or user defined properties
+            }
+
+            String column = JdbcElement.columnOf(kind, ElementType.mapUserDefined(name));
+            if (column != null) {
+                if (values.length == 0) {
+                    where(a + "." + column + " IS NOT NULL");
+                } else {
+                    in(a + "." + column, values);
+                }
+                return;
+            }
+
+            //the data and the data links have no other properties
+            if (kind == DATA || kind == Kind.DATA_LINK) {
+                where(FALSE);
+                return;
+            }
+
+            String propertyTable = kind == ENTITY ? "hi_entity_property" : "hi_relationship_property";
+
+            StringBuilder sql = new StringBuilder("EXISTS (SELECT 1 FROM ").append(propertyTable)
+                    .append(" p WHERE p.element_id = ").append(a).append(".id AND p.name = ?");
+            List<Object> ps = new ArrayList<>();
+            ps.add(name);
+
+            if (values.length > 0) {
+                sql.append(" AND (");
+                for (int i = 0; i < values.length; ++i) {
+                    if (i > 0) {
+                        sql.append(" OR ");
+                    }
+                    Object v = values[i];
+                    char type = PropertyCodec.typeOf(v);
+                    if (PropertyCodec.isIntegral(type)) {
+                        sql.append("(p.value_type IN ('i', 'l') AND p.long_value = ?)");
+                        ps.add(((Number) v).longValue());
+                    } else if (PropertyCodec.isFloatingPoint(type)) {
+                        sql.append("(p.value_type IN ('f', 'd') AND p.double_value = ?)");
+                        ps.add(((Number) v).doubleValue());
+                    } else if (type == PropertyCodec.BOOLEAN) {
+                        sql.append("(p.value_type = 'b' AND p.boolean_value = ?)");
+                        ps.add(v);
+                    } else {
+                        sql.append("(p.value_type = '").append(type).append("' AND p.string_value = ?)");
+                        ps.add(type == PropertyCodec.STRING ? v : PropertyCodec.serialize(v));
+                    }
+                }
+                sql.append(")");
+            }
+            sql.append(")");
+
+            where(sql.toString(), ps.toArray());
+        }
+
+        private void in(String column, Object[] values) {
+            if (values.length == 0) {
+                where(FALSE);
+            } else if (values.length == 1) {
+                where(column + " = ?", values[0]);
+            } else {
+                where(column + " IN (" + Stream.of(values).map(v -> "?").collect(joining(", ")) + ")", values);
+            }
+        }
+    }
+}
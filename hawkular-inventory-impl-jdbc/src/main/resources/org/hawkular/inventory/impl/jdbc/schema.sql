@@ -0,0 +1,115 @@
+--
+-- Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+-- and other contributors as indicated by the @author tags.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+-- The ids of the entities, relationships and structured data are allocated from a single sequence in blocks.
+CREATE TABLE hi_id_sequence (
+  name VARCHAR(64) NOT NULL PRIMARY KEY,
+  next_value BIGINT NOT NULL
+);
+
+INSERT INTO hi_id_sequence (name, next_value) VALUES ('element', 1);
+
+-- The canonical path of each entity is materialized in the cp column. The paths can be too long to be indexed, so
+-- the entities are looked up by the SHA-256 hashes of the paths in the cp_hash column and their uniqueness is
+-- guaranteed by the database using the hashes.
+CREATE TABLE hi_entity (
+  id BIGINT NOT NULL PRIMARY KEY,
+  cp VARCHAR(4096) NOT NULL,
+  cp_hash CHAR(64) NOT NULL,
+  entity_type VARCHAR(32) NOT NULL,
+  eid VARCHAR(1024) NOT NULL,
+  tenant_id VARCHAR(1024) NOT NULL,
+  name VARCHAR(1024),
+  identity_hash VARCHAR(128),
+  content_hash VARCHAR(128),
+  sync_hash VARCHAR(128),
+  metric_unit VARCHAR(64),
+  metric_data_type VARCHAR(64),
+  collection_interval BIGINT,
+  CONSTRAINT hi_entity_cp_uq UNIQUE (cp_hash)
+);
+
+CREATE INDEX hi_entity_type_eid_idx ON hi_entity (entity_type, eid);
+
+CREATE INDEX hi_entity_identity_hash_idx ON hi_entity (tenant_id, identity_hash);
+
+-- The types and paths of the source and target are denormalized into the relationships so that the relationships
+-- can be filtered by them without joining the entities. The paths are not indexed.
+CREATE TABLE hi_relationship (
+  id BIGINT NOT NULL PRIMARY KEY,
+  name VARCHAR(255) NOT NULL,
+  source_id BIGINT NOT NULL,
+  target_id BIGINT NOT NULL,
+  source_cp VARCHAR(4096) NOT NULL,
+  target_cp VARCHAR(4096) NOT NULL,
+  source_type VARCHAR(32) NOT NULL,
+  target_type VARCHAR(32) NOT NULL,
+  CONSTRAINT hi_relationship_source_fk FOREIGN KEY (source_id) REFERENCES hi_entity (id) ON DELETE CASCADE,
+  CONSTRAINT hi_relationship_target_fk FOREIGN KEY (target_id) REFERENCES hi_entity (id) ON DELETE CASCADE
+);
+
+CREATE INDEX hi_relationship_source_idx ON hi_relationship (source_id, name);
+
+CREATE INDEX hi_relationship_target_idx ON hi_relationship (target_id, name);
+
+-- The user defined properties. The value_type column determines which of the value columns holds the value.
+CREATE TABLE hi_entity_property (
+  element_id BIGINT NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  value_type CHAR(1) NOT NULL,
+  string_value VARCHAR(1048576),
+  long_value BIGINT,
+  double_value DOUBLE PRECISION,
+  boolean_value BOOLEAN,
+  CONSTRAINT hi_entity_property_pk PRIMARY KEY (element_id, name),
+  CONSTRAINT hi_entity_property_fk FOREIGN KEY (element_id) REFERENCES hi_entity (id) ON DELETE CASCADE
+);
+
+CREATE TABLE hi_relationship_property (
+  element_id BIGINT NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  value_type CHAR(1) NOT NULL,
+  string_value VARCHAR(1048576),
+  long_value BIGINT,
+  double_value DOUBLE PRECISION,
+  boolean_value BOOLEAN,
+  CONSTRAINT hi_relationship_property_pk PRIMARY KEY (element_id, name),
+  CONSTRAINT hi_relationship_property_fk FOREIGN KEY (element_id) REFERENCES hi_relationship (id)
+    ON DELETE CASCADE
+);
+
+-- The structured data of the data entities. Only the root of the data has an owner, the rest of the tree is linked
+-- using the parent_id.
+CREATE TABLE hi_data (
+  id BIGINT NOT NULL PRIMARY KEY,
+  owner_id BIGINT,
+  parent_id BIGINT,
+  data_index INTEGER,
+  data_key VARCHAR(1024),
+  data_type VARCHAR(16) NOT NULL,
+  boolean_value BOOLEAN,
+  long_value BIGINT,
+  double_value DOUBLE PRECISION,
+  string_value VARCHAR(1048576),
+  digest VARCHAR(128),
+  CONSTRAINT hi_data_owner_fk FOREIGN KEY (owner_id) REFERENCES hi_entity (id) ON DELETE CASCADE,
+  CONSTRAINT hi_data_parent_fk FOREIGN KEY (parent_id) REFERENCES hi_data (id) ON DELETE CASCADE
+);
+
+CREATE INDEX hi_data_owner_idx ON hi_data (owner_id);
+
+CREATE INDEX hi_data_parent_idx ON hi_data (parent_id);
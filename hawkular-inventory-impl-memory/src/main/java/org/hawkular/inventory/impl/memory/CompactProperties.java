@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map of the user defined properties of an element stored in two arrays. The elements usually have only
+ * a handful of properties, so the linear lookup is fast while the storage needs only a fraction of the memory of a
+ * hash map. The property names are interned, because the same names are used by many elements.
+ *
+ * <p>The instances are never modified, the updates replace the whole instance, which makes it trivial to undo them.
+ *
+ * @since 1.1.3
+ */
+final class CompactProperties {
+    static final CompactProperties EMPTY = new CompactProperties(new String[0], new Object[0]);
+
+    private final String[] names;
+    private final Object[] values;
+
+    private CompactProperties(String[] names, Object[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Creates the properties from the provided map, leaving out the null values and the excluded names.
+     *
+     * @param properties the properties, can be null
+     * @param excluded   the names of the properties to leave out
+     * @return the compact representation of the properties
+     */
+    static CompactProperties of(Map<String, Object> properties, Set<String> excluded) {
+        if (properties == null || properties.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] names = new String[properties.size()];
+        Object[] values = new Object[properties.size()];
+
+        int i = 0;
+        for (Map.Entry<String, Object> e : properties.entrySet()) {
+            if (e.getValue() != null && !excluded.contains(e.getKey())) {
+                names[i] = e.getKey().intern();
+                values[i] = e.getValue();
+                i++;
+            }
+        }
+
+        if (i == 0) {
+            return EMPTY;
+        } else if (i < names.length) {
+            String[] trimmedNames = new String[i];
+            Object[] trimmedValues = new Object[i];
+            System.arraycopy(names, 0, trimmedNames, 0, i);
+            System.arraycopy(values, 0, trimmedValues, 0, i);
+            names = trimmedNames;
+            values = trimmedValues;
+        }
+
+        return new CompactProperties(names, values);
+    }
+
+    Object get(String name) {
+        for (int i = 0; i < names.length; ++i) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+
+        return null;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> ret = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; ++i) {
+            ret.put(names[i], values[i]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,1206 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.hawkular.inventory.api.EntityAlreadyExistsException;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.Relationships;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.ElementBlueprintVisitor;
+import org.hawkular.inventory.api.model.ElementUpdateVisitor;
+import org.hawkular.inventory.api.model.ElementVisitor;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.HashAlgorithm;
+import org.hawkular.inventory.api.model.Hashes;
+import org.hawkular.inventory.api.model.MetadataPack;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricDataType;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.MetricUnit;
+import org.hawkular.inventory.api.model.OperationType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.api.paging.Order;
+import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.Pager;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.hawkular.inventory.base.spi.PagingCursors;
+import org.hawkular.inventory.base.spi.ShallowStructuredData;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.DataRole;
+import org.hawkular.inventory.paths.RelativePath;
+import org.hawkular.inventory.paths.SegmentType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The inventory backend keeping the inventory in the memory.
+ *
+ * <p>The graph can be read concurrently but only a single transaction can modify it at a time. A transaction acquires
+ * the write lock of the graph with its first modification and holds it until it is committed or rolled back. The
+ * modifications are applied to the graph directly and the transaction keeps a log of the actions undoing them in case
+ * it is rolled back. The root backend (i.e. the one not representing a transaction) applies each modification
+ * atomically on its own.
+ *
+ * @since 1.1.3
+ */
+final class MemoryBackend implements InventoryBackend<MemoryElement> {
+
+    private final MemoryGraph graph;
+    private final boolean transactional;
+
+    /**
+     * The actions undoing the modifications made by this transaction. Non-null only while the transaction holds the
+     * write lock.
+     */
+    private List<Runnable> undo;
+
+    MemoryBackend(MemoryGraph graph) {
+        this(graph, false);
+    }
+
+    private MemoryBackend(MemoryGraph graph, boolean transactional) {
+        this.graph = graph;
+        this.transactional = transactional;
+    }
+
+    @Override public boolean isPreferringBigTransactions() {
+        return false;
+    }
+
+    @Override public boolean isUniqueIndexSupported() {
+        return true;
+    }
+
+    @Override public InventoryBackend<MemoryElement> startTransaction() {
+        return new MemoryBackend(graph, true);
+    }
+
+    @Override public MemoryElement find(CanonicalPath path) throws ElementNotFoundException {
+        MemoryElement ret = read(() -> {
+            if (SegmentType.rl == path.getSegment().getElementType()) {
+                Long id = QueryEvaluator.parseId(path.getSegment().getElementId());
+                return id == null ? null : graph.getEdge(id);
+            } else {
+                return graph.getEntity(path);
+            }
+        });
+
+        if (ret == null) {
+            throw new ElementNotFoundException();
+        }
+
+        return ret;
+    }
+
+    @Override public Page<MemoryElement> query(Query query, Pager pager) {
+        return traverse(null, query, pager);
+    }
+
+    @Override public MemoryElement querySingle(Query query) {
+        return traverseToSingle(null, query);
+    }
+
+    @Override public Page<MemoryElement> traverse(MemoryElement startingPoint, Query query, Pager pager) {
+        return read(() -> page(new QueryEvaluator(graph).evaluate(startingPoint, query), pager, Function.identity(),
+                Function.identity()));
+    }
+
+    @Override public MemoryElement traverseToSingle(MemoryElement startingPoint, Query query) {
+        List<MemoryElement> results = read(() -> new QueryEvaluator(graph).evaluate(startingPoint, query));
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    @Override
+    public <T> Page<T> query(Query query, Pager pager, Function<MemoryElement, T> conversion,
+                             Function<T, Boolean> filter) {
+        return read(() -> {
+            List<MemoryElement> results = new QueryEvaluator(graph).evaluate(null, query);
+
+            if (filter == null) {
+                return page(results, pager, conversion, Function.identity());
+            }
+
+            //the result filter needs the converted entities and can rule out some of them, which affects the total
+            //count. We therefore need to convert first and only then filter, count and page. The element is kept
+            //along with the converted entity so that the cursor can be read from it.
+            List<Pair<MemoryElement, T>> converted = results.stream().map(e -> new Pair<>(e, conversion.apply(e)))
+                    .filter(p -> filter.apply(p.second)).collect(toList());
+
+            return page(converted, pager, p -> p.second, p -> p.first);
+        });
+    }
+
+    @Override
+    public Iterator<MemoryElement> getTransitiveClosureOver(MemoryElement startingPoint,
+                                                            Relationships.Direction direction,
+                                                            String... relationshipNames) {
+        if (!(startingPoint instanceof MemoryVertex)) {
+            return Collections.emptyIterator();
+        }
+
+        //the closure is evaluated eagerly, because the callers might modify the graph during the iteration
+        List<MemoryElement> closure = read(() -> new ArrayList<>(new QueryEvaluator(graph)
+                .closure((MemoryVertex) startingPoint, direction, relationshipNames)));
+
+        return closure.iterator();
+    }
+
+    @Override
+    public <T extends Entity<?, ?>> Iterator<T> getTransitiveClosureOver(CanonicalPath startingPoint,
+                                                                         Relationships.Direction direction,
+                                                                         Class<T> clazz,
+                                                                         String... relationshipNames) {
+        try {
+            MemoryElement start = find(startingPoint);
+            if (!(start instanceof MemoryVertex)) {
+                return Collections.emptyIterator();
+            }
+
+            return read(() -> new QueryEvaluator(graph).closure((MemoryVertex) start, direction, relationshipNames)
+                    .stream().map(e -> convert(e, clazz)).collect(toList())).iterator();
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(clazz, null);
+        }
+    }
+
+    @Override
+    public boolean hasRelationship(MemoryElement entity, Relationships.Direction direction, String relationshipName) {
+        if (!(entity instanceof MemoryVertex)) {
+            return false;
+        }
+
+        MemoryVertex v = (MemoryVertex) entity;
+        return read(() -> (direction != Relationships.Direction.incoming && !v.out(relationshipName).isEmpty())
+                || (direction != Relationships.Direction.outgoing && !v.in(relationshipName).isEmpty()));
+    }
+
+    @Override
+    public boolean hasRelationship(MemoryElement source, MemoryElement target, String relationshipName) {
+        if (!(source instanceof MemoryVertex) || !(target instanceof MemoryVertex)) {
+            return false;
+        }
+
+        return read(() -> findEdge((MemoryVertex) source, (MemoryVertex) target, relationshipName) != null);
+    }
+
+    @Override
+    public Set<MemoryElement> getRelationships(MemoryElement entity, Relationships.Direction direction,
+                                               String... names) {
+        if (!(entity instanceof MemoryVertex)) {
+            return emptySet();
+        }
+
+        MemoryVertex v = (MemoryVertex) entity;
+        String[] relationships = names.length == 0 ? new String[]{null} : names;
+
+        return read(() -> {
+            Set<MemoryElement> ret = new HashSet<>();
+            for (String name : relationships) {
+                if (direction != Relationships.Direction.incoming) {
+                    ret.addAll(v.out(name));
+                }
+                if (direction != Relationships.Direction.outgoing) {
+                    ret.addAll(v.in(name));
+                }
+            }
+            return ret;
+        });
+    }
+
+    @Override
+    public MemoryElement getRelationship(MemoryElement source, MemoryElement target, String relationshipName)
+            throws ElementNotFoundException {
+
+        if (!(source instanceof MemoryVertex) || !(target instanceof MemoryVertex)) {
+            throw new IllegalArgumentException("Source or target entity not a vertex.");
+        }
+
+        if (relationshipName == null) {
+            throw new IllegalArgumentException("relationshipName == null");
+        }
+
+        MemoryEdge ret = read(() -> findEdge((MemoryVertex) source, (MemoryVertex) target, relationshipName));
+
+        if (ret == null) {
+            throw new ElementNotFoundException();
+        }
+
+        return ret;
+    }
+
+    private static MemoryEdge findEdge(MemoryVertex source, MemoryVertex target, String relationshipName) {
+        for (MemoryEdge e : source.out(relationshipName)) {
+            if (e.target == target) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override public MemoryElement getRelationshipSource(MemoryElement relationship) {
+        return ((MemoryEdge) relationship).source;
+    }
+
+    @Override public MemoryElement getRelationshipTarget(MemoryElement relationship) {
+        return ((MemoryEdge) relationship).target;
+    }
+
+    @Override public String extractRelationshipName(MemoryElement relationship) {
+        return ((MemoryEdge) relationship).name;
+    }
+
+    @Override public String extractId(MemoryElement entityRepresentation) {
+        return entityRepresentation.getEid();
+    }
+
+    @Override public Class<?> extractType(MemoryElement entityRepresentation) {
+        return entityRepresentation.getType().getEntityType();
+    }
+
+    @Override public CanonicalPath extractCanonicalPath(MemoryElement entityRepresentation) {
+        CanonicalPath ret = entityRepresentation.getPath();
+        if (ret == null) {
+            throw new IllegalArgumentException("Element is not representable using a canonical path. Element type is "
+                    + extractType(entityRepresentation).getSimpleName() + ", element id is '"
+                    + extractId(entityRepresentation) + "'.");
+        }
+        return ret;
+    }
+
+    @Override public String extractIdentityHash(MemoryElement entityRepresentation) {
+        return entityRepresentation instanceof MemoryVertex ? ((MemoryVertex) entityRepresentation).identityHash
+                : null;
+    }
+
+    @Override public String extractContentHash(MemoryElement entityRepresentation) {
+        return entityRepresentation instanceof MemoryVertex ? ((MemoryVertex) entityRepresentation).contentHash
+                : null;
+    }
+
+    @Override public String extractSyncHash(MemoryElement entityRepresentation) {
+        return entityRepresentation instanceof MemoryVertex ? ((MemoryVertex) entityRepresentation).syncHash : null;
+    }
+
+    @Override
+    public <T> T convert(MemoryElement entityRepresentation, Class<T> entityType) {
+        Object converted = read(() -> {
+            if (entityRepresentation instanceof MemoryEdge) {
+                MemoryEdge e = (MemoryEdge) entityRepresentation;
+                //the relationships to the structured data are not representable, because the data has no canonical
+                //path
+                return new Relationship(e.getEid(), e.name, extractCanonicalPath(e.source),
+                        extractCanonicalPath(e.target));
+            }
+
+            MemoryVertex v = (MemoryVertex) entityRepresentation;
+            return v.type == ElementType.structuredData
+                    ? loadStructuredData(v, StructuredData.class.equals(entityType))
+                    : convertEntity(v);
+        });
+
+        if (StructuredData.class.equals(entityType)) {
+            return entityType.cast(converted);
+        } else if (ShallowStructuredData.class.equals(entityType)) {
+            return entityType.cast(new ShallowStructuredData((StructuredData) converted));
+        }
+
+        Map<String, Object> properties = entityRepresentation.properties.toMap();
+        String name = entityRepresentation instanceof MemoryVertex ? ((MemoryVertex) entityRepresentation).name
+                : null;
+
+        return ((AbstractElement<?, ?>) converted).accept(new ElementVisitor<T, Void>() {
+            @Override public T visitTenant(Tenant tenant, Void ignored) {
+                return common(tenant, Tenant.Update.builder());
+            }
+
+            @Override public T visitEnvironment(Environment environment, Void ignored) {
+                return common(environment, Environment.Update.builder());
+            }
+
+            @Override public T visitFeed(Feed feed, Void ignored) {
+                return common(feed, Feed.Update.builder());
+            }
+
+            @Override public T visitMetric(Metric metric, Void ignored) {
+                return common(metric, Metric.Update.builder());
+            }
+
+            @Override public T visitMetricType(MetricType metricType, Void ignored) {
+                return common(metricType, MetricType.Update.builder());
+            }
+
+            @Override public T visitResource(Resource resource, Void ignored) {
+                return common(resource, Resource.Update.builder());
+            }
+
+            @Override public T visitResourceType(ResourceType type, Void ignored) {
+                return common(type, ResourceType.Update.builder());
+            }
+
+            @Override public T visitData(DataEntity data, Void ignored) {
+                return common(data, DataEntity.Update.builder());
+            }
+
+            @Override public T visitOperationType(OperationType operationType, Void parameter) {
+                return common(operationType, OperationType.Update.builder());
+            }
+
+            @Override public T visitMetadataPack(MetadataPack metadataPack, Void parameter) {
+                return common(metadataPack, MetadataPack.Update.builder());
+            }
+
+            @Override public T visitUnknown(Object entity, Void parameter) {
+                return null;
+            }
+
+            @Override public T visitRelationship(Relationship relationship, Void parameter) {
+                return entityType.cast(relationship.update().with(Relationship.Update.builder()
+                        .withProperties(properties).build()));
+            }
+
+            private <U extends Entity.Update> T common(Entity<?, U> entity, Entity.Update.Builder<U, ?> bld) {
+                return entityType.cast(entity.update().with(bld.withName(name).withProperties(properties)
+                        .build()));
+            }
+        }, null);
+    }
+
+    private Object convertEntity(MemoryVertex v) {
+        CanonicalPath cp = v.path;
+
+        switch (v.type) {
+            case tenant:
+                return new Tenant(cp, v.contentHash);
+            case environment:
+                return new Environment(cp, v.contentHash);
+            case feed:
+                return new Feed(cp, v.identityHash, v.contentHash, v.syncHash);
+            case metric:
+                return new Metric(cp, v.identityHash, v.contentHash, v.syncHash,
+                        convert(definingType(v), MetricType.class), v.collectionInterval);
+            case metricType:
+                return new MetricType(cp, v.identityHash, v.contentHash, v.syncHash,
+                        MetricUnit.fromDisplayName(v.metricUnit), MetricDataType.fromDisplayName(v.metricDataType),
+                        v.collectionInterval);
+            case resource:
+                return new Resource(cp, v.identityHash, v.contentHash, v.syncHash,
+                        convert(definingType(v), ResourceType.class));
+            case resourceType:
+                return new ResourceType(cp, v.identityHash, v.contentHash, v.syncHash);
+            case dataEntity:
+                MemoryVertex root = dataRoot(v);
+                return new DataEntity(cp.up(), DataRole.valueOf(cp.getSegment().getElementId()),
+                        root == null ? null : loadStructuredData(root, true), v.identityHash, v.contentHash,
+                        v.syncHash);
+            case operationType:
+                return new OperationType(cp, v.identityHash, v.contentHash, v.syncHash);
+            case metadatapack:
+                return new MetadataPack(cp);
+            default:
+                throw new IllegalArgumentException("Unknown type of entity: " + v.type);
+        }
+    }
+
+    private static MemoryVertex definingType(MemoryVertex v) {
+        List<MemoryEdge> definedBy = v.in(defines.name());
+        return definedBy.isEmpty() ? null : definedBy.get(0).source;
+    }
+
+    private static MemoryVertex dataRoot(MemoryVertex dataEntity) {
+        List<MemoryEdge> data = dataEntity.out(hasData.name());
+        return data.isEmpty() ? null : data.get(0).target;
+    }
+
+    @Override
+    public MemoryElement descendToData(MemoryElement dataEntityRepresentation, RelativePath dataPath) {
+        return traverseToSingle(dataEntityRepresentation, Query.path().with(With.dataAt(dataPath)).get());
+    }
+
+    @Override
+    public MemoryElement relate(MemoryElement sourceEntity, MemoryElement targetEntity, String name,
+                                Map<String, Object> properties) {
+        if (name == null) {
+            throw new IllegalArgumentException("name == null");
+        }
+
+        if (!(sourceEntity instanceof MemoryVertex)) {
+            throw new IllegalArgumentException("Source not a vertex.");
+        }
+
+        if (!(targetEntity instanceof MemoryVertex)) {
+            throw new IllegalArgumentException("Target not a vertex.");
+        }
+
+        return write(() -> {
+            MemoryEdge ret = new MemoryEdge(graph.newId(), name, (MemoryVertex) sourceEntity,
+                    (MemoryVertex) targetEntity);
+            ret.properties = CompactProperties.of(properties, emptySet());
+            add(ret);
+            return ret;
+        });
+    }
+
+    @Override
+    public MemoryElement persist(CanonicalPath path, Blueprint blueprint) {
+        return write(() -> {
+            if (graph.getEntity(path) != null) {
+                throw new EntityAlreadyExistsException(null, path);
+            }
+
+            MemoryVertex ret = blueprint.accept(new ElementBlueprintVisitor<MemoryVertex, Void>() {
+                @Override public MemoryVertex visitTenant(Tenant.Blueprint tenant, Void parameter) {
+                    return common(tenant.getName(), tenant.getProperties(), Tenant.class);
+                }
+
+                @Override public MemoryVertex visitEnvironment(Environment.Blueprint env, Void parameter) {
+                    return common(env.getName(), env.getProperties(), Environment.class);
+                }
+
+                @Override public MemoryVertex visitFeed(Feed.Blueprint feed, Void parameter) {
+                    return common(feed.getName(), feed.getProperties(), Feed.class);
+                }
+
+                @Override public MemoryVertex visitMetric(Metric.Blueprint metric, Void parameter) {
+                    MemoryVertex ret = common(metric.getName(), metric.getProperties(), Metric.class);
+                    ret.collectionInterval = metric.getCollectionInterval();
+                    return ret;
+                }
+
+                @Override public MemoryVertex visitMetricType(MetricType.Blueprint type, Void parameter) {
+                    MemoryVertex ret = common(type.getName(), type.getProperties(), MetricType.class);
+                    ret.metricUnit = type.getUnit() == null ? null : type.getUnit().getDisplayName();
+                    ret.metricDataType = type.getMetricDataType().getDisplayName();
+                    ret.collectionInterval = type.getCollectionInterval();
+                    return ret;
+                }
+
+                @Override public MemoryVertex visitResource(Resource.Blueprint resource, Void parameter) {
+                    return common(resource.getName(), resource.getProperties(), Resource.class);
+                }
+
+                @Override public MemoryVertex visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                    return common(type.getName(), type.getProperties(), ResourceType.class);
+                }
+
+                @Override
+                public MemoryVertex visitRelationship(Relationship.Blueprint relationship, Void parameter) {
+                    throw new IllegalArgumentException("Relationships cannot be persisted using the persist()"
+                            + " method.");
+                }
+
+                @Override public MemoryVertex visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                    return common(data.getName(), data.getProperties(), DataEntity.class);
+                }
+
+                @Override
+                public MemoryVertex visitOperationType(OperationType.Blueprint operationType, Void parameter) {
+                    return common(operationType.getName(), operationType.getProperties(), OperationType.class);
+                }
+
+                @Override
+                public MemoryVertex visitMetadataPack(MetadataPack.Blueprint metadataPack, Void parameter) {
+                    return common(metadataPack.getName(), metadataPack.getProperties(), MetadataPack.class);
+                }
+
+                @Override public MemoryVertex visitUnknown(Object blueprint, Void parameter) {
+                    throw new IllegalArgumentException("Unknown type of entity blueprint: " + blueprint.getClass());
+                }
+
+                private MemoryVertex common(String name, Map<String, Object> properties, Class<?> cls) {
+                    ElementType type = ElementType.of(cls);
+                    checkProperties(properties, type.getReservedProperties());
+
+                    MemoryVertex ret = new MemoryVertex(graph.newId(), type, path);
+                    ret.name = name;
+                    ret.properties = CompactProperties.of(properties, emptySet());
+                    return ret;
+                }
+            }, null);
+
+            add(ret);
+
+            return ret;
+        });
+    }
+
+    @Override
+    public MemoryElement persist(StructuredData structuredData) {
+        return write(() -> {
+            MemoryVertex root = persistData(structuredData, null, null, null);
+            //only the non-legacy hashes use the digests of the data
+            if (!HashAlgorithm.current().isLegacy()) {
+                root.digest = structuredData.digest();
+            }
+            return root;
+        });
+    }
+
+    private MemoryVertex persistData(StructuredData data, MemoryVertex parent, Integer index, String key) {
+        MemoryVertex node = new MemoryVertex(graph.newId(), ElementType.structuredData, null);
+        node.dataIndex = index;
+        node.dataKey = key;
+        node.dataType = data.getType();
+        add(node);
+
+        if (parent != null) {
+            add(new MemoryEdge(graph.newId(), contains.name(), parent, node));
+        }
+
+        switch (data.getType()) {
+            case bool:
+                node.dataValue = data.bool();
+                break;
+            case integral:
+                node.dataValue = data.integral();
+                break;
+            case floatingPoint:
+                node.dataValue = data.floatingPoint();
+                break;
+            case string:
+                node.dataValue = data.string();
+                break;
+            case list:
+                int i = 0;
+                for (StructuredData child : data.list()) {
+                    persistData(child, node, i++, null);
+                }
+                break;
+            case map:
+                int j = 0;
+                for (Map.Entry<String, StructuredData> child : data.map().entrySet()) {
+                    persistData(child.getValue(), node, j++, child.getKey());
+                }
+                break;
+            default:
+                //undefined has no value
+        }
+
+        return node;
+    }
+
+    @Override
+    public void update(MemoryElement entity, AbstractElement.Update update) {
+        write(() -> {
+            remember(entity);
+
+            update.accept(new ElementUpdateVisitor.Simple<Void, Void>() {
+                @Override public Void visitTenant(Tenant.Update tenant, Void parameter) {
+                    common(tenant.getName(), tenant.getProperties(), Tenant.class);
+                    return null;
+                }
+
+                @Override public Void visitEnvironment(Environment.Update environment, Void parameter) {
+                    common(environment.getName(), environment.getProperties(), Environment.class);
+                    return null;
+                }
+
+                @Override public Void visitFeed(Feed.Update feed, Void parameter) {
+                    common(feed.getName(), feed.getProperties(), Feed.class);
+                    return null;
+                }
+
+                @Override public Void visitMetric(Metric.Update metric, Void parameter) {
+                    common(metric.getName(), metric.getProperties(), Metric.class);
+                    ((MemoryVertex) entity).collectionInterval = metric.getCollectionInterval();
+                    return null;
+                }
+
+                @Override public Void visitMetricType(MetricType.Update type, Void parameter) {
+                    common(type.getName(), type.getProperties(), MetricType.class);
+                    MemoryVertex v = (MemoryVertex) entity;
+                    if (type.getUnit() != null) {
+                        v.metricUnit = type.getUnit().getDisplayName();
+                    }
+                    if (type.getCollectionInterval() != null) {
+                        v.collectionInterval = type.getCollectionInterval();
+                    }
+                    return null;
+                }
+
+                @Override public Void visitResource(Resource.Update resource, Void parameter) {
+                    common(resource.getName(), resource.getProperties(), Resource.class);
+                    return null;
+                }
+
+                @Override public Void visitResourceType(ResourceType.Update type, Void parameter) {
+                    common(type.getName(), type.getProperties(), ResourceType.class);
+                    return null;
+                }
+
+                @Override public Void visitRelationship(Relationship.Update relationship, Void parameter) {
+                    common(null, relationship.getProperties(), Relationship.class);
+                    return null;
+                }
+
+                @Override public Void visitData(DataEntity.Update data, Void parameter) {
+                    common(data.getName(), data.getProperties(), DataEntity.class);
+
+                    MemoryVertex oldData = dataRoot((MemoryVertex) entity);
+                    if (oldData != null) {
+                        deleteStructuredData(oldData);
+                    }
+
+                    StructuredData dataValue = data.getValue();
+                    if (dataValue == null) {
+                        dataValue = StructuredData.get().undefined();
+                    }
+
+                    relate(entity, persist(dataValue), hasData.name(), null);
+                    return null;
+                }
+
+                @Override public Void visitOperationType(OperationType.Update operationType, Void parameter) {
+                    common(operationType.getName(), operationType.getProperties(), OperationType.class);
+                    return null;
+                }
+
+                private void common(String name, Map<String, Object> properties, Class<?> entityType) {
+                    if (!extractType(entity).equals(entityType)) {
+                        throw new IllegalArgumentException("Update object doesn't correspond to the actual type of the"
+                                + " entity.");
+                    }
+
+                    String[] reserved = ElementType.of(entityType).getReservedProperties();
+                    checkProperties(properties, reserved);
+
+                    if (name != null) {
+                        ((MemoryVertex) entity).name = name;
+                    }
+
+                    if (properties != null) {
+                        entity.properties = CompactProperties.of(properties, new HashSet<>(Arrays.asList(reserved)));
+                    }
+                }
+            }, null);
+            return null;
+        });
+    }
+
+    @Override public void updateHashes(MemoryElement entity, Hashes hashes) {
+        if (!(entity instanceof MemoryVertex)) {
+            return;
+        }
+
+        MemoryVertex v = (MemoryVertex) entity;
+        write(() -> {
+            remember(v);
+            if (hashes.getContentHash() != null) {
+                v.contentHash = hashes.getContentHash();
+            }
+            if (hashes.getSyncHash() != null) {
+                v.syncHash = hashes.getSyncHash();
+            }
+            graph.setIdentityHash(v, hashes.getIdentityHash());
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(MemoryElement entity) {
+        write(() -> {
+            if (entity instanceof MemoryEdge) {
+                remove((MemoryEdge) entity);
+            } else {
+                MemoryVertex v = (MemoryVertex) entity;
+                v.out(null).forEach(this::remove);
+                v.in(null).forEach(this::remove);
+                remove(v);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteStructuredData(MemoryElement dataRepresentation) {
+        if (dataRepresentation.getType() != ElementType.structuredData) {
+            throw new IllegalArgumentException("The supplied element is not a data entity's data.");
+        }
+
+        write(() -> {
+            Iterator<MemoryElement> dataElements = getTransitiveClosureOver(dataRepresentation,
+                    Relationships.Direction.outgoing, contains.name());
+
+            while (dataElements.hasNext()) {
+                delete(dataElements.next());
+            }
+
+            delete(dataRepresentation);
+            return null;
+        });
+    }
+
+    @Override
+    public void commit() {
+        if (undo == null) {
+            return;
+        }
+
+        undo = null;
+        graph.lock.writeLock().unlock();
+    }
+
+    @Override
+    public void rollback() {
+        if (undo == null) {
+            return;
+        }
+
+        try {
+            for (int i = undo.size() - 1; i >= 0; --i) {
+                undo.get(i).run();
+            }
+        } finally {
+            undo = null;
+            graph.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isBackendInternal(MemoryElement element) {
+        return false;
+    }
+
+    @Override
+    public InputStream getGraphSON(String tenantId) {
+        return read(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator gen = new ObjectMapper().getFactory().createGenerator(out)) {
+                List<MemoryVertex> entities = new ArrayList<>();
+                graph.getEntities().forEach(e -> {
+                    if (tenantId.equals(e.tenantId)) {
+                        entities.add(e);
+                    }
+                });
+
+                gen.writeStartObject();
+
+                gen.writeArrayFieldStart("vertices");
+                for (MemoryVertex e : entities) {
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", e.id);
+                    gen.writeStringField("label", e.type.name());
+                    gen.writeObjectFieldStart("properties");
+                    gen.writeStringField("__type", e.type.name());
+                    gen.writeStringField("__eid", e.getEid());
+                    gen.writeStringField("__cp", e.path.toString());
+                    writeNonNull(gen, "name", e.name);
+                    writeNonNull(gen, "__identityHash", e.identityHash);
+                    writeNonNull(gen, "__contentHash", e.contentHash);
+                    writeNonNull(gen, "__syncHash", e.syncHash);
+                    writeNonNull(gen, "__unit", e.metricUnit);
+                    writeNonNull(gen, "__metric_data_type", e.metricDataType);
+                    writeNonNull(gen, "__metric_interval", e.collectionInterval);
+                    for (Map.Entry<String, Object> p : e.properties.toMap().entrySet()) {
+                        gen.writeObjectField(p.getKey(), p.getValue());
+                    }
+                    gen.writeEndObject();
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+
+                gen.writeArrayFieldStart("edges");
+                for (MemoryVertex e : entities) {
+                    for (MemoryEdge r : e.out(null)) {
+                        if (r.target.path == null) {
+                            continue;
+                        }
+
+                        gen.writeStartObject();
+                        gen.writeNumberField("id", r.id);
+                        gen.writeStringField("label", r.name);
+                        gen.writeNumberField("outV", r.source.id);
+                        gen.writeNumberField("inV", r.target.id);
+                        gen.writeObjectFieldStart("properties");
+                        gen.writeStringField("__sourceCp", r.source.path.toString());
+                        gen.writeStringField("__targetCp", r.target.path.toString());
+                        for (Map.Entry<String, Object> p : r.properties.toMap().entrySet()) {
+                            gen.writeObjectField(p.getKey(), p.getValue());
+                        }
+                        gen.writeEndObject();
+                        gen.writeEndObject();
+                    }
+                }
+                gen.writeEndArray();
+
+                gen.writeEndObject();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create the GraphSON dump.", e);
+            }
+
+            return new ByteArrayInputStream(out.toByteArray());
+        });
+    }
+
+    private static void writeNonNull(JsonGenerator gen, String field, Object value) throws IOException {
+        if (value != null) {
+            gen.writeObjectField(field, value);
+        }
+    }
+
+    @Override public void close() throws Exception {
+        rollback();
+    }
+
+    /**
+     * Runs the action under the read lock of the graph unless the current thread already holds the write lock.
+     */
+    private <R> R read(Supplier<R> action) {
+        if (graph.lock.isWriteLockedByCurrentThread()) {
+            return action.get();
+        }
+
+        graph.lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            graph.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the modifying action. A transaction keeps the write lock until it is committed or rolled back, the root
+     * backend holds it only for the duration of the action.
+     */
+    private <R> R write(Supplier<R> action) {
+        if (transactional) {
+            if (undo == null) {
+                graph.lock.writeLock().lock();
+                undo = new ArrayList<>();
+            }
+            return action.get();
+        }
+
+        graph.lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            graph.lock.writeLock().unlock();
+        }
+    }
+
+    private void add(MemoryVertex vertex) {
+        graph.add(vertex);
+        onUndo(() -> graph.remove(vertex));
+    }
+
+    private void remove(MemoryVertex vertex) {
+        graph.remove(vertex);
+        onUndo(() -> graph.add(vertex));
+    }
+
+    private void add(MemoryEdge edge) {
+        graph.add(edge);
+        onUndo(() -> graph.remove(edge));
+    }
+
+    private void remove(MemoryEdge edge) {
+        graph.remove(edge);
+        onUndo(() -> graph.add(edge));
+    }
+
+    /**
+     * Remembers the current state of the modifiable attributes of the element so that it can be restored on
+     * rollback.
+     */
+    private void remember(MemoryElement e) {
+        if (undo == null) {
+            return;
+        }
+
+        CompactProperties properties = e.properties;
+        if (!(e instanceof MemoryVertex)) {
+            undo.add(() -> e.properties = properties);
+            return;
+        }
+
+        MemoryVertex v = (MemoryVertex) e;
+        String name = v.name;
+        String identityHash = v.identityHash;
+        String contentHash = v.contentHash;
+        String syncHash = v.syncHash;
+        String metricUnit = v.metricUnit;
+        Long collectionInterval = v.collectionInterval;
+
+        undo.add(() -> {
+            v.properties = properties;
+            v.name = name;
+            v.contentHash = contentHash;
+            v.syncHash = syncHash;
+            v.metricUnit = metricUnit;
+            v.collectionInterval = collectionInterval;
+            graph.setIdentityHash(v, identityHash);
+        });
+    }
+
+    private void onUndo(Runnable action) {
+        if (undo != null) {
+            undo.add(action);
+        }
+    }
+
+    /**
+     * Pages the results of the query. The results are always fully known, so the total count is just their number.
+     */
+    private static <T, U> Page<U> page(List<T> results, Pager pager, Function<T, U> transform,
+                                       Function<T, MemoryElement> elementOf) {
+        if (pager.isCursorBased()) {
+            List<T> positioned = PagingCursors.position(results, pager.getCursor(), pager.getPageSize(),
+                    r -> pathOf(elementOf.apply(r)));
+
+            String nextCursor = null;
+            if (positioned.size() > pager.getPageSize()) {
+                positioned = positioned.subList(0, pager.getPageSize());
+                nextCursor = PagingCursors.encode(pathOf(elementOf.apply(positioned.get(positioned.size() - 1))));
+            }
+
+            return new Page<>(convert(positioned, transform), pager, -1, nextCursor);
+        }
+
+        List<T> ordered = results;
+        List<Order> orders = pager.getOrder().stream().filter(Order::isSpecific).collect(toList());
+        if (!orders.isEmpty()) {
+            ordered = new ArrayList<>(results);
+            ordered.sort((a, b) -> compare(elementOf.apply(a), elementOf.apply(b), orders));
+        }
+
+        if (!pager.isLimited()) {
+            return new Page<>(convert(ordered, transform), pager, ordered.size());
+        }
+
+        int start = Math.min(pager.getStart(), ordered.size());
+        int end = Math.min(pager.getEnd(), ordered.size());
+
+        return new Page<>(convert(ordered.subList(start, end), transform), pager, ordered.size());
+    }
+
+    private static <T, U> Iterator<U> convert(List<T> results, Function<T, U> transform) {
+        //the results are converted eagerly so that the conversion happens under the lock
+        return results.stream().map(transform).collect(toList()).iterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(MemoryElement a, MemoryElement b, List<Order> orders) {
+        for (Order o : orders) {
+            String property = ElementType.mapUserDefined(o.getField());
+            Object av = a.property(property);
+            Object bv = b.property(property);
+
+            int diff;
+            if (av == null) {
+                diff = bv == null ? 0 : -1;
+            } else if (bv == null) {
+                diff = 1;
+            } else if (av instanceof Comparable && av.getClass() == bv.getClass()) {
+                diff = ((Comparable<Object>) av).compareTo(bv);
+            } else {
+                diff = av.toString().compareTo(bv.toString());
+            }
+
+            if (diff != 0) {
+                return o.getDirection() == Order.Direction.DESCENDING ? -diff : diff;
+            }
+        }
+
+        return 0;
+    }
+
+    private static String pathOf(MemoryElement element) {
+        CanonicalPath cp = element.getPath();
+        return cp == null ? null : cp.toString();
+    }
+
+    private StructuredData loadStructuredData(MemoryVertex root, boolean recurse) {
+        StructuredData data = toStructuredData(root, recurse);
+
+        //the digests stored before the hash algorithm was changed (or before the format was versioned) are useless
+        return recurse && root.digest != null && HashAlgorithm.of(root.digest) == HashAlgorithm.current()
+                ? data.withKnownDigest(root.digest) : data;
+    }
+
+    private static StructuredData toStructuredData(MemoryVertex node, boolean recurse) {
+        switch (node.dataType) {
+            case bool:
+                return StructuredData.get().bool((Boolean) node.dataValue);
+            case integral:
+                return StructuredData.get().integral((Long) node.dataValue);
+            case floatingPoint:
+                return StructuredData.get().floatingPoint((Double) node.dataValue);
+            case string:
+                return StructuredData.get().string((String) node.dataValue);
+            case undefined:
+                return StructuredData.get().undefined();
+            case list:
+                StructuredData.ListBuilder list = StructuredData.get().list();
+                if (recurse) {
+                    fillList(list, children(node));
+                }
+                return list.build();
+            case map:
+                StructuredData.MapBuilder map = StructuredData.get().map();
+                if (recurse) {
+                    fillMap(map, children(node));
+                }
+                return map.build();
+            default:
+                throw new IllegalArgumentException("Unknown structured data type: " + node.dataType);
+        }
+    }
+
+    private static List<MemoryVertex> children(MemoryVertex node) {
+        List<MemoryEdge> edges = node.out(contains.name());
+        if (edges.isEmpty()) {
+            return emptyList();
+        }
+
+        List<MemoryVertex> ret = edges.stream().map(e -> e.target).collect(toList());
+        ret.sort(Comparator.comparing(n -> n.dataIndex));
+        return ret;
+    }
+
+    private static void fillList(StructuredData.AbstractListBuilder<?> bld, List<MemoryVertex> items) {
+        for (MemoryVertex item : items) {
+            switch (item.dataType) {
+                case bool:
+                    bld.addBool((Boolean) item.dataValue);
+                    break;
+                case integral:
+                    bld.addIntegral((Long) item.dataValue);
+                    break;
+                case floatingPoint:
+                    bld.addFloatingPoint((Double) item.dataValue);
+                    break;
+                case string:
+                    bld.addString((String) item.dataValue);
+                    break;
+                case undefined:
+                    bld.addUndefined();
+                    break;
+                case list:
+                    StructuredData.InnerListBuilder<?> list = bld.addList();
+                    fillList(list, children(item));
+                    list.closeList();
+                    break;
+                case map:
+                    StructuredData.InnerMapBuilder<?> map = bld.addMap();
+                    fillMap(map, children(item));
+                    map.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type: " + item.dataType);
+            }
+        }
+    }
+
+    private static void fillMap(StructuredData.AbstractMapBuilder<?> bld, List<MemoryVertex> entries) {
+        for (MemoryVertex entry : entries) {
+            String key = entry.dataKey;
+            switch (entry.dataType) {
+                case bool:
+                    bld.putBool(key, (Boolean) entry.dataValue);
+                    break;
+                case integral:
+                    bld.putIntegral(key, (Long) entry.dataValue);
+                    break;
+                case floatingPoint:
+                    bld.putFloatingPoint(key, (Double) entry.dataValue);
+                    break;
+                case string:
+                    bld.putString(key, (String) entry.dataValue);
+                    break;
+                case undefined:
+                    bld.putUndefined(key);
+                    break;
+                case list:
+                    StructuredData.InnerListBuilder<?> list = bld.putList(key);
+                    fillList(list, children(entry));
+                    list.closeList();
+                    break;
+                case map:
+                    StructuredData.InnerMapBuilder<?> map = bld.putMap(key);
+                    fillMap(map, children(entry));
+                    map.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type: " + entry.dataType);
+            }
+        }
+    }
+
+    /**
+     * If the properties map contains a key from the reserved properties, throw an exception.
+     */
+    private static void checkProperties(Map<String, Object> properties, String[] reservedProperties) {
+        if (properties == null || properties.isEmpty()) {
+            return;
+        }
+
+        Set<String> reserved = new HashSet<>(properties.keySet());
+        reserved.retainAll(Arrays.asList(reservedProperties));
+
+        if (!reserved.isEmpty()) {
+            throw new IllegalArgumentException("The following properties are reserved for this type of entity: "
+                    + Arrays.asList(reservedProperties));
+        }
+    }
+
+    private static final class Pair<A, B> {
+        final A first;
+        final B second;
+
+        Pair(A first, B second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+}
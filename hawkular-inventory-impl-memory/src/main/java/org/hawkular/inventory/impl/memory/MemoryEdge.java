@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.paths.CanonicalPath;
+
+/**
+ * A relationship between two vertices.
+ *
+ * @since 1.1.3
+ */
+final class MemoryEdge extends MemoryElement {
+    final String name;
+    final MemoryVertex source;
+    final MemoryVertex target;
+    private final String eid;
+    private CanonicalPath path;
+
+    MemoryEdge(long id, String name, MemoryVertex source, MemoryVertex target) {
+        super(id);
+        this.name = name;
+        this.source = source;
+        this.target = target;
+        this.eid = Long.toString(id);
+    }
+
+    @Override ElementType getType() {
+        return ElementType.relationship;
+    }
+
+    @Override CanonicalPath getPath() {
+        //computed lazily, because most of the relationships are never looked at as entities
+        if (path == null) {
+            path = CanonicalPath.of().relationship(eid).get();
+        }
+        return path;
+    }
+
+    @Override String getEid() {
+        return eid;
+    }
+
+    @Override Object property(String name) {
+        switch (name) {
+            case "__eid":
+                return eid;
+            case "__cp":
+                return getPath().toString();
+            case "__sourceType":
+                return source.type.name();
+            case "__targetType":
+                return target.type.name();
+            case "__sourceCp":
+                return source.path == null ? null : source.path.toString();
+            case "__targetCp":
+                return target.path == null ? null : target.path.toString();
+            case "__sourceEid":
+                return source.getEid();
+            case "__targetEid":
+                return target.getEid();
+            default:
+                return properties.get(name);
+        }
+    }
+}
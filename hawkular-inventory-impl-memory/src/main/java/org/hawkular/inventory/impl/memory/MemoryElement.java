@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.paths.CanonicalPath;
+
+/**
+ * The in-memory representation of an inventory element. This is either a {@link MemoryVertex vertex} (an entity or
+ * a single value of structured data) or a {@link MemoryEdge edge} (a relationship).
+ *
+ * <p>The instances are unique for each element, so the identity of the objects is the identity of the elements.
+ *
+ * @since 1.1.3
+ */
+public abstract class MemoryElement {
+    final long id;
+
+    /**
+     * The user defined properties. Never null.
+     */
+    CompactProperties properties = CompactProperties.EMPTY;
+
+    MemoryElement(long id) {
+        this.id = id;
+    }
+
+    abstract ElementType getType();
+
+    /**
+     * @return the canonical path of the element or null if the element doesn't have one (structured data)
+     */
+    abstract CanonicalPath getPath();
+
+    abstract String getEid();
+
+    /**
+     * Reads a property of the element. The built-in attributes are referred to using their internal names (e.g.
+     * {@code __cp} or {@code name}), anything else is looked up in the user defined properties.
+     *
+     * @param name the name of the property
+     * @return the value of the property or null if the element doesn't have it
+     */
+    abstract Object property(String name);
+
+    @Override public String toString() {
+        return getClass().getSimpleName() + "[id=" + id + ", type=" + getType() + ", path=" + getPath() + "]";
+    }
+}
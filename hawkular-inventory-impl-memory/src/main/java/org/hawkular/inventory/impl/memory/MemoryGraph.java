@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hawkular.inventory.paths.CanonicalPath;
+
+/**
+ * The storage of the in-memory inventory. The entities are indexed by their canonical paths, the relationships by their
+ * ids and the entities with an identity hash by the tenant and the hash.
+ *
+ * <p>This class merely maintains the consistency of the indices. Guarding the access using the {@link #lock} and
+ * undoing the changes on rollback is the responsibility of the callers.
+ *
+ * @since 1.1.3
+ */
+final class MemoryGraph {
+    /**
+     * Any number of concurrent readers or a single transaction modifying the graph.
+     */
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<CanonicalPath, MemoryVertex> entities = new LinkedHashMap<>();
+    private final Set<MemoryVertex> data = new LinkedHashSet<>();
+    private final Map<Long, MemoryEdge> edges = new LinkedHashMap<>();
+    private final Map<String, Map<String, List<MemoryVertex>>> identityHashes = new HashMap<>();
+
+    long newId() {
+        return ids.incrementAndGet();
+    }
+
+    MemoryVertex getEntity(CanonicalPath path) {
+        return entities.get(path);
+    }
+
+    MemoryEdge getEdge(long id) {
+        return edges.get(id);
+    }
+
+    Iterable<MemoryVertex> getEntities() {
+        return entities.values();
+    }
+
+    /**
+     * @return all the vertices, i.e. the entities followed by the structured data
+     */
+    List<MemoryVertex> getVertices() {
+        List<MemoryVertex> ret = new ArrayList<>(entities.size() + data.size());
+        ret.addAll(entities.values());
+        ret.addAll(data);
+        return ret;
+    }
+
+    Iterable<MemoryEdge> getEdges() {
+        return edges.values();
+    }
+
+    /**
+     * @return the entities of the tenant that have the provided identity hash
+     */
+    List<MemoryVertex> getByIdentityHash(String tenantId, String identityHash) {
+        return identityHashes.getOrDefault(tenantId, Collections.emptyMap())
+                .getOrDefault(identityHash, Collections.emptyList());
+    }
+
+    void add(MemoryVertex vertex) {
+        if (vertex.path == null) {
+            data.add(vertex);
+        } else {
+            entities.put(vertex.path, vertex);
+            indexIdentityHash(vertex);
+        }
+    }
+
+    /**
+     * Removes the vertex. The caller is responsible for removing its edges first.
+     */
+    void remove(MemoryVertex vertex) {
+        if (vertex.path == null) {
+            data.remove(vertex);
+        } else {
+            entities.remove(vertex.path);
+            unindexIdentityHash(vertex);
+        }
+    }
+
+    void add(MemoryEdge edge) {
+        edges.put(edge.id, edge);
+        edge.source.addOut(edge);
+        edge.target.addIn(edge);
+    }
+
+    void remove(MemoryEdge edge) {
+        edges.remove(edge.id);
+        edge.source.removeOut(edge);
+        edge.target.removeIn(edge);
+    }
+
+    void setIdentityHash(MemoryVertex vertex, String identityHash) {
+        unindexIdentityHash(vertex);
+        vertex.identityHash = identityHash;
+        indexIdentityHash(vertex);
+    }
+
+    private void indexIdentityHash(MemoryVertex vertex) {
+        if (vertex.identityHash != null) {
+            identityHashes.computeIfAbsent(vertex.tenantId, k -> new HashMap<>())
+                    .computeIfAbsent(vertex.identityHash, k -> new ArrayList<>(1)).add(vertex);
+        }
+    }
+
+    private void unindexIdentityHash(MemoryVertex vertex) {
+        if (vertex.identityHash == null) {
+            return;
+        }
+
+        Map<String, List<MemoryVertex>> tenantHashes = identityHashes.get(vertex.tenantId);
+        if (tenantHashes == null) {
+            return;
+        }
+
+        List<MemoryVertex> vertices = tenantHashes.get(vertex.identityHash);
+        if (vertices != null) {
+            vertices.remove(vertex);
+            if (vertices.isEmpty()) {
+                tenantHashes.remove(vertex.identityHash);
+            }
+        }
+
+        if (tenantHashes.isEmpty()) {
+            identityHashes.remove(vertex.tenantId);
+        }
+    }
+}
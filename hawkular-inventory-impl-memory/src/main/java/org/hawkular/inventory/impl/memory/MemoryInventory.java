@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.base.BaseInventory;
+import org.hawkular.inventory.base.TransactionConstructor;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * The inventory keeping all its data in memory without any graph database underneath. The entities are indexed by
+ * their canonical paths and the relationships are kept in adjacency lists of the entities grouped by the relationship
+ * names.
+ *
+ * <p>This is meant for the edge deployments and for the tests where the persistence is not needed. The data is lost
+ * when the inventory is closed.
+ *
+ * @since 1.1.3
+ */
+public final class MemoryInventory extends BaseInventory<MemoryElement> {
+
+    public MemoryInventory() {
+    }
+
+    private MemoryInventory(BaseInventory<MemoryElement> orig, InventoryBackend<MemoryElement> backend,
+                            TransactionConstructor<MemoryElement> transactionConstructor) {
+        super(orig, backend, transactionConstructor);
+    }
+
+    @Override protected MemoryInventory cloneWith(TransactionConstructor<MemoryElement> transactionCtor) {
+        return new MemoryInventory(this, null, transactionCtor);
+    }
+
+    @Override
+    protected InventoryBackend<MemoryElement> doInitialize(Configuration configuration) {
+        Log.LOG.iUsingInMemoryInventory();
+        return new MemoryBackend(new MemoryGraph());
+    }
+}
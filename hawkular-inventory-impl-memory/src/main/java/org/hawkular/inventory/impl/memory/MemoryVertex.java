@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.paths.CanonicalPath;
+
+/**
+ * An entity or a single value of structured data. The relationships of the vertex are kept in the adjacency lists
+ * grouped by the relationship name so that following a relationship of a certain name doesn't need to look at any
+ * other relationships.
+ *
+ * @since 1.1.3
+ */
+final class MemoryVertex extends MemoryElement {
+    final ElementType type;
+
+    /**
+     * The canonical path of the entity, null for structured data.
+     */
+    final CanonicalPath path;
+    final String tenantId;
+
+    String name;
+    String identityHash;
+    String contentHash;
+    String syncHash;
+    String metricUnit;
+    String metricDataType;
+    Long collectionInterval;
+
+    //structured data
+    StructuredData.Type dataType;
+    String dataKey;
+    Integer dataIndex;
+    Object dataValue;
+    String digest;
+
+    //the adjacency lists are only created once the vertex has some relationships
+    private Map<String, List<MemoryEdge>> outEdges;
+    private Map<String, List<MemoryEdge>> inEdges;
+
+    MemoryVertex(long id, ElementType type, CanonicalPath path) {
+        super(id);
+        this.type = type;
+        this.path = path;
+        this.tenantId = path == null ? null : path.ids().getTenantId();
+    }
+
+    @Override ElementType getType() {
+        return type;
+    }
+
+    @Override CanonicalPath getPath() {
+        return path;
+    }
+
+    @Override String getEid() {
+        return path == null ? null : path.getSegment().getElementId();
+    }
+
+    @Override Object property(String name) {
+        switch (name) {
+            case "__type":
+                return type.name();
+            case "__eid":
+                return getEid();
+            case "__cp":
+                return path == null ? null : path.toString();
+            case "name":
+                return this.name;
+            case "__identityHash":
+                return identityHash;
+            case "__contentHash":
+                return contentHash;
+            case "__syncHash":
+                return syncHash;
+            case "__unit":
+                return metricUnit;
+            case "__metric_data_type":
+                return metricDataType;
+            case "__metric_interval":
+                return collectionInterval;
+            default:
+                return properties.get(name);
+        }
+    }
+
+    /**
+     * @param name the name of the relationships or null for all of them
+     * @return the outgoing relationships
+     */
+    List<MemoryEdge> out(String name) {
+        return edges(outEdges, name);
+    }
+
+    /**
+     * @param name the name of the relationships or null for all of them
+     * @return the incoming relationships
+     */
+    List<MemoryEdge> in(String name) {
+        return edges(inEdges, name);
+    }
+
+    void addOut(MemoryEdge edge) {
+        if (outEdges == null) {
+            outEdges = new HashMap<>(4);
+        }
+        outEdges.computeIfAbsent(edge.name, k -> new ArrayList<>(2)).add(edge);
+    }
+
+    void addIn(MemoryEdge edge) {
+        if (inEdges == null) {
+            inEdges = new HashMap<>(4);
+        }
+        inEdges.computeIfAbsent(edge.name, k -> new ArrayList<>(2)).add(edge);
+    }
+
+    void removeOut(MemoryEdge edge) {
+        remove(outEdges, edge);
+    }
+
+    void removeIn(MemoryEdge edge) {
+        remove(inEdges, edge);
+    }
+
+    private static List<MemoryEdge> edges(Map<String, List<MemoryEdge>> adjacency, String name) {
+        if (adjacency == null) {
+            return Collections.emptyList();
+        }
+
+        if (name != null) {
+            return adjacency.getOrDefault(name, Collections.emptyList());
+        }
+
+        List<MemoryEdge> ret = new ArrayList<>();
+        adjacency.values().forEach(ret::addAll);
+        return ret;
+    }
+
+    private static void remove(Map<String, List<MemoryEdge>> adjacency, MemoryEdge edge) {
+        if (adjacency == null) {
+            return;
+        }
+
+        List<MemoryEdge> edges = adjacency.get(edge.name);
+        if (edges != null) {
+            edges.remove(edge);
+            if (edges.isEmpty()) {
+                adjacency.remove(edge.name);
+            }
+        }
+    }
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.inventory.api.FilterFragment;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.QueryFragment;
+import org.hawkular.inventory.api.Relationships;
+import org.hawkular.inventory.api.filters.Filter;
+import org.hawkular.inventory.api.filters.Marker;
+import org.hawkular.inventory.api.filters.RecurseFilter;
+import org.hawkular.inventory.api.filters.Related;
+import org.hawkular.inventory.api.filters.RelationFilter;
+import org.hawkular.inventory.api.filters.RelationWith;
+import org.hawkular.inventory.api.filters.SwitchElementType;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.base.spi.ElementType;
+import org.hawkular.inventory.base.spi.NoopFilter;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.hawkular.inventory.paths.Path;
+import org.hawkular.inventory.paths.RelativePath;
+import org.hawkular.inventory.paths.SegmentType;
+
+/**
+ * Evaluates the inventory queries directly on the in-memory graph.
+ *
+ * <p>The query is evaluated filter by filter, moving a set of "traversers" through the graph. The semantics follow the
+ * Tinkerpop implementation. Namely, a move over a relationship remembers the relationship so that the subsequent
+ * relationship filters can be applied to it and the relationships are only returned as the results of the query if
+ * they were switched to explicitly using the {@link SwitchElementType} filter.
+ *
+ * <p>The queries starting with the canonical paths (which is the vast majority of them) look up the starting elements
+ * directly in the index instead of scanning the whole graph.
+ *
+ * @since 1.1.3
+ */
+final class QueryEvaluator {
+
+    private final MemoryGraph graph;
+
+    QueryEvaluator(MemoryGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Evaluates the query.
+     *
+     * @param startingPoint the element to start the evaluation from or null to start from all the elements
+     * @param query         the query to evaluate
+     * @return the found elements in the order they were found in
+     */
+    List<MemoryElement> evaluate(MemoryElement startingPoint, Query query) {
+        List<Traverser> start = startingPoint == null ? null
+                : singletonList(new Traverser(startingPoint, null, false, emptyMap(), 0));
+
+        List<Traverser> results = evaluate(query, start, false);
+
+        return results == null ? emptyList() : results.stream().map(Traverser::result).collect(toList());
+    }
+
+    /**
+     * Computes the transitive closure of the relationships with provided names in the provided direction. Unlike the
+     * traversals, the closure never visits a single element twice.
+     */
+    List<MemoryVertex> closure(MemoryVertex start, Relationships.Direction direction, String... names) {
+        String[] relationships = names.length == 0 ? new String[]{null} : names;
+
+        List<MemoryVertex> ret = new ArrayList<>();
+        Set<MemoryVertex> seen = new HashSet<>();
+        seen.add(start);
+
+        List<MemoryVertex> current = singletonList(start);
+        while (!current.isEmpty()) {
+            List<MemoryVertex> next = new ArrayList<>();
+            for (MemoryVertex v : current) {
+                for (String name : relationships) {
+                    if (direction != Relationships.Direction.incoming) {
+                        v.out(name).stream().map(e -> e.target).filter(seen::add).forEach(next::add);
+                    }
+                    if (direction != Relationships.Direction.outgoing) {
+                        v.in(name).stream().map(e -> e.source).filter(seen::add).forEach(next::add);
+                    }
+                }
+            }
+            ret.addAll(next);
+            current = next;
+        }
+
+        return ret;
+    }
+
+    private List<Traverser> evaluate(Query query, List<Traverser> frontier, boolean isFilter) {
+        List<Filter> group = new ArrayList<>();
+        for (QueryFragment qf : query.getFragments()) {
+            boolean thisIsFilter = qf instanceof FilterFragment;
+            if (thisIsFilter != isFilter) {
+                frontier = applyGroup(frontier, group, isFilter, false);
+                group = new ArrayList<>();
+                isFilter = thisIsFilter;
+            }
+            group.add(qf.getFilter());
+        }
+
+        frontier = applyGroup(frontier, group, isFilter, true);
+
+        if (query.getSubTrees().isEmpty()) {
+            return frontier;
+        } else if (query.getSubTrees().size() == 1) {
+            return evaluate(query.getSubTrees().get(0), frontier, isFilter);
+        }
+
+        if (frontier == null) {
+            List<Traverser> results = new ArrayList<>();
+            for (Query branch : query.getSubTrees()) {
+                List<Traverser> branchResults = evaluate(branch, null, false);
+                if (branchResults != null) {
+                    results.addAll(branchResults);
+                }
+            }
+            return finish(results);
+        }
+
+        //the union of the branches is ordered by the traversers that entered the branches, as in Tinkerpop
+        List<Traverser> tagged = tag(frontier);
+        List<List<Traverser>> byOrigin = new ArrayList<>(frontier.size());
+        frontier.forEach(t -> byOrigin.add(new ArrayList<>()));
+        for (Query branch : query.getSubTrees()) {
+            for (Traverser t : evaluate(branch, tagged, false)) {
+                byOrigin.get(t.tag).add(t.withTag(frontier.get(t.tag).tag));
+            }
+        }
+
+        List<Traverser> results = new ArrayList<>();
+        byOrigin.forEach(results::addAll);
+        return finish(results);
+    }
+
+    /**
+     * Applies a group of consecutive path or filter fragments. A path group moves the traversers while a filter group
+     * containing moves merely checks that the moves lead somewhere.
+     */
+    private List<Traverser> applyGroup(List<Traverser> frontier, List<Filter> group, boolean isFilter,
+                                       boolean last) {
+        //as in Tinkerpop, the recursion alone doesn't make the filter remember the position, only the direct moves do
+        if (isFilter && group.stream().anyMatch(QueryEvaluator::isMove)) {
+            return exists(frontier, group);
+        }
+
+        List<Traverser> ret = apply(frontier, group);
+        return isFilter && !last ? ret : finish(ret);
+    }
+
+    private List<Traverser> exists(List<Traverser> frontier, List<Filter> filters) {
+        if (frontier == null) {
+            frontier = start(filters.get(0));
+        }
+
+        List<Traverser> probes = tag(frontier);
+        Set<Integer> found = new HashSet<>();
+        for (Traverser t : apply(probes, filters)) {
+            found.add(t.tag);
+        }
+
+        List<Traverser> ret = new ArrayList<>(found.size());
+        for (int i = 0; i < frontier.size(); ++i) {
+            if (found.contains(i)) {
+                ret.add(frontier.get(i));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Applies the chain of filters to the traversers. If the traversers are null, the evaluation starts with all the
+     * elements of the type implied by the first filter.
+     */
+    private List<Traverser> apply(List<Traverser> frontier, List<Filter> filters) {
+        for (Filter f : filters) {
+            if (frontier == null) {
+                frontier = start(f);
+            }
+
+            if (frontier.isEmpty()) {
+                return frontier;
+            }
+
+            if (f instanceof RecurseFilter) {
+                frontier = recurse(frontier, (RecurseFilter) f);
+            } else if (isMove(f)) {
+                List<Traverser> next = new ArrayList<>();
+                for (Traverser t : frontier) {
+                    move(t, f, next);
+                }
+                frontier = f instanceof With.SameIdentityHash ? dedup(next) : next;
+            } else {
+                frontier = stay(frontier, f);
+            }
+        }
+
+        return frontier;
+    }
+
+    /**
+     * The traversers to start the evaluation with. The canonical paths are looked up directly, otherwise all the
+     * vertices or edges (depending on the filter) are considered.
+     */
+    private List<Traverser> start(Filter firstFilter) {
+        List<MemoryElement> elements = new ArrayList<>();
+
+        if (firstFilter instanceof With.CanonicalPaths) {
+            for (CanonicalPath cp : ((With.CanonicalPaths) firstFilter).getPaths()) {
+                MemoryElement e = lookup(cp);
+                if (e != null) {
+                    elements.add(e);
+                }
+            }
+        } else if (firstFilter instanceof RelationFilter) {
+            graph.getEdges().forEach(elements::add);
+        } else {
+            elements.addAll(graph.getVertices());
+        }
+
+        return elements.stream().map(e -> new Traverser(e, null, false, emptyMap(), 0)).collect(toList());
+    }
+
+    private MemoryElement lookup(CanonicalPath cp) {
+        if (SegmentType.rl == cp.getSegment().getElementType()) {
+            Long id = parseId(cp.getSegment().getElementId());
+            return id == null ? null : graph.getEdge(id);
+        } else {
+            return graph.getEntity(cp);
+        }
+    }
+
+    private List<Traverser> recurse(List<Traverser> frontier, RecurseFilter filter) {
+        List<Traverser> roots = tag(dropEdges(frontier));
+        Filter[][] chains = filter.getLoopChains();
+
+        List<Traverser> results = new ArrayList<>();
+        Set<List<Object>> seen = new HashSet<>();
+
+        List<Traverser> current = roots;
+        while (!current.isEmpty()) {
+            List<Traverser> next = new ArrayList<>();
+            for (Filter[] chain : chains) {
+                next.addAll(dropEdges(apply(current, Arrays.asList(chain))));
+            }
+
+            //guard against the loops by never visiting the same element twice from a single root
+            current = next.stream().filter(t -> seen.add(Arrays.asList(t.tag, t.element))).collect(toList());
+            results.addAll(current);
+        }
+
+        return results.stream().map(t -> t.withTag(frontier.get(t.tag).tag)).collect(toList());
+    }
+
+    private void move(Traverser t, Filter filter, List<Traverser> results) {
+        if (filter instanceof SwitchElementType) {
+            switchElementType(t, (SwitchElementType) filter, results);
+            return;
+        }
+
+        //the moves other than the switch to the edge vertices always start from the vertices
+        if (!(t.element instanceof MemoryVertex)) {
+            return;
+        }
+
+        MemoryVertex v = (MemoryVertex) t.element;
+
+        if (filter instanceof Related) {
+            related(t, v, (Related) filter, results);
+        } else if (filter instanceof With.DataAt) {
+            MemoryVertex data = dataAt(v, ((With.DataAt) filter).getDataPath());
+            if (data != null) {
+                results.add(t.move(data, null, false));
+            }
+        } else if (filter instanceof With.SameIdentityHash) {
+            if (v.identityHash != null) {
+                graph.getByIdentityHash(v.tenantId, v.identityHash).stream().filter(o -> o.type == v.type)
+                        .forEach(o -> results.add(t.move(o, null, false)));
+            }
+        } else if (filter instanceof With.RelativePaths) {
+            if (v.path == null) {
+                return;
+            }
+
+            for (RelativePath p : ((With.RelativePaths) filter).getPaths()) {
+                try {
+                    MemoryVertex target = graph.getEntity(p.applyTo(v.path));
+                    if (target != null) {
+                        results.add(t.move(target, null, false));
+                    }
+                } catch (IllegalArgumentException e) {
+                    //the path leads nowhere from this element
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported filter type: " + filter.getClass());
+        }
+    }
+
+    private static void related(Traverser t, MemoryVertex v, Related related, List<Traverser> results) {
+        String name = related.getRelationshipName();
+        String relationshipId = related.getRelationshipId();
+        CanonicalPath entityPath = related.getEntityPath();
+        Related.EntityRole role = related.getEntityRole();
+        boolean any = role == Related.EntityRole.ANY;
+
+        if (role == Related.EntityRole.SOURCE || any) {
+            for (MemoryEdge e : v.out(name)) {
+                if (matches(e, e.target, relationshipId, entityPath)) {
+                    results.add(t.move(e.target, any ? null : e, false));
+                }
+            }
+        }
+
+        if (role == Related.EntityRole.TARGET || any) {
+            for (MemoryEdge e : v.in(name)) {
+                if (matches(e, e.source, relationshipId, entityPath)) {
+                    results.add(t.move(e.source, any ? null : e, false));
+                }
+            }
+        }
+    }
+
+    private static boolean matches(MemoryEdge edge, MemoryVertex far, String relationshipId,
+                                   CanonicalPath entityPath) {
+        return (relationshipId == null || relationshipId.equals(edge.getEid()))
+                && (entityPath == null || entityPath.equals(far.path));
+    }
+
+    private static void switchElementType(Traverser t, SwitchElementType filter, List<Traverser> results) {
+        Relationships.Direction direction = filter.getDirection();
+
+        if (filter.isFromEdge()) {
+            MemoryEdge edge = t.edge != null ? t.edge
+                    : (t.element instanceof MemoryEdge ? (MemoryEdge) t.element : null);
+            if (edge == null) {
+                return;
+            }
+
+            if (direction != Relationships.Direction.outgoing) {
+                results.add(t.move(edge.source, null, false));
+            }
+            if (direction != Relationships.Direction.incoming) {
+                results.add(t.move(edge.target, null, false));
+            }
+        } else {
+            if (!(t.element instanceof MemoryVertex)) {
+                return;
+            }
+
+            MemoryVertex v = (MemoryVertex) t.element;
+            if (direction != Relationships.Direction.incoming) {
+                v.out(null).forEach(e -> results.add(t.move(e.target, e, true)));
+            }
+            if (direction != Relationships.Direction.outgoing) {
+                v.in(null).forEach(e -> results.add(t.move(e.source, e, true)));
+            }
+        }
+    }
+
+    private static MemoryVertex dataAt(MemoryVertex owner, RelativePath dataPath) {
+        List<MemoryEdge> data = owner.out(hasData.name());
+        if (data.isEmpty()) {
+            return null;
+        }
+
+        MemoryVertex current = data.get(0).target;
+        for (Path.Segment seg : dataPath.getPath()) {
+            if (SegmentType.up.equals(seg.getElementType())) {
+                List<MemoryEdge> parents = current.in(contains.name());
+                if (parents.isEmpty() || parents.get(0).source.type != ElementType.structuredData) {
+                    return null;
+                }
+                current = parents.get(0).source;
+                continue;
+            }
+
+            // map members have both index and key (so that the order of the elements is preserved)
+            // list members have only the index
+            String key = seg.getElementId();
+            Integer index = toInteger(key);
+
+            MemoryVertex child = null;
+            for (MemoryEdge e : current.out(contains.name())) {
+                MemoryVertex c = e.target;
+                //well, the map could have a numeric key, so we cannot say it has to be a list index here.
+                if (key.equals(c.dataKey) || (index != null && c.dataKey == null && index.equals(c.dataIndex))) {
+                    child = c;
+                    break;
+                }
+            }
+
+            if (child == null) {
+                return null;
+            }
+
+            current = child;
+        }
+
+        return current;
+    }
+
+    private static List<Traverser> stay(List<Traverser> frontier, Filter f) {
+        if (f instanceof NoopFilter) {
+            return frontier;
+        }
+
+        List<Traverser> ret = new ArrayList<>(frontier.size());
+        boolean leaving = isLeavingRelationship(f);
+
+        for (Traverser t : frontier) {
+            if (f instanceof Marker) {
+                t = t.mark(((Marker) f).getLabel());
+            } else if (f instanceof With.RelativePaths) {
+                With.RelativePaths rp = (With.RelativePaths) f;
+                if (!isReachable(t, rp.getMarkerLabel(), rp.getPaths())) {
+                    continue;
+                }
+            } else {
+                MemoryElement target = f instanceof RelationFilter && t.edge != null ? t.edge : t.element;
+                boolean matches = f instanceof RelationFilter ? relationMatches(target, f) : entityMatches(target, f);
+                if (!matches) {
+                    continue;
+                }
+            }
+
+            ret.add(leaving && t.edge != null ? t.move(t.element, null, false) : t);
+        }
+
+        return ret;
+    }
+
+    private static boolean entityMatches(MemoryElement e, Filter f) {
+        if (f instanceof With.Ids) {
+            return e.getEid() != null && Arrays.asList(((With.Ids) f).getIds()).contains(e.getEid());
+        } else if (f instanceof With.Types) {
+            for (SegmentType st : ((With.Types) f).getSegmentTypes()) {
+                if (ElementType.of(st) == e.getType()) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (f instanceof With.Names) {
+            Object name = e.getType() == ElementType.relationship ? null : e.property("name");
+            return name != null && Arrays.asList(((With.Names) f).getNames()).contains(name);
+        } else if (f instanceof With.CanonicalPaths) {
+            return e.getPath() != null && Arrays.asList(((With.CanonicalPaths) f).getPaths()).contains(e.getPath());
+        } else if (f instanceof With.PropertyValues) {
+            With.PropertyValues pv = (With.PropertyValues) f;
+            return propertyMatches(e, pv.getName(), pv.getValues());
+        } else if (f instanceof With.DataValued) {
+            return e.getType() == ElementType.structuredData
+                    && dataValueMatches((MemoryVertex) e, ((With.DataValued) f).getValue());
+        } else if (f instanceof With.DataOfTypes) {
+            return e.getType() == ElementType.structuredData
+                    && Arrays.asList(((With.DataOfTypes) f).getTypes()).contains(((MemoryVertex) e).dataType);
+        } else {
+            throw new IllegalArgumentException("Unsupported filter type: " + f.getClass());
+        }
+    }
+
+    private static boolean relationMatches(MemoryElement e, Filter f) {
+        if (f instanceof RelationWith.Ids) {
+            return e.getEid() != null && Arrays.asList(((RelationWith.Ids) f).getIds()).contains(e.getEid());
+        } else if (f instanceof RelationWith.PropertyValues) {
+            RelationWith.PropertyValues pv = (RelationWith.PropertyValues) f;
+            return propertyMatches(e, pv.getProperty(), pv.getValues());
+        } else if (f instanceof RelationWith.SourceOrTargetOfType) {
+            if (!(e instanceof MemoryEdge)) {
+                return false;
+            }
+
+            MemoryEdge edge = (MemoryEdge) e;
+            boolean source = false;
+            boolean target = false;
+            for (Class<?> type : ((RelationWith.SourceOrTargetOfType) f).getTypes()) {
+                ElementType t = ElementType.of(type);
+                source |= edge.source.type == t;
+                target |= edge.target.type == t;
+            }
+
+            if (f instanceof RelationWith.SourceOfType) {
+                return source;
+            } else if (f instanceof RelationWith.TargetOfType) {
+                return target;
+            } else {
+                return source || target;
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported filter type: " + f.getClass());
+        }
+    }
+
+    private static boolean propertyMatches(MemoryElement e, String name, Object[] values) {
+        Object value;
+        switch (name) {
+            case "id":
+                //the native id of the element
+                value = e.id;
+                break;
+            case "label":
+                value = e instanceof MemoryEdge ? ((MemoryEdge) e).name : e.getType().name();
+                break;
+            default:
+                value = e.property(ElementType.mapUserDefined(name));
+        }
+
+        if (value == null) {
+            return false;
+        }
+
+        if (values.length == 0) {
+            return true;
+        }
+
+        for (Object v : values) {
+            if (valueEquals(value, v)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Compares the values the same way as Tinkerpop does, i.e. the numbers of different types are compared by their
+     * numeric value.
+     */
+    private static boolean valueEquals(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+        }
+
+        return a.equals(b);
+    }
+
+    private static boolean dataValueMatches(MemoryVertex data, Object value) {
+        if (value == null) {
+            return data.dataType == StructuredData.Type.undefined;
+        } else if (value.getClass() == Long.class || value.getClass() == Boolean.class
+                || value.getClass() == Double.class) {
+            return value.equals(data.dataValue);
+        } else {
+            //fallback everything else to string
+            return data.dataType == StructuredData.Type.string && value.toString().equals(data.dataValue);
+        }
+    }
+
+    /**
+     * A relative path with an origin label is a filter checking that the current element is where the path leads
+     * from the labeled element.
+     */
+    private static boolean isReachable(Traverser t, String originLabel, RelativePath[] paths) {
+        MemoryElement origin = t.labels.get(originLabel);
+        if (!(origin instanceof MemoryVertex) || origin.getPath() == null || !(t.element instanceof MemoryVertex)
+                || t.element.getPath() == null) {
+            return false;
+        }
+
+        for (RelativePath p : paths) {
+            try {
+                if (p.applyTo(origin.getPath()).equals(t.element.getPath())) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                //the path leads nowhere from the origin
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the filter moves the traversers from one element to another.
+     */
+    private static boolean isMove(Filter f) {
+        return f instanceof Related || f instanceof SwitchElementType || f instanceof With.DataAt
+                || f instanceof With.SameIdentityHash
+                || (f instanceof With.RelativePaths && ((With.RelativePaths) f).getMarkerLabel() == null);
+    }
+
+    /**
+     * Whether the filter makes the traversers leave the relationship they moved over.
+     */
+    private static boolean isLeavingRelationship(Filter f) {
+        return (f instanceof With.Ids && ((With.Ids) f).getIds().length != 1) || f instanceof With.Types
+                || f instanceof With.Names || f instanceof With.CanonicalPaths || f instanceof With.PropertyValues
+                || f instanceof With.DataValued || f instanceof With.DataOfTypes || f instanceof With.RelativePaths
+                || f instanceof Marker;
+    }
+
+    private static List<Traverser> finish(List<Traverser> frontier) {
+        return frontier == null ? null : frontier.stream()
+                .map(t -> t.edge != null && !t.explicit ? t.move(t.element, null, false) : t).collect(toList());
+    }
+
+    private static List<Traverser> dropEdges(List<Traverser> frontier) {
+        return frontier.stream().map(t -> t.edge == null ? t : t.move(t.element, null, false)).collect(toList());
+    }
+
+    private static List<Traverser> dedup(List<Traverser> frontier) {
+        Set<List<Object>> seen = new HashSet<>();
+        return frontier.stream().filter(t -> seen.add(Arrays.asList(t.tag, t.element))).collect(toList());
+    }
+
+    private static List<Traverser> tag(List<Traverser> frontier) {
+        List<Traverser> ret = new ArrayList<>(frontier.size());
+        for (int i = 0; i < frontier.size(); ++i) {
+            ret.add(frontier.get(i).withTag(i));
+        }
+        return ret;
+    }
+
+    static Long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A very simplistic conversion of string to positive integer in only decimal radix, same as in the Tinkerpop
+     * implementation.
+     */
+    private static Integer toInteger(String str) {
+        if (str.isEmpty()) {
+            return null;
+        }
+
+        int result = 0;
+        for (char c : str.toCharArray()) {
+            if ('0' <= c && c <= '9') {
+                result = result * 10 + (c - '0');
+            } else {
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * The state of the evaluation of a single "path" through the query.
+     */
+    private static final class Traverser {
+        final MemoryElement element;
+
+        /**
+         * The relationship the traverser moved over to get to the element, if it still is "in" it.
+         */
+        final MemoryEdge edge;
+
+        /**
+         * Whether the traverser switched to the relationship explicitly and therefore should report it as the
+         * result.
+         */
+        final boolean explicit;
+
+        final Map<String, MemoryElement> labels;
+
+        /**
+         * Used to find out the origin of the traverser during the evaluation of the sub-queries.
+         */
+        final int tag;
+
+        Traverser(MemoryElement element, MemoryEdge edge, boolean explicit, Map<String, MemoryElement> labels,
+                  int tag) {
+            this.element = element;
+            this.edge = edge;
+            this.explicit = explicit;
+            this.labels = labels;
+            this.tag = tag;
+        }
+
+        Traverser move(MemoryElement element, MemoryEdge edge, boolean explicit) {
+            return new Traverser(element, edge, explicit, labels, tag);
+        }
+
+        Traverser withTag(int tag) {
+            return new Traverser(element, edge, explicit, labels, tag);
+        }
+
+        Traverser mark(String label) {
+            Map<String, MemoryElement> newLabels = new HashMap<>(labels);
+            newLabels.put(label, element);
+            return new Traverser(element, edge, explicit, newLabels, tag);
+        }
+
+        MemoryElement result() {
+            return explicit && edge != null ? edge : element;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.memory;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.Feeds;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.feeds.AcceptWithFallbackFeedIdStrategy;
+import org.hawkular.inventory.api.feeds.RandomUUIDFeedIdStrategy;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Hashes;
+import org.hawkular.inventory.api.model.InventoryStructure;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.Pager;
+import org.hawkular.inventory.base.BaseInventory;
+import org.hawkular.inventory.base.DelegatingInventoryBackend;
+import org.hawkular.inventory.base.TransactionConstructor;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks how much of the inventory the hash computation reads when committing the changes.
+ *
+ * @since 1.1.3
+ */
+public class PreCommitHashLoadingTest {
+    private static final int CHILD_COUNT = 30;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private CountingInventory inventory;
+
+    @Before
+    public void setup() throws Exception {
+        inventory = new CountingInventory(loads);
+        inventory.initialize(Configuration.builder()
+                .withFeedIdStrategy(new AcceptWithFallbackFeedIdStrategy(new RandomUUIDFeedIdStrategy())).build());
+
+        inventory.tenants().create(Tenant.Blueprint.builder().withId("tenant").build()).resourceTypes()
+                .create(ResourceType.Blueprint.builder().withId("type").build());
+
+        Feeds.Single feed = inventory.tenants().get("tenant").feeds()
+                .create(Feed.Blueprint.builder().withId("feed").build());
+        feed.resources().create(Resource.Blueprint.builder().withId("parent").withResourceTypePath("/type").build());
+
+        for (int i = 0; i < CHILD_COUNT; ++i) {
+            feed.resources().get("parent").resources()
+                    .create(Resource.Blueprint.builder().withId("child" + i).withResourceTypePath("/type").build());
+        }
+    }
+
+    @Test
+    public void testUnchangedSubtreeNotLoaded() throws Exception {
+        Feeds.Single feed = inventory.tenants().get("tenant").feeds().get("feed");
+
+        loads.set(0);
+        feed.update(Feed.Update.builder().withName("renamed").build());
+
+        Assert.assertTrue("Only the direct children of the feed should be loaded but " + loads.get()
+                + " entities were", loads.get() < CHILD_COUNT);
+        assertHashesUpToDate(feed.entity());
+    }
+
+    @Test
+    public void testChangedSubtreeHashed() throws Exception {
+        Feeds.Single feed = inventory.tenants().get("tenant").feeds().get("feed");
+
+        feed.resources().get("parent").resources().get("child0")
+                .update(Resource.Update.builder().withName("renamed").build());
+
+        assertHashesUpToDate(feed.entity());
+    }
+
+    private void assertHashesUpToDate(Feed feed) {
+        Hashes computed = Hashes.of(InventoryStructure.of(feed, inventory), feed.getPath());
+
+        Assert.assertEquals(computed.getIdentityHash(), feed.getIdentityHash());
+        Assert.assertEquals(computed.getContentHash(), feed.getContentHash());
+        Assert.assertEquals(computed.getSyncHash(), feed.getSyncHash());
+    }
+
+    private static final class CountingInventory extends BaseInventory<MemoryElement> {
+        private final AtomicInteger loads;
+
+        CountingInventory(AtomicInteger loads) {
+            this.loads = loads;
+        }
+
+        private CountingInventory(CountingInventory orig, TransactionConstructor<MemoryElement> txCtor) {
+            super(orig, null, txCtor);
+            this.loads = orig.loads;
+        }
+
+        @Override protected CountingInventory cloneWith(TransactionConstructor<MemoryElement> transactionCtor) {
+            return new CountingInventory(this, transactionCtor);
+        }
+
+        @Override protected InventoryBackend<MemoryElement> doInitialize(Configuration configuration) {
+            return new CountingBackend(new MemoryBackend(new MemoryGraph()), loads);
+        }
+    }
+
+    /**
+     * Counts the elements read from the query results.
+     */
+    private static final class CountingBackend extends DelegatingInventoryBackend<MemoryElement> {
+        private final AtomicInteger loads;
+
+        CountingBackend(InventoryBackend<MemoryElement> backend, AtomicInteger loads) {
+            super(backend);
+            this.loads = loads;
+        }
+
+        @Override public InventoryBackend<MemoryElement> startTransaction() {
+            return new CountingBackend(backend.startTransaction(), loads);
+        }
+
+        @Override public Page<MemoryElement> query(Query query, Pager pager) {
+            return counting(backend.query(query, pager));
+        }
+
+        @Override public <T> Page<T> query(Query query, Pager pager, Function<MemoryElement, T> conversion,
+                                           Function<T, Boolean> filter) {
+            return counting(backend.query(query, pager, conversion, filter));
+        }
+
+        @Override public Page<MemoryElement> traverse(MemoryElement startingPoint, Query query, Pager pager) {
+            return counting(backend.traverse(startingPoint, query, pager));
+        }
+
+        private <T> Page<T> counting(Page<T> page) {
+            Iterator<T> it = new Iterator<T>() {
+                @Override public boolean hasNext() {
+                    return page.hasNext();
+                }
+
+                @Override public T next() {
+                    loads.incrementAndGet();
+                    return page.next();
+                }
+            };
+
+            return new Page<>(it, page.getPageContext(), page.getTotalSize(), page.getNextCursor());
+        }
+    }
+}
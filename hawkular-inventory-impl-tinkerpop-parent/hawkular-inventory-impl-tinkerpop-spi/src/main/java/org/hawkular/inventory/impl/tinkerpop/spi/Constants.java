@@ -23,6 +23,8 @@ import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__met
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceCp;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceEid;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceType;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataCompact;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataDigest;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataIndex;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataKey;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataType;
@@ -143,6 +145,18 @@ public final class Constants {
 
         __structuredDataValue_s(String.class),
 
+        /**
+         * When structured data is stored in the compact form, the whole list or map is serialized into this single
+         * property of the root structured data vertex instead of being expanded into a tree of child vertices.
+         */
+        __structuredDataCompact(String.class),
+
+        /**
+         * The digest of the whole structured data value of a data entity. It is stored on the root structured data
+         * vertex so that the value doesn't need to be serialized again when computing the hashes.
+         */
+        __structuredDataDigest(String.class),
+
         __sourceType("sourceType", String.class),
 
         __targetType("targetType", String.class),
@@ -231,7 +245,7 @@ public final class Constants {
         dataEntity(DataEntity.class, name, __identityHash, __contentHash, __syncHash),
         structuredData(StructuredData.class, __structuredDataType,
                 __structuredDataValue_b, __structuredDataValue_i, __structuredDataValue_f, __structuredDataValue_s,
-                __structuredDataIndex, __structuredDataKey);
+                __structuredDataIndex, __structuredDataKey, __structuredDataCompact, __structuredDataDigest);
 
         private final String[] mappedProperties;
         private final Class<?> entityType;
@@ -21,6 +21,8 @@ import static org.hawkular.inventory.impl.tinkerpop.spi.Log.LOG;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Transaction;
 import org.hawkular.inventory.api.Configuration;
@@ -47,6 +49,28 @@ public interface GraphProvider {
      */
     boolean needsDraining();
 
+    /**
+     * Releases the backend resources held by a traversal that is not going to be iterated over any further. This is
+     * called after the single-result lookups, which limit the traversal to a single element and therefore stop
+     * iterating it before the backend's cursors are exhausted.
+     * <p>
+     * <p>If the pipelines {@link #needsDraining() need draining}, the default implementation exhausts the steps of the
+     * traversal one by one, starting with the first one. The rest of the elements read from the backend is therefore
+     * discarded by the first step and never goes through the remaining steps. Implementations that are able to close
+     * the underlying cursors directly can override this method.
+     *
+     * @param traversal the traversal to release the resources of
+     */
+    default void closeTraversal(Traversal<?, ?> traversal) {
+        if (needsDraining()) {
+            for (Step<?, ?> step : traversal.asAdmin().getSteps()) {
+                while (step.hasNext()) {
+                    step.next();
+                }
+            }
+        }
+    }
+
     /**
      * @see org.hawkular.inventory.base.spi.InventoryBackend#isUniqueIndexSupported()
      */
@@ -166,6 +190,67 @@ public interface GraphProvider {
         }
     }
 
+    /**
+     * Whether the graph can be read from by several threads at the same time, each thread in its own read transaction
+     * obtained using {@link #startReadTransaction(Graph)}. This is used to evaluate the independent parts of large
+     * queries in parallel.
+     *
+     * <p>The default implementation returns false.
+     *
+     * @return true if the graph supports concurrent reads from multiple threads, false otherwise
+     */
+    default boolean isParallelReadSupported() {
+        return false;
+    }
+
+    /**
+     * Starts a transaction that is only going to be used for reading in the current thread. This is only ever called
+     * if {@link #isParallelReadSupported()} returns true and possibly while another thread has a transaction open.
+     *
+     * <p>The default implementation merely calls {@link #startTransaction(Graph)}.
+     *
+     * @param graph the graph to start the transaction in
+     * @return a graph bound to the new read transaction
+     */
+    default Graph startReadTransaction(Graph graph) {
+        return startTransaction(graph);
+    }
+
+    /**
+     * Ends the transaction started using {@link #startReadTransaction(Graph)}.
+     *
+     * <p>The default implementation calls {@link #rollback(Graph)} because there is nothing to commit.
+     *
+     * @param graph the graph bound to the read transaction
+     */
+    default void endReadTransaction(Graph graph) {
+        rollback(graph);
+    }
+
+    /**
+     * Switches the current transaction in the graph to a mode optimized for persisting a large number of new
+     * elements, e.g. by batching the inserts. The new elements must still be visible to the queries made in the
+     * transaction.
+     * <p>
+     * <p>The default implementation does nothing.
+     *
+     * @param graph the graph with the transaction to switch to the bulk load mode
+     * @see #endBulkLoad(Graph)
+     */
+    default void beginBulkLoad(Graph graph) {
+    }
+
+    /**
+     * Switches the current transaction in the graph back from the bulk load mode, writing out all the pending new
+     * elements. This is also called prior to the {@link #commit(Graph)} of a transaction in the bulk load mode.
+     * <p>
+     * <p>The default implementation does nothing.
+     *
+     * @param graph the graph with the transaction in the bulk load mode
+     */
+    default void endBulkLoad(Graph graph) {
+    }
+
     /**
      * Translates the graph specific exception to an inventory exception.
      * <p>
@@ -16,12 +16,18 @@
  */
 package org.hawkular.inventory.impl.tinkerpop.spi;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.apache.tinkerpop.gremlin.process.computer.GraphComputer;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Transaction;
@@ -88,6 +94,40 @@ public class GraphProviderTest {
         gp.startTransaction(g);
     }
 
+    @Test
+    public void testClosingLimitedTraversalExhaustsOnlyTheSource() throws Exception {
+        List<Integer> mapped = new ArrayList<>();
+        Traversal<Integer, Integer> traversal = __.inject(1, 2, 3, 4).map(t -> {
+            mapped.add(t.get());
+            return t.get();
+        }).limit(1);
+
+        Assert.assertEquals(1, (int) traversal.next());
+
+        Step<?, ?> source = traversal.asAdmin().getStartStep();
+        Assert.assertTrue(source.hasNext());
+
+        new DummyGraphProvider() {
+            @Override public boolean needsDraining() {
+                return true;
+            }
+        }.closeTraversal(traversal);
+
+        Assert.assertFalse(source.hasNext());
+        Assert.assertEquals(Collections.singletonList(1), mapped);
+    }
+
+    @Test
+    public void testTraversalNotDrainedIfNotNeeded() throws Exception {
+        Traversal<Integer, Integer> traversal = __.inject(1, 2, 3, 4).limit(1);
+
+        Assert.assertEquals(1, (int) traversal.next());
+
+        new DummyGraphProvider().closeTraversal(traversal);
+
+        Assert.assertTrue(traversal.asAdmin().getStartStep().hasNext());
+    }
+
     private static class DummyGraphProvider implements GraphProvider {
 
         @Override public boolean isPreferringBigTransactions() {
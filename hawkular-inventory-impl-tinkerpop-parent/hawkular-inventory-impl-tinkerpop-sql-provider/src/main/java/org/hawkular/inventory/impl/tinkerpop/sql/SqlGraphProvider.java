@@ -79,6 +79,11 @@ public class SqlGraphProvider implements GraphProvider {
         return true;
     }
 
+    @Override public boolean isParallelReadSupported() {
+        //Sqlg binds the transactions (and their connections) to threads
+        return true;
+    }
+
     @Override public SqlgGraph instantiateGraph(Configuration configuration) {
         try {
             Map<String, String> conf = configuration.prefixedWith("sql.")
@@ -306,6 +311,24 @@ public class SqlGraphProvider implements GraphProvider {
         }
     }
 
+    @Override public void beginBulkLoad(Graph graph) {
+        SqlgGraph sqlg = (SqlgGraph) graph;
+
+        //H2 doesn't support the batch mode, the elements are then just inserted one by one as usual
+        if (sqlg.getSqlDialect().supportsBatchMode() && !sqlg.tx().isInBatchMode()) {
+            sqlg.tx().normalBatchModeOn();
+        }
+    }
+
+    @Override public void endBulkLoad(Graph graph) {
+        SqlgGraph sqlg = (SqlgGraph) graph;
+
+        if (sqlg.tx().isInBatchMode()) {
+            sqlg.tx().flush();
+            sqlg.tx().batchModeOff();
+        }
+    }
+
     @Override public RuntimeException translateException(RuntimeException inputException, CanonicalPath affectedPath) {
         if (inputException instanceof SqlgExceptions.UniqueConstraintViolationException) {
             return new EntityAlreadyExistsException(inputException, affectedPath);
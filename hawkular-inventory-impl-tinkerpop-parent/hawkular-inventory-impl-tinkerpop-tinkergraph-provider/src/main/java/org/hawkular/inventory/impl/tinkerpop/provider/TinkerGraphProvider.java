@@ -67,6 +67,19 @@ public final class TinkerGraphProvider implements GraphProvider {
         return prefersBigTxs;
     }
 
+    @Override public boolean isParallelReadSupported() {
+        return true;
+    }
+
+    @Override public Graph startReadTransaction(Graph graph) {
+        //tinkergraph has no isolation and our "transactions" only guard against nested writes, so the reads can go
+        //directly to the graph
+        return graph;
+    }
+
+    @Override public void endReadTransaction(Graph graph) {
+    }
+
     @Override
     public WrappedTinkerGraph instantiateGraph(Configuration configuration) {
         return new WrappedTinkerGraph(new MapConfiguration(
@@ -76,7 +89,17 @@ public final class TinkerGraphProvider implements GraphProvider {
 
     @Override
     public void ensureIndices(Graph graph, IndexSpec... indexSpecs) {
-        //don't bother with this for a demo graph
+        //tinkergraph only supports simple key indices (no uniqueness or label constraints) but even those turn
+        //the lookups by the canonical paths and ids from full scans to hash lookups
+        WrappedTinkerGraph tg = (WrappedTinkerGraph) graph;
+        for (IndexSpec spec : indexSpecs) {
+            Set<String> indexed = tg.getIndexedKeys(spec.getElementType());
+            for (IndexSpec.Property p : spec.getProperties()) {
+                if (!indexed.contains(p.getName())) {
+                    tg.createIndex(p.getName(), spec.getElementType());
+                }
+            }
+        }
     }
 
     private static final class WrappedTinkerGraph implements Graph, WrappedGraph<TinkerGraph> {
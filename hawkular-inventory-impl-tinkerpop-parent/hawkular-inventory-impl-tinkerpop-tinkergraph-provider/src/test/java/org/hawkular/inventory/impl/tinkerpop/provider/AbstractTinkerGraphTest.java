@@ -28,14 +28,22 @@ import java.util.List;
 
 import org.apache.tinkerpop.gremlin.structure.Element;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.api.test.AbstractBaseInventoryTestsuite;
 import org.hawkular.inventory.base.BaseInventory;
+import org.hawkular.inventory.base.LruCache;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.hawkular.inventory.impl.tinkerpop.TinkerpopInventory;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.junit.Assert;
+import org.junit.Test;
 
 /**
  * @author Lukas Krejci
  * @since 0.11.0
  */
-abstract class AbstractTinkerGraphTest extends AbstractBaseInventoryTestsuite<Element> {
+public abstract class AbstractTinkerGraphTest extends AbstractBaseInventoryTestsuite<Element> {
 
     protected static void teardown(BaseInventory<?> inventory) throws Exception {
         String pathName = inventory.getConfiguration().getProperty(new DirProperty(), null);
@@ -61,6 +69,56 @@ abstract class AbstractTinkerGraphTest extends AbstractBaseInventoryTestsuite<El
         });
     }
 
+    @Test
+    public void testQueryPlansReused() throws Exception {
+        LruCache<?, ?> plans = ((TinkerpopInventory) getInventoryForTest()).getQueryPlanCache();
+
+        getInventoryForTest().tenants().get("com.acme.tenant").environments().getAll().entities(Pager.none())
+                .close();
+        long hits = plans.getHitCount();
+        long misses = plans.getMissCount();
+
+        getInventoryForTest().tenants().get("com.acme.tenant").environments().getAll().entities(Pager.none())
+                .close();
+
+        Assert.assertTrue(plans.getHitCount() > hits);
+        Assert.assertEquals(misses, plans.getMissCount());
+    }
+
+    @Test
+    public void testRelationshipFoundAfterLookedUpMissing() throws Exception {
+        InventoryBackend<Element> tx = getInventoryForTest().getBackend().startTransaction();
+
+        Element tenant = tx.find(CanonicalPath.of().tenant("com.acme.tenant").get());
+        Element environment = tx.find(CanonicalPath.of().tenant("com.acme.tenant").environment("production").get());
+
+        Element first = tx.relate(tenant, environment, "testPathCache", null);
+        Element second = null;
+        try {
+            //the graph assigns the ids sequentially, so this is going to be the path of the next relationship
+            CanonicalPath next = CanonicalPath.of()
+                    .relationship(String.valueOf(Long.parseLong(first.id().toString()) + 1)).get();
+
+            try {
+                tx.find(next);
+                Assert.fail("The relationship should not exist yet.");
+            } catch (ElementNotFoundException e) {
+                //expected
+            }
+
+            second = tx.relate(tenant, environment, "testPathCache", null);
+
+            Assert.assertEquals(next, tx.extractCanonicalPath(second));
+            Assert.assertEquals(second, tx.find(next));
+        } finally {
+            tx.delete(first);
+            if (second != null) {
+                tx.delete(second);
+            }
+            tx.commit();
+        }
+    }
+
     private static final class DirProperty implements Configuration.Property {
 
         @Override public String getPropertyName() {
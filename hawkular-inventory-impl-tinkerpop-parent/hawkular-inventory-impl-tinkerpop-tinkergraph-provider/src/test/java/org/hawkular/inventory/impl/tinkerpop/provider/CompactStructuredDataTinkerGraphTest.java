@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import static org.hawkular.inventory.paths.DataRole.Resource.configuration;
+
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.Data;
+import org.hawkular.inventory.api.filters.Filter;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.impl.tinkerpop.TinkerpopInventory;
+import org.hawkular.inventory.paths.DataRole;
+import org.hawkular.inventory.paths.RelativePath;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 1.1.3
+ */
+public class CompactStructuredDataTinkerGraphTest {
+    private static final StructuredData DATA = StructuredData.get().map()
+            .putIntegral("a", 1L)
+            .putList("b").addBool(true).addString("x").addMap().putFloatingPoint("c", 2D).putUndefined("d")
+            .closeMap().closeList()
+            .putString("e", "žluťoučký kůň")
+            .build();
+
+    private static TinkerpopInventory INVENTORY;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        Properties ps = new Properties();
+        try (FileInputStream f = new FileInputStream(System.getProperty("small-tx.config"))) {
+            ps.load(f);
+        }
+
+        ps.setProperty("blueprints.tg.directory", ps.getProperty("blueprints.tg.directory") + "-compact");
+        ps.setProperty(TinkerpopInventory.COMPACT_STRUCTURED_DATA.getPropertyName(), "true");
+
+        INVENTORY = new TinkerpopInventory();
+        INVENTORY.initialize(Configuration.builder().withConfiguration(ps).build());
+
+        INVENTORY.tenants().create(Tenant.Blueprint.builder().withId("compact").build())
+                .environments().create(Environment.Blueprint.builder().withId("env").build());
+        INVENTORY.tenants().get("compact").resourceTypes()
+                .create(ResourceType.Blueprint.builder().withId("rt").build());
+        INVENTORY.tenants().get("compact").environments().get("env").resources()
+                .create(Resource.Blueprint.builder().withId("r").withResourceTypePath("/rt").build());
+    }
+
+    @AfterClass
+    public static void teardownData() throws Exception {
+        INVENTORY.tenants().delete("compact");
+        AbstractTinkerGraphTest.teardown(INVENTORY);
+    }
+
+    @Test
+    public void testCompactDataRoundTrip() throws Exception {
+        Data.ReadWrite<DataRole.Resource> data = INVENTORY.tenants().get("compact").environments().get("env")
+                .resources().get("r").data();
+
+        StructuredData orig = StructuredData.get().map()
+                .putIntegral("a", 1L)
+                .putList("b").addBool(true).addString("x").addMap().putFloatingPoint("c", 2D).putUndefined("d")
+                .closeMap().closeList()
+                .putString("e", "žluťoučký kůň")
+                .build();
+
+        data.create(DataEntity.Blueprint.<DataRole.Resource>builder().withRole(configuration).withValue(orig)
+                .build());
+
+        try {
+            Data.Single single = data.get(configuration);
+
+            Assert.assertEquals(orig, single.entity().getValue());
+            Assert.assertEquals(orig, single.data(RelativePath.empty().get()));
+
+            Assert.assertEquals(StructuredData.get().floatingPoint(2D),
+                    single.data(RelativePath.to().structuredData().key("b").index(2).key("c").get()));
+            Assert.assertEquals(StructuredData.get().list().build(),
+                    single.flatData(RelativePath.to().structuredData().key("b").get()));
+            Assert.assertNull(single.data(RelativePath.to().structuredData().key("b").index(3).get()));
+            Assert.assertNull(single.data(RelativePath.to().structuredData().key("nonexistent").get()));
+
+            StructuredData updated = StructuredData.get().list().addIntegral(42).build();
+            single.update(DataEntity.Update.builder().withValue(updated).build());
+
+            Assert.assertEquals(updated, single.entity().getValue());
+        } finally {
+            data.delete(configuration);
+        }
+
+        Assert.assertFalse(data.get(configuration).exists());
+    }
+
+    @Test
+    public void testShallowNestedValues() throws Exception {
+        Data.ReadWrite<DataRole.Resource> data = createData();
+
+        try {
+            Data.Single single = data.get(configuration);
+
+            Assert.assertEquals(StructuredData.get().integral(1L),
+                    single.flatData(RelativePath.to().structuredData().key("a").get()));
+            Assert.assertEquals(StructuredData.get().bool(true),
+                    single.flatData(RelativePath.to().structuredData().key("b").index(0).get()));
+            Assert.assertEquals(StructuredData.get().string("x"),
+                    single.data(RelativePath.to().structuredData().key("b").index(1).get()));
+            Assert.assertEquals(StructuredData.get().undefined(),
+                    single.flatData(RelativePath.to().structuredData().key("b").index(2).key("d").get()));
+            Assert.assertEquals(StructuredData.get().map().build(),
+                    single.flatData(RelativePath.to().structuredData().key("b").index(2).get()));
+        } finally {
+            data.delete(configuration);
+        }
+    }
+
+    @Test
+    public void testNestedMap() throws Exception {
+        Data.ReadWrite<DataRole.Resource> data = createData();
+
+        try {
+            Data.Single single = data.get(configuration);
+
+            Assert.assertEquals(StructuredData.get().map().putFloatingPoint("c", 2D).putUndefined("d").build(),
+                    single.data(RelativePath.to().structuredData().key("b").index(2).get()));
+            Assert.assertEquals(StructuredData.get().integral(1L),
+                    single.data(RelativePath.to().structuredData().key("b").index(2).up().up().structuredData().key("a").get()));
+        } finally {
+            data.delete(configuration);
+        }
+    }
+
+    @Test
+    public void testFilteringByDataAt() throws Exception {
+        Data.ReadWrite<DataRole.Resource> data = createData();
+
+        try {
+            Data.Read<DataRole.Resource> configs = INVENTORY.tenants().get("compact").environments().getAll()
+                    .resources().getAll().data();
+
+            RelativePath c = RelativePath.to().structuredData().key("b").index(2).key("c").get();
+
+            Assert.assertEquals(1, configs.getAll(With.dataAt(c)).entities().size());
+            Assert.assertEquals(1, configs.getAll(new Filter[][]{{With.dataAt(c), With.dataValue(2D)}})
+                    .entities().size());
+            Assert.assertEquals(0, configs.getAll(new Filter[][]{{With.dataAt(c), With.dataValue(3D)}})
+                    .entities().size());
+            Assert.assertEquals(1, configs.getAll(new Filter[][]{{
+                    With.dataAt(RelativePath.to().structuredData().key("b").get()),
+                    With.dataOfTypes(StructuredData.Type.list)}}).entities().size());
+            Assert.assertEquals(0, configs.getAll(With.dataAt(RelativePath.to().structuredData().key("x").get()))
+                    .entities().size());
+        } finally {
+            data.delete(configuration);
+        }
+    }
+
+    private static Data.ReadWrite<DataRole.Resource> createData() {
+        Data.ReadWrite<DataRole.Resource> data = INVENTORY.tenants().get("compact").environments().get("env")
+                .resources().get("r").data();
+
+        data.create(DataEntity.Blueprint.<DataRole.Resource>builder().withRole(configuration).withValue(DATA)
+                .build());
+
+        return data;
+    }
+}
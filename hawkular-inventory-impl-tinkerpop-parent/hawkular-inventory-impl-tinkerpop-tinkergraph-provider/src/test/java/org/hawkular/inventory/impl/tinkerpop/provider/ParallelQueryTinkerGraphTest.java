@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.Resources;
+import org.hawkular.inventory.api.filters.Related;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.api.paging.Order;
+import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.Pager;
+import org.hawkular.inventory.impl.tinkerpop.TinkerpopInventory;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @since 1.1.3
+ */
+public class ParallelQueryTinkerGraphTest {
+    private static TinkerpopInventory INVENTORY;
+    private static final List<String> ALL_IDS = new ArrayList<>();
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        Properties ps = new Properties();
+        try (FileInputStream f = new FileInputStream(System.getProperty("small-tx.config"))) {
+            ps.load(f);
+        }
+
+        ps.setProperty("blueprints.tg.directory", ps.getProperty("blueprints.tg.directory") + "-parallel");
+        ps.setProperty(TinkerpopInventory.PARALLEL_QUERY_THREADS.getPropertyName(), "4");
+
+        INVENTORY = new TinkerpopInventory();
+        INVENTORY.initialize(Configuration.builder().withConfiguration(ps).build());
+
+        INVENTORY.tenants().create(Tenant.Blueprint.builder().withId("parallel").build()).resourceTypes()
+                .create(ResourceType.Blueprint.builder().withId("resourceType").build());
+
+        for (String env : new String[]{"e1", "e2", "e3"}) {
+            Resources.ReadWrite resources = INVENTORY.tenants().get("parallel").environments()
+                    .create(Environment.Blueprint.builder().withId(env).build()).resources();
+
+            for (int i = 0; i < 10; ++i) {
+                String id = env + "-r" + i;
+                Resource.Blueprint.Builder bld = Resource.Blueprint.builder().withId(id)
+                        .withResourceTypePath("/resourceType");
+                //the weights are missing, numbers or strings
+                if (i % 3 == 1) {
+                    bld.withProperty("weight", i);
+                } else if (i % 3 == 2) {
+                    bld.withProperty("weight", "w" + i);
+                }
+                resources.create(bld.build());
+                if (!"e3".equals(env)) {
+                    ALL_IDS.add(id);
+                }
+            }
+        }
+
+        Collections.sort(ALL_IDS);
+    }
+
+    @AfterClass
+    public static void teardownData() throws Exception {
+        INVENTORY.tenants().delete("parallel");
+        AbstractTinkerGraphTest.teardown(INVENTORY);
+    }
+
+    @Test
+    public void testOrderedPagesOfMultipleStartingPaths() throws Exception {
+        List<String> ascending = new ArrayList<>();
+        List<String> descending = new ArrayList<>();
+
+        for (int page = 0; page < 4; ++page) {
+            Page<Resource> asc = resources(new Pager(page, 6, Order.by("id", Order.Direction.ASCENDING)));
+            Assert.assertEquals(ALL_IDS.size(), asc.getTotalSize());
+            ascending.addAll(asc.toList().stream().map(Resource::getId).collect(toList()));
+
+            Page<Resource> desc = resources(new Pager(page, 6,
+                    Order.by("id", Order.Direction.DESCENDING)));
+            Assert.assertEquals(ALL_IDS.size(), desc.getTotalSize());
+            descending.addAll(desc.toList().stream().map(Resource::getId).collect(toList()));
+        }
+
+        Assert.assertEquals(ALL_IDS, ascending);
+
+        List<String> reversed = new ArrayList<>(ALL_IDS);
+        Collections.reverse(reversed);
+        Assert.assertEquals(reversed, descending);
+    }
+
+    @Test
+    public void testCursorPagesOfMultipleStartingPaths() throws Exception {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+
+        do {
+            Page<Resource> page = resources(Pager.cursor(7, cursor));
+            ids.addAll(page.toList().stream().map(Resource::getId).collect(toList()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(ALL_IDS, ids);
+    }
+
+    @Test
+    public void testOrderingByValuesOfDifferentTypes() throws Exception {
+        Page<Resource> page = resources(new Pager(0, 20, Order.by("weight", Order.Direction.ASCENDING)));
+
+        List<Object> weights = page.toList().stream().map(r -> r.getProperties().get("weight")).collect(toList());
+
+        Assert.assertEquals(Arrays.asList(null, null, null, null, null, null, null, null, 1, 1, 4, 4, 7, 7,
+                "w2", "w2", "w5", "w5", "w8", "w8"), weights);
+    }
+
+    @Test
+    public void testUnlimitedResultsOfMultipleStartingPaths() throws Exception {
+        List<String> ids = resources(Pager.none()).toList().stream().map(Resource::getId).sorted()
+                .collect(toList());
+
+        Assert.assertEquals(ALL_IDS, ids);
+    }
+
+    private static Page<Resource> resources(Pager pager) {
+        CanonicalPath tenant = CanonicalPath.of().tenant("parallel").get();
+
+        //more than one starting path makes the query eligible for the parallel evaluation
+        Query query = Query.path().with(With.paths(tenant.extend(Environment.SEGMENT_TYPE, "e1").get(),
+                tenant.extend(Environment.SEGMENT_TYPE, "e2").get()), Related.by(contains), With.type(Resource.class))
+                .get();
+
+        return INVENTORY.execute(query, Resource.class, pager);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+import static org.hawkular.inventory.api.filters.Related.by;
+import static org.hawkular.inventory.api.filters.With.id;
+import static org.hawkular.inventory.api.filters.With.type;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.api.filters.RecurseFilter;
+import org.hawkular.inventory.api.filters.Related;
+import org.hawkular.inventory.api.filters.SwitchElementType;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.paths.CanonicalPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the translation of inventory queries into Gremlin traversals (without executing them). This is the
+ * overhead paid on every read before the backend is even touched.
+ *
+ * @since 1.1.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class QueryTranslationBenchmark {
+
+    private Query pathQuery;
+    private Query filteredQuery;
+    private Query recursiveQuery;
+
+    @Setup
+    public void setup() {
+        //the "non-optimizable" form of the path so that each of the filters gets translated
+        pathQuery = Query.path().with(type(Tenant.class)).with(id("t")).filter().with(by(contains))
+                .with(type(Environment.class)).with(id("e")).with(by(contains)).with(type(Resource.class))
+                .with(id("r")).with(by(contains)).with(type(Metric.class)).get();
+
+        filteredQuery = Query.path().with(With.path(CanonicalPath.of().tenant("t").get()))
+                .with(by(contains), type(ResourceType.class)).filter()
+                .with(SwitchElementType.outgoingRelationships()).with(Related.by(defines))
+                .with(SwitchElementType.targetEntities()).with(With.property("kind"), With.propertyValue("kind", "a"))
+                .get();
+
+        recursiveQuery = Query.path().with(With.path(CanonicalPath.of().tenant("t").environment("e").get()))
+                .with(by(contains), type(Resource.class))
+                .with(RecurseFilter.builder().addChain(by(contains), type(Resource.class)).build())
+                .get();
+    }
+
+    @Benchmark
+    public GraphTraversal<?, ?> translatePath() {
+        return translate(pathQuery);
+    }
+
+    @Benchmark
+    public GraphTraversal<?, ?> translateFiltered() {
+        return translate(filteredQuery);
+    }
+
+    @Benchmark
+    public GraphTraversal<?, ?> translateRecursive() {
+        return translate(recursiveQuery);
+    }
+
+    private static GraphTraversal<?, ?> translate(Query query) {
+        GraphTraversal<?, ?> traversal = __.start();
+        FilterApplicator.applyAll(query, traversal);
+        return traversal;
+    }
+}
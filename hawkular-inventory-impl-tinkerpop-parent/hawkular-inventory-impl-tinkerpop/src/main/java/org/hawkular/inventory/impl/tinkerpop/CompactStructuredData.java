@@ -0,0 +1,332 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataCompact;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataKey;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataType;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataValue_b;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataValue_f;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataValue_i;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataValue_s;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tinkerpop.gremlin.structure.Property;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.util.detached.DetachedVertex;
+import org.apache.tinkerpop.gremlin.structure.util.detached.DetachedVertexProperty;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.impl.tinkerpop.spi.Constants;
+import org.hawkular.inventory.paths.Path;
+import org.hawkular.inventory.paths.RelativePath;
+import org.hawkular.inventory.paths.SegmentType;
+
+/**
+ * Serializes structured data into a single string that can be stored in a property of one vertex instead of
+ * expanding it into a tree of vertices.
+ *
+ * <p>The format is a simple tagged binary encoding (one byte for the type followed by the value, lists and maps
+ * prefixed by the number of their elements) that is base64 encoded to be storable in any graph database.
+ *
+ * @since 1.1.3
+ */
+final class CompactStructuredData {
+
+    private static final byte BOOL = 0;
+    private static final byte INTEGRAL = 1;
+    private static final byte FLOATING_POINT = 2;
+    private static final byte STRING = 3;
+    private static final byte UNDEFINED = 4;
+    private static final byte LIST = 5;
+    private static final byte MAP = 6;
+
+    private CompactStructuredData() {
+
+    }
+
+    static String encode(StructuredData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(data, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize structured data.", e);
+        }
+
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static StructuredData decode(String encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case BOOL:
+                    return StructuredData.get().bool(in.readBoolean());
+                case INTEGRAL:
+                    return StructuredData.get().integral(in.readLong());
+                case FLOATING_POINT:
+                    return StructuredData.get().floatingPoint(in.readDouble());
+                case STRING:
+                    return StructuredData.get().string(readString(in));
+                case UNDEFINED:
+                    return StructuredData.get().undefined();
+                case LIST:
+                    StructuredData.ListBuilder lst = StructuredData.get().list();
+                    readList(in, lst);
+                    return lst.build();
+                case MAP:
+                    StructuredData.MapBuilder mp = StructuredData.get().map();
+                    readMap(in, mp);
+                    return mp.build();
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type tag: " + tag);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to deserialize structured data.", e);
+        }
+    }
+
+    /**
+     * The compact structured data doesn't have any child vertices so the graph queries can't descend into it. Instead,
+     * the data stored in the provided vertex is decoded and the value at the path is looked up in it.
+     *
+     * <p>The value is returned as a detached vertex with the same properties as a vertex of the non-compact data would
+     * have, so that it can be filtered and converted to structured data the same way. Lists and maps are encoded in
+     * it in the compact form again. The id of the returned vertex is derived from the id of the root vertex and the
+     * path so that it is distinct from the root and from the other values.
+     *
+     * @param root     the root vertex of the structured data
+     * @param dataPath the path to the value in the structured data
+     * @return the detached vertex representing the value or null if the root is not compact or there is no value at
+     * the path
+     */
+    static Vertex dataAt(Vertex root, RelativePath dataPath) {
+        Property<String> compact = root.property(__structuredDataCompact.name());
+        if (!compact.isPresent()) {
+            return null;
+        }
+
+        Deque<StructuredData> parents = new ArrayDeque<>();
+        StructuredData current = decode(compact.value());
+        Path.Segment last = null;
+        for (Path.Segment seg : dataPath.getPath()) {
+            if (SegmentType.up.equals(seg.getElementType())) {
+                if (parents.isEmpty()) {
+                    return null;
+                }
+                current = parents.pop();
+                continue;
+            }
+
+            StructuredData child = null;
+            if (current.getType() == StructuredData.Type.map) {
+                child = current.map().get(seg.getElementId());
+            } else if (current.getType() == StructuredData.Type.list) {
+                Integer index = FilterVisitor.toInteger(seg.getElementId());
+                if (index != null && index >= 0 && index < current.list().size()) {
+                    child = current.list().get(index);
+                }
+            }
+
+            if (child == null) {
+                return null;
+            }
+
+            parents.push(current);
+            current = child;
+            last = seg;
+        }
+
+        Map<String, Object> props = new HashMap<>();
+        addProperty(props, __type.name(), Constants.Type.structuredData.name());
+        addProperty(props, __structuredDataType.name(), current.getType().name());
+
+        if (last != null && !parents.isEmpty() && parents.peek().getType() == StructuredData.Type.map) {
+            addProperty(props, __structuredDataKey.name(), last.getElementId());
+        }
+
+        switch (current.getType()) {
+            case bool:
+                addProperty(props, __structuredDataValue_b.name(), current.bool());
+                break;
+            case integral:
+                addProperty(props, __structuredDataValue_i.name(), current.integral());
+                break;
+            case floatingPoint:
+                addProperty(props, __structuredDataValue_f.name(), current.floatingPoint());
+                break;
+            case string:
+                addProperty(props, __structuredDataValue_s.name(), current.string());
+                break;
+            case list:
+            case map:
+                addProperty(props, __structuredDataCompact.name(), encode(current));
+                break;
+            default:
+                break;
+        }
+
+        return new DetachedVertex(root.id() + ":" + dataPath, Constants.Type.structuredData.name(), props);
+    }
+
+    private static void addProperty(Map<String, Object> props, String name, Object value) {
+        props.put(name, Collections.singletonList(new DetachedVertexProperty<>(null, name, value, null)));
+    }
+
+    private static void write(StructuredData data, DataOutputStream out) throws IOException {
+        switch (data.getType()) {
+            case bool:
+                out.writeByte(BOOL);
+                out.writeBoolean(data.bool());
+                break;
+            case integral:
+                out.writeByte(INTEGRAL);
+                out.writeLong(data.integral());
+                break;
+            case floatingPoint:
+                out.writeByte(FLOATING_POINT);
+                out.writeDouble(data.floatingPoint());
+                break;
+            case string:
+                out.writeByte(STRING);
+                writeString(data.string(), out);
+                break;
+            case undefined:
+                out.writeByte(UNDEFINED);
+                break;
+            case list:
+                out.writeByte(LIST);
+                List<StructuredData> list = data.list();
+                out.writeInt(list.size());
+                for (StructuredData c : list) {
+                    write(c, out);
+                }
+                break;
+            case map:
+                out.writeByte(MAP);
+                Map<String, StructuredData> map = data.map();
+                out.writeInt(map.size());
+                for (Map.Entry<String, StructuredData> e : map.entrySet()) {
+                    writeString(e.getKey(), out);
+                    write(e.getValue(), out);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported structured data type: " + data.getType());
+        }
+    }
+
+    private static void readList(DataInputStream in, StructuredData.AbstractListBuilder<?> bld) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; ++i) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case BOOL:
+                    bld.addBool(in.readBoolean());
+                    break;
+                case INTEGRAL:
+                    bld.addIntegral(in.readLong());
+                    break;
+                case FLOATING_POINT:
+                    bld.addFloatingPoint(in.readDouble());
+                    break;
+                case STRING:
+                    bld.addString(readString(in));
+                    break;
+                case UNDEFINED:
+                    bld.addUndefined();
+                    break;
+                case LIST:
+                    StructuredData.InnerListBuilder<?> lst = bld.addList();
+                    readList(in, lst);
+                    lst.closeList();
+                    break;
+                case MAP:
+                    StructuredData.InnerMapBuilder<?> mp = bld.addMap();
+                    readMap(in, mp);
+                    mp.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type tag: " + tag);
+            }
+        }
+    }
+
+    private static void readMap(DataInputStream in, StructuredData.AbstractMapBuilder<?> bld) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; ++i) {
+            String key = readString(in);
+            byte tag = in.readByte();
+            switch (tag) {
+                case BOOL:
+                    bld.putBool(key, in.readBoolean());
+                    break;
+                case INTEGRAL:
+                    bld.putIntegral(key, in.readLong());
+                    break;
+                case FLOATING_POINT:
+                    bld.putFloatingPoint(key, in.readDouble());
+                    break;
+                case STRING:
+                    bld.putString(key, readString(in));
+                    break;
+                case UNDEFINED:
+                    bld.putUndefined(key);
+                    break;
+                case LIST:
+                    StructuredData.InnerListBuilder<?> lst = bld.putList(key);
+                    readList(in, lst);
+                    lst.closeList();
+                    break;
+                case MAP:
+                    StructuredData.InnerMapBuilder<?> mp = bld.putMap(key);
+                    readMap(in, mp);
+                    mp.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type tag: " + tag);
+            }
+        }
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        //not using writeUTF, because that is limited to 64k
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -16,14 +16,16 @@
  */
 package org.hawkular.inventory.impl.tinkerpop;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__cp;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+import org.apache.tinkerpop.gremlin.process.traversal.P;
 import org.apache.tinkerpop.gremlin.process.traversal.Step;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
@@ -43,6 +45,7 @@ import org.hawkular.inventory.api.filters.Related;
 import org.hawkular.inventory.api.filters.RelationWith;
 import org.hawkular.inventory.api.filters.SwitchElementType;
 import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.base.spi.NoopFilter;
 
 /**
@@ -54,68 +57,65 @@ import org.hawkular.inventory.base.spi.NoopFilter;
  * @since 0.0.1
  */
 abstract class FilterApplicator<T extends Filter> {
-    private static Map<Class<? extends Filter>, Class<? extends FilterApplicator<?>>> applicators;
+    /**
+     * The factories of the applicators for the supported filter types. These are looked up for every filter of every
+     * query, so we keep them as plain functions instead of reflectively looking up the constructors.
+     */
+    private static final Map<Class<? extends Filter>, Function<Filter, FilterApplicator<?>>> applicators;
+
+    /**
+     * The visitor is stateless and can therefore be shared by all the applicators.
+     */
+    private static final FilterVisitor VISITOR = new FilterVisitor();
 
     static {
         applicators = new HashMap<>();
-        applicators.put(Related.class, RelatedApplicator.class);
-        applicators.put(Contained.class, RelatedApplicator.class);
-        applicators.put(Defined.class, RelatedApplicator.class);
-        applicators.put(Incorporated.class, RelatedApplicator.class);
-        applicators.put(With.Ids.class, WithIdsApplicator.class);
-        applicators.put(With.Types.class, WithTypesApplicator.class);
-        applicators.put(With.PropertyValues.class, WithPropertyValuesApplicator.class);
-        applicators.put(RelationWith.Ids.class, RelationWithIdsApplicator.class);
-        applicators.put(RelationWith.PropertyValues.class, RelationWithPropertiesApplicator.class);
-        applicators.put(RelationWith.SourceOfType.class, RelationWithSourcesOfTypesApplicator.class);
-        applicators.put(RelationWith.TargetOfType.class, RelationWithTargetsOfTypesApplicator.class);
-        applicators.put(RelationWith.SourceOrTargetOfType.class, RelationWithSourcesOrTargetsOfTypesApplicator.class);
-        applicators.put(SwitchElementType.class, SwitchElementTypeApplicator.class);
-        applicators.put(NoopFilter.class, NoopApplicator.class);
-        applicators.put(With.CanonicalPaths.class, CanonicalPathApplicator.class);
-        applicators.put(With.RelativePaths.class, RelativePathApplicator.class);
-        applicators.put(Marker.class, MarkerApplicator.class);
-        applicators.put(With.DataAt.class, DataAtApplicator.class);
-        applicators.put(With.DataValued.class, DataValuedApplicator.class);
-        applicators.put(With.DataOfTypes.class, DataOfTypesApplicator.class);
-        applicators.put(RecurseFilter.class, RecurseApplicator.class);
-        applicators.put(With.SameIdentityHash.class, SameIdentityHashApplicator.class);
-        applicators.put(With.Names.class, NamesApplicator.class);
+        applicators.put(Related.class, f -> new RelatedApplicator((Related) f));
+        applicators.put(Contained.class, f -> new RelatedApplicator((Related) f));
+        applicators.put(Defined.class, f -> new RelatedApplicator((Related) f));
+        applicators.put(Incorporated.class, f -> new RelatedApplicator((Related) f));
+        applicators.put(With.Ids.class, f -> new WithIdsApplicator((With.Ids) f));
+        applicators.put(With.Types.class, f -> new WithTypesApplicator((With.Types) f));
+        applicators.put(With.PropertyValues.class, f -> new WithPropertyValuesApplicator((With.PropertyValues) f));
+        applicators.put(RelationWith.Ids.class, f -> new RelationWithIdsApplicator((RelationWith.Ids) f));
+        applicators.put(RelationWith.PropertyValues.class,
+                f -> new RelationWithPropertiesApplicator((RelationWith.PropertyValues) f));
+        applicators.put(RelationWith.SourceOfType.class,
+                f -> new RelationWithSourcesOfTypesApplicator((RelationWith.SourceOfType) f));
+        applicators.put(RelationWith.TargetOfType.class,
+                f -> new RelationWithTargetsOfTypesApplicator((RelationWith.TargetOfType) f));
+        applicators.put(RelationWith.SourceOrTargetOfType.class,
+                f -> new RelationWithSourcesOrTargetsOfTypesApplicator((RelationWith.SourceOrTargetOfType) f));
+        applicators.put(SwitchElementType.class, f -> new SwitchElementTypeApplicator((SwitchElementType) f));
+        applicators.put(NoopFilter.class, f -> new NoopApplicator((NoopFilter) f));
+        applicators.put(With.CanonicalPaths.class, f -> new CanonicalPathApplicator((With.CanonicalPaths) f));
+        applicators.put(With.RelativePaths.class, f -> new RelativePathApplicator((With.RelativePaths) f));
+        applicators.put(Marker.class, f -> new MarkerApplicator((Marker) f));
+        applicators.put(With.DataAt.class, f -> new DataAtApplicator((With.DataAt) f));
+        applicators.put(With.DataValued.class, f -> new DataValuedApplicator((With.DataValued) f));
+        applicators.put(With.DataOfTypes.class, f -> new DataOfTypesApplicator((With.DataOfTypes) f));
+        applicators.put(RecurseFilter.class, f -> new RecurseApplicator((RecurseFilter) f));
+        applicators.put(With.SameIdentityHash.class, f -> new SameIdentityHashApplicator((With.SameIdentityHash) f));
+        applicators.put(With.Names.class, f -> new NamesApplicator((With.Names) f));
     }
 
     protected final T filter;
-    protected final FilterVisitor visitor = new FilterVisitor();
+    protected final FilterVisitor visitor = VISITOR;
 
     private FilterApplicator(T f) {
         this.filter = f;
     }
 
-    public static FilterApplicator of(Filter filter) {
+    public static FilterApplicator<?> of(Filter filter) {
         if (filter == null) {
             throw new IllegalArgumentException("filter == null");
         }
         Class<? extends Filter> filterClazz = filter.getClass();
-        Class<? extends FilterApplicator<?>> applicatorClazz = applicators.get(filterClazz);
-        if (applicatorClazz == null) {
+        Function<Filter, FilterApplicator<?>> factory = applicators.get(filterClazz);
+        if (factory == null) {
             throw new IllegalArgumentException("Unsupported filter type " + filterClazz);
         }
-        Constructor<? extends FilterApplicator<?>> constructor = null;
-        try {
-            constructor = applicatorClazz.getDeclaredConstructor(filterClazz);
-        } catch (NoSuchMethodException e) {
-            try {
-                // Contained, Defined, Owned
-                constructor = applicatorClazz.getDeclaredConstructor(filterClazz.getSuperclass());
-            } catch (NoSuchMethodException e1) {
-                throw new IllegalArgumentException("Unable to create an instance of " + applicatorClazz);
-            }
-        }
-        try {
-            constructor.setAccessible(true);
-            return constructor.newInstance(filter);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalArgumentException("Unable to create an instance of " + applicatorClazz);
-        }
+        return factory.apply(filter);
     }
 
     /**
@@ -127,15 +127,58 @@ abstract class FilterApplicator<T extends Filter> {
      * @param <E>        type of the output of the query
      */
     public static <S, E> void applyAll(Query filterTree, GraphTraversal<S, E> q) {
+        applyAll(filterTree, q, false);
+    }
+
+    /**
+     * Applies all the filters from the applicator tree to the provided Gremlin query.
+     *
+     * @param filterTree            the tree of filters to apply to the query
+     * @param q                     the query to update with filters from the tree
+     * @param compactStructuredData whether the structured data can be stored in the compact form
+     * @param <S>                   type of the source of the query
+     * @param <E>                   type of the output of the query
+     */
+    public static <S, E> void applyAll(Query filterTree, GraphTraversal<S, E> q, boolean compactStructuredData) {
         if (filterTree == null) {
             return;
         }
 
         QueryTranslationState state = new QueryTranslationState();
+        state.setCompactStructuredData(compactStructuredData);
 
         applyAll(filterTree, q, false, state);
     }
 
+    /**
+     * Applies all the filters from the applicator tree to the provided Gremlin query, reusing the translation of the
+     * same query from the provided cache of query plans if possible.
+     *
+     * @param filterTree            the tree of filters to apply to the query
+     * @param q                     the query to update with filters from the tree
+     * @param plans                 the cache of the already translated queries
+     * @param compactStructuredData whether the structured data can be stored in the compact form. This must be the
+     *                              same for all the queries translated using the same cache.
+     * @param <S>                   type of the source of the query
+     * @param <E>                   type of the output of the query
+     */
+    public static <S, E> void applyAll(Query filterTree, GraphTraversal<S, E> q,
+                                       LruCache<Query, GraphTraversal<?, ?>> plans, boolean compactStructuredData) {
+        if (filterTree == null) {
+            return;
+        }
+
+        GraphTraversal<?, ?> plan = plans.computeIfAbsent(filterTree, query -> {
+            GraphTraversal<?, ?> translated = __.start();
+            applyAll(query, translated, compactStructuredData);
+            return translated;
+        });
+
+        //the plan is shared, so we need to work with a copy of its steps
+        GraphTraversal.Admin<S, E> admin = q.asAdmin();
+        plan.asAdmin().clone().getSteps().forEach(admin::addStep);
+    }
+
     /**
      * A private impl of the {@code applyAll()} method that tracks the current type of the filter being applied.
      * The type of the filter is either a path ({@code isFilter == false}) which potentially progresses the query to
@@ -227,6 +270,28 @@ abstract class FilterApplicator<T extends Filter> {
         }
     }
 
+    /**
+     * Restricts the pipeline to the elements with canonical paths greater than the provided one. This is used to
+     * implement the cursor-based paging where the cursor represents the canonical path of the last element of the
+     * previous page.
+     *
+     * <p>The pipeline is deliberately not ordered, because the ordering is a barrier step in Gremlin that would read
+     * and sort all the elements following the cursor. The caller picks the elements with the smallest paths while
+     * reading the pipeline instead, keeping only as many of them as fit on the page.
+     *
+     * @param pipeline the pipeline to apply the cursor to
+     * @param lastPath the canonical path of the last element seen or null if starting from the beginning
+     * @param <S>      the start element type of the pipeline
+     * @param <E>      the end element type of the pipeline
+     */
+    public static <S, E> void applyCursor(GraphTraversal<S, E> pipeline, String lastPath) {
+        if (lastPath == null) {
+            pipeline.has(__cp.name());
+        } else {
+            pipeline.has(__cp.name(), P.gt(lastPath));
+        }
+    }
+
     static <S, E> void finishPipeline(GraphTraversal<S, E> pipeline, QueryTranslationState state,
                                               QueryTranslationState originalState) {
         if (state.isExplicitChange()) {
@@ -24,12 +24,14 @@ import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__eid
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceCp;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceEid;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceType;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataCompact;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetCp;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetEid;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetType;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__type;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
@@ -39,6 +41,7 @@ import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
 import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.hawkular.inventory.api.Relationships;
 import org.hawkular.inventory.api.filters.Filter;
 import org.hawkular.inventory.api.filters.Marker;
@@ -435,13 +438,34 @@ class FilterVisitor {
     public void visit(GraphTraversal<?, ?> query, With.DataAt dataPos, QueryTranslationState state) {
         goBackFromEdges(query, state);
         query.out(hasData.name());
-        for (Path.Segment seg : dataPos.getDataPath().getPath()) {
+
+        RelativePath dataPath = dataPos.getDataPath();
+        if (!state.isCompactStructuredData() || dataPath.getPath().isEmpty()) {
+            descendToData(query, dataPath);
+        } else {
+            //the compact data has no child vertices, so we need to look into them in addition to the normal descent
+            GraphTraversal<?, ?> expanded = __.start();
+            descendToData(expanded, dataPath);
+
+            GraphTraversal<?, ?> compact = __.has(__structuredDataCompact.name())
+                    .flatMap(t -> {
+                        Vertex value = CompactStructuredData.dataAt((Vertex) t.get(), dataPath);
+                        return value == null ? Collections.emptyIterator() : Collections.singleton(value).iterator();
+                    });
+
+            query.union((Traversal[]) new Traversal<?, ?>[]{expanded, compact});
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void descendToData(GraphTraversal<?, ?> query, RelativePath dataPath) {
+        for (Path.Segment seg : dataPath.getPath()) {
             if (SegmentType.up.equals(seg.getElementType())) {
-                query.in(contains.name());
-            } else {
-                query.out(contains.name());
+                query.in(contains.name()).has(__type.name(), Constants.Type.structuredData.name());
+                continue;
             }
 
+            query.out(contains.name());
             query.has(__type.name(), Constants.Type.structuredData.name());
 
             // map members have both index and key (so that the order of the elements is preserved)
@@ -570,7 +594,7 @@ class FilterVisitor {
      * @param str the string potentially representing a number
      * @return the parsed number or null if the string is not a supported number
      */
-    private static Integer toInteger(String str) {
+    static Integer toInteger(String str) {
         char[] chars = str.toCharArray();
 
         int result = 0;
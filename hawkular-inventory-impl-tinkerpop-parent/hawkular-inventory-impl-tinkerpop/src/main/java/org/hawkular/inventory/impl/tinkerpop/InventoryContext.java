@@ -16,7 +16,13 @@
  */
 package org.hawkular.inventory.impl.tinkerpop;
 
+import java.util.concurrent.ExecutorService;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.hawkular.inventory.api.Query;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.impl.tinkerpop.spi.GraphProvider;
 import org.hawkular.inventory.paths.CanonicalPath;
 
@@ -31,15 +37,24 @@ final class InventoryContext {
     private final Graph graph;
     private final TinkerpopInventory inventory;
     private final GraphProvider graphProvider;
+    private final boolean compactStructuredData;
+    private final LruCache<Query, GraphTraversal<?, ?>> queryPlans;
+    private final ExecutorService queryExecutor;
 
-    public InventoryContext(TinkerpopInventory inventory, Graph graph, GraphProvider graphProvider) {
+    public InventoryContext(TinkerpopInventory inventory, Graph graph, GraphProvider graphProvider,
+                            boolean compactStructuredData, LruCache<Query, GraphTraversal<?, ?>> queryPlans,
+                            ExecutorService queryExecutor) {
         this.inventory = inventory;
         this.graph = graph;
         this.graphProvider = graphProvider;
+        this.compactStructuredData = compactStructuredData;
+        this.queryPlans = queryPlans;
+        this.queryExecutor = queryExecutor;
     }
 
     public InventoryContext cloneWith(Graph graph) {
-        return new InventoryContext(inventory, graph, graphProvider);
+        return new InventoryContext(inventory, graph, graphProvider, compactStructuredData, queryPlans,
+                queryExecutor);
     }
 
     public TinkerpopInventory getInventory() {
@@ -54,6 +69,20 @@ final class InventoryContext {
         return graphProvider.startTransaction(graph);
     }
 
+    /**
+     * Starts a read-only transaction in the current thread, independent of the transaction this context might be
+     * bound to.
+     *
+     * @see GraphProvider#startReadTransaction(Graph)
+     */
+    public Graph startReadTransaction() {
+        return graphProvider.startReadTransaction(graph);
+    }
+
+    public void endReadTransaction(Graph readGraph) {
+        graphProvider.endReadTransaction(readGraph);
+    }
+
     public void commit() {
         graphProvider.commit(graph);
     }
@@ -70,6 +99,37 @@ final class InventoryContext {
         return graphProvider.needsDraining();
     }
 
+    public void closeTraversal(Traversal<?, ?> traversal) {
+        graphProvider.closeTraversal(traversal);
+    }
+
+    public void beginBulkLoad() {
+        graphProvider.beginBulkLoad(graph);
+    }
+
+    public void endBulkLoad() {
+        graphProvider.endBulkLoad(graph);
+    }
+
+    /**
+     * @return the cache of the queries translated to Gremlin traversals, shared by all the transactions
+     */
+    public LruCache<Query, GraphTraversal<?, ?>> getQueryPlans() {
+        return queryPlans;
+    }
+
+    /**
+     * @return the executor to evaluate the independent parts of the queries in parallel or null if the queries should
+     * be evaluated only by the calling thread
+     */
+    public ExecutorService getQueryExecutor() {
+        return queryExecutor;
+    }
+
+    public boolean isCompactStructuredData() {
+        return compactStructuredData;
+    }
+
     public boolean isPreferringBigTransactions() {
         return graphProvider.isPreferringBigTransactions();
     }
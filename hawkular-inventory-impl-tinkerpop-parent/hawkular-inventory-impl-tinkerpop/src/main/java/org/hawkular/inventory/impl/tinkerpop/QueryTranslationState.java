@@ -26,6 +26,7 @@ final class QueryTranslationState implements Cloneable {
     private boolean inEdges;
     private boolean explicitChange;
     private Direction comingFrom;
+    private boolean compactStructuredData;
 
     public boolean isInEdges() {
         return inEdges;
@@ -53,6 +54,17 @@ final class QueryTranslationState implements Cloneable {
         this.explicitChange = explicitChange;
     }
 
+    /**
+     * @return true if the structured data can be stored in the compact form, which the data filters need to decode
+     */
+    public boolean isCompactStructuredData() {
+        return compactStructuredData;
+    }
+
+    public void setCompactStructuredData(boolean compactStructuredData) {
+        this.compactStructuredData = compactStructuredData;
+    }
+
     @Override
     public QueryTranslationState clone() {
         try {
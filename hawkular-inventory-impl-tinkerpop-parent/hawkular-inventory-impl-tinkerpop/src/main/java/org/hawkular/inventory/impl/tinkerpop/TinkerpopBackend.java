@@ -17,6 +17,7 @@
 package org.hawkular.inventory.impl.tinkerpop;
 
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import static org.hawkular.inventory.api.Relationships.Direction.incoming;
@@ -28,6 +29,9 @@ import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__eid
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceCp;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceEid;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__sourceType;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataCompact;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataDigest;
+import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__structuredDataType;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetCp;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetEid;
 import static org.hawkular.inventory.impl.tinkerpop.spi.Constants.Property.__targetType;
@@ -49,20 +53,26 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
-import org.apache.tinkerpop.gremlin.process.traversal.Scope;
 import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
 import org.apache.tinkerpop.gremlin.structure.Direction;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Property;
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
@@ -83,6 +93,7 @@ import org.hawkular.inventory.api.model.ElementVisitor;
 import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.model.Environment;
 import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.HashAlgorithm;
 import org.hawkular.inventory.api.model.Hashes;
 import org.hawkular.inventory.api.model.MetadataPack;
 import org.hawkular.inventory.api.model.Metric;
@@ -101,6 +112,7 @@ import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.base.spi.CommitFailureException;
 import org.hawkular.inventory.base.spi.ElementNotFoundException;
 import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.hawkular.inventory.base.spi.PagingCursors;
 import org.hawkular.inventory.base.spi.ShallowStructuredData;
 import org.hawkular.inventory.impl.tinkerpop.spi.Constants;
 import org.hawkular.inventory.paths.CanonicalPath;
@@ -115,8 +127,48 @@ import org.hawkular.inventory.paths.SegmentType;
 final class TinkerpopBackend implements InventoryBackend<Element> {
     private final InventoryContext context;
 
+    /**
+     * The vertices of the defining types of the resources and metrics, keyed by the ids of the resource and metric
+     * vertices. These are prefetched in bulk for the results of a query so that the conversion doesn't need to
+     * traverse the defines edge for each converted entity. Only used in transactions, null otherwise.
+     */
+    private final Map<Object, Vertex> definingTypeVertices;
+
+    /**
+     * The already converted defining types, keyed by the ids of their vertices. Only used in transactions, null
+     * otherwise.
+     */
+    private final Map<Object, Entity<?, ?>> definingTypes;
+
+    /**
+     * The elements already looked up by their canonical paths in this transaction. An empty optional means that
+     * there is no element with given path. Only used in transactions, null otherwise.
+     */
+    private final Map<CanonicalPath, Optional<Element>> elementsByPath;
+
+    /**
+     * Whether anything was written using this backend. The independent parts of the queries can only be evaluated in
+     * parallel read transactions if there are no uncommitted changes that these transactions would not see.
+     */
+    private boolean modified;
+
+    /**
+     * The nesting depth of the {@link #beginBulkLoad()} calls. The bulk load is only started and ended on the graph
+     * provider by the outermost calls.
+     */
+    private int bulkLoadDepth;
+
     public TinkerpopBackend(InventoryContext context) {
+        this(context, false);
+    }
+
+    private TinkerpopBackend(InventoryContext context, boolean transactional) {
         this.context = context;
+        //the caches are only safe to use inside transactions, where we see all the modifications and can therefore
+        //invalidate them
+        this.definingTypeVertices = transactional ? new HashMap<>() : null;
+        this.definingTypes = transactional ? new HashMap<>() : null;
+        this.elementsByPath = transactional ? new HashMap<>() : null;
     }
 
     @Override public boolean isUniqueIndexSupported() {
@@ -129,46 +181,72 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public InventoryBackend<Element> startTransaction() {
-        return new TinkerpopBackend(context.cloneWith(context.startTransaction()));
+        return new TinkerpopBackend(context.cloneWith(context.startTransaction()), true);
     }
 
     @Override
     public Element find(CanonicalPath path) throws ElementNotFoundException {
-        Iterator<? extends Element> it;
+        if (elementsByPath == null) {
+            return lookup(path);
+        }
+
+        Optional<Element> cached = elementsByPath.get(path);
+        if (cached == null) {
+            try {
+                cached = Optional.of(lookup(path));
+            } catch (ElementNotFoundException e) {
+                cached = Optional.empty();
+            }
+            elementsByPath.put(path, cached);
+        }
+
+        return cached.orElseThrow(ElementNotFoundException::new);
+    }
+
+    private Element lookup(CanonicalPath path) throws ElementNotFoundException {
+        GraphTraversal<?, ? extends Element> q;
         if (SegmentType.rl.equals(path.getSegment().getElementType())) {
             //__eid is globally unique for relationships
-            it = context.getGraph().traversal().E().has(__eid.name(), path.getSegment().getElementId());
+            q = context.getGraph().traversal().E().has(__eid.name(), path.getSegment().getElementId());
         } else {
-            it = context.getGraph().traversal().V()
+            q = context.getGraph().traversal().V()
                     .hasLabel(Constants.Type.of(path.getSegment().getElementType()).name())
                     .has(__cp.name(), path.toString());
         }
 
-        if (!it.hasNext()) {
+        Element ret = first(q);
+        if (ret == null) {
             throw new ElementNotFoundException();
         }
-        return it.next();
+        return ret;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Page<Element> traverse(Element startingPoint, Query query, Pager pager) {
+        if (startingPoint == null) {
+            List<Query> parts = parallelParts(query, pager);
+            if (parts != null) {
+                return parallelPage(parts, pager, false, Function.identity());
+            }
+        }
+
         GraphTraversal<?, ? extends Element> q = translate(startingPoint, query);
+        applyCursor(q, pager);
 
         Log.LOG.debugf("Query execution (starting at %s):\nquery:\n%s\n\npipeline:\n%s", startingPoint, query, q);
 
+        if (pager.isCursorBased()) {
+            return cursorPage(q, pager, Function.identity(), null);
+        }
+
         return page(q, pager, Function.identity());
     }
 
     @Override public Element traverseToSingle(Element startingPoint, Query query) {
         GraphTraversal<?, ? extends Element> q = translate(startingPoint, query);
         Log.LOG.debugf("Query execution (starting at %s):\nquery:\n%s\n\npipeline:\n%s", startingPoint, query, q);
-        return drainAfter(q, () -> {
-            if (q.hasNext()) {
-                return q.next();
-            }
-            return null;
-        });
+        return first(q);
     }
 
     @Override
@@ -177,35 +255,70 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     }
 
     @Override public Element querySingle(Query query) {
+        CanonicalPath path = elementsByPath == null ? null : asSingleEntityPath(query);
+        if (path != null) {
+            try {
+                return find(path);
+            } catch (ElementNotFoundException e) {
+                return null;
+            }
+        }
+
         return traverseToSingle(null, query);
     }
 
+    /**
+     * If the query merely selects a single entity by its canonical path, this returns that path so that the query
+     * can be replaced by a {@link #find(CanonicalPath)}.
+     */
+    private static CanonicalPath asSingleEntityPath(Query query) {
+        if (!query.getSubTrees().isEmpty() || query.getFragments().length != 1) {
+            return null;
+        }
+
+        Filter filter = query.getFragments()[0].getFilter();
+        if (!(filter instanceof With.CanonicalPaths)) {
+            return null;
+        }
+
+        CanonicalPath[] paths = ((With.CanonicalPaths) filter).getPaths();
+        if (paths.length != 1 || SegmentType.rl == paths[0].getSegment().getElementType()) {
+            return null;
+        }
+
+        return paths[0];
+    }
+
     private GraphTraversal<?, ? extends Element> translate(Element startingPoint, Query query) {
+        return translate(context.getGraph(), startingPoint, query);
+    }
+
+    private GraphTraversal<?, ? extends Element> translate(Graph graph, Element startingPoint, Query query) {
         GraphTraversal<?, ? extends Element> q;
 
         if (startingPoint == null) {
             Filter first = query.getFragments()[0].getFilter();
 
             if (first instanceof RelationFilter) {
-                q = context.getGraph().traversal().E();
+                q = graph.traversal().E();
             } else if (first instanceof With.CanonicalPaths) {
                 //XXX this does NOT handle the situation where we mix relationships and entities in one filter
                 SegmentType elementType = ((With.CanonicalPaths) first).getPaths()[0].getSegment().getElementType();
                 if (SegmentType.rl == elementType) {
-                    q = context.getGraph().traversal().E();
+                    q = graph.traversal().E();
                 } else {
-                    q = context.getGraph().traversal().V();
+                    q = graph.traversal().V();
                 }
             } else {
-                q = context.getGraph().traversal().V();
+                q = graph.traversal().V();
             }
         } else {
             q = startingPoint instanceof Vertex
-                ? context.getGraph().traversal().V(startingPoint)
-                : context.getGraph().traversal().E(startingPoint);
+                ? graph.traversal().V(startingPoint)
+                : graph.traversal().E(startingPoint);
         }
 
-        FilterApplicator.applyAll(query, q);
+        FilterApplicator.applyAll(query, q, context.getQueryPlans(), context.isCompactStructuredData());
 
         return q;
     }
@@ -214,14 +327,24 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     public <T> Page<T> query(Query query, Pager pager,
             Function<Element, T> conversion, Function<T, Boolean> filter) {
 
+        //the result filter needs the converted entities which we can only get in the transaction of the caller
+        List<Query> parts = filter == null ? parallelParts(query, pager) : null;
+        if (parts != null) {
+            return parallelPage(parts, pager, true, conversion);
+        }
+
         GraphTraversal<?, ? extends Element> q = translate(null, query);
 
         //XXX this probably would be more efficient as a proper pipe
         q.filter(e -> !isBackendInternal(e.get()));
 
+        applyCursor(q, pager);
+
         Log.LOG.debugf("Query execution:\nquery:\n%s\n\npipeline:\n%s", query, q);
 
-        if (filter == null) {
+        if (pager.isCursorBased()) {
+            return cursorPage(q, pager, conversion, filter);
+        } else if (filter == null) {
             return page(q, pager, conversion);
         } else {
             //the ResultFilter interface requires an entity to check its applicability and can rule out some of the
@@ -309,10 +432,8 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             return false;
         }
 
-        Iterator<?> it = context.getGraph().traversal()
-                .V(source).out(relationshipName).hasLabel(target.label()).is(target);
-
-        return closeAfter(it, it::hasNext);
+        return first(context.getGraph().traversal()
+                .V(source).out(relationshipName).hasLabel(target.label()).is(target)) != null;
     }
 
     @Override
@@ -330,18 +451,13 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         Vertex t = (Vertex) target;
 
 
-        Iterator<Edge> it = context.getGraph().traversal().V(source).outE(relationshipName)
-                .has(__targetCp.name(), t.property(__cp.name()).value());
+        Edge ret = first(context.getGraph().traversal().V(source).outE(relationshipName)
+                .has(__targetCp.name(), t.property(__cp.name()).value()));
 
-        try {
-            if (!it.hasNext()) {
-                throw new ElementNotFoundException();
-            } else {
-                return it.next();
-            }
-        } finally {
-            closeIfNeeded(it);
+        if (ret == null) {
+            throw new ElementNotFoundException();
         }
+        return ret;
     }
 
     @Override
@@ -427,6 +543,8 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     }
 
     @Override public void updateHashes(Element entity, Hashes hashes) {
+        modified = true;
+        invalidateCaches();
         setNonNullProperty(entity, Constants.Property.__contentHash.name(), hashes.getContentHash());
         setNonNullProperty(entity, Constants.Property.__syncHash.name(), hashes.getSyncHash());
         updateIdentityHash(entity, hashes.getIdentityHash());
@@ -460,30 +578,25 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                 .hasLabel(Constants.Type.tenant.name())
                 .next();
 
-        Iterator<Vertex> hashNodesIt = context.getGraph().traversal().V(tenantVertex)
+        Vertex existingHashNode = first(context.getGraph().traversal().V(tenantVertex)
                 .outE(Constants.InternalEdge.__containsIdentityHash.name())
                 .has(Constants.Property.__targetIdentityHash.name(), identityHash)
                 .inV()
-                .hasLabel(Constants.InternalType.__identityHash.name());
+                .hasLabel(Constants.InternalType.__identityHash.name()));
 
-        closeAfter(hashNodesIt, () -> {
-            if (hashNodesIt.hasNext()) {
-                Vertex hashNode = hashNodesIt.next();
-                vertex.addEdge(Constants.InternalEdge.__withIdentityHash.name(), hashNode);
-            } else {
-                Vertex hashNode = context.getGraph().addVertex(
-                        T.label, Constants.InternalType.__identityHash.name(),
-                        Constants.Property.__identityHash.name(), identityHash,
-                        Constants.Property.__type.name(), Constants.InternalType.__identityHash.name());
+        if (existingHashNode != null) {
+            vertex.addEdge(Constants.InternalEdge.__withIdentityHash.name(), existingHashNode);
+        } else {
+            Vertex hashNode = context.getGraph().addVertex(
+                    T.label, Constants.InternalType.__identityHash.name(),
+                    Constants.Property.__identityHash.name(), identityHash,
+                    Constants.Property.__type.name(), Constants.InternalType.__identityHash.name());
 
-                Edge e = tenantVertex.addEdge(Constants.InternalEdge.__containsIdentityHash.name(), hashNode,
-                        Constants.Property.__targetIdentityHash.name(), identityHash);
+            tenantVertex.addEdge(Constants.InternalEdge.__containsIdentityHash.name(), hashNode,
+                    Constants.Property.__targetIdentityHash.name(), identityHash);
 
-                vertex.addEdge(Constants.InternalEdge.__withIdentityHash.name(), hashNode);
-            }
-
-            return null;
-        });
+            vertex.addEdge(Constants.InternalEdge.__withIdentityHash.name(), hashNode);
+        }
     }
 
     private void removeHashNodeOf(Vertex vertex) {
@@ -537,7 +650,6 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             Vertex v = (Vertex) entityRepresentation;
             name = (String) v.property(Constants.Property.name.name()).orElse(null);
 
-            Iterator<Vertex> it;
             switch (type) {
                 case environment:
                     e = new Environment(extractCanonicalPath(v), extractContentHash(v));
@@ -547,9 +659,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                             extractSyncHash(v));
                     break;
                 case metric:
-                    it = v.vertices(Direction.IN, Relationships.WellKnown.defines.name());
-                    Vertex mdv = closeAfter(it, it::next);
-                    MetricType md = convert(mdv, MetricType.class);
+                    MetricType md = convertDefiningType(v, MetricType.class);
                     e = new Metric(extractCanonicalPath(v), extractIdentityHash(v), extractContentHash(v),
                             extractSyncHash(v), md,
                             (Long) v.property(Constants.Property.__metric_interval.name()).orElse(null));
@@ -563,9 +673,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                             (Long) v.property(Constants.Property.__metric_interval.name()).orElse(null));
                     break;
                 case resource:
-                    it = v.vertices(Direction.IN, Relationships.WellKnown.defines.name());
-                    Vertex rtv = closeAfter(it, it::next);
-                    ResourceType rt = convert(rtv, ResourceType.class);
+                    ResourceType rt = convertDefiningType(v, ResourceType.class);
                     e = new Resource(extractCanonicalPath(v), extractIdentityHash(v), extractContentHash(v),
                             extractSyncHash(v), rt);
                     break;
@@ -681,6 +789,83 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         }
     }
 
+    private <T extends Entity<?, ?>> T convertDefiningType(Vertex entity, Class<T> typeClass) {
+        Vertex typeVertex = definingTypeVertices == null ? null : definingTypeVertices.get(entity.id());
+        if (typeVertex == null) {
+            Iterator<Vertex> it = entity.vertices(Direction.IN, Relationships.WellKnown.defines.name());
+            typeVertex = closeAfter(it, it::next);
+        }
+
+        if (definingTypes == null) {
+            return convert(typeVertex, typeClass);
+        }
+
+        Entity<?, ?> type = definingTypes.get(typeVertex.id());
+        if (type == null) {
+            type = convert(typeVertex, typeClass);
+            definingTypes.put(typeVertex.id(), type);
+        }
+
+        return typeClass.cast(type);
+    }
+
+    /**
+     * Loads the defining types of all the resources and metrics in the provided elements using a single traversal so
+     * that their conversion doesn't need to look them up one by one.
+     *
+     * <p>Note that the results of the queries with a result filter are already converted (and therefore not elements)
+     * by the time they are paged, so there's nothing to prefetch for them.
+     */
+    private void prefetchDefiningTypes(List<?> results) {
+        if (definingTypeVertices == null) {
+            return;
+        }
+
+        Object[] definedVertices = results.stream()
+                .filter(e -> e instanceof Vertex && !isBackendInternal((Vertex) e))
+                .filter(e -> {
+                    Constants.Type type = getType((Vertex) e);
+                    return type == Constants.Type.resource || type == Constants.Type.metric;
+                })
+                .filter(e -> !definingTypeVertices.containsKey(((Vertex) e).id()))
+                .toArray();
+
+        if (definedVertices.length == 0) {
+            return;
+        }
+
+        GraphTraversal<Vertex, Map<String, Object>> q = context.getGraph().traversal().V(definedVertices).as("e")
+                .in(Relationships.WellKnown.defines.name()).as("t").select("e", "t");
+
+        drainAfter(q, () -> {
+            q.forEachRemaining(m -> definingTypeVertices.put(((Vertex) m.get("e")).id(), (Vertex) m.get("t")));
+            return null;
+        });
+    }
+
+    private void invalidateCaches() {
+        if (definingTypeVertices != null) {
+            definingTypeVertices.clear();
+            definingTypes.clear();
+        }
+    }
+
+    /**
+     * Removes the element from the path cache. Because removing a vertex also removes all its edges, all the cached
+     * relationships are forgotten, too, in that case.
+     */
+    private void forgetPath(Element element) {
+        if (elementsByPath == null) {
+            return;
+        }
+
+        element.<String>property(__cp.name()).ifPresent(cp -> elementsByPath.remove(CanonicalPath.fromString(cp)));
+
+        if (element instanceof Vertex) {
+            elementsByPath.keySet().removeIf(cp -> SegmentType.rl == cp.getSegment().getElementType());
+        }
+    }
+
     @Override
     public Element descendToData(Element dataEntityRepresentation, RelativePath dataPath) {
         Query q = Query.path().with(With.dataAt(dataPath)).get();
@@ -689,15 +874,9 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                 ? context.getGraph().traversal().V(dataEntityRepresentation)
                 : context.getGraph().traversal().E(dataEntityRepresentation);
 
-        FilterApplicator.applyAll(q, pipeline);
+        FilterApplicator.applyAll(q, pipeline, context.getQueryPlans(), context.isCompactStructuredData());
 
-        return drainAfter(pipeline, () -> {
-            if (pipeline.hasNext()) {
-                return pipeline.next();
-            } else {
-                return null;
-            }
-        });
+        return first(pipeline);
     }
 
     @Override
@@ -714,6 +893,9 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             throw new IllegalArgumentException("Target not a vertex.");
         }
 
+        modified = true;
+        invalidateCaches();
+
         Map<String, Object> props = properties == null ? Collections.emptyMap() : properties;
 
         Object[] keyValues = asKeyValues(props,
@@ -727,8 +909,14 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         Edge e = ((Vertex) sourceEntity).addEdge(name, (Vertex) targetEntity, keyValues);
 
         //these need the ID of the edge, so we need to set the props after the edge has been created
+        CanonicalPath path = CanonicalPath.of().relationship(e.id().toString()).get();
         e.property(__eid.name(), e.id().toString());
-        e.property(__cp.name(), CanonicalPath.of().relationship(e.id().toString()).get().toString());
+        e.property(__cp.name(), path.toString());
+
+        if (elementsByPath != null) {
+            //this replaces the negative entry if the path has been looked up before the relationship existed
+            elementsByPath.put(path, Optional.of(e));
+        }
 
         return e;
     }
@@ -741,6 +929,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public Element persist(CanonicalPath path, Blueprint blueprint) {
+        modified = true;
         return blueprint.accept(new ElementBlueprintVisitor<Element, Void>() {
 
             @Override
@@ -829,7 +1018,13 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                             __cp.name(), path.toString(),
                             Constants.Property.name.name(), name);
 
-                    return context.getGraph().addVertex(keyVals);
+                    Vertex v = context.getGraph().addVertex(keyVals);
+
+                    if (elementsByPath != null) {
+                        elementsByPath.put(path, Optional.of(v));
+                    }
+
+                    return v;
                 } catch (RuntimeException e) {
                     throw context.translateException(e, path);
                 }
@@ -839,7 +1034,20 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public Vertex persist(StructuredData structuredData) {
-        Vertex thisVertex = context.getGraph().addVertex(Constants.Type.structuredData.name());
+        modified = true;
+        StructuredData.Type dataType = structuredData.getType();
+        if (context.isCompactStructuredData()
+                && (dataType == StructuredData.Type.list || dataType == StructuredData.Type.map)) {
+            Vertex ret = context.getGraph().addVertex(T.label, Constants.Type.structuredData.name(),
+                    __type.name(), Constants.Type.structuredData.name(),
+                    __structuredDataType.name(), dataType.name(),
+                    __structuredDataCompact.name(), CompactStructuredData.encode(structuredData));
+            storeDigest(ret, structuredData);
+            return ret;
+        }
+
+        Vertex thisVertex = context.getGraph().addVertex(T.label, Constants.Type.structuredData.name());
+        storeDigest(thisVertex, structuredData);
 
         Pair<Vertex, Vertex> parentAndCurrent = new Pair<>(null, thisVertex);
 
@@ -939,8 +1147,18 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         return thisVertex;
     }
 
+    private static void storeDigest(Vertex root, StructuredData structuredData) {
+        //only the non-legacy hashes use the digests of the data
+        if (!HashAlgorithm.current().isLegacy()) {
+            root.property(__structuredDataDigest.name(), structuredData.digest());
+        }
+    }
+
     @Override
     public void update(Element entity, AbstractElement.Update update) {
+        modified = true;
+        invalidateCaches();
+        forgetPath(entity);
         update.accept(new ElementUpdateVisitor.Simple<Void, Void>() {
             @Override
             public Void visitTenant(Tenant.Update tenant, Void parameter) {
@@ -1051,6 +1269,9 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public void delete(Element entity) {
+        modified = true;
+        invalidateCaches();
+        forgetPath(entity);
         if (entity instanceof Vertex) {
             removeHashNodeOf((Vertex) entity);
         }
@@ -1078,7 +1299,15 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public void commit() throws CommitFailureException {
+        invalidateCaches();
+        if (elementsByPath != null) {
+            elementsByPath.clear();
+        }
         try {
+            if (bulkLoadDepth > 0) {
+                bulkLoadDepth = 0;
+                context.endBulkLoad();
+            }
             context.commit();
             Log.LOG.trace("Transaction committed: " + context.getGraph());
         } catch (Exception e) {
@@ -1088,9 +1317,29 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public void rollback() {
+        invalidateCaches();
+        if (elementsByPath != null) {
+            elementsByPath.clear();
+        }
+        //there's no point in writing out the pending elements, the rollback discards them
+        bulkLoadDepth = 0;
         context.rollback();
     }
 
+    @Override
+    public void beginBulkLoad() {
+        if (bulkLoadDepth++ == 0) {
+            context.beginBulkLoad();
+        }
+    }
+
+    @Override
+    public void endBulkLoad() {
+        if (bulkLoadDepth > 0 && --bulkLoadDepth == 0) {
+            context.endBulkLoad();
+        }
+    }
+
     @Override
     public boolean isBackendInternal(Element element) {
         return (element instanceof Vertex && element.property(Constants.Property.__type.name()).value().equals(
@@ -1103,6 +1352,9 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public void close() throws Exception {
+        if (context.getQueryExecutor() != null) {
+            context.getQueryExecutor().shutdownNow();
+        }
         context.getGraph().close();
     }
 
@@ -1121,13 +1373,33 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             return null;
         }
 
-        return loadStructuredData(closeAfter(it, it::next), true);
+        Vertex root = closeAfter(it, it::next);
+        StructuredData data = loadStructuredData(root, true);
+
+        //the digests stored before the hash algorithm was changed (or before the format was versioned) are useless
+        Property<String> digest = root.property(__structuredDataDigest.name());
+        return digest.isPresent() && HashAlgorithm.of(digest.value()) == HashAlgorithm.current()
+                ? data.withKnownDigest(digest.value()) : data;
     }
 
     private StructuredData loadStructuredData(Vertex root, boolean recurse) {
         StructuredData.Type type = StructuredData.Type.valueOf((String) root.property(
                 Constants.Property.__structuredDataType.name()).value());
 
+        Property<String> compact = root.property(__structuredDataCompact.name());
+        if (compact.isPresent()) {
+            StructuredData data = CompactStructuredData.decode(compact.value());
+            if (recurse) {
+                return data;
+            } else if (type == StructuredData.Type.list) {
+                return StructuredData.get().list().build();
+            } else if (type == StructuredData.Type.map) {
+                return StructuredData.get().map().build();
+            } else {
+                return data;
+            }
+        }
+
         switch (type) {
             case bool:
                 return StructuredData.get()
@@ -1375,6 +1647,18 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         return ret;
     }
 
+    /**
+     * Returns the first result of the traversal or null if there is none. The traversal is limited to a single result
+     * so that the rest of the matching elements is never processed and then {@link InventoryContext#closeTraversal(
+     * org.apache.tinkerpop.gremlin.process.traversal.Traversal) closed}.
+     */
+    private <E> E first(GraphTraversal<?, E> pipeline) {
+        GraphTraversal<?, E> limited = pipeline.limit(1);
+        E ret = limited.hasNext() ? limited.next() : null;
+        context.closeTraversal(limited);
+        return ret;
+    }
+
     private static final class Pair<F, S> {
         public F first;
         public S second;
@@ -1385,29 +1669,344 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         }
     }
 
+    /**
+     * Pages the results of the traversal. For limited pagers, the range is applied directly on the traversal so that
+     * only the elements of the requested page are ever loaded into memory. The total count is then computed using a
+     * separate counting traversal, which is only evaluated if the total cannot be deduced from the page itself (i.e.
+     * if the page is full or if we're past the end of the results).
+     *
+     * <p>Cursor-based pagers are handled by {@link #cursorPage(Iterator, Pager, Function, Function)}.
+     */
+    @SuppressWarnings("unchecked")
     private <T, U> Page<U> page(GraphTraversal<?, ? extends T> traversal, Pager pager, Function<T, U> transform) {
-        @SuppressWarnings("unchecked")
-        GraphTraversal<?, Map<String, Object>> paged = applyOrdering(traversal, pager)
-                .fold().as("results", "total").select("results", "total")
-                .by(__.coalesce(__.range(Scope.local, pager.getStart(), pager.getEnd()), __.constant(emptyList())))
-                .by(__.count(Scope.local));
-
-        if (!paged.hasNext()) {
-            return new Page<>(Collections.emptyIterator(), pager, 0);
+        if (!pager.isLimited()) {
+            List<T> results = (List<T>) applyOrdering(traversal, pager).toList();
+            prefetchDefiningTypes(results);
+            return new Page<>(results.stream().map(transform).iterator(), pager, results.size());
         }
 
-        Map<String, Object> data = paged.next();
+        //the ordering is irrelevant for the count, so clone the traversal before it is applied
+        GraphTraversal<?, ? extends T> counting = traversal.asAdmin().clone();
 
-        long total = (Long) data.get("total");
+        List<T> results = (List<T>) applyOrdering(traversal, pager).range(pager.getStart(), pager.getEnd()).toList();
 
-        Object res = data.get("results");
+        long total;
+        if (results.size() < pager.getPageSize() && (!results.isEmpty() || pager.getStart() == 0)) {
+            //we've seen the end of the results, so we know the total without counting
+            total = pager.getStart() + results.size();
+        } else {
+            GraphTraversal<?, Long> count = counting.count();
+            total = drainAfter(count, count::next);
+        }
 
-        @SuppressWarnings("unchecked")
-        List<T> results = res instanceof List ? (List<T>) res : Collections.singletonList((T) res);
+        prefetchDefiningTypes(results);
 
         return new Page<>(results.stream().map(transform).iterator(), pager, total);
     }
 
+    /**
+     * Pages the results of the traversal {@link #applyCursor(GraphTraversal, Pager) positioned} after the cursor. The
+     * page consists of the elements with the smallest canonical paths, which are picked while reading the traversal.
+     * Only the elements that could still make it to the page are kept (and converted and filtered), so unlike with
+     * ordering the traversal, the elements following the page are neither held in memory nor sorted. The total is
+     * not computed at all.
+     *
+     * @param elements  the elements following the cursor in no particular order
+     * @param pager     the cursor-based pager
+     * @param transform the conversion of the elements on the page
+     * @param filter    the filter of the converted elements or null if all the elements are accepted
+     */
+    private <U> Page<U> cursorPage(Iterator<? extends Element> elements, Pager pager, Function<Element, U> transform,
+                                   Function<U, Boolean> filter) {
+        Map<Element, U> converted = new HashMap<>();
+
+        //one more than the page size to find out whether there is a next page
+        List<Element> results = firstByPath(elements, pager.getPageSize() + 1, e -> {
+            if (filter == null) {
+                return true;
+            }
+
+            U result = transform.apply(e);
+            converted.put(e, result);
+            return filter.apply(result);
+        });
+
+        String nextCursor = null;
+        if (results.size() > pager.getPageSize()) {
+            results = results.subList(0, pager.getPageSize());
+            nextCursor = encodeCursor(results.get(results.size() - 1));
+        }
+
+        prefetchDefiningTypes(results);
+
+        return new Page<>(results.stream().map(filter == null ? transform : converted::get).iterator(), pager, -1,
+                nextCursor);
+    }
+
+    /**
+     * Picks the elements with the smallest canonical paths while reading the elements. Only the elements that could
+     * still be among the picked ones are passed to the condition.
+     *
+     * @param elements  the elements to pick from
+     * @param count     the maximum number of the elements to pick
+     * @param condition the condition the picked elements need to satisfy
+     * @return the picked elements ordered by their canonical paths
+     */
+    private static List<Element> firstByPath(Iterator<? extends Element> elements, int count,
+                                             Predicate<Element> condition) {
+        //the element with the greatest path is at the head so that it can be replaced by the elements with smaller ones
+        Comparator<Pair<String, Element>> byPath = Comparator.comparing(p -> p.first);
+        PriorityQueue<Pair<String, Element>> picked = new PriorityQueue<>(count, byPath.reversed());
+
+        while (elements.hasNext()) {
+            Element e = elements.next();
+            String path = (String) e.property(__cp.name()).value();
+            if (picked.size() == count && path.compareTo(picked.peek().first) >= 0) {
+                continue;
+            }
+
+            if (!condition.test(e)) {
+                continue;
+            }
+
+            if (picked.size() == count) {
+                picked.poll();
+            }
+            picked.add(new Pair<>(path, e));
+        }
+
+        List<Pair<String, Element>> ret = new ArrayList<>(picked);
+        ret.sort(byPath);
+        return ret.stream().map(p -> p.second).collect(toList());
+    }
+
+    /**
+     * Splits the query into the parts that can be evaluated in parallel or returns null if the query should be
+     * evaluated as a whole by the calling thread.
+     */
+    private List<Query> parallelParts(Query query, Pager pager) {
+        if (context.getQueryExecutor() == null || modified || query.getFragments().length == 0) {
+            return null;
+        }
+
+        //the order of the results of an unordered query is the order in which the traversal produces them. We would
+        //not be able to reproduce that from the results of the individual parts, which would break the paging.
+        if (pager.isLimited() && !pager.isCursorBased() && pager.getOrder().stream().noneMatch(Order::isSpecific)) {
+            return null;
+        }
+
+        Filter first = query.getFragments()[0].getFilter();
+        if (first instanceof With.CanonicalPaths) {
+            CanonicalPath[] paths = ((With.CanonicalPaths) first).getPaths();
+            boolean relationships = SegmentType.rl == paths[0].getSegment().getElementType();
+            if (Stream.of(paths).anyMatch(p -> relationships != (SegmentType.rl == p.getSegment().getElementType()))) {
+                return null;
+            }
+        }
+
+        List<Query> parts = query.split();
+        return parts.size() > 1 ? parts : null;
+    }
+
+    /**
+     * Evaluates the parts of a query in parallel, each in its own read transaction, and pages the merged results the
+     * same way {@link #page(GraphTraversal, Pager, Function)} would page the results of the whole query.
+     *
+     * <p>Each part only reports as many results as could appear on the requested page. The parts merely report the
+     * ids of the found elements (along with the values the results are ordered by) and the elements of the requested
+     * page are loaded again in the transaction of the caller.
+     */
+    private <T> Page<T> parallelPage(List<Query> parts, Pager pager, boolean excludeInternal,
+                                     Function<Element, T> transform) {
+        String[] orderProperties;
+        if (pager.isCursorBased()) {
+            orderProperties = new String[]{__cp.name()};
+        } else {
+            orderProperties = pager.getOrder().stream().filter(Order::isSpecific)
+                    .map(o -> Constants.Property.mapUserDefined(o.getField())).toArray(String[]::new);
+        }
+
+        int limit = pager.isCursorBased() ? pager.getPageSize() + 1 : pager.getEnd();
+
+        List<Future<PartResult>> futures = new ArrayList<>(parts.size());
+        for (Query part : parts) {
+            futures.add(context.getQueryExecutor().submit(() -> evaluatePart(part, pager, excludeInternal, limit,
+                    orderProperties)));
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        long total = 0;
+        for (Future<PartResult> f : futures) {
+            PartResult result;
+            try {
+                result = f.get();
+            } catch (InterruptedException e) {
+                futures.forEach(rf -> rf.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the query results.", e);
+            } catch (ExecutionException e) {
+                futures.forEach(rf -> rf.cancel(true));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Failed to evaluate the query.", e.getCause());
+            }
+
+            hits.addAll(result.hits);
+            total += result.count;
+        }
+
+        if (orderProperties.length > 0) {
+            //stable, so that the results of the parts keep their relative order, which corresponds to the order in
+            //which the traversal of the whole query would produce them
+            hits.sort(hitComparator(pager));
+        }
+
+        String nextCursor = null;
+        if (pager.isCursorBased()) {
+            if (hits.size() > pager.getPageSize()) {
+                hits = hits.subList(0, pager.getPageSize());
+                nextCursor = PagingCursors.encode((String) hits.get(hits.size() - 1).orderValues[0]);
+            }
+            total = -1;
+        } else if (pager.isLimited()) {
+            hits = hits.subList(Math.min(pager.getStart(), hits.size()), Math.min(pager.getEnd(), hits.size()));
+        }
+
+        List<Element> results = load(hits);
+        prefetchDefiningTypes(results);
+
+        return new Page<>(results.stream().map(transform).iterator(), pager, total, nextCursor);
+    }
+
+    private PartResult evaluatePart(Query part, Pager pager, boolean excludeInternal, int limit,
+                                    String[] orderProperties) {
+        Graph graph = context.startReadTransaction();
+        try {
+            GraphTraversal<?, ? extends Element> q = translate(graph, null, part);
+            if (excludeInternal) {
+                q.filter(e -> !isBackendInternal(e.get()));
+            }
+
+            applyCursor(q, pager);
+
+            //the ordering is done on the hits rather than in the traversal, so that the values of different types
+            //don't fail the comparison. The part needs to read all its results to order them either way.
+            List<? extends Element> elements = pager.isCursorBased() ? firstByPath(q, limit, e -> true) : q.toList();
+
+            List<Hit> hits = new ArrayList<>(elements.size());
+            for (Element e : elements) {
+                Object[] values = new Object[orderProperties.length];
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = e.property(orderProperties[i]).orElse(null);
+                }
+                hits.add(new Hit(e.id(), e instanceof Vertex, values));
+            }
+
+            long count = hits.size();
+            if (!pager.isCursorBased() && orderProperties.length > 0) {
+                hits.sort(hitComparator(pager));
+            }
+            if (pager.isLimited() && hits.size() > limit) {
+                hits = new ArrayList<>(hits.subList(0, limit));
+            }
+
+            return new PartResult(hits, count);
+        } finally {
+            context.endReadTransaction(graph);
+        }
+    }
+
+    private List<Element> load(List<Hit> hits) {
+        Map<Object, Element> byId = new HashMap<>(hits.size());
+
+        Object[] vertexIds = hits.stream().filter(h -> h.vertex).map(h -> h.id).toArray();
+        if (vertexIds.length > 0) {
+            context.getGraph().vertices(vertexIds).forEachRemaining(v -> byId.put(v.id(), v));
+        }
+
+        Object[] edgeIds = hits.stream().filter(h -> !h.vertex).map(h -> h.id).toArray();
+        if (edgeIds.length > 0) {
+            context.getGraph().edges(edgeIds).forEachRemaining(e -> byId.put(e.id(), e));
+        }
+
+        //the elements might have been deleted in the meantime by another transaction
+        return hits.stream().map(h -> byId.get(h.id)).filter(e -> e != null).collect(toList());
+    }
+
+    private static Comparator<Hit> hitComparator(Pager pager) {
+        List<Order.Direction> directions = pager.isCursorBased()
+                ? Collections.singletonList(Order.Direction.ASCENDING)
+                : pager.getOrder().stream().filter(Order::isSpecific).map(Order::getDirection).collect(toList());
+
+        return (a, b) -> {
+            for (int i = 0; i < directions.size(); ++i) {
+                int diff = compareValues(a.orderValues[i], b.orderValues[i]);
+
+                if (diff != 0) {
+                    return directions.get(i) == Order.Direction.DESCENDING ? -diff : diff;
+                }
+            }
+
+            return 0;
+        };
+    }
+
+    /**
+     * Compares the values of the properties the results are ordered by. The user defined properties can have values
+     * of different types in different elements, so only the values of the same type (or the numbers) are compared
+     * naturally, the rest is compared by their string representations. The missing values come first.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        } else if (b == null) {
+            return 1;
+        } else if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable<Object>) a).compareTo(b);
+        } else if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        } else {
+            return a.toString().compareTo(b.toString());
+        }
+    }
+
+    /**
+     * An element found by one of the parts of a query evaluated in parallel.
+     */
+    private static final class Hit {
+        final Object id;
+        final boolean vertex;
+        final Object[] orderValues;
+
+        Hit(Object id, boolean vertex, Object[] orderValues) {
+            this.id = id;
+            this.vertex = vertex;
+            this.orderValues = orderValues;
+        }
+    }
+
+    private static final class PartResult {
+        final List<Hit> hits;
+        final long count;
+
+        PartResult(List<Hit> hits, long count) {
+            this.hits = hits;
+            this.count = count;
+        }
+    }
+
+    private static void applyCursor(GraphTraversal<?, ? extends Element> traversal, Pager pager) {
+        if (pager.isCursorBased()) {
+            FilterApplicator.applyCursor(traversal, PagingCursors.decode(pager.getCursor()));
+        }
+    }
+
+    private static String encodeCursor(Element element) {
+        return PagingCursors.encode((String) element.property(__cp.name()).value());
+    }
+
     private <S, E> GraphTraversal<S, E> applyOrdering(GraphTraversal<S, E> traversal, Pager pager) {
         boolean specific = pager.getOrder().stream().anyMatch(Order::isSpecific);
 
@@ -17,13 +17,19 @@
 package org.hawkular.inventory.impl.tinkerpop;
 
 import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Element;
 import org.apache.tinkerpop.gremlin.structure.Graph;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.Query;
 import org.hawkular.inventory.base.BaseInventory;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.base.TransactionConstructor;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.impl.tinkerpop.spi.Constants;
@@ -39,6 +45,36 @@ public final class TinkerpopInventory extends BaseInventory<Element> {
             .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.graph-provider-impl")
             .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_GRAPH_PROVIDER_IMPL").build();
 
+    /**
+     * When set to "true", newly persisted lists and maps of structured data are stored serialized in a single vertex
+     * instead of being expanded into a vertex per value. This greatly reduces the number of vertices and edges
+     * needed for large configurations at the cost of not being able to filter on the values nested inside the data.
+     * Data stored in the expanded form is read transparently and is converted to the compact form once it is
+     * updated.
+     */
+    public static final Configuration.Property COMPACT_STRUCTURED_DATA = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.compact-structured-data")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_COMPACT_STRUCTURED_DATA").build();
+
+    /**
+     * The maximum number of queries whose translation to Gremlin traversals is cached. Defaults to 1000, 0 switches
+     * the caching off.
+     */
+    public static final Configuration.Property QUERY_PLAN_CACHE_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.query-plan-cache-size")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_QUERY_PLAN_CACHE_SIZE").build();
+
+    /**
+     * The number of threads used to evaluate the independent parts of the read-only queries (i.e. their branches or
+     * their individual starting canonical paths) in parallel, each in its own read transaction. Defaults to 0 which
+     * means that the queries are evaluated by the calling thread only. Only effective with the graph providers that
+     * {@link GraphProvider#isParallelReadSupported() support} it.
+     */
+    public static final Configuration.Property PARALLEL_QUERY_THREADS = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.parallel-query-threads")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_PARALLEL_QUERY_THREADS").build();
+
+    private LruCache<Query, GraphTraversal<?, ?>> queryPlans;
 
     public TinkerpopInventory() {
     }
@@ -46,6 +82,7 @@ public final class TinkerpopInventory extends BaseInventory<Element> {
     private TinkerpopInventory(BaseInventory<Element> orig, InventoryBackend<Element> backend,
                                TransactionConstructor<Element> transactionConstructor) {
         super(orig, backend, transactionConstructor);
+        this.queryPlans = ((TinkerpopInventory) orig).queryPlans;
     }
 
     @Override protected TinkerpopInventory cloneWith(TransactionConstructor<Element> transactionCtor) {
@@ -65,7 +102,31 @@ public final class TinkerpopInventory extends BaseInventory<Element> {
 
         Graph g = ensureIndices(gp, configuration);
 
-        return new InventoryContext(this, g, gp);
+        boolean compactData = Boolean.parseBoolean(configuration.getProperty(COMPACT_STRUCTURED_DATA, "false"));
+
+        queryPlans = new LruCache<>(Integer.parseInt(configuration.getProperty(QUERY_PLAN_CACHE_SIZE, "1000")));
+
+        int queryThreads = Integer.parseInt(configuration.getProperty(PARALLEL_QUERY_THREADS, "0"));
+        ExecutorService queryExecutor = null;
+        if (queryThreads > 0 && gp.isParallelReadSupported()) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            queryExecutor = Executors.newFixedThreadPool(queryThreads, r -> {
+                Thread t = new Thread(r, "Hawkular Inventory Query " + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        return new InventoryContext(this, g, gp, compactData, queryPlans, queryExecutor);
+    }
+
+    /**
+     * Gives access to the cache of the translated queries, mainly to be able to monitor its hit and miss counts.
+     *
+     * @return the cache of the query plans or null if the inventory hasn't been initialized yet
+     */
+    public LruCache<Query, GraphTraversal<?, ?>> getQueryPlanCache() {
+        return queryPlans;
     }
 
     private Graph ensureIndices(GraphProvider graphProvider, Configuration config) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+import org.apache.tinkerpop.gremlin.structure.util.empty.EmptyGraph;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.hawkular.inventory.impl.tinkerpop.spi.GraphProvider;
+import org.hawkular.inventory.impl.tinkerpop.spi.IndexSpec;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 1.1.3
+ */
+public class TinkerpopBackendBulkLoadTest {
+
+    private RecordingGraphProvider provider;
+    private InventoryBackend<Element> tx;
+
+    @Before
+    public void setup() {
+        provider = new RecordingGraphProvider();
+        InventoryContext context = new InventoryContext(null, EmptyGraph.instance(), provider, false, null, null);
+        tx = new TinkerpopBackend(context).startTransaction();
+    }
+
+    @Test
+    public void testNestedBulkLoadsEndWithTheOutermost() throws Exception {
+        tx.beginBulkLoad();
+        tx.beginBulkLoad();
+        Assert.assertEquals(1, provider.begins);
+
+        tx.endBulkLoad();
+        Assert.assertEquals(0, provider.ends);
+
+        tx.endBulkLoad();
+        Assert.assertEquals(1, provider.ends);
+
+        //unbalanced end is ignored
+        tx.endBulkLoad();
+        Assert.assertEquals(1, provider.ends);
+    }
+
+    @Test
+    public void testCommitEndsPendingBulkLoad() throws Exception {
+        tx.beginBulkLoad();
+        tx.beginBulkLoad();
+
+        tx.commit();
+        Assert.assertEquals(1, provider.commits);
+        Assert.assertEquals(1, provider.ends);
+        Assert.assertTrue("The bulk load should end before the commit", provider.endedBeforeCommit);
+
+        //the depth is reset, so the next bulk load starts anew and the pending ends of the previous one are ignored
+        tx.endBulkLoad();
+        Assert.assertEquals(1, provider.ends);
+
+        tx.beginBulkLoad();
+        Assert.assertEquals(2, provider.begins);
+        tx.endBulkLoad();
+        Assert.assertEquals(2, provider.ends);
+    }
+
+    @Test
+    public void testRollbackDiscardsPendingBulkLoad() throws Exception {
+        tx.beginBulkLoad();
+        tx.beginBulkLoad();
+
+        tx.rollback();
+        Assert.assertEquals(1, provider.rollbacks);
+        Assert.assertEquals("The rolled back elements should not be written", 0, provider.ends);
+
+        tx.beginBulkLoad();
+        Assert.assertEquals(2, provider.begins);
+        tx.endBulkLoad();
+        Assert.assertEquals(1, provider.ends);
+    }
+
+    private static final class RecordingGraphProvider implements GraphProvider {
+        int begins;
+        int ends;
+        int commits;
+        int rollbacks;
+        boolean endedBeforeCommit;
+
+        @Override public boolean isPreferringBigTransactions() {
+            return true;
+        }
+
+        @Override public boolean needsDraining() {
+            return false;
+        }
+
+        @Override public boolean isUniqueIndexSupported() {
+            return false;
+        }
+
+        @Override public Graph instantiateGraph(Configuration configuration) {
+            return EmptyGraph.instance();
+        }
+
+        @Override public void ensureIndices(Graph graph, IndexSpec... indexSpecs) {
+        }
+
+        @Override public Graph startTransaction(Graph graph) {
+            return graph;
+        }
+
+        @Override public void commit(Graph graph) {
+            endedBeforeCommit = ends > 0;
+            commits++;
+        }
+
+        @Override public void rollback(Graph graph) {
+            rollbacks++;
+        }
+
+        @Override public void beginBulkLoad(Graph graph) {
+            begins++;
+        }
+
+        @Override public void endBulkLoad(Graph graph) {
+            ends++;
+        }
+    }
+}
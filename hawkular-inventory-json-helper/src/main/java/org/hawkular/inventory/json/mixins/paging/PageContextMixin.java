@@ -41,4 +41,12 @@ public abstract class PageContextMixin {
 
     @JsonIgnore
     public abstract boolean isLimited();
+
+    //the cursor-based paging is only used through the REST query parameters, keep the JSON of the numbered paging
+    //as it was
+    @JsonIgnore
+    public abstract boolean isCursorBased();
+
+    @JsonIgnore
+    public abstract String getCursor();
 }
@@ -65,7 +65,9 @@ import org.hawkular.inventory.api.model.OperationType;
 import org.hawkular.inventory.api.model.Resource;
 import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.SyncConfiguration;
 import org.hawkular.inventory.api.model.SyncHash;
+import org.hawkular.inventory.api.model.SyncRequest;
 import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.api.paging.Order;
 import org.hawkular.inventory.api.paging.Pager;
@@ -655,6 +657,48 @@ public class SerializationTest {
         test(t);
     }
 
+    @Test
+    public void testSyncRequest() throws Exception {
+        InventoryStructure.Offline.Builder<Feed.Blueprint> bld = InventoryStructure.Offline
+                .of(Feed.Blueprint.builder().withId("feed").build())
+                .addChild(ResourceType.Blueprint.builder().withId("resourceType").build())
+                .addChild(Resource.Blueprint.builder().withId("resource").withResourceTypePath("resourceType").build());
+
+        CanonicalPath rootPath = CanonicalPath.of().tenant("tnt").feed("feed").get();
+        SyncHash.Tree persisted = SyncHash.treeOf(bld.build(), rootPath);
+
+        bld.addChild(Resource.Blueprint.builder().withId("newResource").withResourceTypePath("resourceType").build());
+        InventoryStructure<Feed.Blueprint> structure = bld.build();
+
+        SyncRequest<Feed.Blueprint> incremental = SyncRequest.incremental(structure, rootPath, persisted);
+        testSyncRequest(incremental);
+
+        SyncRequest<?> deserialized = deserialize(serialize(incremental), SyncRequest.class);
+        Assert.assertTrue(deserialized.isIncremental());
+        Assert.assertEquals(SyncHash.treeOf(structure, rootPath), deserialized.getTree());
+
+        SyncRequest<Feed.Blueprint> full = new SyncRequest<>(SyncConfiguration.builder().withAllTypes()
+                .withChunking(true).build(), structure);
+        testSyncRequest(full);
+
+        Assert.assertFalse(deserialize(serialize(full), SyncRequest.class).isIncremental());
+    }
+
+    private void testSyncRequest(SyncRequest<?> request) throws Exception {
+        SyncRequest<?> deserialized = deserialize(serialize(request), SyncRequest.class);
+
+        Assert.assertEquals(request.getTree(), deserialized.getTree());
+        //the structure of the incremental request has the unchanged children pruned, which can leave empty entries
+        //behind in it, so let's compare the contents, not the representation
+        CanonicalPath rootPath = CanonicalPath.of().tenant("tnt").feed("feed").get();
+        Assert.assertEquals(SyncHash.treeOf(request.getInventoryStructure(), rootPath),
+                SyncHash.treeOf(deserialized.getInventoryStructure(), rootPath));
+        Assert.assertEquals(request.getConfiguration().getSyncedTypes(),
+                deserialized.getConfiguration().getSyncedTypes());
+        Assert.assertEquals(request.getConfiguration().isDeepSearch(), deserialized.getConfiguration().isDeepSearch());
+        Assert.assertEquals(request.getConfiguration().isChunked(), deserialized.getConfiguration().isChunked());
+    }
+
     private void testDetyped(Entity<?, ?> orig, String serialized) throws Exception {
         DetypedPathDeserializer.setCurrentEntityType(orig.getClass());
         mapper.addMixIn(CanonicalPath.class, TenantlessCanonicalPathMixin.class);
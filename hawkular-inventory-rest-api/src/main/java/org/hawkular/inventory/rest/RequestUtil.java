@@ -57,6 +57,15 @@ public final class RequestUtil {
         int page = pageS == null ? 0 : Integer.parseInt(pageS);
         int perPage = perPageS == null ? PageContext.UNLIMITED_PAGE_SIZE : Integer.parseInt(perPageS);
 
+        //the presence of the cursor parameter, even with an empty value, switches to the cursor-based paging
+        if (params.containsKey("cursor")) {
+            if (sort != null && !sort.isEmpty()) {
+                throw new IllegalArgumentException("Cursor-based paging cannot be combined with sorting.");
+            }
+            String cursor = params.getFirst("cursor");
+            return Pager.cursor(perPage, cursor == null || cursor.isEmpty() ? null : cursor);
+        }
+
         List<Order> ordering = new ArrayList<>();
 
         if (sort == null || sort.isEmpty()) {
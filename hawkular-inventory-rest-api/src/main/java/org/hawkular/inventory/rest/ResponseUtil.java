@@ -18,10 +18,6 @@ package org.hawkular.inventory.rest;
 
 import static javax.ws.rs.core.Response.Status.CREATED;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -30,19 +26,19 @@ import java.util.List;
 import java.util.Spliterator;
 import java.util.stream.StreamSupport;
 
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.hawkular.inventory.api.model.AbstractElement;
 import org.hawkular.inventory.api.paging.Page;
 import org.hawkular.inventory.api.paging.PageContext;
-import org.hawkular.inventory.bus.Log;
 import org.hawkular.inventory.rest.json.Link;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SequenceWriter;
 
 /**
@@ -111,20 +107,24 @@ public final class ResponseUtil {
         return ret.entity(data);
     }
 
+    /**
+     * Streams the elements of the page directly to the response as a JSON array. The serialization happens in the
+     * thread writing the response, so no intermediate buffer or additional thread is needed.
+     *
+     * <p>The paging headers are created upfront, because the page knows its total size before it is iterated over.
+     * The page is closed once all its elements are written out.
+     *
+     * @param response the response builder to set the entity and headers on
+     * @param uriInfo  the uri info of the current request used to create the paging links
+     * @param mapper   the object mapper to serialize the elements with
+     * @param page     the page to stream
+     * @param <T>      the type of the elements on the page
+     * @return the response builder
+     */
     public static <T> Response.ResponseBuilder pagedResponse(Response.ResponseBuilder response, UriInfo uriInfo,
                                                              ObjectMapper mapper, Page<T> page) {
-        InputStream data = null;
-        try {
-            //extract the data out of the page
-            data = pageToStream(page, mapper, () -> {
-                // the page iterator should be depleted by this time so the total size should be correctly set
-                response.type(MediaType.APPLICATION_OCTET_STREAM_TYPE);
-                createPagingHeader(response, uriInfo, page);
-            });
-        } catch (IOException e) {
-            Log.LOG.error(e);
-        }
-        response.entity(data);
+        createPagingHeader(response, uriInfo, page);
+        response.entity(pageToStream(page, mapper));
         return response;
     }
 
@@ -135,33 +135,17 @@ public final class ResponseUtil {
         return response;
     }
 
-    private static <T> InputStream pageToStream(Page<T> page, ObjectMapper mapper, Runnable callback) throws
-            IOException {
-        final PipedOutputStream outs = new PipedOutputStream();
-        final PipedInputStream ins = new PipedInputStream() {
-            @Override public void close() throws IOException {
-                outs.close();
-                super.close();
-            }
-        };
-        outs.connect(ins);
-        mapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static <T> StreamingOutput pageToStream(Page<T> page, ObjectMapper mapper) {
+        ObjectWriter writer = mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
-        PageToStreamThreadPool.getInstance().submit(() -> {
+        return out -> {
             try (Page<T> closeablePage = page;
-                 PipedOutputStream out = outs;
-                 SequenceWriter sequenceWriter = mapper.writer().writeValuesAsArray(out)) {
+                 SequenceWriter sequenceWriter = writer.writeValuesAsArray(out)) {
                 for (T element : closeablePage) {
                     sequenceWriter.write(element);
-                    sequenceWriter.flush();
                 }
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to convert page to input stream.", e);
-            } finally {
-                callback.run();
             }
-        });
-        return ins;
+        };
     }
 
     /**
@@ -179,6 +163,12 @@ public final class ResponseUtil {
         UriBuilder uriBuilder;
 
         PageContext pc = resultList.getPageContext();
+
+        if (pc.isCursorBased()) {
+            createCursorPagingHeader(builder, uriInfo, resultList);
+            return;
+        }
+
         int page = pc.getPageNumber();
 
         List<Link> links = new ArrayList<>();
@@ -225,4 +215,25 @@ public final class ResponseUtil {
         // Create a total size header
         builder.header("X-Total-Count", resultList.getTotalSize());
     }
+
+    /**
+     * The cursor-based pages only know the way forward, so only the <i>current</i> and <i>next</i> links are created.
+     * The <i>X-Total-Count</i> header is not produced, because the total is not computed for cursor-based pages.
+     */
+    private static void createCursorPagingHeader(final Response.ResponseBuilder builder, final UriInfo uriInfo,
+                                                 final Page<?> resultList) {
+
+        StringBuilder linkHeader = new StringBuilder(new Link("current",
+                uriInfo.getRequestUriBuilder().build().toString()).rfc5988String());
+
+        String nextCursor = resultList.getNextCursor();
+        if (nextCursor != null) {
+            UriBuilder uriBuilder = uriInfo.getRequestUriBuilder();
+            uriBuilder.replaceQueryParam("page");
+            uriBuilder.replaceQueryParam("cursor", nextCursor);
+            linkHeader.append(", ").append(new Link("next", uriBuilder.build().toString()).rfc5988String());
+        }
+
+        builder.header("Link", linkHeader.toString());
+    }
 }
@@ -36,6 +36,7 @@ import org.hawkular.inventory.api.Query;
 import org.hawkular.inventory.api.TransactionFrame;
 import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.json.DetypedPathDeserializer;
 import org.hawkular.inventory.paths.CanonicalPath;
 import org.hawkular.inventory.paths.SegmentType;
@@ -57,6 +58,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @GZIP
 public class RestBase {
 
+    /**
+     * The parsed traversal URIs. The traversers share the cache, because they are all created the same way
+     * in {@link #getTraverser(UriInfo)} and the query prefix is part of the key.
+     */
+    private static final LruCache<Traverser.Key, Query> PARSED_TRAVERSALS = new LruCache<>(500);
+
     @Inject
     @AutoTenant
     protected Inventory inventory;
@@ -163,7 +170,8 @@ public class RestBase {
                 path(CanonicalPath.of().tenant(getTenantId()).get()));
 
         return new Traverser(ctx.getBaseUri().getPath().length() + pathLength, queryPrefix,
-                str -> CanonicalPath.fromPartiallyUntypedString(str, getTenantPath(), (SegmentType) null));
+                str -> CanonicalPath.fromPartiallyUntypedString(str, getTenantPath(), (SegmentType) null),
+                PARSED_TRAVERSALS);
     }
 
     protected String getPath(UriInfo uriInfo) {
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -47,6 +48,7 @@ import org.hawkular.inventory.api.filters.RelationWith;
 import org.hawkular.inventory.api.filters.SwitchElementType;
 import org.hawkular.inventory.api.filters.With;
 import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.paths.CanonicalPath;
 import org.hawkular.inventory.paths.PathSegmentCodec;
 import org.hawkular.inventory.paths.SegmentType;
@@ -74,21 +76,45 @@ public final class Traverser {
     private final int indexPrefixSize;
     private final Query.Builder queryPrefix;
     private final Function<String, CanonicalPath> cpParser;
+    private final LruCache<Key, Query> parsedQueries;
 
     public Traverser(int indexPrefixSize, Query.Builder queryPrefix, Function<String, CanonicalPath> cpParser) {
+        this(indexPrefixSize, queryPrefix, cpParser, null);
+    }
+
+    /**
+     * @param indexPrefixSize the length of the URI prefix preceding the traversal, used in the error messages
+     * @param queryPrefix     the query to prepend to the parsed traversal
+     * @param cpParser        the parser of the canonical paths found in the traversal
+     * @param parsedQueries   the cache of the already parsed traversals or null if the parsing shouldn't be cached.
+     *                        The cache must only be shared by traversers using the same {@code cpParser} for the
+     *                        same query prefix.
+     */
+    public Traverser(int indexPrefixSize, Query.Builder queryPrefix, Function<String, CanonicalPath> cpParser,
+                     LruCache<Key, Query> parsedQueries) {
         this.indexPrefixSize = indexPrefixSize;
         this.queryPrefix = queryPrefix;
         this.cpParser = cpParser;
+        this.parsedQueries = parsedQueries;
     }
 
     public Query navigate(String traversal) {
+        Query prefix = queryPrefix.build();
+        if (parsedQueries == null) {
+            return parse(prefix, traversal);
+        } else {
+            return parsedQueries.computeIfAbsent(new Key(prefix, traversal), k -> parse(prefix, traversal));
+        }
+    }
+
+    private Query parse(Query prefix, String traversal) {
         HawkularInventoryGetUriLexer lexer = new HawkularInventoryGetUriLexer(new ANTLRInputStream(traversal));
         CommonTokenStream tokens = new CommonTokenStream(lexer);
 
         HawkularInventoryGetUriParser parser = new HawkularInventoryGetUriParser(tokens);
         parser.setErrorHandler(new BailErrorStrategy());
 
-        ParseListener listener = new ParseListener(queryPrefix);
+        ParseListener listener = new ParseListener(prefix);
 
         try {
             UriContext ctx = parser.uri();
@@ -120,8 +146,7 @@ public final class Traverser {
         private boolean first = true;
         private final boolean prefixEmpty;
 
-        private ParseListener(Query.Builder query) {
-            Query q = query.build();
+        private ParseListener(Query q) {
             this.query = q.asBuilder();
             this.prefixEmpty = q.getFragments().length == 0;
         }
@@ -553,4 +578,30 @@ public final class Traverser {
             }
         }
     }
+
+    /**
+     * The key of the cache of the parsed traversals.
+     */
+    public static final class Key {
+        private final Query prefix;
+        private final String traversal;
+
+        Key(Query prefix, String traversal) {
+            this.prefix = prefix;
+            this.traversal = traversal;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+
+            return traversal.equals(other.traversal) && prefix.equals(other.prefix);
+        }
+
+        @Override public int hashCode() {
+            return 31 * Objects.hashCode(prefix) + traversal.hashCode();
+        }
+    }
 }
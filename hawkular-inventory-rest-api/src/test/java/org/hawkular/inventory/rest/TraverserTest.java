@@ -35,6 +35,7 @@ import org.hawkular.inventory.api.model.Metric;
 import org.hawkular.inventory.api.model.Resource;
 import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.base.LruCache;
 import org.hawkular.inventory.paths.CanonicalPath;
 import org.hawkular.inventory.paths.SegmentType;
 import org.junit.Test;
@@ -315,6 +316,24 @@ public class TraverserTest {
                 Query.path().with(id("prefix")).rawQueryBuilder());
     }
 
+    @Test
+    public void testParsedTraversalsCached() throws Exception {
+        LruCache<Traverser.Key, Query> cache = new LruCache<>(10);
+        Query expected = path().with(type(Resource.class), id("id")).get();
+
+        assertEquals(expected, new Traverser(0, Query.builder(), CanonicalPath::fromString, cache).navigate("/r;id"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertEquals(expected, new Traverser(0, Query.builder(), CanonicalPath::fromString, cache).navigate("/r;id"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        new Traverser(0, Query.path().with(id("prefix")), CanonicalPath::fromString, cache).navigate("/r;id");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
     private void testVariant(String uri, Query expected) throws Exception {
         testVariant(uri, expected, Query.builder());
     }